@@ -0,0 +1,26 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import java.time.LocalDateTime;
+
+public record BookEntry(
+        long orderId,
+        Side side,
+        int price,
+        int quantity,
+        int totalQuantity,
+        long brokerId,
+        long shareholderId,
+        LocalDateTime entryTime) {
+
+    public BookEntry(Order order) {
+        this(order.getOrderId(), order.getSide(), order.getPrice(), order.getQuantity(), order.getTotalQuantity(),
+                order.getBroker().getBrokerId(), order.getShareholder().getShareholderId(), order.getEntryTime());
+    }
+
+    public boolean describes(Order order) {
+        return orderId == order.getOrderId()
+                && price == order.getPrice()
+                && quantity == order.getQuantity()
+                && totalQuantity == order.getTotalQuantity();
+    }
+}
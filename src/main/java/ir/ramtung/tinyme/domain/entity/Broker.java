@@ -14,18 +14,35 @@ public class Broker {
     private long brokerId;
     private String name;
     private long credit;
+    // set on every change, cleared once the change is saved
+    @ToString.Exclude
+    private boolean dirty;
 
-    public void increaseCreditBy(long amount) {
+    public synchronized long getCredit() {
+        return credit;
+    }
+
+    public synchronized void increaseCreditBy(long amount) {
         assert amount >= 0;
         credit += amount;
+        dirty = true;
     }
 
-    public void decreaseCreditBy(long amount) {
+    public synchronized void decreaseCreditBy(long amount) {
         assert amount >= 0;
         credit -= amount;
+        dirty = true;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void markClean() {
+        dirty = false;
     }
 
-    public boolean hasEnoughCredit(long amount) {
+    public synchronized boolean hasEnoughCredit(long amount) {
         return credit >= amount;
     }
 }
@@ -27,6 +27,25 @@ public class OrderBook {
         it.add(order);
     }
 
+    // Puts many orders of one side in the book at once, in the order enqueue() would have given them
+    // one by one: by price priority, keeping the given order among equal prices. Linear after one
+    // stable sort, which is itself linear when the orders are already in priority order.
+    public void enqueueAll(Side side, List<Order> orders) {
+        LinkedList<Order> queue = getQueue(side);
+        if (!queue.isEmpty()) {
+            orders.forEach(this::enqueue);
+            return;
+        }
+        List<Order> sorted = new ArrayList<>(orders);
+        sorted.sort(side == Side.BUY
+                ? Comparator.comparingInt(Order::getPrice).reversed()
+                : Comparator.comparingInt(Order::getPrice));
+        for (Order order : sorted) {
+            order.markAsQueue();
+            queue.addLast(order);
+        }
+    }
+
     protected LinkedList<Order> getQueue(Side side) {
         return side == Side.BUY ? buyQueue : sellQueue;
     }
@@ -0,0 +1,181 @@
+package ir.ramtung.tinyme.domain.entity;
+
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public final class OrderBookSnapshot {
+    private final String isin;
+    private final long version;
+    private final MatchingState matchingState;
+    private final int lastTradePrice;
+    private final BookSide buyEntries;
+    private final BookSide sellEntries;
+
+    private OrderBookSnapshot(String isin, long version, MatchingState matchingState, int lastTradePrice, BookSide buyEntries, BookSide sellEntries) {
+        this.isin = isin;
+        this.version = version;
+        this.matchingState = matchingState;
+        this.lastTradePrice = lastTradePrice;
+        this.buyEntries = buyEntries;
+        this.sellEntries = sellEntries;
+    }
+
+    public static OrderBookSnapshot of(Security security) {
+        return of(security, null);
+    }
+
+    // Sides that did not change since the previous snapshot are shared with it, and so are the
+    // unchanged price levels of a changed side; only the levels that changed are copied.
+    public static OrderBookSnapshot of(Security security, OrderBookSnapshot previous) {
+        OrderBook orderBook = security.getOrderBook();
+        long version = previous == null ? 1 : previous.version + 1;
+        return new OrderBookSnapshot(security.getIsin(), version, security.getMatchingState(), security.getLastTradePrice(),
+                sideOf(orderBook.getBuyQueue(), previous == null ? BookSide.EMPTY : previous.buyEntries),
+                sideOf(orderBook.getSellQueue(), previous == null ? BookSide.EMPTY : previous.sellEntries));
+    }
+
+    private static BookSide sideOf(List<Order> queue, BookSide previous) {
+        Map<Integer, List<BookEntry>> previousLevels = new HashMap<>();
+        for (List<BookEntry> level : previous.levels)
+            previousLevels.put(level.get(0).price(), level);
+        List<List<BookEntry>> levels = new ArrayList<>();
+        List<Order> run = new ArrayList<>();
+        boolean shared = true;
+        for (Order order : queue) {
+            if (!run.isEmpty() && run.get(0).getPrice() != order.getPrice()) {
+                shared &= addLevel(levels, run, previousLevels.get(run.get(0).getPrice()));
+                run.clear();
+            }
+            run.add(order);
+        }
+        if (!run.isEmpty())
+            shared &= addLevel(levels, run, previousLevels.get(run.get(0).getPrice()));
+        return shared && levels.size() == previous.levels.size() ? previous : new BookSide(levels);
+    }
+
+    // Adds the entries of one price level, reusing the previous level when it describes the same
+    // orders, and tells whether it did.
+    private static boolean addLevel(List<List<BookEntry>> levels, List<Order> run, List<BookEntry> previousLevel) {
+        List<BookEntry> level = new ArrayList<>(run.size());
+        boolean same = previousLevel != null && previousLevel.size() == run.size();
+        for (int i = 0; i < run.size(); i++) {
+            Order order = run.get(i);
+            if (previousLevel != null && i < previousLevel.size() && previousLevel.get(i).describes(order)) {
+                level.add(previousLevel.get(i));
+            } else {
+                level.add(new BookEntry(order));
+                same = false;
+            }
+        }
+        levels.add(same ? previousLevel : level);
+        return same;
+    }
+
+    // One side of the book as a read-only list over its price levels.
+    private static final class BookSide extends AbstractList<BookEntry> {
+        static final BookSide EMPTY = new BookSide(List.of());
+
+        private final List<List<BookEntry>> levels;
+        private final int[] levelEnds;
+
+        BookSide(List<List<BookEntry>> levels) {
+            this.levels = levels;
+            this.levelEnds = new int[levels.size()];
+            int end = 0;
+            for (int i = 0; i < levels.size(); i++) {
+                end += levels.get(i).size();
+                levelEnds[i] = end;
+            }
+        }
+
+        @Override
+        public BookEntry get(int index) {
+            Objects.checkIndex(index, size());
+            int level = Arrays.binarySearch(levelEnds, index + 1);
+            if (level < 0)
+                level = -level - 1;
+            return levels.get(level).get(level == 0 ? index : index - levelEnds[level - 1]);
+        }
+
+        @Override
+        public int size() {
+            return levelEnds.length == 0 ? 0 : levelEnds[levelEnds.length - 1];
+        }
+    }
+
+    public String getIsin() {
+        return isin;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public MatchingState getMatchingState() {
+        return matchingState;
+    }
+
+    public int getLastTradePrice() {
+        return lastTradePrice;
+    }
+
+    public List<BookEntry> getEntries(Side side) {
+        return side == Side.BUY ? buyEntries : sellEntries;
+    }
+
+    public BookEntry findByOrderId(Side side, long orderId) {
+        for (BookEntry entry : getEntries(side)) {
+            if (entry.orderId() == orderId)
+                return entry;
+        }
+        return null;
+    }
+
+    public List<PriceLevel> depth(Side side, int maxLevels) {
+        List<PriceLevel> levels = new ArrayList<>();
+        int price = 0;
+        int quantity = 0;
+        int orderCount = 0;
+        for (BookEntry entry : getEntries(side)) {
+            if (orderCount > 0 && entry.price() != price) {
+                levels.add(new PriceLevel(price, quantity, orderCount));
+                if (levels.size() == maxLevels)
+                    return levels;
+                quantity = 0;
+                orderCount = 0;
+            }
+            price = entry.price();
+            quantity += entry.quantity();
+            orderCount++;
+        }
+        if (orderCount > 0)
+            levels.add(new PriceLevel(price, quantity, orderCount));
+        return levels;
+    }
+
+    public int bestPrice(Side side) {
+        List<BookEntry> entries = getEntries(side);
+        return entries.isEmpty() ? 0 : entries.get(0).price();
+    }
+
+    public long totalQuantity(Side side) {
+        long total = 0;
+        for (BookEntry entry : getEntries(side))
+            total += entry.totalQuantity();
+        return total;
+    }
+
+    public long totalValue(Side side) {
+        long total = 0;
+        for (BookEntry entry : getEntries(side))
+            total += (long) entry.price() * entry.totalQuantity();
+        return total;
+    }
+}
@@ -0,0 +1,4 @@
+package ir.ramtung.tinyme.domain.entity;
+
+public record PriceLevel(int price, int quantity, int orderCount) {
+}
@@ -12,6 +12,7 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
 import static ir.ramtung.tinyme.messaging.Message.CANNOT_SPECIFY_PEAK_SIZE_FOR_A_NON_ICEBERG_ORDER;
 
@@ -35,8 +36,78 @@ public class Security {
     @Setter
     @Builder.Default
     private MatchingState matchingState = MatchingState.CONTINUOUS;
+    // set by every request that may change the security or its books, cleared once they are saved
+    private boolean dirty;
+    // the persisted orders the books are built from on first use, or null once they have been built
+    private volatile DeferredBooks deferredBooks;
+
+    // Builds the books of a security whose orders were left in persisted form when it was loaded.
+    public interface DeferredBooks {
+        void loadInto(OrderBook orderBook, InactiveOrderBook inactiveOrderBook);
+    }
+
+    public OrderBook getOrderBook() {
+        materializeBooks();
+        return orderBook;
+    }
+
+    public InactiveOrderBook getInactiveOrderBook() {
+        materializeBooks();
+        return inactiveOrderBook;
+    }
+
+    // Drops the books until they are first used; until then the security holds only the loader.
+    public synchronized void deferBooks(DeferredBooks books) {
+        orderBook = null;
+        inactiveOrderBook = null;
+        deferredBooks = books;
+    }
+
+    public boolean hasDeferredBooks() {
+        return deferredBooks != null;
+    }
+
+    // Safe to call from a thread other than the engine's: whoever comes first builds the books.
+    public void materializeBooks() {
+        if (deferredBooks == null)
+            return;
+        synchronized (this) {
+            DeferredBooks books = deferredBooks;
+            if (books == null)
+                return;
+            OrderBook active = new OrderBook();
+            InactiveOrderBook inactive = new InactiveOrderBook();
+            books.loadInto(active, inactive);
+            orderBook = active;
+            inactiveOrderBook = inactive;
+            deferredBooks = null;
+        }
+    }
+
+    // Hands the books to the reader without keeping deferred ones: those are built into throwaway
+    // books, so reading every security (to take a snapshot, say) leaves the idle ones unbuilt.
+    public void readBooks(BiConsumer<OrderBook, InactiveOrderBook> reader) {
+        DeferredBooks books = deferredBooks;
+        if (books == null) {
+            reader.accept(getOrderBook(), getInactiveOrderBook());
+            return;
+        }
+        OrderBook active = new OrderBook();
+        InactiveOrderBook inactive = new InactiveOrderBook();
+        books.loadInto(active, inactive);
+        reader.accept(active, inactive);
+    }
+
+    // Empties both books, dropping any orders not yet built from their persisted form.
+    public synchronized void clearBooks() {
+        orderBook = new OrderBook();
+        inactiveOrderBook = new InactiveOrderBook();
+        deferredBooks = null;
+    }
+
 
     public MatchResult newOrder(EnterOrderRq enterOrderRq, Broker broker, Shareholder shareholder, Matcher matcher) {
+        dirty = true;
         Order order;
         if (enterOrderRq.getPeakSize() != 0 && enterOrderRq.getStopPrice() == 0) {
             order = new IcebergOrder(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
@@ -45,8 +116,8 @@ public class Security {
         }
         else if (enterOrderRq.getPeakSize() == 0 && enterOrderRq.getStopPrice() != 0){
             order = new StopLimitOrder(enterOrderRq.getOrderId(),this,enterOrderRq.getSide(),enterOrderRq.getQuantity(),
-                    enterOrderRq.getPrice(),broker,shareholder, enterOrderRq.getEntryTime(),
-                    enterOrderRq.getStopPrice());
+                    enterOrderRq.getPrice(),broker,shareholder, enterOrderRq.getEntryTime(), OrderStatus.NEW,
+                    enterOrderRq.getStopPrice(), enterOrderRq.getRequestId());
         }
         else
             order = new Order(enterOrderRq.getOrderId(), this, enterOrderRq.getSide(),
@@ -55,23 +126,29 @@ public class Security {
     }
 
     public MatchResult changeMatchingState(MatchingState newState, AuctionMatcher auctionMatcher){
+        dirty = true;
         MatchResult matchResult = MatchResult.executed();
         if (matchingState == MatchingState.AUCTION){
-            matchResult = auctionMatcher.reopen(orderBook, lastTradePrice);
+            matchResult = auctionMatcher.reopen(getOrderBook(), lastTradePrice);
         }
         matchingState = newState;
         return matchResult;
     }
 
     public StopLimitOrder getFirstActivatedOrder(){
-        if (inactiveOrderBook.isFirstOrderActive(Side.SELL))
-            return inactiveOrderBook.removeFirst(Side.SELL);
-        if (inactiveOrderBook.isFirstOrderActive(Side.BUY))
-            return inactiveOrderBook.removeFirst(Side.BUY);
+        if (getInactiveOrderBook().isFirstOrderActive(Side.SELL)) {
+            dirty = true;
+            return getInactiveOrderBook().removeFirst(Side.SELL);
+        }
+        if (getInactiveOrderBook().isFirstOrderActive(Side.BUY)) {
+            dirty = true;
+            return getInactiveOrderBook().removeFirst(Side.BUY);
+        }
         return null;
     }
 
     public MatchResult activateOrder(StopLimitOrder stoplimitOrder, Matcher matcher){
+        dirty = true;
         stoplimitOrder.markAsActive();
         if (stoplimitOrder.getSide() == Side.BUY)
             stoplimitOrder.getBroker().increaseCreditBy(stoplimitOrder.getValue());
@@ -79,19 +156,20 @@ public class Security {
     }
 
     private Order findByOrderId(Side side, long orderId){
-        Order order = orderBook.findByOrderId(side, orderId);
+        Order order = getOrderBook().findByOrderId(side, orderId);
         if (order == null)
-            return inactiveOrderBook.findByOrderId(side, orderId);
+            return getInactiveOrderBook().findByOrderId(side, orderId);
         return order;
     }
 
     private void removeByOrderId(Side side, long orderId) {
-        if (orderBook.removeByOrderId(side, orderId))
+        if (getOrderBook().removeByOrderId(side, orderId))
             return;
-        inactiveOrderBook.removeByOrderId(side, orderId);
+        getInactiveOrderBook().removeByOrderId(side, orderId);
     }
 
     public MatchResult deleteOrder(DeleteOrderRq deleteOrderRq, Matcher matcher) throws InvalidRequestException {
+        dirty = true;
         Order order = findByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId());
         try{
             validateDeleteOrder(order);
@@ -103,14 +181,15 @@ public class Security {
             order.getBroker().increaseCreditBy(order.getValue());
         removeByOrderId(deleteOrderRq.getSide(), deleteOrderRq.getOrderId());
         if (matchingState == MatchingState.AUCTION){
-            int openingPrice = ((AuctionMatcher) matcher).calculateOpeningPrice(orderBook, lastTradePrice);
-            int tradableQuantity = ((AuctionMatcher) matcher).calculateTradableQuantity(openingPrice, orderBook);
+            int openingPrice = ((AuctionMatcher) matcher).calculateOpeningPrice(getOrderBook(), lastTradePrice);
+            int tradableQuantity = ((AuctionMatcher) matcher).calculateTradableQuantity(openingPrice, getOrderBook());
             return MatchResult.executed(order, List.of(), openingPrice, tradableQuantity);
         }
         return MatchResult.executed(order, List.of());
     }
 
     public MatchResult updateOrder(EnterOrderRq updateOrderRq, Matcher matcher) throws InvalidRequestException {
+        dirty = true;
         Order order = findByOrderId(updateOrderRq.getSide(), updateOrderRq.getOrderId());
         try {
             validateUpdateOrder(updateOrderRq, order);
@@ -138,7 +217,7 @@ public class Security {
         removeByOrderId(order.getSide(), order.getOrderId());
         MatchResult matchResult = matcher.execute(order);
         if (matchResult.outcome() != MatchingOutcome.EXECUTED) {
-            orderBook.enqueue(originalOrder);
+            getOrderBook().enqueue(originalOrder);
             if (updateOrderRq.getSide() == Side.BUY) {
                 originalOrder.getBroker().decreaseCreditBy(originalOrder.getValue());
             }
@@ -146,6 +225,14 @@ public class Security {
         return matchResult;
     }
 
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void markClean() {
+        dirty = false;
+    }
+
     private void validateUpdateOrder(EnterOrderRq updateOrderRq, Order order) throws InvalidRequestException {
         if (order == null)
             throw new InvalidRequestException(Message.ORDER_ID_NOT_FOUND);
@@ -18,10 +18,14 @@ public class Shareholder {
     private String name;
     @Builder.Default
     private Map<Security, Integer> positions = new HashMap<>();
+    // set on every change, cleared once the change is saved
+    @ToString.Exclude
+    private boolean dirty;
 
     public void incPosition(Security security, int amount) {
         assert amount >= 0;
         positions.put(security, positions.getOrDefault(security, 0) + amount);
+        dirty = true;
     }
 
     public void decPosition(Security security, int amount) {
@@ -30,7 +34,17 @@ public class Shareholder {
         if (currentPositions < amount)
             throw new IllegalArgumentException("Amount to be decreased is greater than shareholder's current position");
         positions.put(security, currentPositions - amount);
+        dirty = true;
     }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void markClean() {
+        dirty = false;
+    }
+
     public boolean hasEnoughPositionsOn(Security security, int position) {
         return positions.getOrDefault(security, 0) >= position;
     }
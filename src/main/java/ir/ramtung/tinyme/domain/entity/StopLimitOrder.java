@@ -13,12 +13,20 @@ import java.time.LocalDateTime;
 
 public class StopLimitOrder extends Order {
     int stopPrice;
+    // the request that entered or last updated the order, reported when it activates
+    @EqualsAndHashCode.Exclude
+    long requestId;
 
     public StopLimitOrder(long orderId, Security security, Side side, int quantity, int price, Broker broker, Shareholder shareholder, LocalDateTime entryTime,OrderStatus status, int stopPrice) {
         super(orderId, security, side, quantity, price, broker, shareholder, entryTime, status,0);
         this.stopPrice = stopPrice;
     }
 
+    public StopLimitOrder(long orderId, Security security, Side side, int quantity, int price, Broker broker, Shareholder shareholder, LocalDateTime entryTime, OrderStatus status, int stopPrice, long requestId) {
+        this(orderId, security, side, quantity, price, broker, shareholder, entryTime, status, stopPrice);
+        this.requestId = requestId;
+    }
+
     public StopLimitOrder(long orderId, Security security, Side side, int quantity, int price, Broker broker, Shareholder shareholder, int stopPrice) {
         super(orderId,security,side,quantity,price,broker,shareholder,0);
         this.stopPrice = stopPrice;
@@ -31,7 +39,7 @@ public class StopLimitOrder extends Order {
 
     @Override
     public StopLimitOrder snapshot() {
-        return new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime, OrderStatus.SNAPSHOT, stopPrice);
+        return new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime, OrderStatus.SNAPSHOT, stopPrice, requestId);
     }
 
 
@@ -61,6 +69,7 @@ public class StopLimitOrder extends Order {
     @Override
     public void updateFromRequest(EnterOrderRq updateOrderRq) {
         super.updateFromRequest(updateOrderRq);
+        requestId = updateOrderRq.getRequestId();
         if (status == OrderStatus.INACTIVE)
             this.stopPrice = updateOrderRq.getStopPrice();
     }
@@ -0,0 +1,61 @@
+package ir.ramtung.tinyme.domain.service;
+
+import ir.ramtung.tinyme.repository.RequestIdWindow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Detects redelivered requests by their requestId within a window of the most recent ids.
+// Memory stays bounded by the window size; a replay older than the window is not detected.
+@Component
+public class DuplicateRequestFilter {
+    public enum Mode {
+        OFF,
+        REJECT,
+        IGNORE
+    }
+
+    private final Mode mode;
+    private final RequestIdWindow window;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bloomShortcuts = new LongAdder();
+
+    public DuplicateRequestFilter(@Value("${idempotency.mode:OFF}") Mode mode,
+                                  @Value("${idempotency.window:1048576}") int windowSize,
+                                  @Value("${idempotency.bloomFilter:false}") boolean bloomFilter) {
+        this.mode = mode;
+        this.window = mode == Mode.OFF ? null : new RequestIdWindow(windowSize, bloomFilter);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // Records the id and tells whether it was seen before. Always false when the filter is off.
+    public synchronized boolean isDuplicate(long requestId) {
+        if (window == null)
+            return false;
+        if (window.definitelyAbsent(requestId))
+            bloomShortcuts.increment();
+        if (window.add(requestId)) {
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        return true;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long bloomShortcuts() {
+        return bloomShortcuts.sum();
+    }
+}
@@ -0,0 +1,121 @@
+package ir.ramtung.tinyme.domain.service;
+
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import ir.ramtung.tinyme.messaging.event.OpeningPriceEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Indicative opening prices are superseded by the next order entry, so when conflation is on only
+// the latest one per security is kept and published at the end of a request batch, or in INTERVAL
+// mode at the end of the first batch an interval after a price became pending. Prices left pending
+// when requests stop coming are published by a timer between requests, under the engine lock, so
+// they never overtake an uncross. A security's pending price is always published before it is uncrossed.
+@Component
+public class OpeningPriceConflator {
+    public enum Mode {
+        NONE,
+        END_OF_BATCH,
+        INTERVAL
+    }
+
+    private final EventPublisher eventPublisher;
+    private final ObjectProvider<RequestDispatcher> requestDispatcher;
+    private final Mode mode;
+    private final long intervalNanos;
+    private final Map<String, OpeningPriceEvent> pendingByIsin = new LinkedHashMap<>();
+    private final ScheduledExecutorService timer;
+    private volatile long flushDueNanos;
+
+    public OpeningPriceConflator(EventPublisher eventPublisher,
+                                 ObjectProvider<RequestDispatcher> requestDispatcher,
+                                 @Value("${openingPrice.conflation:NONE}") Mode mode,
+                                 @Value("${openingPrice.conflationIntervalMillis:100}") long intervalMillis) {
+        this.eventPublisher = eventPublisher;
+        this.requestDispatcher = requestDispatcher;
+        this.mode = mode;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        if (mode == Mode.INTERVAL) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "opening-price-conflator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleAtFixedRate(this::flushWhenIdle, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void publish(OpeningPriceEvent event) {
+        if (mode == Mode.NONE) {
+            eventPublisher.publish(event);
+            return;
+        }
+        synchronized (pendingByIsin) {
+            if (pendingByIsin.isEmpty())
+                flushDueNanos = System.nanoTime() + intervalNanos;
+            pendingByIsin.remove(event.getSecurityIsin());
+            pendingByIsin.put(event.getSecurityIsin(), event);
+        }
+    }
+
+    public void endOfBatch() {
+        if (mode == Mode.END_OF_BATCH || mode == Mode.INTERVAL && System.nanoTime() - flushDueNanos >= 0)
+            flush();
+    }
+
+    private void flushWhenIdle() {
+        synchronized (pendingByIsin) {
+            if (pendingByIsin.isEmpty())
+                return;
+        }
+        RequestDispatcher dispatcher = requestDispatcher.getIfAvailable();
+        if (dispatcher != null)
+            dispatcher.quiesced(() -> {
+                endOfBatch();
+                return null;
+            });
+    }
+
+    public void beforeUncross(String isin) {
+        OpeningPriceEvent pending;
+        synchronized (pendingByIsin) {
+            pending = pendingByIsin.remove(isin);
+        }
+        if (pending != null)
+            eventPublisher.publish(pending);
+    }
+
+    public void flush() {
+        List<OpeningPriceEvent> pending;
+        synchronized (pendingByIsin) {
+            if (pendingByIsin.isEmpty())
+                return;
+            pending = new ArrayList<>(pendingByIsin.values());
+            pendingByIsin.clear();
+        }
+        pending.forEach(eventPublisher::publish);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timer != null)
+            timer.shutdownNow();
+        flush();
+    }
+}
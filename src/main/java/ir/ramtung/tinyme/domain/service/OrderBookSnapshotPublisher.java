@@ -0,0 +1,53 @@
+package ir.ramtung.tinyme.domain.service;
+
+import ir.ramtung.tinyme.domain.entity.OrderBookSnapshot;
+import ir.ramtung.tinyme.domain.entity.Security;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class OrderBookSnapshotPublisher {
+    public enum Policy {
+        NEVER,
+        EVERY_REQUEST,
+        MATCHING_STATE_CHANGE
+    }
+
+    private final Policy policy;
+    private final ConcurrentHashMap<String, OrderBookSnapshot> latestByIsin = new ConcurrentHashMap<>();
+
+    public OrderBookSnapshotPublisher(@Value("${orderBookSnapshot.policy:NEVER}") Policy policy) {
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public void requestProcessed(Security security) {
+        if (policy == Policy.EVERY_REQUEST)
+            publish(security);
+    }
+
+    public void matchingStateChanged(Security security) {
+        if (policy != Policy.NEVER)
+            publish(security);
+    }
+
+    // Must be called from the thread that mutates the security's order book.
+    public OrderBookSnapshot publish(Security security) {
+        OrderBookSnapshot snapshot = OrderBookSnapshot.of(security, latestByIsin.get(security.getIsin()));
+        latestByIsin.put(security.getIsin(), snapshot);
+        return snapshot;
+    }
+
+    public OrderBookSnapshot latest(String isin) {
+        return latestByIsin.get(isin);
+    }
+
+    public void clear() {
+        latestByIsin.clear();
+    }
+}
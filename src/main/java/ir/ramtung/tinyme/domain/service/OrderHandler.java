@@ -10,17 +10,21 @@ import ir.ramtung.tinyme.messaging.request.*;
 import ir.ramtung.tinyme.repository.BrokerRepository;
 import ir.ramtung.tinyme.repository.SecurityRepository;
 import ir.ramtung.tinyme.repository.ShareholderRepository;
+import ir.ramtung.tinyme.repository.trade.TradeStore;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Service
 public class OrderHandler {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
     SecurityRepository securityRepository;
     BrokerRepository brokerRepository;
     ShareholderRepository shareholderRepository;
@@ -29,19 +33,29 @@ public class OrderHandler {
     ContinuousMatcher continuousMatcher;
     @Autowired
     AuctionMatcher auctionMatcher;
-
-    HashMap<Long, Long> orderIdToRequestId;
+    OrderBookSnapshotPublisher snapshotPublisher;
+    OpeningPriceConflator openingPriceConflator;
+    DuplicateRequestFilter duplicateRequestFilter;
+    TradeStore tradeStore;
 
     Map<MatchingOutcome, String> errorMessages;
 
-    public OrderHandler(SecurityRepository securityRepository, BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, EventPublisher eventPublisher, ContinuousMatcher continuousMatcher, AuctionMatcher auctionMatcher) {
+    ForkJoinPool reopenPool;
+
+    public OrderHandler(SecurityRepository securityRepository, BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, EventPublisher eventPublisher, ContinuousMatcher continuousMatcher, AuctionMatcher auctionMatcher,
+                        OrderBookSnapshotPublisher snapshotPublisher, OpeningPriceConflator openingPriceConflator,
+                        DuplicateRequestFilter duplicateRequestFilter, TradeStore tradeStore, @Value("${bulkChangeMatchingState.parallelism:0}") int reopenParallelism) {
         this.securityRepository = securityRepository;
         this.brokerRepository = brokerRepository;
         this.shareholderRepository = shareholderRepository;
         this.eventPublisher = eventPublisher;
         this.continuousMatcher = continuousMatcher;
         this.auctionMatcher = auctionMatcher;
-        this.orderIdToRequestId = new HashMap<>();
+        this.snapshotPublisher = snapshotPublisher;
+        this.openingPriceConflator = openingPriceConflator;
+        this.duplicateRequestFilter = duplicateRequestFilter;
+        this.tradeStore = tradeStore;
+        this.reopenPool = new ForkJoinPool(reopenParallelism > 0 ? reopenParallelism : Runtime.getRuntime().availableProcessors());
         this.errorMessages = Map.ofEntries(
                 Map.entry(MatchingOutcome.NOT_ENOUGH_CREDIT, Message.BUYER_HAS_NOT_ENOUGH_CREDIT),
                 Map.entry(MatchingOutcome.NOT_ENOUGH_POSITIONS, Message.SELLER_HAS_NOT_ENOUGH_POSITIONS),
@@ -52,12 +66,17 @@ public class OrderHandler {
     }
 
     public void handleEnterOrder(EnterOrderRq enterOrderRq) {
-        try {
-            validateEnterOrderRq(enterOrderRq);
+        handleEnterOrder(enterOrderRq,
+                securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin()),
+                brokerRepository.findBrokerById(enterOrderRq.getBrokerId()),
+                shareholderRepository.findShareholderById(enterOrderRq.getShareholderId()));
+    }
 
-            Security security = securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin());
-            Broker broker = brokerRepository.findBrokerById(enterOrderRq.getBrokerId());
-            Shareholder shareholder = shareholderRepository.findShareholderById(enterOrderRq.getShareholderId());
+    private void handleEnterOrder(EnterOrderRq enterOrderRq, Security security, Broker broker, Shareholder shareholder) {
+        if (isReplay(enterOrderRq.getRequestId(), enterOrderRq.getOrderId()))
+            return;
+        try {
+            validateEnterOrderRq(enterOrderRq, security, broker, shareholder);
 
             MatchResult matchResult;
             if (enterOrderRq.getRequestType() == OrderEntryType.NEW_ORDER)
@@ -77,20 +96,30 @@ public class OrderHandler {
                 eventPublisher.publish(new OrderAcceptedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId()));
             else
                 eventPublisher.publish(new OrderUpdatedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId()));
-            orderIdToRequestId.put(enterOrderRq.getOrderId(), enterOrderRq.getRequestId());
 
-            if (!matchResult.trades().isEmpty())
+            if (!matchResult.trades().isEmpty()) {
+                tradeStore.record(matchResult.trades());
                 eventPublisher.publish(new OrderExecutedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), matchResult.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
+            }
             if (security.getMatchingState() == MatchingState.AUCTION)
-                eventPublisher.publish(new OpeningPriceEvent(security.getIsin(), matchResult.openingPrice(), matchResult.tradableQuantity()));
+                openingPriceConflator.publish(new OpeningPriceEvent(security.getIsin(), matchResult.openingPrice(), matchResult.tradableQuantity()));
             if (security.getLastTradePrice() != Security.EMPTY_TRADE_PRICE)
                 handleActivations(security);
+            snapshotPublisher.requestProcessed(security);
 
         } catch (InvalidRequestException ex) {
             eventPublisher.publish(new OrderRejectedEvent(enterOrderRq.getRequestId(), enterOrderRq.getOrderId(), ex.getReasons()));
         }
     }
 
+    private boolean isReplay(long requestId, long orderId) {
+        if (!duplicateRequestFilter.isDuplicate(requestId))
+            return false;
+        if (duplicateRequestFilter.getMode() == DuplicateRequestFilter.Mode.REJECT)
+            eventPublisher.publish(new OrderRejectedEvent(requestId, orderId, List.of(Message.DUPLICATE_REQUEST_ID)));
+        return true;
+    }
+
     private Matcher getSecurityMatcher(Security security){
         if (security.getMatchingState() == MatchingState.AUCTION)
             return auctionMatcher;
@@ -100,40 +129,109 @@ public class OrderHandler {
     private void handleActivations(Security security){
         StopLimitOrder activatedOrder;
         while ((activatedOrder = security.getFirstActivatedOrder()) != null){
-            long requestId = orderIdToRequestId.get(activatedOrder.getOrderId());
+            long requestId = activatedOrder.getRequestId();
             MatchResult result = security.activateOrder(activatedOrder, getSecurityMatcher(security));
             eventPublisher.publish(new OrderActivatedEvent(requestId, activatedOrder.getOrderId()));
             if (!result.trades().isEmpty()) {
+                tradeStore.record(result.trades());
                 eventPublisher.publish(new OrderExecutedEvent(requestId, activatedOrder.getOrderId(), result.trades().stream().map(TradeDTO::new).collect(Collectors.toList())));
             }
         }
     }
 
     public void handleDeleteOrder(DeleteOrderRq deleteOrderRq) {
+        handleDeleteOrder(deleteOrderRq, securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin()));
+    }
+
+    private void handleDeleteOrder(DeleteOrderRq deleteOrderRq, Security security) {
+        if (isReplay(deleteOrderRq.getRequestId(), deleteOrderRq.getOrderId()))
+            return;
         try {
-            validateDeleteOrderRq(deleteOrderRq);
-            Security security = securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin());
+            validateDeleteOrderRq(deleteOrderRq, security);
             MatchResult matchResult = security.deleteOrder(deleteOrderRq, getSecurityMatcher(security));
             eventPublisher.publish(new OrderDeletedEvent(deleteOrderRq.getRequestId(), deleteOrderRq.getOrderId()));
             if (security.getMatchingState() == MatchingState.AUCTION){
-                eventPublisher.publish(new OpeningPriceEvent(security.getIsin(), matchResult.openingPrice(), matchResult.tradableQuantity()));
+                openingPriceConflator.publish(new OpeningPriceEvent(security.getIsin(), matchResult.openingPrice(), matchResult.tradableQuantity()));
             }
+            snapshotPublisher.requestProcessed(security);
         } catch (InvalidRequestException ex) {
             eventPublisher.publish(new OrderRejectedEvent(deleteOrderRq.getRequestId(), deleteOrderRq.getOrderId(), ex.getReasons()));
         }
     }
 
+    // Securities, brokers and shareholders are looked up once per batch rather than once per leg.
+    public void handleBatchOrder(BatchOrderRq batchOrderRq) {
+        Map<String, Security> securities = new HashMap<>();
+        Map<Long, Broker> brokers = new HashMap<>();
+        Map<Long, Shareholder> shareholders = new HashMap<>();
+        for (BatchOrderLeg leg : batchOrderRq.getLegs()) {
+            if (!leg.hasExactlyOneRequest()) {
+                eventPublisher.publish(new OrderRejectedEvent(leg.requestId(), leg.orderId(), List.of(Message.BATCH_LEG_MUST_CARRY_ONE_REQUEST)));
+                continue;
+            }
+            Security security = securities.computeIfAbsent(leg.securityIsin(), securityRepository::findSecurityByIsin);
+            if (leg.getDeleteOrder() != null) {
+                handleDeleteOrder(leg.getDeleteOrder(), security);
+                continue;
+            }
+            EnterOrderRq enterOrderRq = leg.getEnterOrder();
+            handleEnterOrder(enterOrderRq, security,
+                    brokers.computeIfAbsent(enterOrderRq.getBrokerId(), brokerRepository::findBrokerById),
+                    shareholders.computeIfAbsent(enterOrderRq.getShareholderId(), shareholderRepository::findShareholderById));
+        }
+    }
+
     public void handleChangeMatchingState(ChangeMatchingStateRq changeMatchingStateRq){
         Security security = securityRepository.findSecurityByIsin(changeMatchingStateRq.getSecurityIsin());
+        if (security == null) {
+            log.warning("Ignoring matching state change of unknown security " + changeMatchingStateRq.getSecurityIsin());
+            return;
+        }
+        openingPriceConflator.beforeUncross(security.getIsin());
         MatchResult matchResult = security.changeMatchingState(changeMatchingStateRq.getTargetState(), auctionMatcher);
+        publishMatchingStateChange(security, changeMatchingStateRq.getTargetState(), matchResult);
+    }
+
+    public void handleBulkChangeMatchingState(BulkChangeMatchingStateRq bulkChangeMatchingStateRq) {
+        List<Security> securities = findSecuritiesOf(bulkChangeMatchingStateRq);
+        MatchingState targetState = bulkChangeMatchingStateRq.getTargetState();
+        securities.forEach(security -> openingPriceConflator.beforeUncross(security.getIsin()));
+        // Uncrossing only touches the security's own book and increases broker credits, so it can run
+        // concurrently; activations check credits and are therefore run one security after another below.
+        List<MatchResult> matchResults = reopenPool.submit(() -> securities.parallelStream()
+                .map(security -> security.changeMatchingState(targetState, auctionMatcher))
+                .toList()).join();
+        for (int i = 0; i < securities.size(); i++)
+            publishMatchingStateChange(securities.get(i), targetState, matchResults.get(i));
+    }
+
+    private List<Security> findSecuritiesOf(BulkChangeMatchingStateRq bulkChangeMatchingStateRq) {
+        if (bulkChangeMatchingStateRq.coversAllSecurities())
+            return securityRepository.allSecurities().stream()
+                    .sorted(Comparator.comparing(Security::getIsin, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .collect(Collectors.toList());
+        List<Security> securities = new ArrayList<>();
+        for (String isin : new LinkedHashSet<>(bulkChangeMatchingStateRq.getSecurityIsins())) {
+            Security security = securityRepository.findSecurityByIsin(isin);
+            if (security == null)
+                log.warning("Ignoring unknown security in bulk matching state change: " + isin);
+            else
+                securities.add(security);
+        }
+        return securities;
+    }
+
+    private void publishMatchingStateChange(Security security, MatchingState targetState, MatchResult matchResult) {
         if (!matchResult.trades().isEmpty()){
-            matchResult.trades().forEach(trade -> eventPublisher.publish(new TradeEvent(changeMatchingStateRq.getSecurityIsin(), trade.getPrice(), trade.getQuantity(), trade.getBuy().getOrderId(), trade.getSell().getOrderId())));
+            tradeStore.record(matchResult.trades());
+            matchResult.trades().forEach(trade -> eventPublisher.publish(new TradeEvent(security.getIsin(), trade.getPrice(), trade.getQuantity(), trade.getBuy().getOrderId(), trade.getSell().getOrderId())));
             handleActivations(security);
         }
-        eventPublisher.publish(new SecurityStateChangedEvent(changeMatchingStateRq.getSecurityIsin(), changeMatchingStateRq.getTargetState()));
+        eventPublisher.publish(new SecurityStateChangedEvent(security.getIsin(), targetState));
+        snapshotPublisher.matchingStateChanged(security);
     }
 
-    private void validateEnterOrderRq(EnterOrderRq enterOrderRq) throws InvalidRequestException {
+    private void validateEnterOrderRq(EnterOrderRq enterOrderRq, Security security, Broker broker, Shareholder shareholder) throws InvalidRequestException {
         List<String> errors = new LinkedList<>();
         if (enterOrderRq.getOrderId() <= 0)
             errors.add(Message.INVALID_ORDER_ID);
@@ -141,7 +239,6 @@ public class OrderHandler {
             errors.add(Message.ORDER_QUANTITY_NOT_POSITIVE);
         if (enterOrderRq.getPrice() <= 0)
             errors.add(Message.ORDER_PRICE_NOT_POSITIVE);
-        Security security = securityRepository.findSecurityByIsin(enterOrderRq.getSecurityIsin());
         if (security == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
         else {
@@ -150,9 +247,9 @@ public class OrderHandler {
             if (enterOrderRq.getPrice() % security.getTickSize() != 0)
                 errors.add(Message.PRICE_NOT_MULTIPLE_OF_TICK_SIZE);
         }
-        if (brokerRepository.findBrokerById(enterOrderRq.getBrokerId()) == null)
+        if (broker == null)
             errors.add(Message.UNKNOWN_BROKER_ID);
-        if (shareholderRepository.findShareholderById(enterOrderRq.getShareholderId()) == null)
+        if (shareholder == null)
             errors.add(Message.UNKNOWN_SHAREHOLDER_ID);
         if (enterOrderRq.getPeakSize() < 0 || enterOrderRq.getPeakSize() >= enterOrderRq.getQuantity())
             errors.add(Message.INVALID_PEAK_SIZE);
@@ -164,13 +261,19 @@ public class OrderHandler {
             throw new InvalidRequestException(errors);
     }
 
-    private void validateDeleteOrderRq(DeleteOrderRq deleteOrderRq) throws InvalidRequestException {
+    private void validateDeleteOrderRq(DeleteOrderRq deleteOrderRq, Security security) throws InvalidRequestException {
         List<String> errors = new LinkedList<>();
         if (deleteOrderRq.getOrderId() <= 0)
             errors.add(Message.INVALID_ORDER_ID);
-        if (securityRepository.findSecurityByIsin(deleteOrderRq.getSecurityIsin()) == null)
+        if (security == null)
             errors.add(Message.UNKNOWN_SECURITY_ISIN);
         if (!errors.isEmpty())
             throw new InvalidRequestException(errors);
     }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        reopenPool.shutdown();
+        reopenPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
 }
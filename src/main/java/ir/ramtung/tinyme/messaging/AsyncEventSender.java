@@ -0,0 +1,182 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Hands events over to a single sender thread through a bounded queue. Having one consumer
+// keeps events in exactly the order they were enqueued. The sender takes the events in batches of
+// up to maxBatch, after the first waiting up to maxWaitNanos for the batch to fill, and hands each
+// batch to commit before sending any of its events; a batch that fails to commit is not sent.
+public class AsyncEventSender implements AutoCloseable {
+    // Under FAIL an event that finds the queue full for offerTimeoutMillis is dropped and counted;
+    // the request that published it has already changed the books, so it must not be failed half-way.
+    public enum Backpressure {
+        BLOCK,
+        FAIL
+    }
+
+    private static final int DRAIN_BATCH = 256;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final BlockingQueue<Event> queue;
+    private final Consumer<Event> sink;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final Consumer<List<Event>> commit;
+    private final Backpressure backpressure;
+    private final long offerTimeoutMillis;
+    private final Thread sender;
+    private final Object drained = new Object();
+    private volatile boolean closed;
+    private long inFlight;
+    private long batches;
+    private long batchedEvents;
+    private long dropped;
+
+    public AsyncEventSender(Consumer<Event> sink, int capacity, Backpressure backpressure, long offerTimeoutMillis) {
+        this(sink, capacity, backpressure, offerTimeoutMillis, DRAIN_BATCH, 0, batch -> {});
+    }
+
+    public AsyncEventSender(Consumer<Event> sink, int capacity, Backpressure backpressure, long offerTimeoutMillis,
+                            int maxBatch, long maxWaitNanos, Consumer<List<Event>> commit) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sink = sink;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWaitNanos = maxWaitNanos;
+        this.commit = commit;
+        this.backpressure = backpressure;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.sender = new Thread(this::run, "event-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    public void enqueue(Event event) {
+        if (closed)
+            throw new IllegalStateException("Event sender is closed");
+        synchronized (drained) {
+            inFlight++;
+        }
+        try {
+            if (backpressure == Backpressure.BLOCK)
+                queue.put(event);
+            else if (!queue.offer(event, offerTimeoutMillis, TimeUnit.MILLISECONDS))
+                drop(event, "the event queue is full");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drop(event, "interrupted while enqueuing");
+        }
+    }
+
+    private void drop(Event event, String reason) {
+        long total;
+        synchronized (drained) {
+            total = ++dropped;
+        }
+        eventDone(1);
+        if ((total & (total - 1)) == 0)
+            log.warning("Dropped " + event.getClass().getSimpleName() + " because " + reason + " (" + total + " events dropped so far)");
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Event first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    Event next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void process(List<Event> batch) {
+        try {
+            commit.accept(batch);
+            for (Event event : batch) {
+                try {
+                    sink.accept(event);
+                } catch (RuntimeException e) {
+                    log.log(Level.SEVERE, "Failed to send event", e);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, "Failed to commit " + batch.size() + " events; they are not sent", e);
+        }
+        synchronized (drained) {
+            batches++;
+            batchedEvents += batch.size();
+        }
+        eventDone(batch.size());
+        batch.clear();
+    }
+
+    private void eventDone(int count) {
+        synchronized (drained) {
+            inFlight -= count;
+            if (inFlight == 0)
+                drained.notifyAll();
+        }
+    }
+
+    public long dropped() {
+        synchronized (drained) {
+            return dropped;
+        }
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    // Average number of events per batch so far.
+    public double averageBatchSize() {
+        synchronized (drained) {
+            return batches == 0 ? 0 : (double) batchedEvents / batches;
+        }
+    }
+
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (drained) {
+            while (inFlight > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                drained.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        sender.join();
+        List<Event> stragglers = new ArrayList<>(maxBatch);
+        while (queue.drainTo(stragglers, maxBatch) > 0)
+            process(stragglers);
+    }
+}
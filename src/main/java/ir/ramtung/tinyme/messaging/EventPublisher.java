@@ -1,25 +1,134 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.messaging.audit.AuditJournal;
 import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.EventBatch;
+import ir.ramtung.tinyme.messaging.journal.EventJournal;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.transport.EventTransport;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jms.core.JmsTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 @Component
 public class EventPublisher {
+    // DURABLE sends like ASYNC, but only once the events are in the event journal and the requests
+    // that produced them are in the request journal.
+    public enum Mode {
+        SYNC,
+        ASYNC,
+        DURABLE
+    }
+
+    public enum Batching {
+        NONE,
+        PER_REQUEST
+    }
+
     private final Logger log = Logger.getLogger(this.getClass().getName());
-    private final JmsTemplate jmsTemplate;
-    @Value("${responseQueue}")
-    private String responseQueue;
+    private final EventTransport transport;
+    private final AuditJournal auditJournal;
+    private final AsyncEventSender asyncSender;
+    private final Batching batching;
+    private final ThreadLocal<List<Event>> currentBatch = new ThreadLocal<>();
+    private volatile boolean muted;
 
-    public EventPublisher(JmsTemplate jmsTemplate) {
-        this.jmsTemplate = jmsTemplate;
+    public EventPublisher(EventTransport transport,
+                          AuditJournal auditJournal,
+                          @Value("${publishing.mode:SYNC}") Mode mode,
+                          @Value("${publishing.queueCapacity:65536}") int queueCapacity,
+                          @Value("${publishing.backpressure:BLOCK}") AsyncEventSender.Backpressure backpressure,
+                          @Value("${publishing.offerTimeoutMillis:1000}") long offerTimeoutMillis,
+                          @Value("${publishing.batching:NONE}") Batching batching,
+                          @Value("${publishing.groupCommit.maxBatch:256}") int groupCommitMaxBatch,
+                          @Value("${publishing.groupCommit.maxWaitMicros:0}") long groupCommitMaxWaitMicros,
+                          EventJournal eventJournal,
+                          RequestJournal requestJournal) {
+        this.transport = transport;
+        this.auditJournal = auditJournal;
+        this.batching = batching;
+        this.asyncSender = switch (mode) {
+            case SYNC -> null;
+            case ASYNC -> new AsyncEventSender(this::send, queueCapacity, backpressure, offerTimeoutMillis);
+            case DURABLE -> new AsyncEventSender(this::send, queueCapacity, backpressure, offerTimeoutMillis,
+                    groupCommitMaxBatch, TimeUnit.MICROSECONDS.toNanos(groupCommitMaxWaitMicros),
+                    batch -> commit(batch, eventJournal, requestJournal));
+        };
     }
 
     public void publish(Event event) {
-        log.info("Published : " + event);
-        jmsTemplate.convertAndSend(responseQueue, event);
+        if (muted)
+            return;
+        List<Event> batch = currentBatch.get();
+        if (batch != null)
+            batch.add(event);
+        else
+            dispatch(event);
+    }
+
+    // Drops events while the engine rebuilds state they were already published for.
+    public void mute() {
+        muted = true;
+    }
+
+    public void unmute() {
+        muted = false;
+    }
+
+    // Events published by this thread until endBatch() are sent together in one EventBatch.
+    public void beginBatch() {
+        beginBatch(false);
+    }
+
+    // Requests that carry many orders always get their responses in one EventBatch.
+    public void beginBatch(boolean regardlessOfConfiguration) {
+        if ((regardlessOfConfiguration || batching == Batching.PER_REQUEST) && currentBatch.get() == null)
+            currentBatch.set(new ArrayList<>());
+    }
+
+    public void endBatch() {
+        List<Event> batch = currentBatch.get();
+        if (batch == null)
+            return;
+        currentBatch.remove();
+        if (!batch.isEmpty())
+            dispatch(new EventBatch(batch));
+    }
+
+    // Requests are journaled before they are handled, so every request behind the batch is in the
+    // request journal by now; forcing it here keeps an acknowledgement from outliving its request.
+    private static void commit(List<Event> batch, EventJournal eventJournal, RequestJournal requestJournal) {
+        requestJournal.forceThrough(requestJournal.lastSequence());
+        eventJournal.append(batch);
+    }
+
+    private void dispatch(Event event) {
+        if (asyncSender != null)
+            asyncSender.enqueue(event);
+        else
+            send(event);
+    }
+
+    private void send(Event event) {
+        auditJournal.recordEvent(event);
+        transport.send(event);
+    }
+
+    // Events the asynchronous sender gave up on under FAIL backpressure.
+    public long droppedEvents() {
+        return asyncSender == null ? 0 : asyncSender.dropped();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (asyncSender != null) {
+            asyncSender.close();
+            log.info("Event sender flushed and stopped");
+        }
     }
 }
@@ -24,6 +24,8 @@ public class Message {
 
     public static final String STOP_LIMIT_ORDER_IS_NOT_ALLOWED_IN_AUCTION_STATE = "Stop limit order is not allowed in auction state";
     public static final String MINIMUM_EXECUTION_QUANTITY_IS_NOT_ALLOWED_IN_AUCTION_STATE = "Minimum execution quantity is not allowed in auction state";
+    public static final String BATCH_LEG_MUST_CARRY_ONE_REQUEST = "Batch leg must carry exactly one order request";
+    public static final String DUPLICATE_REQUEST_ID = "Request id was already processed";
 
 
 
@@ -1,7 +1,19 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.messaging.codec.BinaryMessageConverter;
+import ir.ramtung.tinyme.messaging.codec.Codec;
+import ir.ramtung.tinyme.messaging.codec.CodecSelectingMessageConverter;
+import ir.ramtung.tinyme.messaging.codec.HandWrittenJsonMessageConverter;
+import ir.ramtung.tinyme.messaging.codec.JsonImplementation;
+import ir.ramtung.tinyme.messaging.replication.ReplicationRole;
+import ir.ramtung.tinyme.messaging.transport.TransportType;
+import jakarta.jms.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
 import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.MessageType;
@@ -15,4 +27,27 @@ public class MessagingConfig {
         converter.setTypeIdPropertyName("_type");
         return converter;
     }
+
+    @Bean
+    @Primary
+    public CodecSelectingMessageConverter messageConverter(@Value("${codec.default:JSON}") Codec outgoing,
+                                                           @Value("${codec.json:JACKSON}") JsonImplementation jsonImplementation) {
+        MessageConverter json = jsonImplementation == JsonImplementation.HAND_WRITTEN
+                ? new HandWrittenJsonMessageConverter(jacksonJmsMessageConverter(), "_type")
+                : jacksonJmsMessageConverter();
+        return new CodecSelectingMessageConverter(json, new BinaryMessageConverter(), outgoing);
+    }
+
+    // With the in-process transport requests arrive through InProcessGateway, so the listeners never connect.
+    // A replication follower starts them when it is promoted.
+    @Bean
+    public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(DefaultJmsListenerContainerFactoryConfigurer configurer,
+                                                                          ConnectionFactory connectionFactory,
+                                                                          @Value("${transport.type:JMS}") TransportType transport,
+                                                                          @Value("${replication.role:NONE}") ReplicationRole replicationRole) {
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAutoStartup(transport == TransportType.JMS && replicationRole != ReplicationRole.FOLLOWER);
+        return factory;
+    }
 }
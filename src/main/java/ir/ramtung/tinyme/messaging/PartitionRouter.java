@@ -0,0 +1,91 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.request.BatchOrderLeg;
+import ir.ramtung.tinyme.messaging.request.BatchOrderRq;
+import ir.ramtung.tinyme.messaging.request.BulkChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.springframework.jms.core.JmsTemplate;
+
+import java.util.*;
+
+// Gateway-side routing of requests to the TinyME node that owns the request's security. Each node
+// listens on its own request queue, named "<requestQueue>.<partition id>".
+public class PartitionRouter {
+    private final String requestQueue;
+    private final Map<String, String> partitionByIsin = new HashMap<>();
+    private final Set<String> partitions = new TreeSet<>();
+
+    public PartitionRouter(String requestQueue, Map<String, ? extends Collection<String>> isinsByPartition) {
+        this.requestQueue = requestQueue;
+        isinsByPartition.forEach((partition, isins) -> {
+            partitions.add(partition);
+            for (String isin : isins) {
+                if (partitionByIsin.put(isin, partition) != null)
+                    throw new IllegalArgumentException("Security " + isin + " is assigned to more than one partition");
+            }
+        });
+    }
+
+    public static String queueOf(String requestQueue, String partition) {
+        return requestQueue + "." + partition;
+    }
+
+    public String partitionOf(String isin) {
+        String partition = partitionByIsin.get(isin);
+        if (partition == null)
+            throw new IllegalArgumentException("No partition owns security " + isin);
+        return partition;
+    }
+
+    public String destinationOf(Object request) {
+        return queueOf(requestQueue, partitionOf(isinOf(request)));
+    }
+
+    private static String isinOf(Object request) {
+        if (request instanceof EnterOrderRq enterOrderRq)
+            return enterOrderRq.getSecurityIsin();
+        if (request instanceof DeleteOrderRq deleteOrderRq)
+            return deleteOrderRq.getSecurityIsin();
+        if (request instanceof ChangeMatchingStateRq changeMatchingStateRq)
+            return changeMatchingStateRq.getSecurityIsin();
+        throw new IllegalArgumentException("Cannot route request of type " + request.getClass().getName());
+    }
+
+    // A bulk state change is split into one request per partition; an "all securities" request is
+    // forwarded to every partition unchanged.
+    public Map<String, BulkChangeMatchingStateRq> split(BulkChangeMatchingStateRq request) {
+        Map<String, BulkChangeMatchingStateRq> requestByDestination = new LinkedHashMap<>();
+        if (request.coversAllSecurities()) {
+            for (String partition : partitions)
+                requestByDestination.put(queueOf(requestQueue, partition), request);
+            return requestByDestination;
+        }
+        Map<String, List<String>> isinsByPartition = new TreeMap<>();
+        for (String isin : request.getSecurityIsins())
+            isinsByPartition.computeIfAbsent(partitionOf(isin), partition -> new ArrayList<>()).add(isin);
+        isinsByPartition.forEach((partition, isins) -> requestByDestination.put(queueOf(requestQueue, partition),
+                new BulkChangeMatchingStateRq(isins, request.getTargetState(), request.getEntryTime())));
+        return requestByDestination;
+    }
+
+    // Legs keep their relative order within each partition's batch.
+    public Map<String, BatchOrderRq> split(BatchOrderRq request) {
+        Map<String, List<BatchOrderLeg>> legsByPartition = new TreeMap<>();
+        for (BatchOrderLeg leg : request.getLegs())
+            legsByPartition.computeIfAbsent(partitionOf(leg.securityIsin()), partition -> new ArrayList<>()).add(leg);
+        Map<String, BatchOrderRq> requestByDestination = new LinkedHashMap<>();
+        legsByPartition.forEach((partition, legs) -> requestByDestination.put(queueOf(requestQueue, partition), new BatchOrderRq(legs)));
+        return requestByDestination;
+    }
+
+    public void send(JmsTemplate jmsTemplate, Object request) {
+        if (request instanceof BulkChangeMatchingStateRq bulkChangeMatchingStateRq)
+            split(bulkChangeMatchingStateRq).forEach(jmsTemplate::convertAndSend);
+        else if (request instanceof BatchOrderRq batchOrderRq)
+            split(batchOrderRq).forEach(jmsTemplate::convertAndSend);
+        else
+            jmsTemplate.convertAndSend(destinationOf(request), request);
+    }
+}
@@ -1,38 +1,202 @@
 package ir.ramtung.tinyme.messaging;
 
+import ir.ramtung.tinyme.messaging.audit.AuditJournal;
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.replication.ReplicationLeader;
+import ir.ramtung.tinyme.messaging.request.BatchOrderRq;
+import ir.ramtung.tinyme.messaging.request.BulkChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
 import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
 import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.domain.service.OpeningPriceConflator;
 import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.repository.trade.TradeStore;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+// One consumer takes every request off the queue, so requests are handled strictly in arrival
+// order whatever their type. The request type is resolved to a type code (the binary header byte,
+// or the _type property of JSON messages) which indexes the handler table. Gateways in the same
+// JVM hand requests over through dispatch() instead, and the JMS listener stays stopped. Requests are
+// only taken once the journal of the previous run has been replayed. A replication follower takes no
+// requests of its own; it applies the leader's through replicate() until it is told to lead.
 @Component
+@DependsOn("journalReplayer")
 public class RequestDispatcher {
+    private static final String TYPE_ID_PROPERTY = "_type";
+
+    private record Route(Consumer<Object> handler, boolean alwaysBatch) {
+    }
+
     private final Logger log = Logger.getLogger(this.getClass().getName());
     private final OrderHandler orderHandler;
+    private final EventPublisher eventPublisher;
+    private final AuditJournal auditJournal;
+    private final RequestJournal requestJournal;
+    private final MessageConverter messageConverter;
+    private final OpeningPriceConflator openingPriceConflator;
+    private final ReplicationLeader replicationLeader;
+    private final TradeStore tradeStore;
+    private final Route[] routes = new Route[128];
+    private final Map<String, Byte> typeCodeByTypeId = new HashMap<>();
+    private final ReentrantLock engineLock = new ReentrantLock();
+    private volatile boolean following;
 
-    public RequestDispatcher(OrderHandler orderHandler) {
+    public RequestDispatcher(OrderHandler orderHandler, EventPublisher eventPublisher, AuditJournal auditJournal, RequestJournal requestJournal,
+                             MessageConverter messageConverter, OpeningPriceConflator openingPriceConflator, ReplicationLeader replicationLeader,
+                             TradeStore tradeStore) {
         this.orderHandler = orderHandler;
+        this.eventPublisher = eventPublisher;
+        this.auditJournal = auditJournal;
+        this.requestJournal = requestJournal;
+        this.messageConverter = messageConverter;
+        this.openingPriceConflator = openingPriceConflator;
+        this.replicationLeader = replicationLeader;
+        this.tradeStore = tradeStore;
+        route(BinaryCodec.ENTER_ORDER_RQ, EnterOrderRq.class, orderHandler::handleEnterOrder, false);
+        route(BinaryCodec.DELETE_ORDER_RQ, DeleteOrderRq.class, orderHandler::handleDeleteOrder, false);
+        route(BinaryCodec.CHANGE_MATCHING_STATE_RQ, ChangeMatchingStateRq.class, orderHandler::handleChangeMatchingState, false);
+        route(BinaryCodec.BULK_CHANGE_MATCHING_STATE_RQ, BulkChangeMatchingStateRq.class, orderHandler::handleBulkChangeMatchingState, false);
+        route(BinaryCodec.BATCH_ORDER_RQ, BatchOrderRq.class, orderHandler::handleBatchOrder, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void route(byte typeCode, Class<T> type, Consumer<T> handler, boolean alwaysBatch) {
+        routes[typeCode] = new Route(request -> handler.accept((T) request), alwaysBatch);
+        typeCodeByTypeId.put(type.getName(), typeCode);
+    }
+
+    private void handleInBatch(Runnable handler, boolean alwaysBatch) {
+        eventPublisher.beginBatch(alwaysBatch);
+        try {
+            handler.run();
+            openingPriceConflator.endOfBatch();
+        } finally {
+            eventPublisher.endBatch();
+        }
+    }
+
+    private Route routeOf(int typeCode) {
+        return typeCode >= 0 && typeCode < routes.length ? routes[typeCode] : null;
+    }
+
+    @JmsListener(destination = "${requestQueue}")
+    public void receive(Message message) throws JMSException {
+        Route route = routeOf(typeCodeOf(message));
+        if (route == null) {
+            log.warning("Dropping request of unknown type " + message.getStringProperty(TYPE_ID_PROPERTY));
+            return;
+        }
+        handle(route, messageConverter.fromMessage(message));
+    }
+
+    public void dispatch(Object request) {
+        Byte typeCode = typeCodeByTypeId.get(request.getClass().getName());
+        Route route = typeCode == null ? null : routeOf(typeCode);
+        if (route == null) {
+            log.warning("Dropping request of unknown type " + request.getClass().getName());
+            return;
+        }
+        handle(route, request);
+    }
+
+    private void handle(Route route, Object request) {
+        if (following) {
+            log.warning("Dropping request while following the leader: " + request.getClass().getName());
+            return;
+        }
+        engineLock.lock();
+        try {
+            long sequence = journal(request);
+            if (sequence >= 0)
+                replicationLeader.replicate(sequence, request);
+            tradeStore.beginRequest(sequence);
+            auditJournal.recordRequest(request);
+            handleInBatch(() -> route.handler().accept(request), route.alwaysBatch());
+        } finally {
+            engineLock.unlock();
+        }
+    }
+
+    // A request the journal cannot hold (an ISIN too long for the wire format, say) still goes to its
+    // handler, which rejects it; it is not replicated and will not be replayed.
+    private long journal(Object request) {
+        try {
+            return requestJournal.append(request);
+        } catch (IllegalArgumentException e) {
+            log.warning(e.getMessage());
+            return -1;
+        }
+    }
+
+    public void follow() {
+        following = true;
+    }
+
+    public void lead() {
+        following = false;
     }
 
-    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.EnterOrderRq'")
-    public void receiveEnterOrderRq(EnterOrderRq enterOrderRq) {
-        log.info("Received message: " + enterOrderRq);
-        orderHandler.handleEnterOrder(enterOrderRq);
+    // Handles a request the leader journaled under the given sequence number, which must be the next
+    // one in this node's journal too.
+    public void replicate(long sequence, Object request) {
+        Byte typeCode = typeCodeByTypeId.get(request.getClass().getName());
+        Route route = typeCode == null ? null : routeOf(typeCode);
+        if (route == null)
+            throw new IllegalArgumentException("Cannot replicate " + request.getClass().getName());
+        engineLock.lock();
+        try {
+            if (!following)
+                throw new IllegalStateException("Not following a leader");
+            if (sequence != requestJournal.lastSequence() + 1)
+                throw new IllegalStateException("Leader sent sequence " + sequence + " but this node is at " + requestJournal.lastSequence());
+            requestJournal.append(request);
+            tradeStore.beginRequest(sequence);
+            auditJournal.recordRequest(request);
+            // the leader's handler failed on it the same way; that is no reason to stop following
+            try {
+                handleInBatch(() -> route.handler().accept(request), route.alwaysBatch());
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Failed to handle replicated " + request.getClass().getSimpleName(), e);
+            }
+        } finally {
+            engineLock.unlock();
+        }
     }
 
-    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.DeleteOrderRq'")
-    public void receiveDeleteOrderRq(DeleteOrderRq deleteOrderRq) {
-        log.info("Received message: " + deleteOrderRq);
-        orderHandler.handleDeleteOrder(deleteOrderRq);
+    // Runs the action between two requests, with every journaled request fully handled.
+    public <T> T quiesced(Supplier<T> action) {
+        engineLock.lock();
+        try {
+            return action.get();
+        } finally {
+            engineLock.unlock();
+        }
     }
 
-    @JmsListener(destination = "${requestQueue}", selector = "_type='ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq'")
-    public void receiveChangeMatchingStateRq(ChangeMatchingStateRq changeMatchingStateRq) {
-        log.info("Received message: " + changeMatchingStateRq);
-        orderHandler.handleChangeMatchingState(changeMatchingStateRq);
+    private int typeCodeOf(Message message) throws JMSException {
+        if (message instanceof BytesMessage bytesMessage) {
+            if (bytesMessage.getBodyLength() < BinaryCodec.HEADER_SIZE || bytesMessage.readByte() != BinaryCodec.SCHEMA_VERSION)
+                return -1;
+            byte typeCode = bytesMessage.readByte();
+            bytesMessage.reset();
+            return typeCode;
+        }
+        Byte typeCode = typeCodeByTypeId.get(message.getStringProperty(TYPE_ID_PROPERTY));
+        return typeCode == null ? -1 : typeCode;
     }
 }
@@ -0,0 +1,187 @@
+package ir.ramtung.tinyme.messaging.audit;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static ir.ramtung.tinyme.messaging.audit.AuditJournalFormat.*;
+
+// Records every request received and event published. The calling thread only enqueues the
+// message; the audit-writer thread encodes it into memory-mapped segment files that roll over
+// when full. Use AuditJournalReader to decode them.
+@Component
+public class AuditJournal {
+    private static final int DRAIN_BATCH = 256;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long forceIntervalMillis;
+    private final BlockingQueue<AuditRecord> queue;
+    private final long sessionStartMillis = System.currentTimeMillis();
+    private Thread writer;
+    private volatile boolean closed;
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private long nextSequence;
+    private boolean dirty;
+    private long lastForceMillis;
+
+    public AuditJournal(@Value("${audit.enabled:false}") boolean enabled,
+                        @Value("${audit.directory:audit}") String directory,
+                        @Value("${audit.segmentSize:67108864}") int segmentSize,
+                        @Value("${audit.queueCapacity:65536}") int queueCapacity,
+                        @Value("${audit.forceIntervalMillis:1000}") long forceIntervalMillis) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSize;
+        this.forceIntervalMillis = forceIntervalMillis;
+        this.queue = enabled ? new ArrayBlockingQueue<>(queueCapacity) : null;
+        if (enabled) {
+            writer = new Thread(this::run, "audit-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public static AuditJournal disabled() {
+        return new AuditJournal(false, "", 0, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void recordRequest(Object request) {
+        record(AuditRecord.Direction.INBOUND, request);
+    }
+
+    public void recordEvent(Object event) {
+        record(AuditRecord.Direction.OUTBOUND, event);
+    }
+
+    private void record(AuditRecord.Direction direction, Object message) {
+        if (!enabled || closed)
+            return;
+        try {
+            queue.put(new AuditRecord(0, System.currentTimeMillis(), direction, message));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<AuditRecord> batch = new ArrayList<>(DRAIN_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                AuditRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, DRAIN_BATCH - 1);
+                    writeAll(batch);
+                    batch.clear();
+                }
+                if (dirty && System.currentTimeMillis() - lastForceMillis >= forceIntervalMillis)
+                    force();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeAll(List<AuditRecord> records) {
+        for (AuditRecord record : records) {
+            try {
+                write(record);
+            } catch (RuntimeException e) {
+                log.log(Level.SEVERE, "Failed to journal " + record.message().getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private void write(AuditRecord record) {
+        boolean freshSegment = false;
+        while (true) {
+            if (segment == null) {
+                openSegment();
+                freshSegment = true;
+            }
+            int start = segment.position();
+            try {
+                BinaryCodec.skip(segment, RECORD_HEADER_SIZE);
+                BinaryCodec.encode(record.message(), segment);
+                int end = segment.position();
+                segment.put(start + DIRECTION, (byte) record.direction().ordinal());
+                segment.putLong(start + SEQUENCE, nextSequence++);
+                segment.putLong(start + TIMESTAMP, record.timestampMillis());
+                segment.putInt(start + LENGTH, end - start - RECORD_HEADER_SIZE);
+                dirty = true;
+                return;
+            } catch (BufferOverflowException e) {
+                if (freshSegment)
+                    throw new IllegalArgumentException("Message does not fit in an audit segment of " + segmentSize + " bytes");
+                if (start + 4 <= segment.capacity())
+                    segment.putInt(start + LENGTH, ROLLED_OVER);
+                closeSegment();
+            }
+        }
+    }
+
+    private void openSegment() {
+        try {
+            Files.createDirectories(directory);
+            Path path = directory.resolve(segmentName(sessionStartMillis, segmentIndex++));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segment.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeSegment() {
+        force();
+        segment = null;
+    }
+
+    private void force() {
+        if (segment != null)
+            segment.force();
+        dirty = false;
+        lastForceMillis = System.currentTimeMillis();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled || closed)
+            return;
+        closed = true;
+        writer.join();
+        List<AuditRecord> stragglers = new ArrayList<>();
+        queue.drainTo(stragglers);
+        writeAll(stragglers);
+        force();
+    }
+}
@@ -0,0 +1,29 @@
+package ir.ramtung.tinyme.messaging.audit;
+
+// Layout of journal segments. A segment starts with a header and is followed by records, each a
+// fixed header and a BinaryCodec payload. A zero length ends the written part of a segment and
+// ROLLED_OVER marks a segment that was closed because the next record did not fit.
+final class AuditJournalFormat {
+    static final int MAGIC = 0x4A414D54;
+    static final short VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 4 + 2 + 2;
+
+    static final int LENGTH = 0;
+    static final int DIRECTION = LENGTH + 4;
+    static final int SEQUENCE = DIRECTION + 1;
+    static final int TIMESTAMP = SEQUENCE + 8;
+    static final int RECORD_HEADER_SIZE = TIMESTAMP + 8;
+
+    static final int END_OF_DATA = 0;
+    static final int ROLLED_OVER = -1;
+
+    static final String FILE_PREFIX = "audit-";
+    static final String FILE_SUFFIX = ".journal";
+
+    private AuditJournalFormat() {
+    }
+
+    static String segmentName(long sessionStartMillis, int index) {
+        return String.format("%s%013d-%05d%s", FILE_PREFIX, sessionStartMillis, index, FILE_SUFFIX);
+    }
+}
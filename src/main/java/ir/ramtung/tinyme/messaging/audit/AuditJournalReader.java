@@ -0,0 +1,77 @@
+package ir.ramtung.tinyme.messaging.audit;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static ir.ramtung.tinyme.messaging.audit.AuditJournalFormat.*;
+
+// Offline decoder for the audit journal:
+//   java -cp tinyme.jar -Dloader.main=ir.ramtung.tinyme.messaging.audit.AuditJournalReader \
+//       org.springframework.boot.loader.launch.PropertiesLauncher <journal directory or segment file>
+public class AuditJournalReader {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: AuditJournalReader <journal directory or segment file>");
+            System.exit(2);
+        }
+        Path path = Path.of(args[0]);
+        Consumer<AuditRecord> printer = record -> System.out.println(record.sequence() + " "
+                + Instant.ofEpochMilli(record.timestampMillis()) + " " + record.direction() + " " + record.message());
+        if (Files.isDirectory(path)) {
+            for (Path segment : segmentsIn(path))
+                readSegment(segment, printer);
+        } else {
+            readSegment(path, printer);
+        }
+    }
+
+    public static List<AuditRecord> read(Path directory) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        for (Path segment : segmentsIn(directory))
+            readSegment(segment, records::add);
+        return records;
+    }
+
+    public static List<Path> segmentsIn(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    public static void readSegment(Path segmentFile, Consumer<AuditRecord> consumer) throws IOException {
+        ByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(segmentFile)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (segment.capacity() < SEGMENT_HEADER_SIZE || segment.getInt(0) != MAGIC)
+            throw new IOException("Not an audit journal segment: " + segmentFile);
+        if (segment.getShort(4) != VERSION)
+            throw new IOException("Unsupported audit journal version " + segment.getShort(4) + " in " + segmentFile);
+        int position = SEGMENT_HEADER_SIZE;
+        AuditRecord.Direction[] directions = AuditRecord.Direction.values();
+        while (position + RECORD_HEADER_SIZE <= segment.capacity()) {
+            int length = segment.getInt(position + LENGTH);
+            if (length == END_OF_DATA || length == ROLLED_OVER)
+                return;
+            segment.position(position + RECORD_HEADER_SIZE);
+            Object message = BinaryCodec.decode(segment);
+            consumer.accept(new AuditRecord(segment.getLong(position + SEQUENCE), segment.getLong(position + TIMESTAMP),
+                    directions[segment.get(position + DIRECTION)], message));
+            position += RECORD_HEADER_SIZE + length;
+        }
+    }
+}
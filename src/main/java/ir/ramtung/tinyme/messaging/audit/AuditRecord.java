@@ -0,0 +1,8 @@
+package ir.ramtung.tinyme.messaging.audit;
+
+public record AuditRecord(long sequence, long timestampMillis, Direction direction, Object message) {
+    public enum Direction {
+        INBOUND,
+        OUTBOUND
+    }
+}
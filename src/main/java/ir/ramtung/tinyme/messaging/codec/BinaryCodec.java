@@ -0,0 +1,239 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ir.ramtung.tinyme.messaging.codec.WireTypes.*;
+
+// Every message starts with a two byte header: the schema version and a type code. Requests have
+// fixed layouts (see the flyweights); events carry their time right after the header.
+public final class BinaryCodec {
+    public static final byte SCHEMA_VERSION = 1;
+    public static final int HEADER_SIZE = 2;
+
+    public static final byte ENTER_ORDER_RQ = 0x01;
+    public static final byte DELETE_ORDER_RQ = 0x02;
+    public static final byte CHANGE_MATCHING_STATE_RQ = 0x03;
+    public static final byte BULK_CHANGE_MATCHING_STATE_RQ = 0x04;
+    public static final byte BATCH_ORDER_RQ = 0x05;
+
+    public static final byte ORDER_ACCEPTED = 0x41;
+    public static final byte ORDER_UPDATED = 0x42;
+    public static final byte ORDER_DELETED = 0x43;
+    public static final byte ORDER_ACTIVATED = 0x44;
+    public static final byte ORDER_REJECTED = 0x45;
+    public static final byte ORDER_EXECUTED = 0x46;
+    public static final byte OPENING_PRICE = 0x47;
+    public static final byte SECURITY_STATE_CHANGED = 0x48;
+    public static final byte TRADE = 0x49;
+    public static final byte EVENT_BATCH = 0x4A;
+
+    private BinaryCodec() {
+    }
+
+    public static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static byte typeOf(ByteBuffer buffer, int offset) {
+        byte version = buffer.get(offset);
+        if (version != SCHEMA_VERSION)
+            throw new IllegalArgumentException("Unsupported schema version " + version);
+        return buffer.get(offset + 1);
+    }
+
+    // Writes the message at the buffer's position and leaves the position right after it. Throws
+    // BufferOverflowException when the buffer is too small.
+    public static void encode(Object message, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.put(SCHEMA_VERSION);
+        buffer.put(typeCodeOf(message));
+        if (message instanceof EnterOrderRq rq) {
+            skip(buffer, EnterOrderRqFlyweight.LENGTH - HEADER_SIZE);
+            EnterOrderRqFlyweight.encode(rq, buffer, start);
+        } else if (message instanceof DeleteOrderRq rq) {
+            skip(buffer, DeleteOrderRqFlyweight.LENGTH - HEADER_SIZE);
+            DeleteOrderRqFlyweight.encode(rq, buffer, start);
+        } else if (message instanceof ChangeMatchingStateRq rq) {
+            putIsin(buffer, rq.getSecurityIsin());
+            putEnum(buffer, rq.getTargetState());
+            putTime(buffer, rq.getEntryTime());
+        } else if (message instanceof BulkChangeMatchingStateRq rq) {
+            putEnum(buffer, rq.getTargetState());
+            putTime(buffer, rq.getEntryTime());
+            List<String> isins = rq.coversAllSecurities() ? List.of() : rq.getSecurityIsins();
+            buffer.putShort((short) isins.size());
+            for (String isin : isins)
+                putIsin(buffer, isin);
+        } else if (message instanceof BatchOrderRq rq) {
+            buffer.putShort((short) rq.getLegs().size());
+            for (BatchOrderLeg leg : rq.getLegs()) {
+                buffer.put((byte) ((leg.getEnterOrder() != null ? 1 : 0) | (leg.getDeleteOrder() != null ? 2 : 0)));
+                if (leg.getEnterOrder() != null)
+                    encode(leg.getEnterOrder(), buffer);
+                if (leg.getDeleteOrder() != null)
+                    encode(leg.getDeleteOrder(), buffer);
+            }
+        } else {
+            encodeEvent((Event) message, buffer);
+        }
+    }
+
+    private static void encodeEvent(Event event, ByteBuffer buffer) {
+        putTime(buffer, event.getTime());
+        if (event instanceof OrderAcceptedEvent e) {
+            buffer.putLong(e.getRequestId()).putLong(e.getOrderId());
+        } else if (event instanceof OrderUpdatedEvent e) {
+            buffer.putLong(e.getRequestId()).putLong(e.getOrderId());
+        } else if (event instanceof OrderDeletedEvent e) {
+            buffer.putLong(e.getRequestId()).putLong(e.getOrderId());
+        } else if (event instanceof OrderActivatedEvent e) {
+            buffer.putLong(e.getRequestId()).putLong(e.getOrderId());
+        } else if (event instanceof OrderRejectedEvent e) {
+            buffer.putLong(e.getRequestId()).putLong(e.getOrderId());
+            buffer.putShort((short) e.getErrors().size());
+            for (String error : e.getErrors())
+                putString(buffer, error);
+        } else if (event instanceof OrderExecutedEvent e) {
+            buffer.putLong(e.getRequestId()).putLong(e.getOrderId());
+            buffer.putShort((short) e.getTrades().size());
+            for (TradeDTO trade : e.getTrades()) {
+                putIsin(buffer, trade.securityIsin());
+                buffer.putInt(trade.price()).putInt(trade.quantity()).putLong(trade.buyOrderId()).putLong(trade.sellOrderId());
+            }
+        } else if (event instanceof OpeningPriceEvent e) {
+            putIsin(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getOpeningPrice()).putInt(e.getTradableQuantity());
+        } else if (event instanceof SecurityStateChangedEvent e) {
+            putIsin(buffer, e.getSecurityIsin());
+            putEnum(buffer, e.getState());
+        } else if (event instanceof TradeEvent e) {
+            putIsin(buffer, e.getSecurityIsin());
+            buffer.putInt(e.getPrice()).putInt(e.getQuantity()).putLong(e.getBuyId()).putLong(e.getSellId());
+        } else if (event instanceof EventBatch e) {
+            buffer.putShort((short) e.getEvents().size());
+            for (Event nested : e.getEvents()) {
+                int lengthAt = buffer.position();
+                skip(buffer, 4);
+                encode(nested, buffer);
+                buffer.putInt(lengthAt, buffer.position() - lengthAt - 4);
+            }
+        }
+    }
+
+    public static void skip(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() < bytes)
+            throw new BufferOverflowException();
+        buffer.position(buffer.position() + bytes);
+    }
+
+    public static byte typeCodeOf(Object message) {
+        if (message instanceof EnterOrderRq) return ENTER_ORDER_RQ;
+        if (message instanceof DeleteOrderRq) return DELETE_ORDER_RQ;
+        if (message instanceof ChangeMatchingStateRq) return CHANGE_MATCHING_STATE_RQ;
+        if (message instanceof BulkChangeMatchingStateRq) return BULK_CHANGE_MATCHING_STATE_RQ;
+        if (message instanceof BatchOrderRq) return BATCH_ORDER_RQ;
+        if (message instanceof OrderAcceptedEvent) return ORDER_ACCEPTED;
+        if (message instanceof OrderUpdatedEvent) return ORDER_UPDATED;
+        if (message instanceof OrderDeletedEvent) return ORDER_DELETED;
+        if (message instanceof OrderActivatedEvent) return ORDER_ACTIVATED;
+        if (message instanceof OrderRejectedEvent) return ORDER_REJECTED;
+        if (message instanceof OrderExecutedEvent) return ORDER_EXECUTED;
+        if (message instanceof OpeningPriceEvent) return OPENING_PRICE;
+        if (message instanceof SecurityStateChangedEvent) return SECURITY_STATE_CHANGED;
+        if (message instanceof TradeEvent) return TRADE;
+        if (message instanceof EventBatch) return EVENT_BATCH;
+        throw new IllegalArgumentException("No binary encoding for " + message.getClass().getName());
+    }
+
+    // Reads the message at the buffer's position and leaves the position right after it.
+    public static Object decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        byte type = typeOf(buffer, start);
+        buffer.position(start + HEADER_SIZE);
+        switch (type) {
+            case ENTER_ORDER_RQ -> {
+                buffer.position(start + EnterOrderRqFlyweight.LENGTH);
+                return new EnterOrderRqFlyweight().wrap(buffer, start).toRequest();
+            }
+            case DELETE_ORDER_RQ -> {
+                buffer.position(start + DeleteOrderRqFlyweight.LENGTH);
+                return new DeleteOrderRqFlyweight().wrap(buffer, start).toRequest();
+            }
+            case CHANGE_MATCHING_STATE_RQ -> {
+                return new ChangeMatchingStateRq(getIsin(buffer), getEnum(buffer, MatchingState.values()), getTime(buffer));
+            }
+            case BULK_CHANGE_MATCHING_STATE_RQ -> {
+                MatchingState targetState = getEnum(buffer, MatchingState.values());
+                var entryTime = getTime(buffer);
+                int count = buffer.getShort() & 0xFFFF;
+                List<String> isins = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    isins.add(getIsin(buffer));
+                return new BulkChangeMatchingStateRq(isins, targetState, entryTime);
+            }
+            case BATCH_ORDER_RQ -> {
+                int count = buffer.getShort() & 0xFFFF;
+                List<BatchOrderLeg> legs = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    byte present = buffer.get();
+                    EnterOrderRq enterOrder = (present & 1) != 0 ? (EnterOrderRq) decode(buffer) : null;
+                    DeleteOrderRq deleteOrder = (present & 2) != 0 ? (DeleteOrderRq) decode(buffer) : null;
+                    legs.add(new BatchOrderLeg(enterOrder, deleteOrder));
+                }
+                return new BatchOrderRq(legs);
+            }
+            default -> {
+                return decodeEvent(type, buffer);
+            }
+        }
+    }
+
+    private static Event decodeEvent(byte type, ByteBuffer buffer) {
+        var time = getTime(buffer);
+        return switch (type) {
+            case ORDER_ACCEPTED -> new OrderAcceptedEvent(time, buffer.getLong(), buffer.getLong());
+            case ORDER_UPDATED -> new OrderUpdatedEvent(time, buffer.getLong(), buffer.getLong());
+            case ORDER_DELETED -> new OrderDeletedEvent(time, buffer.getLong(), buffer.getLong());
+            case ORDER_ACTIVATED -> new OrderActivatedEvent(time, buffer.getLong(), buffer.getLong());
+            case ORDER_REJECTED -> {
+                long requestId = buffer.getLong();
+                long orderId = buffer.getLong();
+                int count = buffer.getShort() & 0xFFFF;
+                List<String> errors = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    errors.add(getString(buffer));
+                yield new OrderRejectedEvent(time, requestId, orderId, errors);
+            }
+            case ORDER_EXECUTED -> {
+                long requestId = buffer.getLong();
+                long orderId = buffer.getLong();
+                int count = buffer.getShort() & 0xFFFF;
+                List<TradeDTO> trades = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    trades.add(new TradeDTO(getIsin(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong()));
+                yield new OrderExecutedEvent(time, requestId, orderId, trades);
+            }
+            case OPENING_PRICE -> new OpeningPriceEvent(time, getIsin(buffer), buffer.getInt(), buffer.getInt());
+            case SECURITY_STATE_CHANGED -> new SecurityStateChangedEvent(time, getIsin(buffer), getEnum(buffer, MatchingState.values()));
+            case TRADE -> new TradeEvent(time, getIsin(buffer), buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+            case EVENT_BATCH -> {
+                int count = buffer.getShort() & 0xFFFF;
+                List<Event> events = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    buffer.getInt();
+                    events.add((Event) decode(buffer));
+                }
+                yield new EventBatch(time, events);
+            }
+            default -> throw new IllegalArgumentException("Unknown message type " + type);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+// Sends requests and events as BytesMessages. The _type property is still set to the class name so
+// the listener selectors match binary and JSON messages alike.
+public class BinaryMessageConverter implements MessageConverter {
+    public static final String TYPE_ID_PROPERTY = "_type";
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> BinaryCodec.allocate(INITIAL_BUFFER_SIZE));
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        ByteBuffer buffer = encode(object);
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(buffer.array(), 0, buffer.position());
+        message.setStringProperty(TYPE_ID_PROPERTY, object.getClass().getName());
+        return message;
+    }
+
+    private ByteBuffer encode(Object object) {
+        while (true) {
+            ByteBuffer buffer = buffers.get().clear();
+            try {
+                BinaryCodec.encode(object, buffer);
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffers.set(BinaryCodec.allocate(buffer.capacity() * 2));
+            }
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (!(message instanceof BytesMessage bytesMessage))
+            throw new MessageConversionException("Binary codec expects a BytesMessage, got " + message.getClass().getName());
+        int length = (int) bytesMessage.getBodyLength();
+        ByteBuffer buffer = buffers.get();
+        if (buffer.capacity() < length) {
+            buffer = BinaryCodec.allocate(Math.max(length, buffer.capacity() * 2));
+            buffers.set(buffer);
+        }
+        bytesMessage.readBytes(buffer.array(), length);
+        try {
+            return BinaryCodec.decode(buffer.clear().limit(length));
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Could not decode binary message", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+// Incoming messages are decoded by the codec matching their body type, so JSON and binary clients
+// can share a queue. Outgoing messages use the configured default codec.
+public class CodecSelectingMessageConverter implements MessageConverter {
+    private final MessageConverter json;
+    private final MessageConverter binary;
+    private final Codec outgoing;
+
+    public CodecSelectingMessageConverter(MessageConverter json, MessageConverter binary, Codec outgoing) {
+        this.json = json;
+        this.binary = binary;
+        this.outgoing = outgoing;
+    }
+
+    public MessageConverter converterFor(Codec codec) {
+        return codec == Codec.BINARY ? binary : json;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        return converterFor(outgoing).toMessage(object, session);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        return message instanceof BytesMessage ? binary.fromMessage(message) : json.fromMessage(message);
+    }
+}
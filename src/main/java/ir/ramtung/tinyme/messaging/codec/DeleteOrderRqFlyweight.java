@@ -0,0 +1,54 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+
+import java.nio.ByteBuffer;
+
+import static ir.ramtung.tinyme.messaging.codec.WireTypes.*;
+
+public final class DeleteOrderRqFlyweight {
+    static final int REQUEST_ID = BinaryCodec.HEADER_SIZE;
+    static final int SECURITY_ISIN = REQUEST_ID + 8;
+    static final int SIDE = SECURITY_ISIN + ISIN_SIZE;
+    static final int ORDER_ID = SIDE + 1;
+    static final int ENTRY_TIME = ORDER_ID + 8;
+    public static final int LENGTH = ENTRY_TIME + TIME_SIZE;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    public DeleteOrderRqFlyweight wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    static void encode(DeleteOrderRq rq, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset + REQUEST_ID, rq.getRequestId());
+        putIsin(buffer, offset + SECURITY_ISIN, rq.getSecurityIsin());
+        putEnum(buffer, offset + SIDE, rq.getSide());
+        buffer.putLong(offset + ORDER_ID, rq.getOrderId());
+        putTime(buffer, offset + ENTRY_TIME, rq.getEntryTime());
+    }
+
+    public long requestId() {
+        return buffer.getLong(offset + REQUEST_ID);
+    }
+
+    public boolean isinEquals(String isin) {
+        return WireTypes.isinEquals(buffer, offset + SECURITY_ISIN, isin);
+    }
+
+    public Side side() {
+        return getEnum(buffer, offset + SIDE, Side.values());
+    }
+
+    public long orderId() {
+        return buffer.getLong(offset + ORDER_ID);
+    }
+
+    public DeleteOrderRq toRequest() {
+        return new DeleteOrderRq(requestId(), getIsin(buffer, offset + SECURITY_ISIN), side(), orderId(), getTime(buffer, offset + ENTRY_TIME));
+    }
+}
@@ -0,0 +1,119 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.OrderEntryType;
+
+import java.nio.ByteBuffer;
+
+import static ir.ramtung.tinyme.messaging.codec.WireTypes.*;
+
+// Fixed-layout view over an encoded EnterOrderRq. Reading a field does not allocate, so gateways
+// can inspect or route a request without decoding it.
+public final class EnterOrderRqFlyweight {
+    static final int REQUEST_TYPE = BinaryCodec.HEADER_SIZE;
+    static final int REQUEST_ID = REQUEST_TYPE + 1;
+    static final int SECURITY_ISIN = REQUEST_ID + 8;
+    static final int ORDER_ID = SECURITY_ISIN + ISIN_SIZE;
+    static final int ENTRY_TIME = ORDER_ID + 8;
+    static final int SIDE = ENTRY_TIME + TIME_SIZE;
+    static final int QUANTITY = SIDE + 1;
+    static final int PRICE = QUANTITY + 4;
+    static final int BROKER_ID = PRICE + 4;
+    static final int SHAREHOLDER_ID = BROKER_ID + 8;
+    static final int PEAK_SIZE = SHAREHOLDER_ID + 8;
+    static final int MINIMUM_EXECUTION_QUANTITY = PEAK_SIZE + 4;
+    static final int STOP_PRICE = MINIMUM_EXECUTION_QUANTITY + 4;
+    public static final int LENGTH = STOP_PRICE + 4;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    public EnterOrderRqFlyweight wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    static void encode(EnterOrderRq rq, ByteBuffer buffer, int offset) {
+        putEnum(buffer, offset + REQUEST_TYPE, rq.getRequestType());
+        buffer.putLong(offset + REQUEST_ID, rq.getRequestId());
+        putIsin(buffer, offset + SECURITY_ISIN, rq.getSecurityIsin());
+        buffer.putLong(offset + ORDER_ID, rq.getOrderId());
+        putTime(buffer, offset + ENTRY_TIME, rq.getEntryTime());
+        putEnum(buffer, offset + SIDE, rq.getSide());
+        buffer.putInt(offset + QUANTITY, rq.getQuantity());
+        buffer.putInt(offset + PRICE, rq.getPrice());
+        buffer.putLong(offset + BROKER_ID, rq.getBrokerId());
+        buffer.putLong(offset + SHAREHOLDER_ID, rq.getShareholderId());
+        buffer.putInt(offset + PEAK_SIZE, rq.getPeakSize());
+        buffer.putInt(offset + MINIMUM_EXECUTION_QUANTITY, rq.getMinimumExecutionQuantity());
+        buffer.putInt(offset + STOP_PRICE, rq.getStopPrice());
+    }
+
+    public OrderEntryType requestType() {
+        return getEnum(buffer, offset + REQUEST_TYPE, OrderEntryType.values());
+    }
+
+    public long requestId() {
+        return buffer.getLong(offset + REQUEST_ID);
+    }
+
+    public boolean isinEquals(String isin) {
+        return WireTypes.isinEquals(buffer, offset + SECURITY_ISIN, isin);
+    }
+
+    public long orderId() {
+        return buffer.getLong(offset + ORDER_ID);
+    }
+
+    public Side side() {
+        return getEnum(buffer, offset + SIDE, Side.values());
+    }
+
+    public int quantity() {
+        return buffer.getInt(offset + QUANTITY);
+    }
+
+    public int price() {
+        return buffer.getInt(offset + PRICE);
+    }
+
+    public long brokerId() {
+        return buffer.getLong(offset + BROKER_ID);
+    }
+
+    public long shareholderId() {
+        return buffer.getLong(offset + SHAREHOLDER_ID);
+    }
+
+    public int peakSize() {
+        return buffer.getInt(offset + PEAK_SIZE);
+    }
+
+    public int minimumExecutionQuantity() {
+        return buffer.getInt(offset + MINIMUM_EXECUTION_QUANTITY);
+    }
+
+    public int stopPrice() {
+        return buffer.getInt(offset + STOP_PRICE);
+    }
+
+    public EnterOrderRq toRequest() {
+        EnterOrderRq rq = new EnterOrderRq();
+        rq.setRequestType(requestType());
+        rq.setRequestId(requestId());
+        rq.setSecurityIsin(getIsin(buffer, offset + SECURITY_ISIN));
+        rq.setOrderId(orderId());
+        rq.setEntryTime(getTime(buffer, offset + ENTRY_TIME));
+        rq.setSide(side());
+        rq.setQuantity(quantity());
+        rq.setPrice(price());
+        rq.setBrokerId(brokerId());
+        rq.setShareholderId(shareholderId());
+        rq.setPeakSize(peakSize());
+        rq.setMinimumExecutionQuantity(minimumExecutionQuantity());
+        rq.setStopPrice(stopPrice());
+        return rq;
+    }
+}
@@ -0,0 +1,52 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.util.logging.Logger;
+
+// Drop-in replacement for the Jackson converter: same TEXT messages and _type property, but the
+// known requests and events go through JsonCodec. Anything else, and any message the codec cannot
+// parse, is handed to the Jackson converter.
+public class HandWrittenJsonMessageConverter implements MessageConverter {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final MessageConverter jackson;
+    private final String typeIdPropertyName;
+    private final ThreadLocal<JsonWriter> writers = ThreadLocal.withInitial(() -> new JsonWriter(INITIAL_BUFFER_SIZE));
+    private final ThreadLocal<JsonReader> readers = ThreadLocal.withInitial(JsonReader::new);
+
+    public HandWrittenJsonMessageConverter(MessageConverter jackson, String typeIdPropertyName) {
+        this.jackson = jackson;
+        this.typeIdPropertyName = typeIdPropertyName;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        if (!JsonCodec.supports(object.getClass()))
+            return jackson.toMessage(object, session);
+        JsonWriter writer = writers.get().reset();
+        JsonCodec.write(object, writer);
+        TextMessage message = session.createTextMessage(writer.toString());
+        message.setStringProperty(typeIdPropertyName, object.getClass().getName());
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        Class<?> type = JsonCodec.classOf(message.getStringProperty(typeIdPropertyName));
+        if (type == null || !(message instanceof TextMessage textMessage))
+            return jackson.fromMessage(message);
+        try {
+            return JsonCodec.read(type, readers.get().reset(textMessage.getText()));
+        } catch (RuntimeException e) {
+            log.fine("Falling back to Jackson: " + e.getMessage());
+            return jackson.fromMessage(message);
+        }
+    }
+}
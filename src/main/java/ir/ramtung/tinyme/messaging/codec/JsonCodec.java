@@ -0,0 +1,517 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static ir.ramtung.tinyme.messaging.codec.JsonWriter.name;
+
+// Hand-written JSON mapping of the requests and events, producing exactly what Jackson writes for
+// them (properties in declaration order, inherited time first).
+public final class JsonCodec {
+    private static final byte[] TYPE = name("_type");
+    private static final byte[] TIME = name("time");
+    private static final byte[] REQUEST_TYPE = name("requestType");
+    private static final byte[] REQUEST_ID = name("requestId");
+    private static final byte[] SECURITY_ISIN = name("securityIsin");
+    private static final byte[] SECURITY_ISINS = name("securityIsins");
+    private static final byte[] ORDER_ID = name("orderId");
+    private static final byte[] ENTRY_TIME = name("entryTime");
+    private static final byte[] SIDE = name("side");
+    private static final byte[] QUANTITY = name("quantity");
+    private static final byte[] PRICE = name("price");
+    private static final byte[] BROKER_ID = name("brokerId");
+    private static final byte[] SHAREHOLDER_ID = name("shareholderId");
+    private static final byte[] PEAK_SIZE = name("peakSize");
+    private static final byte[] MINIMUM_EXECUTION_QUANTITY = name("minimumExecutionQuantity");
+    private static final byte[] STOP_PRICE = name("stopPrice");
+    private static final byte[] TARGET_STATE = name("targetState");
+    private static final byte[] ERRORS = name("errors");
+    private static final byte[] TRADES = name("trades");
+    private static final byte[] BUY_ORDER_ID = name("buyOrderId");
+    private static final byte[] SELL_ORDER_ID = name("sellOrderId");
+    private static final byte[] OPENING_PRICE = name("openingPrice");
+    private static final byte[] TRADABLE_QUANTITY = name("tradableQuantity");
+    private static final byte[] STATE = name("state");
+    private static final byte[] BUY_ID = name("buyId");
+    private static final byte[] SELL_ID = name("sellId");
+    private static final byte[] EVENTS = name("events");
+    private static final byte[] LEGS = name("legs");
+    private static final byte[] ENTER_ORDER = name("enterOrder");
+    private static final byte[] DELETE_ORDER = name("deleteOrder");
+
+    private static final Map<String, Class<?>> SUPPORTED = List.of(
+            EnterOrderRq.class, DeleteOrderRq.class, ChangeMatchingStateRq.class, BulkChangeMatchingStateRq.class,
+            BatchOrderRq.class, OrderAcceptedEvent.class, OrderUpdatedEvent.class, OrderDeletedEvent.class, OrderActivatedEvent.class,
+            OrderRejectedEvent.class, OrderExecutedEvent.class, OpeningPriceEvent.class,
+            SecurityStateChangedEvent.class, TradeEvent.class, EventBatch.class)
+            .stream().collect(Collectors.toUnmodifiableMap(Class::getName, Function.identity()));
+
+    private JsonCodec() {
+    }
+
+    public static boolean supports(Class<?> type) {
+        return SUPPORTED.get(type.getName()) == type;
+    }
+
+    public static void write(Object message, JsonWriter out) {
+        if (message instanceof Event event) {
+            writeEvent(event, out, false);
+            return;
+        }
+        out.beginObject();
+        if (message instanceof EnterOrderRq rq) {
+            out.field(REQUEST_TYPE).value(rq.getRequestType());
+            out.field(REQUEST_ID).value(rq.getRequestId());
+            out.field(SECURITY_ISIN).value(rq.getSecurityIsin());
+            out.field(ORDER_ID).value(rq.getOrderId());
+            out.field(ENTRY_TIME).value(rq.getEntryTime());
+            out.field(SIDE).value(rq.getSide());
+            out.field(QUANTITY).value(rq.getQuantity());
+            out.field(PRICE).value(rq.getPrice());
+            out.field(BROKER_ID).value(rq.getBrokerId());
+            out.field(SHAREHOLDER_ID).value(rq.getShareholderId());
+            out.field(PEAK_SIZE).value(rq.getPeakSize());
+            out.field(MINIMUM_EXECUTION_QUANTITY).value(rq.getMinimumExecutionQuantity());
+            out.field(STOP_PRICE).value(rq.getStopPrice());
+        } else if (message instanceof DeleteOrderRq rq) {
+            out.field(REQUEST_ID).value(rq.getRequestId());
+            out.field(SECURITY_ISIN).value(rq.getSecurityIsin());
+            out.field(SIDE).value(rq.getSide());
+            out.field(ORDER_ID).value(rq.getOrderId());
+            out.field(ENTRY_TIME).value(rq.getEntryTime());
+        } else if (message instanceof ChangeMatchingStateRq rq) {
+            out.field(SECURITY_ISIN).value(rq.getSecurityIsin());
+            out.field(TARGET_STATE).value(rq.getTargetState());
+            out.field(ENTRY_TIME).value(rq.getEntryTime());
+        } else if (message instanceof BulkChangeMatchingStateRq rq) {
+            out.field(SECURITY_ISINS);
+            writeStrings(rq.getSecurityIsins(), out);
+            out.field(TARGET_STATE).value(rq.getTargetState());
+            out.field(ENTRY_TIME).value(rq.getEntryTime());
+        } else if (message instanceof BatchOrderRq rq) {
+            out.field(LEGS);
+            writeLegs(rq.getLegs(), out);
+        } else {
+            throw new IllegalArgumentException("No JSON mapping for " + message.getClass().getName());
+        }
+        out.endObject();
+    }
+
+    private static void writeEvent(Event event, JsonWriter out, boolean withType) {
+        out.beginObject();
+        if (withType)
+            out.field(TYPE).value(event.getClass().getName());
+        out.field(TIME).value(event.getTime());
+        if (event instanceof OrderAcceptedEvent e) {
+            out.field(REQUEST_ID).value(e.getRequestId());
+            out.field(ORDER_ID).value(e.getOrderId());
+        } else if (event instanceof OrderUpdatedEvent e) {
+            out.field(REQUEST_ID).value(e.getRequestId());
+            out.field(ORDER_ID).value(e.getOrderId());
+        } else if (event instanceof OrderDeletedEvent e) {
+            out.field(REQUEST_ID).value(e.getRequestId());
+            out.field(ORDER_ID).value(e.getOrderId());
+        } else if (event instanceof OrderActivatedEvent e) {
+            out.field(REQUEST_ID).value(e.getRequestId());
+            out.field(ORDER_ID).value(e.getOrderId());
+        } else if (event instanceof OrderRejectedEvent e) {
+            out.field(REQUEST_ID).value(e.getRequestId());
+            out.field(ORDER_ID).value(e.getOrderId());
+            out.field(ERRORS);
+            writeStrings(e.getErrors(), out);
+        } else if (event instanceof OrderExecutedEvent e) {
+            out.field(REQUEST_ID).value(e.getRequestId());
+            out.field(ORDER_ID).value(e.getOrderId());
+            out.field(TRADES);
+            writeTrades(e.getTrades(), out);
+        } else if (event instanceof OpeningPriceEvent e) {
+            out.field(SECURITY_ISIN).value(e.getSecurityIsin());
+            out.field(OPENING_PRICE).value(e.getOpeningPrice());
+            out.field(TRADABLE_QUANTITY).value(e.getTradableQuantity());
+        } else if (event instanceof SecurityStateChangedEvent e) {
+            out.field(SECURITY_ISIN).value(e.getSecurityIsin());
+            out.field(STATE).value(e.getState());
+        } else if (event instanceof TradeEvent e) {
+            out.field(SECURITY_ISIN).value(e.getSecurityIsin());
+            out.field(PRICE).value(e.getPrice());
+            out.field(QUANTITY).value(e.getQuantity());
+            out.field(BUY_ID).value(e.getBuyId());
+            out.field(SELL_ID).value(e.getSellId());
+        } else if (event instanceof EventBatch e) {
+            out.field(EVENTS);
+            if (e.getEvents() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Event nested : e.getEvents()) {
+                    out.element();
+                    writeEvent(nested, out, true);
+                }
+                out.endArray();
+            }
+        } else {
+            throw new IllegalArgumentException("No JSON mapping for " + event.getClass().getName());
+        }
+        out.endObject();
+    }
+
+    private static void writeStrings(List<String> values, JsonWriter out) {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (String value : values)
+            out.element().value(value);
+        out.endArray();
+    }
+
+    private static void writeLegs(List<BatchOrderLeg> legs, JsonWriter out) {
+        if (legs == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (BatchOrderLeg leg : legs) {
+            out.element().beginObject();
+            out.field(ENTER_ORDER);
+            writeNullable(leg.getEnterOrder(), out);
+            out.field(DELETE_ORDER);
+            writeNullable(leg.getDeleteOrder(), out);
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private static void writeNullable(Object message, JsonWriter out) {
+        if (message == null)
+            out.nullValue();
+        else
+            write(message, out);
+    }
+
+    private static void writeTrades(List<TradeDTO> trades, JsonWriter out) {
+        if (trades == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (TradeDTO trade : trades) {
+            out.element().beginObject();
+            out.field(SECURITY_ISIN).value(trade.securityIsin());
+            out.field(PRICE).value(trade.price());
+            out.field(QUANTITY).value(trade.quantity());
+            out.field(BUY_ORDER_ID).value(trade.buyOrderId());
+            out.field(SELL_ORDER_ID).value(trade.sellOrderId());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    // Unknown properties are skipped, as the Jackson converter does.
+    public static Object read(Class<?> type, JsonReader in) {
+        Object message = readObject(type, in);
+        in.end();
+        return message;
+    }
+
+    private static Object readObject(Class<?> type, JsonReader in) {
+        if (type == EnterOrderRq.class)
+            return readEnterOrderRq(in);
+        if (type == DeleteOrderRq.class)
+            return readDeleteOrderRq(in);
+        if (type == ChangeMatchingStateRq.class)
+            return readChangeMatchingStateRq(in);
+        if (type == BulkChangeMatchingStateRq.class)
+            return readBulkChangeMatchingStateRq(in);
+        if (type == BatchOrderRq.class)
+            return readBatchOrderRq(in);
+        return readEvent(type, in, false);
+    }
+
+    private static EnterOrderRq readEnterOrderRq(JsonReader in) {
+        EnterOrderRq rq = new EnterOrderRq();
+        in.beginObject();
+        while (in.hasNextField()) {
+            switch (in.nextName()) {
+                case "requestType" -> rq.setRequestType(in.readEnum(OrderEntryType.class));
+                case "requestId" -> rq.setRequestId(in.readLong());
+                case "securityIsin" -> rq.setSecurityIsin(in.readString());
+                case "orderId" -> rq.setOrderId(in.readLong());
+                case "entryTime" -> rq.setEntryTime(in.readTime());
+                case "side" -> rq.setSide(in.readEnum(Side.class));
+                case "quantity" -> rq.setQuantity(in.readInt());
+                case "price" -> rq.setPrice(in.readInt());
+                case "brokerId" -> rq.setBrokerId(in.readLong());
+                case "shareholderId" -> rq.setShareholderId(in.readLong());
+                case "peakSize" -> rq.setPeakSize(in.readInt());
+                case "minimumExecutionQuantity" -> rq.setMinimumExecutionQuantity(in.readInt());
+                case "stopPrice" -> rq.setStopPrice(in.readInt());
+                default -> in.skipValue();
+            }
+        }
+        return rq;
+    }
+
+    private static DeleteOrderRq readDeleteOrderRq(JsonReader in) {
+        DeleteOrderRq rq = new DeleteOrderRq();
+        in.beginObject();
+        while (in.hasNextField()) {
+            switch (in.nextName()) {
+                case "requestId" -> rq.setRequestId(in.readLong());
+                case "securityIsin" -> rq.setSecurityIsin(in.readString());
+                case "side" -> rq.setSide(in.readEnum(Side.class));
+                case "orderId" -> rq.setOrderId(in.readLong());
+                case "entryTime" -> rq.setEntryTime(in.readTime());
+                default -> in.skipValue();
+            }
+        }
+        return rq;
+    }
+
+    private static ChangeMatchingStateRq readChangeMatchingStateRq(JsonReader in) {
+        ChangeMatchingStateRq rq = new ChangeMatchingStateRq();
+        in.beginObject();
+        while (in.hasNextField()) {
+            switch (in.nextName()) {
+                case "securityIsin" -> rq.setSecurityIsin(in.readString());
+                case "targetState" -> rq.setTargetState(in.readEnum(MatchingState.class));
+                case "entryTime" -> rq.setEntryTime(in.readTime());
+                default -> in.skipValue();
+            }
+        }
+        return rq;
+    }
+
+    private static BulkChangeMatchingStateRq readBulkChangeMatchingStateRq(JsonReader in) {
+        BulkChangeMatchingStateRq rq = new BulkChangeMatchingStateRq();
+        in.beginObject();
+        while (in.hasNextField()) {
+            switch (in.nextName()) {
+                case "securityIsins" -> rq.setSecurityIsins(readStrings(in));
+                case "targetState" -> rq.setTargetState(in.readEnum(MatchingState.class));
+                case "entryTime" -> rq.setEntryTime(in.readTime());
+                default -> in.skipValue();
+            }
+        }
+        return rq;
+    }
+
+    private static BatchOrderRq readBatchOrderRq(JsonReader in) {
+        BatchOrderRq rq = new BatchOrderRq();
+        in.beginObject();
+        while (in.hasNextField()) {
+            if (in.nextName().equals("legs"))
+                rq.setLegs(readLegs(in));
+            else
+                in.skipValue();
+        }
+        return rq;
+    }
+
+    private static List<BatchOrderLeg> readLegs(JsonReader in) {
+        if (in.nextIsNull())
+            return null;
+        List<BatchOrderLeg> legs = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNextElement()) {
+            BatchOrderLeg leg = new BatchOrderLeg();
+            in.beginObject();
+            while (in.hasNextField()) {
+                switch (in.nextName()) {
+                    case "enterOrder" -> leg.setEnterOrder(in.nextIsNull() ? null : readEnterOrderRq(in));
+                    case "deleteOrder" -> leg.setDeleteOrder(in.nextIsNull() ? null : readDeleteOrderRq(in));
+                    default -> in.skipValue();
+                }
+            }
+            legs.add(leg);
+        }
+        return legs;
+    }
+
+    // The time can come after the other fields, so the event is read first and then rebuilt with it.
+    private static Event readEvent(Class<?> type, JsonReader in, boolean typeAlreadyRead) {
+        Event event = newEvent(type);
+        boolean timed = false;
+        LocalDateTime time = null;
+        if (!typeAlreadyRead)
+            in.beginObject();
+        while (in.hasNextField()) {
+            String field = in.nextName();
+            if (field.equals("time")) {
+                time = in.readTime();
+                timed = true;
+            } else if (!readEventField(event, field, in)) {
+                in.skipValue();
+            }
+        }
+        return timed ? withTime(event, time) : event;
+    }
+
+    private static Event withTime(Event event, LocalDateTime time) {
+        if (event instanceof OrderAcceptedEvent e) return new OrderAcceptedEvent(time, e.getRequestId(), e.getOrderId());
+        if (event instanceof OrderUpdatedEvent e) return new OrderUpdatedEvent(time, e.getRequestId(), e.getOrderId());
+        if (event instanceof OrderDeletedEvent e) return new OrderDeletedEvent(time, e.getRequestId(), e.getOrderId());
+        if (event instanceof OrderActivatedEvent e) return new OrderActivatedEvent(time, e.getRequestId(), e.getOrderId());
+        if (event instanceof OrderRejectedEvent e) return new OrderRejectedEvent(time, e.getRequestId(), e.getOrderId(), e.getErrors());
+        if (event instanceof OrderExecutedEvent e) return new OrderExecutedEvent(time, e.getRequestId(), e.getOrderId(), e.getTrades());
+        if (event instanceof OpeningPriceEvent e) return new OpeningPriceEvent(time, e.getSecurityIsin(), e.getOpeningPrice(), e.getTradableQuantity());
+        if (event instanceof SecurityStateChangedEvent e) return new SecurityStateChangedEvent(time, e.getSecurityIsin(), e.getState());
+        if (event instanceof TradeEvent e) return new TradeEvent(time, e.getSecurityIsin(), e.getPrice(), e.getQuantity(), e.getBuyId(), e.getSellId());
+        if (event instanceof EventBatch e) return new EventBatch(time, e.getEvents());
+        throw new IllegalArgumentException("No JSON mapping for " + event.getClass().getName());
+    }
+
+    private static Event newEvent(Class<?> type) {
+        if (type == OrderAcceptedEvent.class) return new OrderAcceptedEvent();
+        if (type == OrderUpdatedEvent.class) return new OrderUpdatedEvent();
+        if (type == OrderDeletedEvent.class) return new OrderDeletedEvent();
+        if (type == OrderActivatedEvent.class) return new OrderActivatedEvent();
+        if (type == OrderRejectedEvent.class) return new OrderRejectedEvent();
+        if (type == OrderExecutedEvent.class) return new OrderExecutedEvent();
+        if (type == OpeningPriceEvent.class) return new OpeningPriceEvent();
+        if (type == SecurityStateChangedEvent.class) return new SecurityStateChangedEvent();
+        if (type == TradeEvent.class) return new TradeEvent();
+        if (type == EventBatch.class) return new EventBatch();
+        throw new IllegalArgumentException("No JSON mapping for " + type.getName());
+    }
+
+    private static boolean readEventField(Event event, String field, JsonReader in) {
+        if (event instanceof OrderAcceptedEvent e) {
+            switch (field) {
+                case "requestId" -> e.setRequestId(in.readLong());
+                case "orderId" -> e.setOrderId(in.readLong());
+                default -> { return false; }
+            }
+        } else if (event instanceof OrderUpdatedEvent e) {
+            switch (field) {
+                case "requestId" -> e.setRequestId(in.readLong());
+                case "orderId" -> e.setOrderId(in.readLong());
+                default -> { return false; }
+            }
+        } else if (event instanceof OrderDeletedEvent e) {
+            switch (field) {
+                case "requestId" -> e.setRequestId(in.readLong());
+                case "orderId" -> e.setOrderId(in.readLong());
+                default -> { return false; }
+            }
+        } else if (event instanceof OrderActivatedEvent e) {
+            switch (field) {
+                case "requestId" -> e.setRequestId(in.readLong());
+                case "orderId" -> e.setOrderId(in.readLong());
+                default -> { return false; }
+            }
+        } else if (event instanceof OrderRejectedEvent e) {
+            switch (field) {
+                case "requestId" -> e.setRequestId(in.readLong());
+                case "orderId" -> e.setOrderId(in.readLong());
+                case "errors" -> e.setErrors(readStrings(in));
+                default -> { return false; }
+            }
+        } else if (event instanceof OrderExecutedEvent e) {
+            switch (field) {
+                case "requestId" -> e.setRequestId(in.readLong());
+                case "orderId" -> e.setOrderId(in.readLong());
+                case "trades" -> e.setTrades(readTrades(in));
+                default -> { return false; }
+            }
+        } else if (event instanceof OpeningPriceEvent e) {
+            switch (field) {
+                case "securityIsin" -> e.setSecurityIsin(in.readString());
+                case "openingPrice" -> e.setOpeningPrice(in.readInt());
+                case "tradableQuantity" -> e.setTradableQuantity(in.readInt());
+                default -> { return false; }
+            }
+        } else if (event instanceof SecurityStateChangedEvent e) {
+            switch (field) {
+                case "securityIsin" -> e.setSecurityIsin(in.readString());
+                case "state" -> e.setState(in.readEnum(MatchingState.class));
+                default -> { return false; }
+            }
+        } else if (event instanceof TradeEvent e) {
+            switch (field) {
+                case "securityIsin" -> e.setSecurityIsin(in.readString());
+                case "price" -> e.setPrice(in.readInt());
+                case "quantity" -> e.setQuantity(in.readInt());
+                case "buyId" -> e.setBuyId(in.readLong());
+                case "sellId" -> e.setSellId(in.readLong());
+                default -> { return false; }
+            }
+        } else if (event instanceof EventBatch e) {
+            if (!field.equals("events"))
+                return false;
+            e.setEvents(readNestedEvents(in));
+        }
+        return true;
+    }
+
+    // Nested events carry their class in a leading _type property, as Jackson writes them.
+    private static List<Event> readNestedEvents(JsonReader in) {
+        if (in.nextIsNull())
+            return null;
+        List<Event> events = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNextElement()) {
+            in.beginObject();
+            if (!in.hasNextField() || !in.nextName().equals("_type"))
+                throw new IllegalArgumentException("Nested event without a leading _type");
+            String typeId = in.readString();
+            Class<?> type = classOf(typeId);
+            if (type == null || !Event.class.isAssignableFrom(type))
+                throw new IllegalArgumentException("No JSON mapping for " + typeId);
+            events.add(readEvent(type, in, true));
+        }
+        return events;
+    }
+
+    private static List<String> readStrings(JsonReader in) {
+        if (in.nextIsNull())
+            return null;
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNextElement())
+            values.add(in.readString());
+        return values;
+    }
+
+    private static List<TradeDTO> readTrades(JsonReader in) {
+        if (in.nextIsNull())
+            return null;
+        List<TradeDTO> trades = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNextElement()) {
+            String securityIsin = null;
+            int price = 0;
+            int quantity = 0;
+            long buyOrderId = 0;
+            long sellOrderId = 0;
+            in.beginObject();
+            while (in.hasNextField()) {
+                switch (in.nextName()) {
+                    case "securityIsin" -> securityIsin = in.readString();
+                    case "price" -> price = in.readInt();
+                    case "quantity" -> quantity = in.readInt();
+                    case "buyOrderId" -> buyOrderId = in.readLong();
+                    case "sellOrderId" -> sellOrderId = in.readLong();
+                    default -> in.skipValue();
+                }
+            }
+            trades.add(new TradeDTO(securityIsin, price, quantity, buyOrderId, sellOrderId));
+        }
+        return trades;
+    }
+
+    // Returns null for types without a hand-written mapping.
+    public static Class<?> classOf(String typeId) {
+        return typeId == null ? null : SUPPORTED.get(typeId);
+    }
+}
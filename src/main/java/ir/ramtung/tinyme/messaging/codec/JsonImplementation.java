@@ -0,0 +1,6 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+public enum JsonImplementation {
+    JACKSON,
+    HAND_WRITTEN
+}
@@ -0,0 +1,210 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import java.time.LocalDateTime;
+
+// Pull parser for the flat objects exchanged on the queues. Malformed input raises an
+// IllegalArgumentException carrying the offending position.
+public final class JsonReader {
+    private String text;
+    private int pos;
+
+    public JsonReader reset(String text) {
+        this.text = text;
+        this.pos = 0;
+        return this;
+    }
+
+    public void beginObject() {
+        expect('{');
+    }
+
+    // Consumes the separator or the closing brace; returns false once the object is done.
+    public boolean hasNextField() {
+        return hasNext('}');
+    }
+
+    public void beginArray() {
+        expect('[');
+    }
+
+    public boolean hasNextElement() {
+        return hasNext(']');
+    }
+
+    public String nextName() {
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    public boolean nextIsNull() {
+        skipWhitespace();
+        if (text.startsWith("null", pos)) {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    public void end() {
+        skipWhitespace();
+        if (pos != text.length())
+            throw malformed("trailing content");
+    }
+
+    public long readLong() {
+        if (nextIsNull())
+            return 0;
+        skipWhitespace();
+        boolean negative = pos < text.length() && text.charAt(pos) == '-';
+        if (negative)
+            pos++;
+        int start = pos;
+        long value = 0;
+        while (pos < text.length() && Character.isDigit(text.charAt(pos)))
+            value = value * 10 + (text.charAt(pos++) - '0');
+        if (pos == start)
+            throw malformed("number expected");
+        if (pos < text.length() && (text.charAt(pos) == '.' || text.charAt(pos) == 'e' || text.charAt(pos) == 'E'))
+            throw malformed("integer expected");
+        return negative ? -value : value;
+    }
+
+    public int readInt() {
+        long value = readLong();
+        if (value != (int) value)
+            throw malformed("int out of range");
+        return (int) value;
+    }
+
+    public String readString() {
+        if (nextIsNull())
+            return null;
+        expect('"');
+        int start = pos;
+        while (pos < text.length() && text.charAt(pos) != '"' && text.charAt(pos) != '\\')
+            pos++;
+        if (pos < text.length() && text.charAt(pos) == '"')
+            return text.substring(start, pos++);
+        StringBuilder value = new StringBuilder(text.substring(start, pos));
+        while (true) {
+            if (pos >= text.length())
+                throw malformed("unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"')
+                return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos >= text.length())
+                throw malformed("unterminated escape");
+            char escaped = text.charAt(pos++);
+            switch (escaped) {
+                case '"', '\\', '/' -> value.append(escaped);
+                case 'b' -> value.append('\b');
+                case 't' -> value.append('\t');
+                case 'n' -> value.append('\n');
+                case 'f' -> value.append('\f');
+                case 'r' -> value.append('\r');
+                case 'u' -> {
+                    if (pos + 4 > text.length())
+                        throw malformed("short unicode escape");
+                    value.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                    pos += 4;
+                }
+                default -> throw malformed("unknown escape");
+            }
+        }
+    }
+
+    public <E extends Enum<E>> E readEnum(Class<E> type) {
+        String name = readString();
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    // Accepts the array form written by LocalDateTimeSerializer as well as ISO-8601 strings.
+    public LocalDateTime readTime() {
+        if (nextIsNull())
+            return null;
+        skipWhitespace();
+        if (pos < text.length() && text.charAt(pos) == '"')
+            return LocalDateTime.parse(readString());
+        int[] parts = new int[7];
+        int count = 0;
+        beginArray();
+        while (hasNextElement()) {
+            if (count == parts.length)
+                throw malformed("too many date-time parts");
+            parts[count++] = readInt();
+        }
+        if (count < 5)
+            throw malformed("too few date-time parts");
+        return LocalDateTime.of(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]);
+    }
+
+    public void skipValue() {
+        skipWhitespace();
+        if (pos >= text.length())
+            throw malformed("value expected");
+        char c = text.charAt(pos);
+        if (c == '"') {
+            readString();
+        } else if (c == '{') {
+            beginObject();
+            while (hasNextField()) {
+                nextName();
+                skipValue();
+            }
+        } else if (c == '[') {
+            beginArray();
+            while (hasNextElement())
+                skipValue();
+        } else {
+            while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0)
+                pos++;
+        }
+    }
+
+    private boolean hasNext(char closing) {
+        skipWhitespace();
+        if (pos >= text.length())
+            throw malformed("unexpected end");
+        char c = text.charAt(pos);
+        if (c == closing) {
+            pos++;
+            return false;
+        }
+        if (c == ',') {
+            pos++;
+            return true;
+        }
+        char opening = closing == '}' ? '{' : '[';
+        if (pos > 0 && text.charAt(lastNonWhitespaceBefore(pos)) == opening)
+            return true;
+        throw malformed("',' or '" + closing + "' expected");
+    }
+
+    private int lastNonWhitespaceBefore(int index) {
+        int i = index - 1;
+        while (i > 0 && Character.isWhitespace(text.charAt(i)))
+            i--;
+        return i;
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (pos >= text.length() || text.charAt(pos) != c)
+            throw malformed("'" + c + "' expected");
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    private IllegalArgumentException malformed(String problem) {
+        return new IllegalArgumentException("Malformed JSON at " + pos + ": " + problem);
+    }
+}
@@ -0,0 +1,218 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+// Appends UTF-8 JSON to a growable byte array that is reused between messages. Output follows
+// Jackson's defaults: no whitespace, control characters escaped and dates written as arrays.
+public final class JsonWriter {
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int size;
+    private int depth;
+    private long needsComma;
+
+    public JsonWriter(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    public static byte[] name(String name) {
+        return ('"' + name + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public JsonWriter reset() {
+        size = 0;
+        depth = 0;
+        needsComma = 0;
+        return this;
+    }
+
+    public byte[] buffer() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    public JsonWriter field(byte[] name) {
+        separate();
+        put(name);
+        return this;
+    }
+
+    // Must precede every value written inside an array.
+    public JsonWriter element() {
+        separate();
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        put(NULL);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        if (value == Long.MIN_VALUE) {
+            put(MIN_LONG);
+            return this;
+        }
+        ensure(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+            digits++;
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    public JsonWriter value(Enum<?> value) {
+        return value == null ? nullValue() : value(value.name());
+    }
+
+    public JsonWriter value(String value) {
+        if (value == null)
+            return nullValue();
+        ensure(value.length() * 3 + 2);
+        bytes[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\')
+                    bytes[size++] = (byte) c;
+                else
+                    escape(c);
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | (c >> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[size++] = '?';
+            } else {
+                bytes[size++] = (byte) (0xE0 | (c >> 12));
+                bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        bytes[size++] = '"';
+        return this;
+    }
+
+    // Same array form as LocalDateTimeSerializer: seconds and nanos are left out while they are zero.
+    public JsonWriter value(LocalDateTime time) {
+        if (time == null)
+            return nullValue();
+        ensure(1);
+        bytes[size++] = '[';
+        value(time.getYear()).comma().value(time.getMonthValue()).comma().value(time.getDayOfMonth())
+                .comma().value(time.getHour()).comma().value(time.getMinute());
+        if (time.getSecond() > 0 || time.getNano() > 0) {
+            comma().value(time.getSecond());
+            if (time.getNano() > 0)
+                comma().value(time.getNano());
+        }
+        ensure(1);
+        bytes[size++] = ']';
+        return this;
+    }
+
+    private JsonWriter comma() {
+        ensure(1);
+        bytes[size++] = ',';
+        return this;
+    }
+
+    private void escape(char c) {
+        ensure(6);
+        bytes[size++] = '\\';
+        switch (c) {
+            case '"' -> bytes[size++] = '"';
+            case '\\' -> bytes[size++] = '\\';
+            case '\b' -> bytes[size++] = 'b';
+            case '\t' -> bytes[size++] = 't';
+            case '\n' -> bytes[size++] = 'n';
+            case '\f' -> bytes[size++] = 'f';
+            case '\r' -> bytes[size++] = 'r';
+            default -> {
+                bytes[size++] = 'u';
+                bytes[size++] = '0';
+                bytes[size++] = '0';
+                bytes[size++] = HEX[c >> 4];
+                bytes[size++] = HEX[c & 0xF];
+            }
+        }
+    }
+
+    private JsonWriter open(char bracket) {
+        ensure(1);
+        bytes[size++] = (byte) bracket;
+        depth++;
+        needsComma &= ~(1L << depth);
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        ensure(1);
+        bytes[size++] = (byte) bracket;
+        depth--;
+        return this;
+    }
+
+    private void separate() {
+        long bit = 1L << depth;
+        if ((needsComma & bit) != 0) {
+            ensure(1);
+            bytes[size++] = ',';
+        } else {
+            needsComma |= bit;
+        }
+    }
+
+    private void put(byte[] raw) {
+        ensure(raw.length);
+        System.arraycopy(raw, 0, bytes, size, raw.length);
+        size += raw.length;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+}
@@ -0,0 +1,130 @@
+package ir.ramtung.tinyme.messaging.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Encoding of the field types shared by all binary message layouts. Buffers are little-endian.
+final class WireTypes {
+    static final int ISIN_LENGTH = 12;
+    static final int ISIN_SIZE = 1 + ISIN_LENGTH;
+    static final int TIME_SIZE = 8 + 4;
+    static final byte NULL_LENGTH = (byte) 0xFF;
+    static final byte NULL_ORDINAL = (byte) 0xFF;
+    private static final long NULL_SECONDS = Long.MIN_VALUE;
+
+    private WireTypes() {
+    }
+
+    static void putIsin(ByteBuffer buffer, int offset, String isin) {
+        if (isin == null) {
+            buffer.put(offset, NULL_LENGTH);
+            for (int i = 0; i < ISIN_LENGTH; i++)
+                buffer.put(offset + 1 + i, (byte) 0);
+            return;
+        }
+        int length = isin.length();
+        if (length > ISIN_LENGTH)
+            throw new IllegalArgumentException("ISIN longer than " + ISIN_LENGTH + " characters: " + isin);
+        buffer.put(offset, (byte) length);
+        for (int i = 0; i < ISIN_LENGTH; i++)
+            buffer.put(offset + 1 + i, i < length ? (byte) isin.charAt(i) : 0);
+    }
+
+    static String getIsin(ByteBuffer buffer, int offset) {
+        byte length = buffer.get(offset);
+        if (length == NULL_LENGTH)
+            return null;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) (buffer.get(offset + 1 + i) & 0xFF);
+        return new String(chars);
+    }
+
+    static boolean isinEquals(ByteBuffer buffer, int offset, String isin) {
+        byte length = buffer.get(offset);
+        if (length == NULL_LENGTH || isin == null)
+            return length == NULL_LENGTH && isin == null;
+        if (length != isin.length())
+            return false;
+        for (int i = 0; i < length; i++) {
+            if ((buffer.get(offset + 1 + i) & 0xFF) != isin.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    static void putTime(ByteBuffer buffer, int offset, LocalDateTime time) {
+        if (time == null) {
+            buffer.putLong(offset, NULL_SECONDS);
+            buffer.putInt(offset + 8, 0);
+            return;
+        }
+        buffer.putLong(offset, time.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(offset + 8, time.getNano());
+    }
+
+    static LocalDateTime getTime(ByteBuffer buffer, int offset) {
+        long seconds = buffer.getLong(offset);
+        if (seconds == NULL_SECONDS)
+            return null;
+        return LocalDateTime.ofEpochSecond(seconds, buffer.getInt(offset + 8), ZoneOffset.UTC);
+    }
+
+    static <E extends Enum<E>> void putEnum(ByteBuffer buffer, int offset, E value) {
+        buffer.put(offset, value == null ? NULL_ORDINAL : (byte) value.ordinal());
+    }
+
+    static <E extends Enum<E>> E getEnum(ByteBuffer buffer, int offset, E[] values) {
+        byte ordinal = buffer.get(offset);
+        return ordinal == NULL_ORDINAL ? null : values[ordinal];
+    }
+
+    // Relative variants, used by the variable-length parts of a message.
+
+    static void putIsin(ByteBuffer buffer, String isin) {
+        int offset = buffer.position();
+        BinaryCodec.skip(buffer, ISIN_SIZE);
+        putIsin(buffer, offset, isin);
+    }
+
+    static String getIsin(ByteBuffer buffer) {
+        String isin = getIsin(buffer, buffer.position());
+        buffer.position(buffer.position() + ISIN_SIZE);
+        return isin;
+    }
+
+    static void putTime(ByteBuffer buffer, LocalDateTime time) {
+        int offset = buffer.position();
+        BinaryCodec.skip(buffer, TIME_SIZE);
+        putTime(buffer, offset, time);
+    }
+
+    static LocalDateTime getTime(ByteBuffer buffer) {
+        LocalDateTime time = getTime(buffer, buffer.position());
+        buffer.position(buffer.position() + TIME_SIZE);
+        return time;
+    }
+
+    static <E extends Enum<E>> void putEnum(ByteBuffer buffer, E value) {
+        buffer.put(value == null ? NULL_ORDINAL : (byte) value.ordinal());
+    }
+
+    static <E extends Enum<E>> E getEnum(ByteBuffer buffer, E[] values) {
+        byte ordinal = buffer.get();
+        return ordinal == NULL_ORDINAL ? null : values[ordinal];
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
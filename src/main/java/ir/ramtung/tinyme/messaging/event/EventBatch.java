@@ -0,0 +1,26 @@
+package ir.ramtung.tinyme.messaging.event;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// All events produced while handling one inbound request, sent as a single message. Each
+// contained event carries its class name in "_type", like the header of a standalone message.
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class EventBatch extends Event {
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, property = "_type")
+    private List<Event> events;
+
+    public EventBatch(LocalDateTime time, List<Event> events) {
+        super(time);
+        this.events = events;
+    }
+}
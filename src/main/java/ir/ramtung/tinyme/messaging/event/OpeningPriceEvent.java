@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 
 @Data
 @EqualsAndHashCode(callSuper = false)
@@ -14,6 +15,12 @@ public class OpeningPriceEvent extends Event {
     private String securityIsin;
     private int openingPrice;
     private int tradableQuantity;
-}
 
+    public OpeningPriceEvent(LocalDateTime time, String securityIsin, int openingPrice, int tradableQuantity) {
+        super(time);
+        this.securityIsin = securityIsin;
+        this.openingPrice = openingPrice;
+        this.tradableQuantity = tradableQuantity;
+    }
+}
 
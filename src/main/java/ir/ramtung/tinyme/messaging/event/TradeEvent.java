@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 
 @Data
 @EqualsAndHashCode(callSuper = false)
@@ -16,6 +17,14 @@ public class TradeEvent extends Event {
     private int quantity;
     private long buyId;
     private long sellId;
-}
 
+    public TradeEvent(LocalDateTime time, String securityIsin, int price, int quantity, long buyId, long sellId) {
+        super(time);
+        this.securityIsin = securityIsin;
+        this.price = price;
+        this.quantity = quantity;
+        this.buyId = buyId;
+        this.sellId = sellId;
+    }
+}
 
@@ -0,0 +1,116 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import ir.ramtung.tinyme.messaging.event.Event;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+import static ir.ramtung.tinyme.messaging.journal.EventJournalFormat.*;
+import static java.nio.file.StandardOpenOption.*;
+
+// Outbound events made durable before they are sent, when publishing.mode is DURABLE. The event
+// sender hands over a whole batch at a time; it is written with one write and made durable with one
+// force, however many requests its events came from. The journal is opened on the first append.
+@Component
+public class EventJournal {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path directory;
+    private final long segmentSize;
+    private final CRC32C checksum = new CRC32C();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel segment;
+    private long nextSequence = -1;
+    private long forces;
+
+    public EventJournal(@Value("${eventJournal.directory:events}") String directory,
+                        @Value("${eventJournal.segmentSize:67108864}") long segmentSize) {
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSize;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    // Returns the sequence number given to the last event of the batch.
+    public synchronized long append(List<? extends Event> events) {
+        try {
+            if (nextSequence < 0)
+                nextSequence = EventJournalReader.read(directory, record -> {}) + 1;
+            if (segment == null || segment.position() >= segmentSize)
+                openSegment();
+            buffer.clear();
+            for (Event event : events)
+                encode(event);
+            buffer.flip();
+            while (buffer.hasRemaining())
+                segment.write(buffer);
+            segment.force(false);
+            forces++;
+            return nextSequence - 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void encode(Event event) {
+        while (true) {
+            int start = buffer.position();
+            try {
+                BinaryCodec.skip(buffer, RECORD_HEADER_SIZE);
+                BinaryCodec.encode(event, buffer);
+                int length = buffer.position() - start - RECORD_HEADER_SIZE;
+                checksum.reset();
+                checksum.update(buffer.slice(start + RECORD_HEADER_SIZE, length));
+                buffer.putInt(start + LENGTH, length)
+                        .putInt(start + CHECKSUM, (int) checksum.getValue())
+                        .putLong(start + SEQUENCE, nextSequence++);
+                return;
+            } catch (BufferOverflowException e) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip().limit(start);
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        if (segment != null)
+            segment.close();
+        Files.createDirectories(directory);
+        // a segment by this name holds no complete record, or nextSequence would be past it
+        segment = FileChannel.open(directory.resolve(segmentName(nextSequence)), CREATE, TRUNCATE_EXISTING, WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).flip();
+        while (header.hasRemaining())
+            segment.write(header);
+    }
+
+    // How many times a batch was forced to disk.
+    public synchronized long forces() {
+        return forces;
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            segment.close();
+            segment = null;
+            log.info("Event journal closed at sequence " + (nextSequence - 1));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+// Layout of event journal segments: a header followed by records, each a fixed header and a
+// BinaryCodec payload, like request journal segments. A segment is named after the sequence number
+// of its first record; a new one is started every time the journal is opened, so nothing is ever
+// appended after the torn tail a crash may have left.
+final class EventJournalFormat {
+    static final int MAGIC = 0x4A455654;
+    static final short VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 4 + 2 + 2;
+
+    static final int LENGTH = 0;
+    static final int CHECKSUM = LENGTH + 4;
+    static final int SEQUENCE = CHECKSUM + 4;
+    static final int RECORD_HEADER_SIZE = SEQUENCE + 8;
+
+    static final String FILE_PREFIX = "events-";
+    static final String FILE_SUFFIX = ".log";
+
+    private EventJournalFormat() {
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", FILE_PREFIX, firstSequence, FILE_SUFFIX);
+    }
+
+    static long firstSequenceOf(String segmentName) {
+        return Long.parseLong(segmentName.substring(FILE_PREFIX.length(), segmentName.length() - FILE_SUFFIX.length()));
+    }
+}
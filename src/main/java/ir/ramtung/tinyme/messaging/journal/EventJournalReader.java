@@ -0,0 +1,68 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static ir.ramtung.tinyme.messaging.journal.EventJournalFormat.*;
+
+// Reads event journal segments in order. Each segment is read up to its first incomplete record,
+// which only the last write before a crash can leave.
+public class EventJournalReader {
+    private EventJournalReader() {
+    }
+
+    public static List<Path> segmentsIn(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    // Returns the sequence number of the last record read, or -1 for an empty journal.
+    public static long read(Path directory, Consumer<JournalRecord> consumer) throws IOException {
+        long last = -1;
+        for (Path segment : segmentsIn(directory))
+            last = Math.max(last, readSegment(segment, consumer));
+        return last;
+    }
+
+    private static long readSegment(Path segmentFile, Consumer<JournalRecord> consumer) throws IOException {
+        ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(segmentFile)).order(ByteOrder.LITTLE_ENDIAN);
+        if (segment.capacity() < SEGMENT_HEADER_SIZE || segment.getInt(0) != MAGIC || segment.getShort(4) != VERSION)
+            throw new IOException("Not an event journal segment of a supported version: " + segmentFile);
+        CRC32C checksum = new CRC32C();
+        long last = -1;
+        long expectedSequence = firstSequenceOf(segmentFile.getFileName().toString());
+        int position = SEGMENT_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= segment.capacity()) {
+            int length = segment.getInt(position + LENGTH);
+            int payload = position + RECORD_HEADER_SIZE;
+            if (length <= 0 || payload + length > segment.capacity())
+                break;
+            checksum.reset();
+            checksum.update(segment.slice(payload, length));
+            long sequence = segment.getLong(position + SEQUENCE);
+            if ((int) checksum.getValue() != segment.getInt(position + CHECKSUM) || sequence != expectedSequence)
+                break;
+            segment.position(payload);
+            consumer.accept(new JournalRecord(sequence, BinaryCodec.decode(segment)));
+            last = sequence;
+            expectedSequence++;
+            position = payload + length;
+        }
+        return last;
+    }
+}
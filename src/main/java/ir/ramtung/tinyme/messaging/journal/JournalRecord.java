@@ -0,0 +1,4 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+public record JournalRecord(long sequence, Object request) {
+}
@@ -0,0 +1,120 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+import ir.ramtung.tinyme.domain.service.OpeningPriceConflator;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.request.BatchOrderRq;
+import ir.ramtung.tinyme.messaging.request.BulkChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.snapshot.StateSnapshotLoader;
+import ir.ramtung.tinyme.repository.trade.TradeStore;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Brings the engine back to where it stopped by handing the journaled requests to OrderHandler again,
+// on top of the state DataLoader or the latest snapshot loaded. Only requests after that state are
+// replayed. Events were already published the first time, so they are muted meanwhile; TradeStore
+// records only the trades of replayed requests that it had not sealed before the restart.
+@Component
+public class JournalReplayer {
+    private static final long PROGRESS_INTERVAL = 1_000_000;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RequestJournal requestJournal;
+    private final OrderHandler orderHandler;
+    private final EventPublisher eventPublisher;
+    private final OpeningPriceConflator openingPriceConflator;
+    private final StateSnapshotLoader stateSnapshotLoader;
+    private final TradeStore tradeStore;
+    private long replayedRequests;
+    private long replayNanos;
+
+    public JournalReplayer(RequestJournal requestJournal, OrderHandler orderHandler, EventPublisher eventPublisher,
+                           OpeningPriceConflator openingPriceConflator, StateSnapshotLoader stateSnapshotLoader, TradeStore tradeStore) {
+        this.requestJournal = requestJournal;
+        this.orderHandler = orderHandler;
+        this.eventPublisher = eventPublisher;
+        this.openingPriceConflator = openingPriceConflator;
+        this.stateSnapshotLoader = stateSnapshotLoader;
+        this.tradeStore = tradeStore;
+    }
+
+    @PostConstruct
+    public void replay() throws IOException {
+        if (!requestJournal.isEnabled())
+            return;
+        long start = System.nanoTime();
+        long replayedBefore = replayedRequests;
+        // a checkpoint taken after loading means the current state has been saved since
+        long[] expectedSequence = {Math.max(stateSnapshotLoader.baseSequence(), requestJournal.checkpointSequence()) + 1};
+        eventPublisher.mute();
+        tradeStore.startReplay();
+        try {
+            requestJournal.read(record -> {
+                if (record.sequence() < expectedSequence[0])
+                    return;
+                if (record.sequence() > expectedSequence[0])
+                    throw new IllegalStateException("Journal resumes at sequence " + record.sequence() + " but the loaded state ends before " + expectedSequence[0]);
+                expectedSequence[0]++;
+                tradeStore.beginRequest(record.sequence());
+                apply(record.request());
+                if (++replayedRequests % PROGRESS_INTERVAL == 0)
+                    log.info("Replayed journal up to sequence " + record.sequence());
+            });
+        } finally {
+            tradeStore.finishReplay();
+            eventPublisher.unmute();
+        }
+        long elapsed = System.nanoTime() - start;
+        replayNanos += elapsed;
+        long replayed = replayedRequests - replayedBefore;
+        if (replayed > 0)
+            log.info(String.format("Replayed %d journaled requests in %d ms (%.0f requests/s)",
+                    replayed, elapsed / 1_000_000, replayed * 1e9 / elapsed));
+    }
+
+    // Hands one request to OrderHandler the way RequestDispatcher would, minus journaling and batching.
+    // A request that failed when it was first handled fails again here; like the live path, it is
+    // logged and the next one is applied, so one bad request never stops a restart or a replay.
+    public void apply(Object request) {
+        try {
+            handle(request);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Failed to replay " + request.getClass().getSimpleName(), e);
+        }
+        openingPriceConflator.endOfBatch();
+    }
+
+    private void handle(Object request) {
+        if (request instanceof EnterOrderRq enterOrderRq)
+            orderHandler.handleEnterOrder(enterOrderRq);
+        else if (request instanceof DeleteOrderRq deleteOrderRq)
+            orderHandler.handleDeleteOrder(deleteOrderRq);
+        else if (request instanceof ChangeMatchingStateRq changeMatchingStateRq)
+            orderHandler.handleChangeMatchingState(changeMatchingStateRq);
+        else if (request instanceof BulkChangeMatchingStateRq bulkChangeMatchingStateRq)
+            orderHandler.handleBulkChangeMatchingState(bulkChangeMatchingStateRq);
+        else if (request instanceof BatchOrderRq batchOrderRq)
+            orderHandler.handleBatchOrder(batchOrderRq);
+        else
+            throw new IllegalStateException("Cannot replay " + request.getClass().getName());
+    }
+
+    public long replayedRequests() {
+        return replayedRequests;
+    }
+
+    public long replayMillis() {
+        return replayNanos / 1_000_000;
+    }
+
+    public double replayRate() {
+        return replayNanos == 0 ? 0 : replayedRequests * 1e9 / replayNanos;
+    }
+}
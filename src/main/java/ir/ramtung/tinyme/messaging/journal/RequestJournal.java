@@ -0,0 +1,267 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+import static ir.ramtung.tinyme.messaging.journal.RequestJournalFormat.*;
+
+// Write-ahead journal of the requests handed to the engine since the last saved state. Each request
+// is appended, with the next sequence number, to a memory-mapped segment on the calling thread before
+// it is handled; the sync policy decides when the segments are forced to disk. JournalReplayer
+// applies the journal on startup. A checkpoint discards it once the state has been saved and records
+// the sequence number the saved state reflects; a state snapshot only truncates the segments it covers.
+@Component
+public class RequestJournal {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final SyncPolicy syncPolicy;
+    private final long groupCommitMillis;
+    private final CRC32C checksum = new CRC32C();
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private long checkpointSequence = -1;
+    private volatile long durableSequence;
+    private Thread committer;
+    private volatile boolean closed;
+
+    public RequestJournal(@Value("${journal.enabled:false}") boolean enabled,
+                          @Value("${journal.directory:journal}") String directory,
+                          @Value("${journal.segmentSize:67108864}") int segmentSize,
+                          @Value("${journal.syncPolicy:GROUP}") SyncPolicy syncPolicy,
+                          @Value("${journal.groupCommitMillis:2}") long groupCommitMillis) throws IOException {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+        this.groupCommitMillis = groupCommitMillis;
+        if (!enabled)
+            return;
+        Files.createDirectories(this.directory);
+        Path checkpointFile = this.directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpointFile))
+            checkpointSequence = Long.parseLong(Files.readString(checkpointFile).trim());
+        nextSequence = Math.max(RequestJournalReader.recover(this.directory), checkpointSequence) + 1;
+        durableSequence = nextSequence - 1;
+        if (syncPolicy == SyncPolicy.GROUP) {
+            committer = new Thread(this::commitGroups, "journal-committer");
+            committer.setDaemon(true);
+            committer.start();
+        }
+    }
+
+    public static RequestJournal disabled() {
+        try {
+            return new RequestJournal(false, "", 0, SyncPolicy.NONE, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    // Returns the sequence number given to the request, or -1 when journaling is disabled. A request
+    // the binary codec cannot encode is not journaled and leaves the segment as it was; append then
+    // throws IllegalArgumentException.
+    public synchronized long append(Object request) {
+        if (!enabled)
+            return -1;
+        if (closed)
+            throw new IllegalStateException("Request journal is closed");
+        long sequence = nextSequence;
+        write(request, sequence);
+        nextSequence++;
+        if (syncPolicy == SyncPolicy.EVERY_REQUEST) {
+            segment.force();
+            durableSequence = sequence;
+        }
+        return sequence;
+    }
+
+    private void write(Object request, long sequence) {
+        boolean freshSegment = false;
+        while (true) {
+            if (segment == null) {
+                openSegment(sequence);
+                freshSegment = true;
+            }
+            int start = segment.position();
+            try {
+                BinaryCodec.skip(segment, RECORD_HEADER_SIZE);
+                BinaryCodec.encode(request, segment);
+                int length = segment.position() - start - RECORD_HEADER_SIZE;
+                checksum.reset();
+                checksum.update(segment.slice(start + RECORD_HEADER_SIZE, length));
+                segment.putInt(start + CHECKSUM, (int) checksum.getValue());
+                segment.putLong(start + SEQUENCE, sequence);
+                segment.putInt(start + LENGTH, length);
+                return;
+            } catch (BufferOverflowException e) {
+                if (freshSegment) {
+                    segment.position(start);
+                    throw new IllegalArgumentException("Request does not fit in a journal segment of " + segmentSize + " bytes");
+                }
+                if (start + 4 <= segment.capacity())
+                    segment.putInt(start + LENGTH, ROLLED_OVER);
+                closeSegment();
+            } catch (RuntimeException e) {
+                for (int i = start; i < segment.position(); i++)
+                    segment.put(i, (byte) 0);
+                segment.position(start);
+                throw new IllegalArgumentException("Request cannot be journaled: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void openSegment(long firstSequence) {
+        try {
+            Path path = directory.resolve(segmentName(firstSequence));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segment.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeSegment() {
+        segment.force();
+        durableSequence = nextSequence - 1;
+        segment = null;
+    }
+
+    // One force covers every request appended since the previous one.
+    private void commitGroups() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(groupCommitMillis));
+            forceAppended();
+        }
+    }
+
+    // Makes the requests up to the given sequence number durable now rather than at the next group
+    // commit, for whoever must not act on a request before it would survive a crash.
+    public void forceThrough(long sequence) {
+        if (enabled && sequence > durableSequence)
+            forceAppended();
+    }
+
+    private void forceAppended() {
+        MappedByteBuffer toForce;
+        long lastAppended;
+        synchronized (this) {
+            lastAppended = nextSequence - 1;
+            toForce = segment;
+        }
+        if (toForce == null || lastAppended == durableSequence)
+            return;
+        toForce.force();
+        synchronized (this) {
+            if (lastAppended > durableSequence)
+                durableSequence = lastAppended;
+        }
+    }
+
+    // The last sequence number known to be on disk.
+    public long durableSequence() {
+        return durableSequence;
+    }
+
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    public void read(Consumer<JournalRecord> consumer) throws IOException {
+        if (enabled)
+            RequestJournalReader.read(directory, consumer);
+    }
+
+    // The sequence number of the last request reflected in the saved state, or -1.
+    public synchronized long checkpointSequence() {
+        return checkpointSequence;
+    }
+
+    // The journaled requests are part of the saved state now.
+    public synchronized void checkpoint() throws IOException {
+        if (!enabled)
+            return;
+        if (segment != null)
+            closeSegment();
+        writeCheckpoint(nextSequence - 1);
+        for (Path path : RequestJournalReader.segmentsIn(directory))
+            Files.delete(path);
+        log.info("Request journal checkpointed at sequence " + checkpointSequence);
+    }
+
+    // The state saved while requests keep coming reflects them up to the given sequence number; only
+    // the segments holding nothing newer are deleted.
+    public synchronized void checkpointThrough(long sequence) throws IOException {
+        if (!enabled || sequence <= checkpointSequence)
+            return;
+        writeCheckpoint(sequence);
+        truncateThrough(sequence);
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        Path written = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(written, Long.toString(sequence));
+        Files.move(written, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSequence = sequence;
+    }
+
+    // Deletes the segments holding only requests up to the given sequence number. The segment being
+    // written is never deleted.
+    public synchronized void truncateThrough(long sequence) throws IOException {
+        if (!enabled)
+            return;
+        List<Path> segments = RequestJournalReader.segmentsIn(directory);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequenceOf(segments.get(i + 1).getFileName().toString()) > sequence + 1)
+                break;
+            Files.delete(segments.get(i));
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled || closed)
+            return;
+        closed = true;
+        if (committer != null) {
+            LockSupport.unpark(committer);
+            committer.join();
+        }
+        synchronized (this) {
+            if (segment != null)
+                closeSegment();
+        }
+    }
+}
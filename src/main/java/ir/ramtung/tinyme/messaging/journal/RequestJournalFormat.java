@@ -0,0 +1,34 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+// Layout of request journal segments. A segment is named after the sequence number of its first
+// record and holds a header followed by records, each a fixed header and a BinaryCodec payload.
+// The length is written last, so a record cut short by a crash reads as the end of the segment;
+// the checksum catches pages that an OS crash left half written.
+final class RequestJournalFormat {
+    static final int MAGIC = 0x4A4C4157;
+    static final short VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 4 + 2 + 2;
+
+    static final int LENGTH = 0;
+    static final int CHECKSUM = LENGTH + 4;
+    static final int SEQUENCE = CHECKSUM + 4;
+    static final int RECORD_HEADER_SIZE = SEQUENCE + 8;
+
+    static final int END_OF_DATA = 0;
+    static final int ROLLED_OVER = -1;
+
+    static final String FILE_PREFIX = "requests-";
+    static final String FILE_SUFFIX = ".wal";
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    private RequestJournalFormat() {
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", FILE_PREFIX, firstSequence, FILE_SUFFIX);
+    }
+
+    static long firstSequenceOf(String segmentName) {
+        return Long.parseLong(segmentName.substring(FILE_PREFIX.length(), segmentName.length() - FILE_SUFFIX.length()));
+    }
+}
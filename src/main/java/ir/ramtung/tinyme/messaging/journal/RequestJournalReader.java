@@ -0,0 +1,106 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static ir.ramtung.tinyme.messaging.journal.RequestJournalFormat.*;
+
+// Reads journal segments in sequence order. Reading stops at the first record that was not
+// completely written or whose sequence breaks the chain, since nothing after it can be trusted.
+public class RequestJournalReader {
+    private static final Logger log = Logger.getLogger(RequestJournalReader.class.getName());
+
+    private RequestJournalReader() {
+    }
+
+    public static List<Path> segmentsIn(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    // Returns the sequence number of the last record read, or -1 for an empty journal.
+    public static long read(Path directory, Consumer<JournalRecord> consumer) throws IOException {
+        long last = -1;
+        for (Path segment : segmentsIn(directory)) {
+            long first = firstSequenceOf(segment.getFileName().toString());
+            if (last >= 0 && first != last + 1) {
+                log.warning("Journal segment " + segment + " does not follow sequence " + last + "; ignoring the rest");
+                break;
+            }
+            long lastInSegment = readSegment(segment, first, consumer);
+            if (lastInSegment < 0)
+                break;
+            last = lastInSegment;
+        }
+        return last;
+    }
+
+    // Finds where the readable journal ends so appending can resume right after it. Segments left
+    // without a complete record are removed; segments beyond a break are set aside for inspection.
+    static long recover(Path directory) throws IOException {
+        long last = read(directory, record -> {});
+        for (Path segment : segmentsIn(directory)) {
+            if (firstSequenceOf(segment.getFileName().toString()) <= last)
+                continue;
+            if (readSegment(segment, firstSequenceOf(segment.getFileName().toString()), record -> {}) < 0) {
+                Files.delete(segment);
+            } else {
+                log.warning("Setting aside journal segment " + segment + " found after the end of the journal");
+                Files.move(segment, segment.resolveSibling(segment.getFileName() + ".damaged"));
+            }
+        }
+        return last;
+    }
+
+    private static long readSegment(Path segmentFile, long expectedSequence, Consumer<JournalRecord> consumer) throws IOException {
+        ByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(segmentFile)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (segment.capacity() < SEGMENT_HEADER_SIZE || segment.getInt(0) != MAGIC)
+            throw new IOException("Not a request journal segment: " + segmentFile);
+        if (segment.getShort(4) != VERSION)
+            throw new IOException("Unsupported request journal version " + segment.getShort(4) + " in " + segmentFile);
+        CRC32C checksum = new CRC32C();
+        long last = -1;
+        int position = SEGMENT_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= segment.capacity()) {
+            int length = segment.getInt(position + LENGTH);
+            if (length == END_OF_DATA || length == ROLLED_OVER)
+                break;
+            int payload = position + RECORD_HEADER_SIZE;
+            if (length < 0 || payload + length > segment.capacity()) {
+                log.warning("Corrupt record length at " + position + " in " + segmentFile);
+                break;
+            }
+            checksum.reset();
+            checksum.update(segment.slice(payload, length));
+            long sequence = segment.getLong(position + SEQUENCE);
+            if ((int) checksum.getValue() != segment.getInt(position + CHECKSUM) || sequence != expectedSequence) {
+                log.warning("Journal record " + expectedSequence + " in " + segmentFile + " was not completely written");
+                break;
+            }
+            segment.position(payload);
+            consumer.accept(new JournalRecord(sequence, BinaryCodec.decode(segment)));
+            last = sequence;
+            expectedSequence++;
+            position = payload + length;
+        }
+        return last;
+    }
+}
@@ -0,0 +1,11 @@
+package ir.ramtung.tinyme.messaging.journal;
+
+// When appended requests are forced to disk. Mapped pages belong to the operating system, so an
+// engine crash loses nothing under any policy; the policy decides what an OS crash or power loss
+// can take. NONE leaves write-back to the OS, GROUP forces everything appended since the last
+// commit every journal.groupCommitMillis, and EVERY_REQUEST forces each request before it is handled.
+public enum SyncPolicy {
+    NONE,
+    GROUP,
+    EVERY_REQUEST
+}
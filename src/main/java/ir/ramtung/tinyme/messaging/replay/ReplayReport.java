@@ -0,0 +1,38 @@
+package ir.ramtung.tinyme.messaging.replay;
+
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+// What a replay did: how fast the requests went through, the events they produced and the state of
+// each security with orders left or a trade price once they were all handled. engineNanos leaves out
+// the time spent reading and decoding the log.
+public record ReplayReport(long requests, long elapsedNanos, long engineNanos, Map<String, Long> events,
+                           long trades, long tradedQuantity, long tradedValue, List<SecurityState> securities) {
+
+    public record SecurityState(String isin, MatchingState matchingState, int lastTradePrice, int bestBid, int bestAsk,
+                                int buyOrders, int sellOrders, int inactiveOrders) {
+    }
+
+    public double requestsPerSecond() {
+        return elapsedNanos == 0 ? 0 : requests * 1e9 / elapsedNanos;
+    }
+
+    public double engineRequestsPerSecond() {
+        return engineNanos == 0 ? 0 : requests * 1e9 / engineNanos;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Replayed %d requests in %d ms: %.0f requests/s overall, %.0f requests/s in the engine%n",
+                requests, elapsedNanos / 1_000_000, requestsPerSecond(), engineRequestsPerSecond());
+        out.printf("Trades: %d, quantity %d, value %d%n", trades, tradedQuantity, tradedValue);
+        out.println("Events:");
+        events.forEach((type, count) -> out.printf("  %-28s %d%n", type, count));
+        out.println("Securities (isin, state, last trade price, best bid, best ask, buy orders, sell orders, inactive orders):");
+        for (SecurityState security : securities)
+            out.printf("  %s %s %d %d %d %d %d %d%n", security.isin(), security.matchingState(), security.lastTradePrice(),
+                    security.bestBid(), security.bestAsk(), security.buyOrders(), security.sellOrders(), security.inactiveOrders());
+    }
+}
@@ -0,0 +1,158 @@
+package ir.ramtung.tinyme.messaging.replay;
+
+import ir.ramtung.tinyme.TinyMeApplication;
+import ir.ramtung.tinyme.domain.entity.Order;
+import ir.ramtung.tinyme.domain.entity.OrderBook;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.journal.JournalReplayer;
+import ir.ramtung.tinyme.messaging.transport.ReplayEventSink;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import ir.ramtung.tinyme.repository.persistence.BinaryStateFile;
+import ir.ramtung.tinyme.repository.persistence.CsvStateFiles;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Feeds a recorded request log (see RequestLog) through OrderHandler as fast as the engine can go, for
+// backtesting and offline profiling. The engine runs headless under the replay profile: no JMS, no
+// journal, snapshots, audit or trade files, nothing saved on exit, and events only counted. It starts
+// from a directory of CSV files or a binary state file (the CSV files on the classpath by default)
+// and can write the state the requests left as a binary state file. Any other --property=value is
+// handed to the engine, so a rule change can be replayed against the same flow.
+public class ReplayTool {
+    public static final String PROFILE = "replay";
+    private static final long PROGRESS_INTERVAL = 1_000_000;
+    private static final Map<String, String> HEADLESS = headless();
+
+    private static final Logger log = Logger.getLogger(ReplayTool.class.getName());
+
+    private static Map<String, String> headless() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("transport.type", "REPLAY");
+        settings.put("journal.enabled", "false");
+        settings.put("snapshot.enabled", "false");
+        settings.put("audit.enabled", "false");
+        settings.put("trades.enabled", "false");
+        settings.put("replication.role", "NONE");
+        settings.put("persistence.incremental.enabled", "false");
+        settings.put("publishing.mode", "SYNC");
+        settings.put("spring.main.banner-mode", "off");
+        return settings;
+    }
+
+    public static ReplayReport run(Path requests, Path state, Path output, String... properties) throws Exception {
+        Map<String, String> settings = new LinkedHashMap<>(HEADLESS);
+        for (String property : properties) {
+            int equals = property.indexOf('=');
+            if (!property.startsWith("--") || equals < 0)
+                throw new IllegalArgumentException("Expected --property=value, got " + property);
+            settings.put(property.substring(2, equals), property.substring(equals + 1));
+        }
+        String[] args = settings.entrySet().stream().map(setting -> "--" + setting.getKey() + "=" + setting.getValue()).toArray(String[]::new);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(TinyMeApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(PROFILE)
+                .logStartupInfo(false)
+                .run(args);
+        BrokerRepository brokerRepository = context.getBean(BrokerRepository.class);
+        ShareholderRepository shareholderRepository = context.getBean(ShareholderRepository.class);
+        SecurityRepository securityRepository = context.getBean(SecurityRepository.class);
+        ReplayEventSink sink = context.getBean(ReplayEventSink.class);
+        long[] handled = {0};
+        long[] engineNanos = {0};
+        long elapsed;
+        try {
+            IsinPartition partition = context.getBean(IsinPartition.class);
+            if (state != null && Files.isRegularFile(state))
+                new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository).read(state, partition, false);
+            else
+                new CsvStateFiles(brokerRepository, shareholderRepository, securityRepository, partition)
+                        .load(state != null ? state.toFile() : context.getResource("classpath:persistence").getFile());
+
+            JournalReplayer replayer = context.getBean(JournalReplayer.class);
+            EventPublisher eventPublisher = context.getBean(EventPublisher.class);
+            long start = System.nanoTime();
+            RequestLog.read(requests, request -> {
+                long began = System.nanoTime();
+                eventPublisher.beginBatch();
+                try {
+                    replayer.apply(request);
+                } finally {
+                    eventPublisher.endBatch();
+                }
+                engineNanos[0] += System.nanoTime() - began;
+                if (++handled[0] % PROGRESS_INTERVAL == 0)
+                    log.info("Replayed " + handled[0] + " requests");
+            });
+            elapsed = System.nanoTime() - start;
+        } finally {
+            // flushes the events still queued when publishing asynchronously
+            context.close();
+        }
+
+        if (output != null)
+            new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository).write(output);
+        return new ReplayReport(handled[0], elapsed, engineNanos[0], sink.eventCounts(), sink.trades(), sink.tradedQuantity(),
+                sink.tradedValue(), securityStates(securityRepository));
+    }
+
+    private static List<ReplayReport.SecurityState> securityStates(SecurityRepository securityRepository) {
+        List<ReplayReport.SecurityState> states = new ArrayList<>();
+        for (Security security : securityRepository.allSecurities()) {
+            OrderBook orderBook = security.getOrderBook();
+            int inactiveOrders = security.getInactiveOrderBook().getBuyQueue().size() + security.getInactiveOrderBook().getSellQueue().size();
+            if (orderBook.getBuyQueue().isEmpty() && orderBook.getSellQueue().isEmpty() && inactiveOrders == 0
+                    && security.getLastTradePrice() == Security.EMPTY_TRADE_PRICE)
+                continue;
+            states.add(new ReplayReport.SecurityState(security.getIsin(), security.getMatchingState(), security.getLastTradePrice(),
+                    priceOfFirst(orderBook.getBuyQueue()), priceOfFirst(orderBook.getSellQueue()),
+                    orderBook.getBuyQueue().size(), orderBook.getSellQueue().size(), inactiveOrders));
+        }
+        return states;
+    }
+
+    private static int priceOfFirst(List<Order> queue) {
+        return queue.isEmpty() ? 0 : queue.get(0).getPrice();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path requests = null;
+        Path state = null;
+        Path output = null;
+        List<String> properties = new ArrayList<>();
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--state="))
+                state = Path.of(arg.substring("--state=".length()));
+            else if (arg.startsWith("--output="))
+                output = Path.of(arg.substring("--output=".length()));
+            else if (arg.startsWith("--"))
+                properties.add(arg);
+            else
+                positional.add(arg);
+        }
+        if (positional.size() == 1)
+            requests = Path.of(positional.get(0));
+        if (requests == null) {
+            System.err.println("usage: ReplayTool <journal directory | JSON lines file> [--state=<CSV directory | state file>]");
+            System.err.println("                  [--output=<state file>] [--<property>=<value> ...]");
+            System.exit(1);
+        }
+        ReplayReport report = run(requests, state, output, properties.toArray(String[]::new));
+        report.print(System.out);
+    }
+}
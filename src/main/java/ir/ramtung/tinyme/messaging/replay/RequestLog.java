@@ -0,0 +1,76 @@
+package ir.ramtung.tinyme.messaging.replay;
+
+import ir.ramtung.tinyme.messaging.codec.JsonCodec;
+import ir.ramtung.tinyme.messaging.codec.JsonReader;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.journal.RequestJournalReader;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// A recorded stream of requests: either a request journal directory, or a file of JSON lines with
+// one request per line, written as on the queue plus its class in "_type" (the full class name the
+// JMS header carries, or the simple one). Blank lines are skipped.
+public final class RequestLog {
+    private static final String REQUEST_PACKAGE = EnterOrderRq.class.getPackageName() + ".";
+
+    private RequestLog() {
+    }
+
+    // Returns the number of requests read.
+    public static long read(Path source, Consumer<Object> consumer) throws IOException {
+        if (Files.isDirectory(source)) {
+            long[] read = {0};
+            RequestJournalReader.read(source, record -> {
+                consumer.accept(record.request());
+                read[0]++;
+            });
+            return read[0];
+        }
+        return readJsonLines(source, consumer);
+    }
+
+    private static long readJsonLines(Path file, Consumer<Object> consumer) throws IOException {
+        JsonReader reader = new JsonReader();
+        long read = 0;
+        int lineNumber = 0;
+        try (BufferedReader lines = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank())
+                    continue;
+                Object request;
+                try {
+                    Class<?> type = typeOf(reader.reset(line));
+                    request = JsonCodec.read(type, reader.reset(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+                consumer.accept(request);
+                read++;
+            }
+        }
+        return read;
+    }
+
+    private static Class<?> typeOf(JsonReader in) {
+        in.beginObject();
+        while (in.hasNextField()) {
+            if (!in.nextName().equals("_type")) {
+                in.skipValue();
+                continue;
+            }
+            String typeId = in.readString();
+            Class<?> type = JsonCodec.classOf(typeId.contains(".") ? typeId : REQUEST_PACKAGE + typeId);
+            if (type == null || Event.class.isAssignableFrom(type))
+                throw new IllegalArgumentException("not a request type: " + typeId);
+            return type;
+        }
+        throw new IllegalArgumentException("request without a _type");
+    }
+}
@@ -0,0 +1,150 @@
+package ir.ramtung.tinyme.messaging.replication;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.logging.Logger;
+
+import static ir.ramtung.tinyme.messaging.replication.ReplicationProtocol.*;
+
+// The follower's end of a replication connection. It hands the leader's requests over in sequence
+// order and keeps the replication lag: how many requests the follower is behind the last sequence
+// number it heard of from the leader, and how long the last request took from the leader's journal
+// to being applied here (leader and follower clocks are assumed to agree).
+public class ReplicationClient {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final String host;
+    private final int port;
+    private final int readTimeoutMillis;
+    private final long statusIntervalMillis;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile long appliedSequence = -1;
+    private volatile long leaderSequence = -1;
+    private volatile long lagMillis;
+    private volatile long lastContactMillis = System.currentTimeMillis();
+    private long lastStatusMillis;
+
+    public interface Applier {
+        void apply(long sequence, Object request);
+    }
+
+    public ReplicationClient(String host, int port, int readTimeoutMillis, long statusIntervalMillis) {
+        this.host = host;
+        this.port = port;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.statusIntervalMillis = statusIntervalMillis;
+    }
+
+    // Connects and applies the leader's requests from nextSequence on until the connection ends,
+    // which is always reported as an exception.
+    public void follow(long nextSequence, Applier applier) throws IOException {
+        if (closed)
+            throw new IOException("Replication client is closed");
+        try (Socket connection = new Socket()) {
+            socket = connection;
+            if (closed)
+                return;
+            connection.connect(new InetSocketAddress(host, port), Math.max(0, readTimeoutMillis));
+            connection.setTcpNoDelay(true);
+            connection.setSoTimeout(Math.max(0, readTimeoutMillis));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(nextSequence);
+            out.flush();
+            lastContactMillis = System.currentTimeMillis();
+            appliedSequence = Math.max(appliedSequence, nextSequence - 1);
+            log.info("Following the leader at " + host + ":" + port + " from sequence " + nextSequence);
+            long expected = nextSequence;
+            while (true) {
+                byte type = in.readByte();
+                lastContactMillis = System.currentTimeMillis();
+                switch (type) {
+                    case RECORD -> {
+                        long sequence = in.readLong();
+                        long leaderMillis = in.readLong();
+                        byte[] payload = new byte[in.readInt()];
+                        in.readFully(payload);
+                        if (sequence != expected)
+                            throw new ReplicationException("Leader sent sequence " + sequence + " when " + expected + " was expected");
+                        applier.apply(sequence, BinaryCodec.decode(ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN)));
+                        expected++;
+                        appliedSequence = sequence;
+                        leaderSequence = Math.max(leaderSequence, sequence);
+                        if (leaderMillis != 0)
+                            lagMillis = Math.max(0, System.currentTimeMillis() - leaderMillis);
+                        if (in.available() == 0) {
+                            out.writeLong(sequence);
+                            out.flush();
+                        }
+                    }
+                    case HEARTBEAT -> {
+                        leaderSequence = in.readLong();
+                        in.readLong();
+                        if (appliedSequence >= leaderSequence)
+                            lagMillis = 0;
+                    }
+                    case ERROR -> throw new ReplicationException(in.readUTF());
+                    default -> throw new IOException("Unknown replication message type " + type);
+                }
+                logStatus();
+            }
+        } catch (EOFException e) {
+            throw new IOException("The leader closed the connection", e);
+        } finally {
+            socket = null;
+        }
+    }
+
+    private void logStatus() {
+        long now = System.currentTimeMillis();
+        if (statusIntervalMillis <= 0 || now - lastStatusMillis < statusIntervalMillis)
+            return;
+        lastStatusMillis = now;
+        log.info(String.format("Replicated through sequence %d of %d (lag %d requests, %d ms)",
+                appliedSequence, leaderSequence, lagRecords(), lagMillis));
+    }
+
+    public long appliedSequence() {
+        return appliedSequence;
+    }
+
+    public long leaderSequence() {
+        return leaderSequence;
+    }
+
+    public long lagRecords() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    public long lastContactMillis() {
+        return lastContactMillis;
+    }
+
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ir.ramtung.tinyme.messaging.replication;
+
+import java.io.IOException;
+
+// The leader and the follower cannot continue from where the follower is, e.g. the requests it
+// needs are no longer in the leader's journal or it is ahead of the leader. Reconnecting won't help.
+public class ReplicationException extends IOException {
+    public ReplicationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,142 @@
+package ir.ramtung.tinyme.messaging.replication;
+
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.transport.TransportType;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Keeps a hot standby: a node started with replication.role=FOLLOWER takes no requests of its own and
+// applies the leader's requests through RequestDispatcher in the leader's sequence order, with events
+// muted, so its state (and its own journal) tracks the leader's. It reconnects after losing the
+// leader, and when replication.failoverTimeoutMillis is set and the leader has not been heard from for
+// that long, or when promote() is called, it starts taking requests and publishing events itself.
+// A follower that diverges from the leader stops following and is never promoted automatically.
+// A connection that stays silent for several heartbeat intervals counts as lost, so a leader host that
+// died without closing it is noticed whether or not failover is configured.
+@Component
+public class ReplicationFollower {
+    private static final int MISSED_HEARTBEATS = 5;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RequestDispatcher requestDispatcher;
+    private final EventPublisher eventPublisher;
+    private final RequestJournal requestJournal;
+    private final ObjectProvider<JmsListenerEndpointRegistry> listenerRegistry;
+    private final TransportType transport;
+    private final long retryMillis;
+    private final long failoverTimeoutMillis;
+    private final ReplicationClient client;
+    private final Thread thread;
+    private volatile boolean following;
+    private volatile boolean failed;
+
+    public ReplicationFollower(RequestDispatcher requestDispatcher, EventPublisher eventPublisher, RequestJournal requestJournal,
+                               ObjectProvider<JmsListenerEndpointRegistry> listenerRegistry,
+                               @Value("${transport.type:JMS}") TransportType transport,
+                               @Value("${replication.role:NONE}") ReplicationRole role,
+                               @Value("${replication.leaderHost:127.0.0.1}") String leaderHost,
+                               @Value("${replication.port:7070}") int leaderPort,
+                               @Value("${replication.heartbeatMillis:100}") long heartbeatMillis,
+                               @Value("${replication.retryMillis:1000}") long retryMillis,
+                               @Value("${replication.failoverTimeoutMillis:0}") long failoverTimeoutMillis,
+                               @Value("${replication.statusIntervalSeconds:10}") long statusIntervalSeconds) {
+        this.requestDispatcher = requestDispatcher;
+        this.eventPublisher = eventPublisher;
+        this.requestJournal = requestJournal;
+        this.listenerRegistry = listenerRegistry;
+        this.transport = transport;
+        this.retryMillis = retryMillis;
+        this.failoverTimeoutMillis = failoverTimeoutMillis;
+        if (role != ReplicationRole.FOLLOWER) {
+            client = null;
+            thread = null;
+            return;
+        }
+        if (!requestJournal.isEnabled())
+            throw new IllegalStateException("A replication follower needs the request journal to keep the leader's sequence numbers");
+        client = new ReplicationClient(leaderHost, leaderPort, (int) (MISSED_HEARTBEATS * Math.max(1, heartbeatMillis)),
+                TimeUnit.SECONDS.toMillis(statusIntervalSeconds));
+        following = true;
+        requestDispatcher.follow();
+        eventPublisher.mute();
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isFollowing() {
+        return following;
+    }
+
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    public ReplicationClient client() {
+        return client;
+    }
+
+    private void run() {
+        while (following) {
+            try {
+                client.follow(requestJournal.lastSequence() + 1, requestDispatcher::replicate);
+            } catch (ReplicationException | RuntimeException e) {
+                if (following) {
+                    log.log(Level.SEVERE, "Replication stopped; this node no longer follows the leader", e);
+                    failed = true;
+                }
+                return;
+            } catch (IOException e) {
+                if (following)
+                    log.info("Lost the leader: " + e.getMessage());
+            }
+            if (!following)
+                return;
+            if (failoverTimeoutMillis > 0 && System.currentTimeMillis() - client.lastContactMillis() >= failoverTimeoutMillis) {
+                log.warning("No word from the leader for " + failoverTimeoutMillis + " ms; taking over");
+                promote();
+                return;
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Stops following and starts handling requests and publishing events on this node.
+    public synchronized void promote() {
+        if (!following || failed)
+            return;
+        following = false;
+        client.close();
+        requestDispatcher.quiesced(() -> {
+            requestDispatcher.lead();
+            eventPublisher.unmute();
+            return null;
+        });
+        if (transport == TransportType.JMS)
+            listenerRegistry.ifAvailable(JmsListenerEndpointRegistry::start);
+        log.info("Promoted to leader at sequence " + requestJournal.lastSequence());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (client == null)
+            return;
+        following = false;
+        client.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,289 @@
+package ir.ramtung.tinyme.messaging.replication;
+
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static ir.ramtung.tinyme.messaging.replication.ReplicationProtocol.*;
+
+// Streams the sequenced requests of a leader to its followers over TCP. RequestDispatcher hands
+// every journaled request over before handling it; the last replication.backlogRecords of them are
+// kept encoded in memory, and a follower further behind is first caught up from the request journal.
+// Each follower is served by its own thread, so a slow follower never holds the engine up.
+@Component
+public class ReplicationLeader {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final boolean enabled;
+    private final RequestJournal requestJournal;
+    private final long heartbeatMillis;
+    private final Frame[] backlog;
+    private final ReplicationProtocol.Encoder encoder = new ReplicationProtocol.Encoder();
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private final ServerSocket serverSocket;
+    private long firstSequence;
+    private long lastSequence;
+    private volatile boolean closed;
+
+    private record Frame(long sequence, long leaderMillis, byte[] payload) {
+    }
+
+    public record FollowerStatus(String address, long ackedSequence, long lagRecords) {
+    }
+
+    public ReplicationLeader(@Value("${replication.role:NONE}") ReplicationRole role,
+                             @Value("${replication.bindAddress:127.0.0.1}") String bindAddress,
+                             @Value("${replication.port:7070}") int port,
+                             @Value("${replication.backlogRecords:1048576}") int backlogRecords,
+                             @Value("${replication.heartbeatMillis:100}") long heartbeatMillis,
+                             RequestJournal requestJournal) throws IOException {
+        this.enabled = role == ReplicationRole.LEADER;
+        this.requestJournal = requestJournal;
+        this.heartbeatMillis = heartbeatMillis;
+        this.backlog = new Frame[enabled ? Math.max(1, backlogRecords) : 0];
+        if (!enabled) {
+            serverSocket = null;
+            return;
+        }
+        if (!requestJournal.isEnabled())
+            throw new IllegalStateException("A replication leader needs the request journal to sequence requests");
+        lastSequence = requestJournal.lastSequence();
+        firstSequence = lastSequence + 1;
+        serverSocket = new ServerSocket(port, 16, InetAddress.getByName(bindAddress));
+        Thread acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Replicating to followers on " + serverSocket.getLocalSocketAddress() + " from sequence " + firstSequence);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int port() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    // Called on the engine thread with every request, right after it was journaled.
+    public void replicate(long sequence, Object request) {
+        if (!enabled)
+            return;
+        Frame frame = new Frame(sequence, System.currentTimeMillis(), encoder.encode(request));
+        synchronized (this) {
+            if (sequence != lastSequence + 1)
+                throw new IllegalStateException("Replicating sequence " + sequence + " after " + lastSequence);
+            backlog[slotOf(sequence)] = frame;
+            lastSequence = sequence;
+            firstSequence = Math.max(firstSequence, lastSequence - backlog.length + 1);
+            notifyAll();
+        }
+    }
+
+    public List<FollowerStatus> followers() {
+        long last;
+        synchronized (this) {
+            last = lastSequence;
+        }
+        return sessions.stream()
+                .map(session -> new FollowerStatus(session.address, session.ackedSequence, last - session.ackedSequence))
+                .toList();
+    }
+
+    private int slotOf(long sequence) {
+        return (int) Math.floorMod(sequence, (long) backlog.length);
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(socket);
+                sessions.add(session);
+                Thread thread = new Thread(session::run, "replication-to-" + session.address);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed)
+                    log.log(Level.WARNING, "Accepting a follower failed", e);
+            }
+        }
+    }
+
+    private class Session {
+        private final Socket socket;
+        private final String address;
+        private volatile long ackedSequence = -1;
+        private DataOutputStream out;
+        private long next;
+        private long lastWriteMillis;
+
+        Session(Socket socket) {
+            this.socket = socket;
+            this.address = String.valueOf(socket.getRemoteSocketAddress());
+        }
+
+        void run() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+                if (in.readInt() != MAGIC || in.readShort() != VERSION)
+                    throw new ReplicationException("Not a follower of a supported version");
+                next = in.readLong();
+                ackedSequence = next - 1;
+                log.info("Follower " + address + " connected, starting at sequence " + next);
+                Thread acks = new Thread(() -> readAcks(in), "replication-acks-from-" + address);
+                acks.setDaemon(true);
+                acks.start();
+                stream();
+            } catch (ReplicationException e) {
+                log.severe("Follower " + address + " cannot be served: " + e.getMessage());
+                sendError(e.getMessage());
+            } catch (IOException e) {
+                if (!closed)
+                    log.info("Follower " + address + " disconnected: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                sessions.remove(this);
+                close();
+            }
+        }
+
+        private void stream() throws IOException, InterruptedException {
+            while (!closed) {
+                Frame frame = null;
+                boolean behindBacklog;
+                long leaderSequence;
+                synchronized (ReplicationLeader.this) {
+                    leaderSequence = lastSequence;
+                    behindBacklog = next < firstSequence;
+                    if (!behindBacklog && next <= lastSequence)
+                        frame = backlog[slotOf(next)];
+                }
+                if (next > leaderSequence + 1)
+                    throw new ReplicationException("Follower expects sequence " + next + " but the leader is at " + leaderSequence);
+                if (behindBacklog) {
+                    catchUpFromJournal();
+                } else if (frame != null) {
+                    writeRecord(frame);
+                } else {
+                    out.flush();
+                    synchronized (ReplicationLeader.this) {
+                        if (next > lastSequence && !closed)
+                            ReplicationLeader.this.wait(heartbeatMillis);
+                    }
+                    if (System.currentTimeMillis() - lastWriteMillis >= heartbeatMillis)
+                        writeHeartbeat();
+                }
+            }
+        }
+
+        // Sends the journaled requests from next up to the oldest one still in the backlog.
+        private void catchUpFromJournal() throws IOException {
+            long upTo;
+            synchronized (ReplicationLeader.this) {
+                upTo = firstSequence;
+            }
+            long from = next;
+            ReplicationProtocol.Encoder journalEncoder = new ReplicationProtocol.Encoder();
+            try {
+                requestJournal.read(record -> {
+                    if (record.sequence() != next || record.sequence() >= upTo)
+                        return;
+                    try {
+                        writeRecord(new Frame(record.sequence(), 0, journalEncoder.encode(record.request())));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (next == from)
+                throw new ReplicationException("Sequence " + from + " is no longer in the leader's journal");
+            log.info(String.format("Caught follower %s up from the journal through sequence %d", address, next - 1));
+        }
+
+        private void writeRecord(Frame frame) throws IOException {
+            out.writeByte(RECORD);
+            out.writeLong(frame.sequence());
+            out.writeLong(frame.leaderMillis());
+            out.writeInt(frame.payload().length);
+            out.write(frame.payload());
+            next = frame.sequence() + 1;
+            lastWriteMillis = System.currentTimeMillis();
+        }
+
+        private void writeHeartbeat() throws IOException {
+            long leaderSequence;
+            synchronized (ReplicationLeader.this) {
+                leaderSequence = lastSequence;
+            }
+            out.writeByte(HEARTBEAT);
+            out.writeLong(leaderSequence);
+            out.writeLong(System.currentTimeMillis());
+            out.flush();
+            lastWriteMillis = System.currentTimeMillis();
+        }
+
+        private void sendError(String message) {
+            if (out == null)
+                return;
+            try {
+                out.writeByte(ERROR);
+                out.writeUTF(message);
+                out.flush();
+            } catch (IOException ignored) {
+                // the follower is gone already
+            }
+        }
+
+        private void readAcks(DataInputStream in) {
+            try {
+                while (true)
+                    ackedSequence = in.readLong();
+            } catch (EOFException e) {
+                // the follower hung up
+            } catch (IOException e) {
+                if (!socket.isClosed())
+                    log.fine("Reading acknowledgements from " + address + " failed: " + e.getMessage());
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled || closed)
+            return;
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        serverSocket.close();
+        sessions.forEach(Session::close);
+    }
+}
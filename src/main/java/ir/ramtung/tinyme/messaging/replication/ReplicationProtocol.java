@@ -0,0 +1,45 @@
+package ir.ramtung.tinyme.messaging.replication;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+// The follower opens the connection with MAGIC, VERSION and the sequence number of the first
+// request it needs. The leader then sends, in sequence order, a RECORD per journaled request
+// (sequence, leader time in millis or 0 when unknown, length and BinaryCodec payload), a HEARTBEAT
+// with its last sequence number and time whenever it has had nothing to send for a while, or one
+// ERROR with a message before it hangs up. The follower answers with the sequence number of the last
+// request it applied each time it has caught up with what it received.
+final class ReplicationProtocol {
+    static final int MAGIC = 0x54524550;
+    static final short VERSION = 1;
+
+    static final byte RECORD = 1;
+    static final byte HEARTBEAT = 2;
+    static final byte ERROR = 3;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private ReplicationProtocol() {
+    }
+
+    static final class Encoder {
+        private ByteBuffer buffer = BinaryCodec.allocate(1 << 12);
+
+        byte[] encode(Object request) {
+            while (true) {
+                buffer.clear();
+                try {
+                    BinaryCodec.encode(request, buffer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    buffer = BinaryCodec.allocate(buffer.capacity() * 2);
+                }
+            }
+            byte[] payload = new byte[buffer.position()];
+            buffer.flip().get(payload);
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ir.ramtung.tinyme.messaging.replication;
+
+public enum ReplicationRole {
+    NONE,
+    LEADER,
+    FOLLOWER
+}
@@ -0,0 +1,38 @@
+package ir.ramtung.tinyme.messaging.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Exactly one of the two requests is set.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchOrderLeg {
+    private EnterOrderRq enterOrder;
+    private DeleteOrderRq deleteOrder;
+
+    public static BatchOrderLeg enter(EnterOrderRq enterOrderRq) {
+        return new BatchOrderLeg(enterOrderRq, null);
+    }
+
+    public static BatchOrderLeg delete(DeleteOrderRq deleteOrderRq) {
+        return new BatchOrderLeg(null, deleteOrderRq);
+    }
+
+    public boolean hasExactlyOneRequest() {
+        return (enterOrder == null) != (deleteOrder == null);
+    }
+
+    public String securityIsin() {
+        return enterOrder != null ? enterOrder.getSecurityIsin() : deleteOrder != null ? deleteOrder.getSecurityIsin() : null;
+    }
+
+    public long requestId() {
+        return enterOrder != null ? enterOrder.getRequestId() : deleteOrder != null ? deleteOrder.getRequestId() : 0;
+    }
+
+    public long orderId() {
+        return enterOrder != null ? enterOrder.getOrderId() : deleteOrder != null ? deleteOrder.getOrderId() : 0;
+    }
+}
@@ -0,0 +1,16 @@
+package ir.ramtung.tinyme.messaging.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Legs are handled in order and each is accepted or rejected exactly as the equivalent individual
+// request would be.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchOrderRq {
+    private List<BatchOrderLeg> legs;
+}
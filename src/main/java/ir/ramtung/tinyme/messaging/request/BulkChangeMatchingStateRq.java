@@ -0,0 +1,38 @@
+package ir.ramtung.tinyme.messaging.request;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkChangeMatchingStateRq {
+    // an empty (or missing) list means every security known to the engine
+    private List<String> securityIsins;
+    private MatchingState targetState;
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime entryTime;
+
+    public BulkChangeMatchingStateRq(List<String> securityIsins, MatchingState targetState) {
+        this.securityIsins = securityIsins;
+        this.targetState = targetState;
+        this.entryTime = LocalDateTime.now();
+    }
+
+    public static BulkChangeMatchingStateRq forAllSecurities(MatchingState targetState) {
+        return new BulkChangeMatchingStateRq(List.of(), targetState);
+    }
+
+    public boolean coversAllSecurities() {
+        return securityIsins == null || securityIsins.isEmpty();
+    }
+}
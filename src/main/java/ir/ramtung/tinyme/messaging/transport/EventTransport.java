@@ -0,0 +1,8 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+
+// Carries published events to the gateways; selected with transport.type.
+public interface EventTransport {
+    void send(Event event);
+}
@@ -0,0 +1,44 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Keeps published events in a lock-free queue for gateways running in the engine's JVM.
+@Component
+@ConditionalOnProperty(name = "transport.type", havingValue = "IN_PROCESS")
+public class InProcessEventTransport implements EventTransport {
+    private static final long POLL_PARK_NANOS = 20_000;
+
+    private final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void send(Event event) {
+        events.offer(event);
+    }
+
+    public Event poll() {
+        return events.poll();
+    }
+
+    public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Event event;
+        while ((event = events.poll()) == null) {
+            if (System.nanoTime() - deadline >= 0)
+                return null;
+            LockSupport.parkNanos(POLL_PARK_NANOS);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+        return event;
+    }
+
+    public void clear() {
+        events.clear();
+    }
+}
@@ -0,0 +1,74 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import ir.ramtung.tinyme.messaging.event.Event;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Entry point for gateways in the engine's JVM. Submitted requests go through a lock-free queue
+// to a single engine thread, which hands them to RequestDispatcher in submission order, as the
+// JMS listener would. Responses are read back from the in-process event transport.
+@Component
+@ConditionalOnProperty(name = "transport.type", havingValue = "IN_PROCESS")
+public class InProcessGateway {
+    private static final long IDLE_PARK_NANOS = 100_000;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RequestDispatcher requestDispatcher;
+    private final InProcessEventTransport eventTransport;
+    private final ConcurrentLinkedQueue<Object> requests = new ConcurrentLinkedQueue<>();
+    private final Thread engine;
+    private volatile boolean closed;
+
+    public InProcessGateway(RequestDispatcher requestDispatcher, InProcessEventTransport eventTransport) {
+        this.requestDispatcher = requestDispatcher;
+        this.eventTransport = eventTransport;
+        this.engine = new Thread(this::run, "in-process-engine");
+        this.engine.setDaemon(true);
+        this.engine.start();
+    }
+
+    public void submit(Object request) {
+        if (closed)
+            throw new IllegalStateException("In-process gateway is closed");
+        requests.offer(request);
+        LockSupport.unpark(engine);
+    }
+
+    public Event receive(long timeout, TimeUnit unit) throws InterruptedException {
+        return eventTransport.poll(timeout, unit);
+    }
+
+    public Event receiveNow() {
+        return eventTransport.poll();
+    }
+
+    private void run() {
+        while (!closed || !requests.isEmpty()) {
+            Object request = requests.poll();
+            if (request == null) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                requestDispatcher.dispatch(request);
+            } catch (RuntimeException e) {
+                log.log(Level.SEVERE, "Failed to handle " + request.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        LockSupport.unpark(engine);
+        engine.join();
+    }
+}
@@ -0,0 +1,33 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.codec.Codec;
+import ir.ramtung.tinyme.messaging.codec.CodecSelectingMessageConverter;
+import ir.ramtung.tinyme.messaging.event.Event;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+// Responses are encoded with codec.response whatever codec.default makes the template's converter use.
+@Component
+@ConditionalOnProperty(name = "transport.type", havingValue = "JMS", matchIfMissing = true)
+public class JmsEventTransport implements EventTransport {
+    private final JmsTemplate jmsTemplate;
+    private final String responseQueue;
+    private final MessageConverter responseConverter;
+
+    public JmsEventTransport(JmsTemplate jmsTemplate,
+                             CodecSelectingMessageConverter messageConverter,
+                             @Value("${responseQueue}") String responseQueue,
+                             @Value("${codec.response:JSON}") Codec responseCodec) {
+        this.jmsTemplate = jmsTemplate;
+        this.responseQueue = responseQueue;
+        this.responseConverter = messageConverter.converterFor(responseCodec);
+    }
+
+    @Override
+    public void send(Event event) {
+        jmsTemplate.send(responseQueue, session -> responseConverter.toMessage(event, session));
+    }
+}
@@ -0,0 +1,203 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+// A ring of binary-encoded messages in a memory-mapped file (typically under /dev/shm), shared by
+// processes on one host. There is a single writer and any number of readers. Positions only grow;
+// the write position in the header is published with release semantics after a record is complete.
+// A gated ring has one reader whose position the writer never overtakes (offer() returns false
+// when the ring is full). On an ungated ring the writer never waits and a reader that falls a
+// whole ring behind fails with an overrun.
+public class MappedRing {
+    private static final int MAGIC = 0x474E5254;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int GATED_OFFSET = 8;
+    // the two positions sit on their own cache lines
+    private static final int WRITE_POSITION_OFFSET = 64;
+    private static final int GATING_POSITION_OFFSET = 128;
+    public static final int HEADER_SIZE = 192;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+    private static final int ALIGNMENT = 8;
+    private static final VarHandle POSITION = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int maxRecordLength;
+    private final boolean gated;
+    private final ByteBuffer scratch;
+    private long writePosition;
+
+    private MappedRing(Path path, MappedByteBuffer buffer) {
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC)
+            throw new IllegalArgumentException(path + " is not a message ring");
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = buffer.getInt(CAPACITY_OFFSET);
+        this.mask = capacity - 1;
+        this.maxRecordLength = capacity / 8;
+        this.gated = buffer.get(GATED_OFFSET) != 0;
+        this.scratch = BinaryCodec.allocate(maxRecordLength - RECORD_HEADER_SIZE);
+        this.writePosition = (long) POSITION.getAcquire(buffer, WRITE_POSITION_OFFSET);
+    }
+
+    public static MappedRing create(Path path, int capacity, boolean gated) throws IOException {
+        if (Integer.bitCount(capacity) != 1 || capacity < 1024)
+            throw new IllegalArgumentException("Ring capacity must be a power of two of at least 1024 bytes");
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer = map(channel, HEADER_SIZE + capacity);
+        }
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.put(GATED_OFFSET, (byte) (gated ? 1 : 0));
+        POSITION.setRelease(buffer, WRITE_POSITION_OFFSET, 0L);
+        POSITION.setRelease(buffer, GATING_POSITION_OFFSET, 0L);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        return new MappedRing(path, buffer);
+    }
+
+    public static MappedRing open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new MappedRing(path, map(channel, channel.size()));
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isGated() {
+        return gated;
+    }
+
+    // Only the single writer may call this. Returns false when a gated ring has no room.
+    public boolean offer(Object message) {
+        scratch.clear();
+        try {
+            BinaryCodec.encode(message, scratch);
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("Message does not fit in a ring of " + capacity + " bytes");
+        }
+        int length = scratch.position();
+        int recordLength = align(RECORD_HEADER_SIZE + length);
+        int index = (int) (writePosition & mask);
+        int toEnd = capacity - index;
+        int padding = toEnd < recordLength ? toEnd : 0;
+        if (gated && writePosition + padding + recordLength - gatingPosition() > capacity)
+            return false;
+        if (padding > 0) {
+            buffer.putInt(HEADER_SIZE + index, PADDING);
+            writePosition += padding;
+            index = 0;
+        }
+        buffer.putInt(HEADER_SIZE + index, length);
+        buffer.put(HEADER_SIZE + index + RECORD_HEADER_SIZE, scratch, 0, length);
+        writePosition += recordLength;
+        POSITION.setRelease(buffer, WRITE_POSITION_OFFSET, writePosition);
+        return true;
+    }
+
+    private long gatingPosition() {
+        return (long) POSITION.getAcquire(buffer, GATING_POSITION_OFFSET);
+    }
+
+    private long publishedWritePosition() {
+        return (long) POSITION.getAcquire(buffer, WRITE_POSITION_OFFSET);
+    }
+
+    private static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    // The reader whose progress gates the writer; it resumes where the previous one stopped.
+    public Reader gatingReader() {
+        if (!gated)
+            throw new IllegalStateException(path + " is not a gated ring");
+        return new Reader(gatingPosition(), true);
+    }
+
+    // A reader that sees messages written from now on.
+    public Reader tailingReader() {
+        return new Reader(publishedWritePosition(), false);
+    }
+
+    public class Reader {
+        private final ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        private final boolean gating;
+        private long position;
+
+        private Reader(long position, boolean gating) {
+            this.position = position;
+            this.gating = gating;
+        }
+
+        // Hands up to limit messages to the handler and returns how many there were.
+        public int poll(Consumer<Object> handler, int limit) {
+            long available = publishedWritePosition();
+            int count = 0;
+            while (position < available && count < limit) {
+                int index = (int) (position & mask);
+                int length = view.getInt(HEADER_SIZE + index);
+                if (length == PADDING) {
+                    position += capacity - index;
+                    continue;
+                }
+                Object message;
+                try {
+                    view.limit(HEADER_SIZE + index + RECORD_HEADER_SIZE + length).position(HEADER_SIZE + index + RECORD_HEADER_SIZE);
+                    message = BinaryCodec.decode(view);
+                } catch (RuntimeException e) {
+                    checkNotOverrun();
+                    throw e;
+                } finally {
+                    view.clear();
+                }
+                checkNotOverrun();
+                position += align(RECORD_HEADER_SIZE + length);
+                count++;
+                handler.accept(message);
+            }
+            if (gating && count > 0)
+                POSITION.setRelease(buffer, GATING_POSITION_OFFSET, position);
+            return count;
+        }
+
+        // The writer may be in the middle of a record that starts at its published position or, when
+        // that record does not fit before the end of the ring, of the padding up to the end and the
+        // record after it; either way it writes less than two maximal records past that position.
+        private void checkNotOverrun() {
+            if (!gating && publishedWritePosition() + 2L * maxRecordLength - position > capacity)
+                throw new IllegalStateException("Reader of " + path + " was overrun by the writer");
+        }
+
+        public long position() {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.TradeDTO;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.EventBatch;
+import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
+import ir.ramtung.tinyme.messaging.event.TradeEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts the published events instead of sending them anywhere, so that a replay runs as fast as the
+// engine can go; batches are counted by the events in them.
+@Component
+@ConditionalOnProperty(name = "transport.type", havingValue = "REPLAY")
+public class ReplayEventSink implements EventTransport {
+    private final Map<String, LongAdder> eventCounts = new ConcurrentHashMap<>();
+    private final LongAdder trades = new LongAdder();
+    private final LongAdder tradedQuantity = new LongAdder();
+    private final LongAdder tradedValue = new LongAdder();
+
+    @Override
+    public void send(Event event) {
+        if (event instanceof EventBatch batch) {
+            batch.getEvents().forEach(this::send);
+            return;
+        }
+        eventCounts.computeIfAbsent(event.getClass().getSimpleName(), type -> new LongAdder()).increment();
+        if (event instanceof OrderExecutedEvent executed) {
+            for (TradeDTO trade : executed.getTrades())
+                countTrade(trade.price(), trade.quantity());
+        } else if (event instanceof TradeEvent trade) {
+            countTrade(trade.getPrice(), trade.getQuantity());
+        }
+    }
+
+    private void countTrade(int price, int quantity) {
+        trades.increment();
+        tradedQuantity.add(quantity);
+        tradedValue.add((long) price * quantity);
+    }
+
+    // Event counts by type name, in name order.
+    public Map<String, Long> eventCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        eventCounts.forEach((type, count) -> counts.put(type, count.sum()));
+        return counts;
+    }
+
+    public long trades() {
+        return trades.sum();
+    }
+
+    public long tradedQuantity() {
+        return tradedQuantity.sum();
+    }
+
+    public long tradedValue() {
+        return tradedValue.sum();
+    }
+
+    public void clear() {
+        eventCounts.clear();
+        trades.reset();
+        tradedQuantity.reset();
+        tradedValue.reset();
+    }
+}
@@ -0,0 +1,31 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Broadcasts events to same-host gateways through an ungated ring, so a slow gateway never holds
+// up the engine.
+@Component
+@ConditionalOnProperty(name = "transport.type", havingValue = "SHARED_MEMORY")
+public class SharedMemoryEventTransport implements EventTransport {
+    public static final String EVENT_RING = "events.ring";
+
+    private final MappedRing ring;
+
+    public SharedMemoryEventTransport(@Value("${transport.sharedMemory.directory:/dev/shm/tinyme}") Path directory,
+                                      @Value("${transport.sharedMemory.ringSize:16777216}") int ringSize) throws IOException {
+        Files.createDirectories(directory);
+        this.ring = MappedRing.create(directory.resolve(EVENT_RING), ringSize, false);
+    }
+
+    @Override
+    public synchronized void send(Event event) {
+        ring.offer(event);
+    }
+}
@@ -0,0 +1,53 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Client side of the shared-memory transport, used by a gateway process on the engine's host.
+// The engine must be running first: it creates the rings.
+public class SharedMemoryGateway {
+    private static final long PARK_NANOS = 1_000;
+
+    private final MappedRing requests;
+    private final MappedRing.Reader events;
+    private final ArrayDeque<Event> received = new ArrayDeque<>();
+
+    private SharedMemoryGateway(MappedRing requests, MappedRing.Reader events) {
+        this.requests = requests;
+        this.events = events;
+    }
+
+    public static SharedMemoryGateway connect(Path directory, String gateway) throws IOException {
+        MappedRing requests = MappedRing.open(directory.resolve(SharedMemoryRequestPoller.requestRingOf(gateway)));
+        MappedRing events = MappedRing.open(directory.resolve(SharedMemoryEventTransport.EVENT_RING));
+        return new SharedMemoryGateway(requests, events.tailingReader());
+    }
+
+    // Waits while the engine is a whole ring behind.
+    public synchronized void send(Object request) {
+        while (!requests.offer(request))
+            LockSupport.parkNanos(PARK_NANOS);
+    }
+
+    public synchronized Event poll() {
+        if (received.isEmpty())
+            events.poll(event -> received.add((Event) event), Integer.MAX_VALUE);
+        return received.poll();
+    }
+
+    public Event receive(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Event event;
+        while ((event = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0)
+                return null;
+            Thread.onSpinWait();
+        }
+        return event;
+    }
+}
@@ -0,0 +1,81 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Each configured gateway writes its requests into its own gated ring; one engine thread takes
+// them round-robin and hands them to RequestDispatcher.
+@Component
+@ConditionalOnProperty(name = "transport.type", havingValue = "SHARED_MEMORY")
+public class SharedMemoryRequestPoller {
+    private static final int BURST = 64;
+    private static final int SPINS_BEFORE_PARKING = 1000;
+    private static final long IDLE_PARK_NANOS = 10_000;
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RequestDispatcher requestDispatcher;
+    private final List<MappedRing.Reader> readers = new ArrayList<>();
+    private final Thread engine;
+    private volatile boolean closed;
+
+    public SharedMemoryRequestPoller(RequestDispatcher requestDispatcher,
+                                     @Value("${transport.sharedMemory.directory:/dev/shm/tinyme}") Path directory,
+                                     @Value("${transport.sharedMemory.gateways:gateway}") List<String> gateways,
+                                     @Value("${transport.sharedMemory.ringSize:16777216}") int ringSize) throws IOException {
+        this.requestDispatcher = requestDispatcher;
+        Files.createDirectories(directory);
+        for (String gateway : gateways) {
+            Path path = directory.resolve(requestRingOf(gateway));
+            MappedRing ring = Files.exists(path) ? MappedRing.open(path) : MappedRing.create(path, ringSize, true);
+            readers.add(ring.gatingReader());
+        }
+        this.engine = new Thread(this::run, "shm-request-poller");
+        this.engine.setDaemon(true);
+        this.engine.start();
+    }
+
+    public static String requestRingOf(String gateway) {
+        return "requests-" + gateway + ".ring";
+    }
+
+    private void run() {
+        int idle = 0;
+        while (!closed) {
+            int handled = 0;
+            for (MappedRing.Reader reader : readers)
+                handled += reader.poll(this::dispatch, BURST);
+            if (handled > 0)
+                idle = 0;
+            else if (++idle < SPINS_BEFORE_PARKING)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void dispatch(Object request) {
+        try {
+            requestDispatcher.dispatch(request);
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, "Failed to handle " + request.getClass().getSimpleName(), e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        closed = true;
+        engine.join();
+    }
+}
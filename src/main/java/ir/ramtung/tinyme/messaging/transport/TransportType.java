@@ -0,0 +1,9 @@
+package ir.ramtung.tinyme.messaging.transport;
+
+public enum TransportType {
+    JMS,
+    IN_PROCESS,
+    SHARED_MEMORY,
+    // events are only counted; used by the replay tool
+    REPLAY
+}
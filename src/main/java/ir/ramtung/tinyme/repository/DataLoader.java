@@ -1,260 +1,139 @@
 package ir.ramtung.tinyme.repository;
 
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
-import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.repository.persistence.BinaryStateFile;
+import ir.ramtung.tinyme.repository.persistence.BinaryStateStore;
+import ir.ramtung.tinyme.repository.persistence.CsvStateFiles;
+import ir.ramtung.tinyme.repository.persistence.PersistenceFormat;
+import ir.ramtung.tinyme.repository.trade.TradeStore;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.io.Reader;
-import java.time.LocalDateTime;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.StringJoiner;
+import java.io.File;
+import java.util.List;
 import java.util.logging.Logger;
 
 @Component
-@Profile("!test")
+@Profile("!test & !replay")
 public class DataLoader {
     private final Logger log = Logger.getLogger(this.getClass().getName());
-    private final BrokerRepository brokerRepository;
-    private final ShareholderRepository shareholderRepository;
     private final SecurityRepository securityRepository;
-
-    public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
-        this.brokerRepository = brokerRepository;
-        this.shareholderRepository = shareholderRepository;
+    private final IsinPartition partition;
+    private final RequestJournal requestJournal;
+    private final TradeStore tradeStore;
+    private final PersistenceFormat format;
+    private final int warmUpSecurities;
+    private final CsvStateFiles csvState;
+    private final BinaryStateFile binaryState;
+    private BinaryStateStore binaryStore;
+    private Thread warmUp;
+    private long journalSequence = -1;
+
+    public DataLoader(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository, IsinPartition partition,
+                      RequestJournal requestJournal, TradeStore tradeStore,
+                      @Value("${persistence.format:CSV}") PersistenceFormat format,
+                      @Value("${persistence.deferOrderBooks:false}") boolean deferOrderBooks,
+                      @Value("${persistence.warmUpSecurities:256}") int warmUpSecurities) {
         this.securityRepository = securityRepository;
+        this.partition = partition;
+        this.requestJournal = requestJournal;
+        this.tradeStore = tradeStore;
+        this.format = format;
+        this.warmUpSecurities = warmUpSecurities;
+        this.csvState = new CsvStateFiles(brokerRepository, shareholderRepository, securityRepository, partition);
+        this.binaryState = new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository, deferOrderBooks);
     }
 
-    @Value("classpath:persistence/broker.csv")
-    private Resource brokerCsvResource;
-    @Value("classpath:persistence/shareholder.csv")
-    private Resource shareholderCsvResource;
-    @Value("classpath:persistence/security.csv")
-    private Resource securityCsvResource;
-    @Value("classpath:persistence/position.csv")
-    private Resource positionCsvResource;
-    @Value("classpath:persistence/orderbook.csv")
-    private Resource orderBookCsvResource;
+    @Value("classpath:persistence")
+    private Resource persistenceDirectory;
 
+    // With the binary format the node keeps its own base file, created from the shared base file or
+    // the CSV files the first time, and delta segments on top of it. With deferOrderBooks the orders
+    // in the base file are decoded only when their security is first used.
     @PostConstruct
     public void loadAll() throws Exception {
-        loadBrokers();
-        loadShareholders();
-        loadSecurities();
-        loadPositions();
-        loadOrderBook();
-    }
-
-    @PreDestroy
-    public void saveAll() throws Exception {
-        System.out.print("Saving persistent data ...");
-        saveBrokers();
-        saveShareholdersAndPositions();
-        saveSecuritiesAndOrderBooks();
-        System.out.println(", done!");
-    }
-
-    private void loadBrokers() throws Exception {
-        brokerRepository.clear();
-      try (Reader reader = new FileReader(brokerCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    brokerRepository.addBroker(Broker.builder()
-                            .brokerId(Long.parseLong(line[0]))
-                            .name(line[1])
-                            .credit(Long.parseLong(line[0]))
-                            .build());
-                }
-            }
-        }
-        log.info("Brokers loaded");
-    }
-
-    private void loadShareholders() throws Exception {
-        shareholderRepository.clear();
-        try (Reader reader = new FileReader(shareholderCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    shareholderRepository.addShareholder(Shareholder.builder()
-                            .shareholderId(Long.parseLong(line[0]))
-                            .name(line[1])
-                            .build());
-                }
-            }
-        }
-        log.info("Shareholders loaded");
-    }
-
-    private void loadSecurities() throws Exception {
-        securityRepository.clear();
-        try (Reader reader = new FileReader(securityCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    securityRepository.addSecurity(Security.builder()
-                            .isin(line[0])
-                            .tickSize(Integer.parseInt(line[1]))
-                            .lotSize(Integer.parseInt(line[2]))
-                            .build());
-                }
-            }
-        }
-        log.info("Securities loaded");
-    }
-
-    private void loadPositions() throws Exception {
-        try (Reader reader = new FileReader(positionCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[0]));
-                    Security security = securityRepository.findSecurityByIsin(line[1]);
-                    shareholder.incPosition(security, Integer.parseInt(line[2]));
-                }
+        long start = System.nanoTime();
+        File directory = persistenceDirectory.getFile();
+        if (format == PersistenceFormat.BINARY) {
+            binaryStore = new BinaryStateStore(new File(directory, partition.fileNameFor(BinaryStateFile.FILE_NAME)).toPath(), binaryState, partition);
+            if (binaryStore.exists()) {
+                binaryStore.load();
+                // files written before the sequence was recorded leave the checkpoint as the only clue
+                journalSequence = Math.max(binaryStore.journalSequence(), requestJournal.checkpointSequence());
+            } else {
+                File sharedFile = new File(directory, BinaryStateFile.FILE_NAME);
+                // a node starting from the shared file takes only its share of each broker's credit
+                if (partition.isPartitioned() && sharedFile.exists())
+                    binaryState.read(sharedFile.toPath(), partition, true);
+                else
+                    csvState.load(directory);
+                journalSequence = requestJournal.checkpointSequence();
+                binaryStore.rebase(journalSequence);
             }
+        } else {
+            csvState.load(directory);
+            journalSequence = requestJournal.checkpointSequence();
         }
-        log.info("Positions loaded");
+        log.info(String.format("Persistent data loaded in %d ms", (System.nanoTime() - start) / 1_000_000));
     }
 
-    private void loadOrderBook() throws Exception {
-        LinkedList<Order> orders = new LinkedList<>();
-        try (Reader reader = new FileReader(orderBookCsvResource.getFile())) {
-            try (CSVReader csvReader = new CSVReaderBuilder(reader).withSkipLines(1).build()) {
-                String[] line;
-                while ((line = csvReader.readNext()) != null) {
-                    Security security = securityRepository.findSecurityByIsin(line[1]);
-                    Broker broker = brokerRepository.findBrokerById(Long.parseLong(line[5]));
-                    Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[6]));
-//orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity
-//0       1    2    3        4     5        6             7         8        9
-                    int peakSize = Integer.parseInt(line[8]);
-                    Order order;
-                    if (peakSize == 0) {
-                        order = new Order(
-                                Long.parseLong(line[0]),
-                                security,
-                                Side.parse(line[2]),
-                                Integer.parseInt(line[3]),
-                                Integer.parseInt(line[4]),
-                                broker,
-                                shareholder,
-                                LocalDateTime.parse(line[7]),
-                                OrderStatus.QUEUED,
-                                Integer.parseInt(line[10]));
-                    } else {
-                        order = new IcebergOrder(
-                                Long.parseLong(line[0]),
-                                security,
-                                Side.parse(line[2]),
-                                Integer.parseInt(line[3]),
-                                Integer.parseInt(line[4]),
-                                broker,
-                                shareholder,
-                                LocalDateTime.parse(line[7]),
-                                Integer.parseInt(line[8]),
-                                Integer.parseInt(line[9]),
-                                OrderStatus.QUEUED,
-                                Integer.parseInt(line[10]));
-                    }
-                    orders.addFirst(order);
-                }
-            }
-        }
-        Iterator<Order> it = orders.descendingIterator();
-        while (it.hasNext()) {
-            Order order = it.next();
-            order.getSecurity().getOrderBook().enqueue(order);
-        }
-        log.info("Order Book loaded");
+    // Builds the books of the securities that have traded the most in the background, so that the
+    // first request for them does not pay for it. Waits for the snapshot and the journal to have been
+    // applied, as they may replace the securities.
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (binaryStore == null || !binaryState.defersOrders() || warmUpSecurities <= 0)
+            return;
+        List<String> isins = tradeStore.mostTraded();
+        warmUp = new Thread(() -> warmUp(isins.subList(0, Math.min(warmUpSecurities, isins.size()))), "order-book-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
     }
 
-    private void saveBrokers() throws Exception {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(brokerCsvResource.getFile()))) {
-            writer.println("brokerId,name,credit");
-            for (Broker broker : brokerRepository.allBrokers()) {
-                StringJoiner joiner = new StringJoiner(",");
-                joiner.add(String.valueOf(broker.getBrokerId()))
-                        .add(broker.getName())
-                        .add(String.valueOf(broker.getCredit()));
-                writer.println(joiner);
+    private void warmUp(List<String> isins) {
+        long start = System.nanoTime();
+        int built = 0;
+        for (String isin : isins) {
+            if (Thread.currentThread().isInterrupted())
+                return;
+            Security security = securityRepository.findSecurityByIsin(isin);
+            if (security != null && security.hasDeferredBooks()) {
+                security.materializeBooks();
+                built++;
             }
         }
-        log.info("Brokers saved");
+        log.info(String.format("Warmed up the order books of %d securities in %d ms", built, (System.nanoTime() - start) / 1_000_000));
     }
 
-    private void saveShareholdersAndPositions() throws Exception {
-        try (PrintWriter shareholderWriter = new PrintWriter(new FileWriter(shareholderCsvResource.getFile()))) {
-            shareholderWriter.println("shareholderId,name");
-            try (PrintWriter positionWriter = new PrintWriter(new FileWriter(positionCsvResource.getFile()))) {
-                positionWriter.println("shareholderId,isin,positions");
-                for (Shareholder shareholder : shareholderRepository.allShareholders()) {
-                    StringJoiner joiner = new StringJoiner(",");
-                    joiner.add(String.valueOf(shareholder.getShareholderId()))
-                            .add(shareholder.getName());
-                    shareholderWriter.println(joiner);
-                    for (var entry : shareholder.getPositions().entrySet()) {
-                        StringJoiner posJoiner = new StringJoiner(",");
-                        posJoiner.add(String.valueOf(shareholder.getShareholderId()))
-                                .add(entry.getKey().getIsin())
-                                .add(String.valueOf(entry.getValue()));
-                        positionWriter.println(posJoiner);
-                    }
-                }
-            }
-        }
-        log.info("Shareholders and Positions saved");
+    @PreDestroy
+    public void saveAll() throws Exception {
+        if (warmUp != null)
+            warmUp.interrupt();
+        System.out.print("Saving persistent data ...");
+        if (binaryStore != null)
+            binaryStore.saveAll(requestJournal.lastSequence());
+        else
+            csvState.save(persistenceDirectory.getFile());
+        requestJournal.checkpoint();
+        System.out.println(", done!");
     }
 
-    private void saveSecuritiesAndOrderBooks() throws Exception {
-        try (PrintWriter securityWriter = new PrintWriter(new FileWriter(securityCsvResource.getFile()))) {
-            securityWriter.println("isin,tickSize,lotSize");
-            try (PrintWriter orderBookWriter = new PrintWriter(new FileWriter(orderBookCsvResource.getFile()))) {
-                orderBookWriter.println("orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity,minimumExecutionQuantity");
-                for (Security security : securityRepository.allSecurities()) {
-                    StringJoiner joiner = new StringJoiner(",");
-                    joiner.add(security.getIsin())
-                            .add(String.valueOf(security.getTickSize()))
-                            .add(String.valueOf(security.getLotSize()));
-                    securityWriter.println(joiner);
-                    for (Order order : security.getOrderBook().getBuyQueue())
-                        orderBookWriter.println(getCSVString(order));
-                    for (Order order : security.getOrderBook().getSellQueue())
-                        orderBookWriter.println(getCSVString(order));
-                }
-            }
-        }
-        log.info("Securities and OrderBook saved");
+    // The sequence number of the last journaled request reflected in the loaded state, which is where
+    // replaying the journal resumes. The binary files record it themselves; the CSV files rely on the
+    // journal's checkpoint.
+    public long journalSequence() {
+        return journalSequence;
     }
 
-    private static String getCSVString(Order order) {
-        StringJoiner orderJoiner = new StringJoiner(",");
-        orderJoiner.add(String.valueOf(order.getOrderId()))
-                .add(order.getSecurity().getIsin())
-                .add(order.getSide().toString())
-                .add(String.valueOf(order.getQuantity()))
-                .add(String.valueOf(order.getPrice()))
-                .add(String.valueOf(order.getBroker().getBrokerId()))
-                .add(String.valueOf(order.getShareholder().getShareholderId()))
-                .add(order.getEntryTime().toString());
-        if (order instanceof IcebergOrder icebergOrder) {
-            orderJoiner.add(String.valueOf(icebergOrder.getPeakSize()))
-                    .add(String.valueOf(icebergOrder.getDisplayedQuantity()));
-        } else {
-            orderJoiner.add("0").add("0");
-        }
-        orderJoiner.add(String.valueOf(order.getMinimumExecutionQuantity()));
-        return orderJoiner.toString();
+    // The binary base file and its deltas, or null when the CSV format is used.
+    public BinaryStateStore binaryStore() {
+        return binaryStore;
     }
-
 }
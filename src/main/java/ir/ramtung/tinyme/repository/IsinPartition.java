@@ -0,0 +1,55 @@
+package ir.ramtung.tinyme.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// The subset of securities a TinyME node is responsible for. An empty ISIN list means the node
+// owns every security (single-node deployment).
+@Component
+public class IsinPartition {
+    private final String id;
+    private final Set<String> ownedIsins;
+    private final double brokerCreditShare;
+
+    public IsinPartition(@Value("${partition.id:}") String id,
+                         @Value("${partition.isins:}") String[] isins,
+                         @Value("${partition.brokerCreditShare:1.0}") double brokerCreditShare) {
+        if (brokerCreditShare <= 0 || brokerCreditShare > 1)
+            throw new IllegalArgumentException("partition.brokerCreditShare must be in (0, 1]");
+        this.id = id;
+        this.ownedIsins = Arrays.stream(isins).map(String::trim).filter(isin -> !isin.isEmpty()).collect(Collectors.toUnmodifiableSet());
+        this.brokerCreditShare = brokerCreditShare;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isPartitioned() {
+        return !id.isEmpty();
+    }
+
+    public boolean owns(String isin) {
+        return ownedIsins.isEmpty() || ownedIsins.contains(isin);
+    }
+
+    public Set<String> getOwnedIsins() {
+        return ownedIsins;
+    }
+
+    public long creditShareOf(long credit) {
+        return (long) (credit * brokerCreditShare);
+    }
+
+    // broker.csv -> broker.P1.csv, so that nodes never overwrite each other's persisted state
+    public String fileNameFor(String baseName) {
+        if (!isPartitioned())
+            return baseName;
+        int dot = baseName.lastIndexOf('.');
+        return dot < 0 ? baseName + "." + id : baseName.substring(0, dot) + "." + id + baseName.substring(dot);
+    }
+}
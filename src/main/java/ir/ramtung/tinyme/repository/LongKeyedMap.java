@@ -0,0 +1,99 @@
+package ir.ramtung.tinyme.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Open-addressing map from primitive long keys. Lookups take no lock and never see a partially
+// inserted entry: a slot's key is written before its value is released, and readers treat a
+// slot as occupied only once its value is visible. Writers are serialised.
+public class LongKeyedMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final class Table<V> {
+        final long[] keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+        int size;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table<V> table = new Table<>(INITIAL_CAPACITY);
+
+    private static int slotOf(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public V get(long key) {
+        Table<V> t = table;
+        int i = slotOf(key, t.mask);
+        V value;
+        while ((value = t.values.get(i)) != null) {
+            if (t.keys[i] == key)
+                return value;
+            i = (i + 1) & t.mask;
+        }
+        return null;
+    }
+
+    public synchronized void put(long key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("null values are not supported");
+        Table<V> t = table;
+        if ((t.size + 1) * 4L > t.keys.length * 3L) {
+            t = resized(t);
+            table = t;
+        }
+        insert(t, key, value);
+    }
+
+    private static <V> void insert(Table<V> t, long key, V value) {
+        int i = slotOf(key, t.mask);
+        while (t.values.get(i) != null) {
+            if (t.keys[i] == key) {
+                t.values.set(i, value);
+                return;
+            }
+            i = (i + 1) & t.mask;
+        }
+        t.keys[i] = key;
+        t.values.set(i, value);
+        t.size++;
+    }
+
+    private static <V> Table<V> resized(Table<V> t) {
+        Table<V> bigger = new Table<>(t.keys.length * 2);
+        for (int i = 0; i < t.keys.length; i++) {
+            V value = t.values.get(i);
+            if (value != null)
+                insert(bigger, t.keys[i], value);
+        }
+        return bigger;
+    }
+
+    public synchronized void clear() {
+        table = new Table<>(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    public List<V> values() {
+        Table<V> t = table;
+        List<V> values = new ArrayList<>(t.size);
+        for (int i = 0; i < t.keys.length; i++) {
+            V value = t.values.get(i);
+            if (value != null)
+                values.add(value);
+        }
+        return Collections.unmodifiableList(values);
+    }
+}
@@ -0,0 +1,159 @@
+package ir.ramtung.tinyme.repository;
+
+import java.util.Arrays;
+
+// Remembers the last `capacity` distinct ids. A ring buffer keeps them in arrival order so the
+// oldest can be evicted, and an open-addressing table of primitive longs answers membership.
+// Optionally a pair of rotating Bloom filters answers most first-time ids without probing the
+// table. Not thread-safe.
+public class RequestIdWindow {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int BLOOM_BITS_PER_ID = 8;
+
+    private final int capacity;
+    private final long[] ring;
+    private int oldest;
+    private int size;
+    private final long[] table;
+    private final int mask;
+    private int emptyKeyCount;
+
+    private long[] currentBloom;
+    private long[] previousBloom;
+    private int insertsSinceRotation;
+
+    public RequestIdWindow(int capacity, boolean bloomFilter) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.ring = new long[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.table = new long[tableSize];
+        Arrays.fill(table, EMPTY);
+        this.mask = tableSize - 1;
+        if (bloomFilter) {
+            int words = Math.max(1, (Integer.highestOneBit(capacity * BLOOM_BITS_PER_ID - 1) << 1) / 64);
+            currentBloom = new long[words];
+            previousBloom = new long[words];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean hasBloomFilter() {
+        return currentBloom != null;
+    }
+
+    // Definitely-absent answer from the Bloom filters; false means the table has to be checked.
+    public boolean definitelyAbsent(long id) {
+        if (currentBloom == null)
+            return false;
+        long h = mix(id);
+        return !bloomContains(currentBloom, h) && !bloomContains(previousBloom, h);
+    }
+
+    public boolean contains(long id) {
+        if (id == EMPTY)
+            return emptyKeyCount > 0;
+        for (int i = slotOf(id); table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == id)
+                return true;
+        }
+        return false;
+    }
+
+    // Returns false, and changes nothing, if the id is already in the window.
+    public boolean add(long id) {
+        if (!definitelyAbsent(id) && contains(id))
+            return false;
+        if (size == capacity) {
+            remove(ring[oldest]);
+            oldest = (oldest + 1) % capacity;
+            size--;
+        }
+        ring[(oldest + size) % capacity] = id;
+        size++;
+        if (id == EMPTY)
+            emptyKeyCount++;
+        else
+            insert(id);
+        if (currentBloom != null)
+            addToBloom(id);
+        return true;
+    }
+
+    private void insert(long id) {
+        int i = slotOf(id);
+        while (table[i] != EMPTY)
+            i = (i + 1) & mask;
+        table[i] = id;
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones.
+    private void remove(long id) {
+        if (id == EMPTY) {
+            emptyKeyCount--;
+            return;
+        }
+        int i = slotOf(id);
+        while (table[i] != id)
+            i = (i + 1) & mask;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == EMPTY)
+                break;
+            int home = slotOf(table[j]);
+            boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (movable) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = EMPTY;
+    }
+
+    // Each generation covers `capacity` inserts, so the two together cover the whole window.
+    private void addToBloom(long id) {
+        if (insertsSinceRotation == capacity) {
+            long[] recycled = previousBloom;
+            Arrays.fill(recycled, 0);
+            previousBloom = currentBloom;
+            currentBloom = recycled;
+            insertsSinceRotation = 0;
+        }
+        long h = mix(id);
+        for (int k = 0; k < 3; k++) {
+            int bit = bloomBit(currentBloom, h, k);
+            currentBloom[bit >>> 6] |= 1L << bit;
+        }
+        insertsSinceRotation++;
+    }
+
+    private static boolean bloomContains(long[] bloom, long h) {
+        for (int k = 0; k < 3; k++) {
+            int bit = bloomBit(bloom, h, k);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    // k-th probe derived from the two halves of one hash.
+    private static int bloomBit(long[] bloom, long h, int k) {
+        return ((int) h + k * (int) (h >>> 32)) & (bloom.length * 64 - 1);
+    }
+
+    private int slotOf(long id) {
+        return (int) mix(id) & mask;
+    }
+
+    private static long mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -3,24 +3,62 @@ package ir.ramtung.tinyme.repository;
 import ir.ramtung.tinyme.domain.entity.Security;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Lock-free readers look a security up with one map read. The securities are also kept in the order
+// they are added, for snapshot iteration. Both live in one holder that clear() replaces in a single
+// write, so a reader never pairs the map of one generation with the array of another.
 @Component
 public class SecurityRepository {
-    private final HashMap<String, Security> securityByIsin = new HashMap<>();
+    private record Contents(ConcurrentHashMap<String, Security> byIsin, Security[] inOrder, int count) {
+        static Contents empty() {
+            return new Contents(new ConcurrentHashMap<>(), new Security[16], 0);
+        }
+    }
+
+    private volatile Contents contents = Contents.empty();
+
+    private static String keyOf(String isin) {
+        return isin == null ? "" : isin;
+    }
+
     public Security findSecurityByIsin(String isin) {
-        return securityByIsin.get(isin);
+        return contents.byIsin().get(keyOf(isin));
+    }
+
+    public synchronized void addSecurity(Security security) {
+        Contents current = contents;
+        Security[] inOrder = current.inOrder();
+        Security existing = current.byIsin().put(keyOf(security.getIsin()), security);
+        if (existing != null) {
+            for (int i = 0; i < current.count(); i++)
+                if (inOrder[i] == existing)
+                    inOrder[i] = security;
+            return;
+        }
+        if (current.count() == inOrder.length)
+            inOrder = Arrays.copyOf(inOrder, inOrder.length * 2);
+        inOrder[current.count()] = security;
+        contents = new Contents(current.byIsin(), inOrder, current.count() + 1);
     }
 
-    public void addSecurity(Security security) {
-        securityByIsin.put(security.getIsin(), security);
+    public synchronized void clear() {
+        contents = Contents.empty();
     }
 
-    public void clear() {
-        securityByIsin.clear();
+    public int size() {
+        return contents.count();
     }
 
-    Iterable<? extends Security> allSecurities() {
-        return securityByIsin.values();
+    public List<Security> allSecurities() {
+        Security[] securities;
+        synchronized (this) {
+            Contents current = contents;
+            securities = Arrays.copyOf(current.inOrder(), current.count());
+        }
+        return Collections.unmodifiableList(Arrays.asList(securities));
     }
 }
@@ -3,11 +3,11 @@ package ir.ramtung.tinyme.repository;
 import ir.ramtung.tinyme.domain.entity.Shareholder;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.util.List;
 
 @Component
 public class ShareholderRepository {
-    private final HashMap<Long, Shareholder> shareholderById = new HashMap<>();
+    private final LongKeyedMap<Shareholder> shareholderById = new LongKeyedMap<>();
     public Shareholder findShareholderById(long shareholderId) {
         return shareholderById.get(shareholderId);
     }
@@ -19,7 +19,7 @@ public class ShareholderRepository {
         shareholderById.clear();
     }
 
-    Iterable<? extends Shareholder> allShareholders() {
+    public List<Shareholder> allShareholders() {
         return shareholderById.values();
     }
 }
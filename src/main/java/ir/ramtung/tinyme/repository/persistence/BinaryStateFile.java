@@ -0,0 +1,581 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static ir.ramtung.tinyme.repository.persistence.BinaryStateFormat.*;
+import static java.nio.file.StandardOpenOption.*;
+
+// Reads and writes the repositories as one memory-mapped file of fixed-width records (see
+// BinaryStateFormat). Orders are written in queue order and put back as they were, so loading is a
+// straight copy with no sorting; their records are decoded in parallel. Deltas holding only the
+// entities changed since the last save use the same layout and are applied on top of a loaded file.
+// With deferOrders a base file's order records are left mapped and each security builds its books
+// from them on first use; until then saving copies the records over without decoding them.
+public class BinaryStateFile {
+    public static final String FILE_NAME = "state.bin";
+    private static final Side[] SIDES = Side.values();
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final MatchingState[] MATCHING_STATES = MatchingState.values();
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+    private final boolean deferOrders;
+    private long journalSequence = -1;
+
+    public BinaryStateFile(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
+        this(brokerRepository, shareholderRepository, securityRepository, false);
+    }
+
+    public BinaryStateFile(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository,
+                           boolean deferOrders) {
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+        this.deferOrders = deferOrders;
+    }
+
+    public boolean defersOrders() {
+        return deferOrders;
+    }
+
+    // The sequence number of the last journaled request reflected in the files read or applied so far,
+    // or -1 when none of them recorded one.
+    public long journalSequence() {
+        return journalSequence;
+    }
+
+    public void write(Path file) throws IOException {
+        write(file, 0, -1);
+    }
+
+    // Writes everything and marks it all clean. The file is written next to the target and moved over
+    // it once complete, so a crash never leaves half a file.
+    public void write(Path file, long generation, long journalSequence) throws IOException {
+        long start = System.nanoTime();
+        List<Security> securities = securityRepository.allSecurities();
+        Encoding encoding = new Encoding(brokerRepository.allBrokers(), shareholderRepository.allShareholders(), securities, securities.size());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        List<MappedByteBuffer> regions = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            encoding.encode((short) 0, generation, journalSequence, (position, size) -> {
+                MappedByteBuffer region = map(channel, FileChannel.MapMode.READ_WRITE, position, size);
+                regions.add(region);
+                return region;
+            });
+            regions.forEach(MappedByteBuffer::force);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        markAllClean();
+        log.info(String.format("State saved to %s: %d securities, %d orders, %d bytes in %d ms", file.getFileName(), encoding.layout.securities(),
+                encoding.layout.orders(), encoding.layout.fileSize(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    // A delta and the entities it was encoded from, which are marked clean by then. If the delta never
+    // reaches disk, markDirtyAgain() puts them in the next one; like the encoding, that must not run
+    // while the engine is handling a request.
+    public record Changes(ByteBuffer data, List<Broker> brokers, List<Shareholder> shareholders, List<Security> securities) {
+        public void markDirtyAgain() {
+            brokers.forEach(Broker::markDirty);
+            shareholders.forEach(Shareholder::markDirty);
+            securities.forEach(Security::markDirty);
+        }
+    }
+
+    // Encodes the brokers, shareholders and securities changed since they were last saved into a
+    // delta, and marks them clean; returns null when nothing has changed. Must not run while the
+    // engine is handling a request, and journalSequence must be that of the last request handled.
+    public Changes encodeChanges(long generation, long journalSequence) {
+        List<Broker> brokers = brokerRepository.allBrokers().stream().filter(Broker::isDirty).toList();
+        List<Shareholder> shareholders = shareholderRepository.allShareholders().stream().filter(Shareholder::isDirty).toList();
+        List<Security> securities = new ArrayList<>(securityRepository.allSecurities().stream().filter(Security::isDirty).toList());
+        if (brokers.isEmpty() && shareholders.isEmpty() && securities.isEmpty())
+            return null;
+        int changedSecurities = securities.size();
+        Set<Security> included = Collections.newSetFromMap(new IdentityHashMap<>());
+        included.addAll(securities);
+        for (Shareholder shareholder : shareholders)
+            for (Security security : shareholder.getPositions().keySet())
+                if (included.add(security))
+                    securities.add(security);
+
+        Encoding encoding = new Encoding(brokers, shareholders, securities, changedSecurities);
+        ByteBuffer delta = ByteBuffer.allocate(Math.toIntExact(encoding.layout.fileSize())).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            encoding.encode(DELTA, generation, journalSequence, (position, size) -> delta.slice((int) position, (int) size).order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Security> changed = List.copyOf(securities.subList(0, changedSecurities));
+        brokers.forEach(Broker::markClean);
+        shareholders.forEach(Shareholder::markClean);
+        changed.forEach(Security::markClean);
+        return new Changes(delta, brokers, shareholders, changed);
+    }
+
+    private interface Regions {
+        ByteBuffer region(long position, long size) throws IOException;
+    }
+
+    // The securities from index `references` on are only there for positions to refer to.
+    private static final class Encoding {
+        private final List<Broker> brokers;
+        private final List<Shareholder> shareholders;
+        private final List<Security> securities;
+        private final int references;
+        private final StringHeap strings = new StringHeap();
+        private final int[] brokerNames;
+        private final int[] shareholderNames;
+        private final int[] isins;
+        private final Map<Security, Integer> dictionary = new IdentityHashMap<>();
+        // the securities whose books were never built, taken once so that counting and writing agree
+        private final PersistedOrders[] persisted;
+        private final Layout layout;
+
+        Encoding(List<Broker> brokers, List<Shareholder> shareholders, List<Security> securities, int references) {
+            this.brokers = brokers;
+            this.shareholders = shareholders;
+            this.securities = securities;
+            this.references = references;
+            brokerNames = new int[brokers.size()];
+            for (int i = 0; i < brokers.size(); i++)
+                brokerNames[i] = strings.add(brokers.get(i).getName());
+            shareholderNames = new int[shareholders.size()];
+            for (int i = 0; i < shareholders.size(); i++)
+                shareholderNames[i] = strings.add(shareholders.get(i).getName());
+            isins = new int[securities.size()];
+            persisted = new PersistedOrders[references];
+            int orders = 0;
+            for (int i = 0; i < securities.size(); i++) {
+                Security security = securities.get(i);
+                dictionary.put(security, i);
+                isins[i] = strings.add(security.getIsin());
+                if (i < references && security.getDeferredBooks() instanceof PersistedOrders unbuilt) {
+                    persisted[i] = unbuilt;
+                    orders += unbuilt.count;
+                } else if (i < references)
+                    orders += security.getOrderBook().getBuyQueue().size() + security.getOrderBook().getSellQueue().size()
+                            + security.getInactiveOrderBook().getBuyQueue().size() + security.getInactiveOrderBook().getSellQueue().size();
+            }
+            int positions = 0;
+            for (Shareholder shareholder : shareholders)
+                for (Security security : shareholder.getPositions().keySet())
+                    if (dictionary.containsKey(security))
+                        positions++;
+            layout = new Layout(brokers.size(), shareholders.size(), securities.size(), positions, orders, strings.size());
+        }
+
+        void encode(short flags, long generation, long journalSequence, Regions regions) throws IOException {
+            ByteBuffer records = regions.region(0, layout.ordersAt());
+            layout.writeTo(records, flags, generation, journalSequence);
+            for (int i = 0; i < brokers.size(); i++) {
+                Broker broker = brokers.get(i);
+                int at = (int) layout.brokersAt() + i * BROKER_SIZE;
+                records.putLong(at + BROKER_ID, broker.getBrokerId())
+                        .putLong(at + BROKER_CREDIT, broker.getCredit())
+                        .putInt(at + BROKER_NAME, brokerNames[i]);
+            }
+            for (int i = 0; i < shareholders.size(); i++) {
+                int at = (int) layout.shareholdersAt() + i * SHAREHOLDER_SIZE;
+                records.putLong(at + SHAREHOLDER_ID, shareholders.get(i).getShareholderId())
+                        .putInt(at + SHAREHOLDER_NAME, shareholderNames[i]);
+            }
+            for (int i = 0; i < securities.size(); i++) {
+                Security security = securities.get(i);
+                int at = (int) layout.securitiesAt() + i * SECURITY_SIZE;
+                records.putInt(at + SECURITY_ISIN, isins[i])
+                        .putInt(at + SECURITY_TICK_SIZE, security.getTickSize())
+                        .putInt(at + SECURITY_LOT_SIZE, security.getLotSize())
+                        .putInt(at + SECURITY_LAST_TRADE_PRICE, security.getLastTradePrice())
+                        .put(at + SECURITY_MATCHING_STATE, (byte) security.getMatchingState().ordinal())
+                        .put(at + SECURITY_FLAGS, i < references ? 0 : REFERENCE);
+            }
+            int at = (int) layout.positionsAt();
+            for (Shareholder shareholder : shareholders) {
+                for (Map.Entry<Security, Integer> position : shareholder.getPositions().entrySet()) {
+                    Integer security = dictionary.get(position.getKey());
+                    if (security == null)
+                        continue;
+                    records.putLong(at + POSITION_SHAREHOLDER, shareholder.getShareholderId())
+                            .putInt(at + POSITION_SECURITY, security)
+                            .putInt(at + POSITION_AMOUNT, position.getValue());
+                    at += POSITION_SIZE;
+                }
+            }
+
+            OrderWriter orderWriter = new OrderWriter(regions, layout);
+            for (int i = 0; i < references; i++) {
+                if (persisted[i] != null) {
+                    orderWriter.putPersisted(i, persisted[i]);
+                    continue;
+                }
+                Security security = securities.get(i);
+                orderWriter.putQueue(i, ACTIVE_BOOK, security.getOrderBook().getBuyQueue());
+                orderWriter.putQueue(i, ACTIVE_BOOK, security.getOrderBook().getSellQueue());
+                orderWriter.putQueue(i, INACTIVE_BOOK, security.getInactiveOrderBook().getBuyQueue());
+                orderWriter.putQueue(i, INACTIVE_BOOK, security.getInactiveOrderBook().getSellQueue());
+            }
+
+            regions.region(layout.stringsAt(), layout.stringHeapSize()).put(0, strings.bytes, 0, strings.size());
+        }
+    }
+
+    private static final class OrderWriter {
+        private final Regions regions;
+        private final Layout layout;
+        private ByteBuffer region;
+        private int written;
+
+        OrderWriter(Regions regions, Layout layout) {
+            this.regions = regions;
+            this.layout = layout;
+        }
+
+        void putQueue(int security, byte book, List<Order> queue) throws IOException {
+            for (Order order : queue) {
+                int at = nextRecord();
+                byte kind = order instanceof IcebergOrder ? ICEBERG_ORDER : order instanceof StopLimitOrder ? STOP_LIMIT_ORDER : PLAIN_ORDER;
+                region.putLong(at + ORDER_ID, order.getOrderId())
+                        .putInt(at + ORDER_SECURITY, security)
+                        .put(at + ORDER_SIDE, (byte) order.getSide().ordinal())
+                        .put(at + ORDER_KIND, kind)
+                        .put(at + ORDER_STATUS, (byte) order.getStatus().ordinal())
+                        .put(at + ORDER_BOOK, book)
+                        .putInt(at + ORDER_QUANTITY, order.getTotalQuantity())
+                        .putInt(at + ORDER_PRICE, order.getPrice())
+                        .putLong(at + ORDER_BROKER, order.getBroker().getBrokerId())
+                        .putLong(at + ORDER_SHAREHOLDER, order.getShareholder().getShareholderId())
+                        .putLong(at + ORDER_ENTRY_SECONDS, order.getEntryTime().toEpochSecond(ZoneOffset.UTC))
+                        .putInt(at + ORDER_ENTRY_NANOS, order.getEntryTime().getNano())
+                        .putInt(at + ORDER_MINIMUM_EXECUTION_QUANTITY, order.getMinimumExecutionQuantity());
+                if (order instanceof IcebergOrder iceberg)
+                    region.putInt(at + ORDER_PEAK_SIZE, iceberg.getPeakSize()).putInt(at + ORDER_DISPLAYED_QUANTITY, iceberg.getDisplayedQuantity());
+                else if (order instanceof StopLimitOrder stopLimit)
+                    region.putInt(at + ORDER_STOP_PRICE, stopLimit.getStopPrice()).putLong(at + ORDER_REQUEST_ID, stopLimit.getRequestId());
+            }
+        }
+
+        // Copies the records as they are, renumbering only the security they refer to.
+        void putPersisted(int security, PersistedOrders orders) throws IOException {
+            for (int i = orders.first; i < orders.first + orders.count; i++) {
+                int at = nextRecord();
+                region.put(at, orders.regionOf(i), orders.offsetOf(i), ORDER_SIZE).putInt(at + ORDER_SECURITY, security);
+            }
+        }
+
+        private int nextRecord() throws IOException {
+            int at = (written % ORDERS_PER_REGION) * ORDER_SIZE;
+            if (at == 0) {
+                int count = Math.min(ORDERS_PER_REGION, layout.orders() - written);
+                region = regions.region(layout.ordersAt() + (long) written * ORDER_SIZE, (long) count * ORDER_SIZE);
+            }
+            written++;
+            return at;
+        }
+    }
+
+    // Replaces the contents of the repositories with the file and returns its generation. Securities
+    // the partition does not own are left out together with their orders and positions; splitCredit
+    // gives each broker only the partition's share of its credit, for a node starting from a file
+    // written by a single node.
+    public long read(Path file, IsinPartition partition, boolean splitCredit) throws IOException {
+        return decode(file, partition, splitCredit, false);
+    }
+
+    // Applies a delta on top of the repositories and returns its generation.
+    public long apply(Path delta, IsinPartition partition) throws IOException {
+        return decode(delta, partition, false, true);
+    }
+
+    private long decode(Path file, IsinPartition partition, boolean splitCredit, boolean delta) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() < HEADER_SIZE)
+                throw new IOException(file + " is not a TinyME state file");
+            MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC)
+                throw new IOException(file + " is not a TinyME state file");
+            short version = header.getShort(4);
+            if (version != VERSION && version != VERSION_WITHOUT_JOURNAL_SEQUENCE)
+                throw new IOException(file + " has unsupported version " + version);
+            if (((header.getShort(FLAGS) & DELTA) != 0) != delta)
+                throw new IOException(file + (delta ? " is not a delta" : " is a delta, not a state file"));
+            Layout layout = Layout.of(header);
+            if (channel.size() != layout.fileSize())
+                throw new IOException(file + " is " + channel.size() + " bytes, expected " + layout.fileSize());
+
+            ByteBuffer strings = map(channel, FileChannel.MapMode.READ_ONLY, layout.stringsAt(), layout.stringHeapSize());
+            MappedByteBuffer records = map(channel, FileChannel.MapMode.READ_ONLY, 0, layout.ordersAt());
+            if (version == VERSION)
+                journalSequence = delta ? Math.max(journalSequence, header.getLong(JOURNAL_SEQUENCE)) : header.getLong(JOURNAL_SEQUENCE);
+            else if (!delta)
+                journalSequence = -1;
+            if (!delta) {
+                brokerRepository.clear();
+                shareholderRepository.clear();
+                securityRepository.clear();
+            }
+
+            for (int i = 0; i < layout.brokers(); i++) {
+                int at = (int) layout.brokersAt() + i * BROKER_SIZE;
+                long brokerId = records.getLong(at + BROKER_ID);
+                long credit = records.getLong(at + BROKER_CREDIT);
+                Broker broker = delta ? brokerRepository.findBrokerById(brokerId) : null;
+                if (broker != null)
+                    restoreCredit(broker, credit);
+                else
+                    brokerRepository.addBroker(Broker.builder()
+                            .brokerId(brokerId)
+                            .name(stringAt(strings, records.getInt(at + BROKER_NAME)))
+                            .credit(splitCredit ? partition.creditShareOf(credit) : credit)
+                            .build());
+            }
+            for (int i = 0; i < layout.shareholders(); i++) {
+                int at = (int) layout.shareholdersAt() + i * SHAREHOLDER_SIZE;
+                long shareholderId = records.getLong(at + SHAREHOLDER_ID);
+                Shareholder shareholder = delta ? shareholderRepository.findShareholderById(shareholderId) : null;
+                if (shareholder != null)
+                    shareholder.getPositions().clear();
+                else
+                    shareholderRepository.addShareholder(Shareholder.builder()
+                            .shareholderId(shareholderId)
+                            .name(stringAt(strings, records.getInt(at + SHAREHOLDER_NAME)))
+                            .build());
+            }
+            Security[] dictionary = new Security[layout.securities()];
+            for (int i = 0; i < layout.securities(); i++) {
+                int at = (int) layout.securitiesAt() + i * SECURITY_SIZE;
+                String isin = stringAt(strings, records.getInt(at + SECURITY_ISIN));
+                if (!partition.owns(isin))
+                    continue;
+                int lastTradePrice = records.getInt(at + SECURITY_LAST_TRADE_PRICE);
+                MatchingState matchingState = MATCHING_STATES[records.get(at + SECURITY_MATCHING_STATE)];
+                dictionary[i] = delta ? securityRepository.findSecurityByIsin(isin) : null;
+                if (dictionary[i] == null) {
+                    dictionary[i] = Security.builder()
+                            .isin(isin)
+                            .tickSize(records.getInt(at + SECURITY_TICK_SIZE))
+                            .lotSize(records.getInt(at + SECURITY_LOT_SIZE))
+                            .lastTradePrice(lastTradePrice)
+                            .matchingState(matchingState)
+                            .build();
+                    securityRepository.addSecurity(dictionary[i]);
+                } else if ((records.get(at + SECURITY_FLAGS) & REFERENCE) == 0) {
+                    Security security = dictionary[i];
+                    security.setLastTradePrice(lastTradePrice);
+                    security.setMatchingState(matchingState);
+                    security.clearBooks();
+                }
+            }
+            for (int i = 0; i < layout.positions(); i++) {
+                int at = (int) layout.positionsAt() + i * POSITION_SIZE;
+                Security security = dictionary[records.getInt(at + POSITION_SECURITY)];
+                if (security == null)
+                    continue;
+                shareholderRepository.findShareholderById(records.getLong(at + POSITION_SHAREHOLDER))
+                        .incPosition(security, records.getInt(at + POSITION_AMOUNT));
+            }
+
+            boolean deferred = deferOrders && !delta;
+            ByteBuffer[] regions = new ByteBuffer[(layout.orders() + ORDERS_PER_REGION - 1) / ORDERS_PER_REGION];
+            for (int r = 0; r < regions.length; r++) {
+                long first = (long) r * ORDERS_PER_REGION;
+                int count = (int) Math.min(ORDERS_PER_REGION, layout.orders() - first);
+                regions[r] = map(channel, FileChannel.MapMode.READ_ONLY, layout.ordersAt() + first * ORDER_SIZE, (long) count * ORDER_SIZE);
+            }
+            if (deferred)
+                deferOrders(regions, layout, dictionary);
+            else
+                decodeOrders(regions, dictionary);
+            markAllClean();
+            log.info(String.format("%s %s: %d securities, %d orders%s in %d ms", delta ? "Delta applied from" : "State loaded from",
+                    file.getFileName(), layout.securities(), layout.orders(), deferred ? " left to build on first use" : "",
+                    (System.nanoTime() - start) / 1_000_000));
+            return header.getLong(GENERATION);
+        }
+    }
+
+    private void decodeOrders(ByteBuffer[] regions, Security[] dictionary) {
+        for (ByteBuffer region : regions) {
+            int count = region.capacity() / ORDER_SIZE;
+            Order[] orders = IntStream.range(0, count).parallel()
+                    .mapToObj(i -> orderAt(region, i * ORDER_SIZE, dictionary[region.getInt(i * ORDER_SIZE + ORDER_SECURITY)]))
+                    .toArray(Order[]::new);
+            for (int i = 0; i < count; i++) {
+                Order order = orders[i];
+                if (order != null)
+                    enqueue(order, region.get(i * ORDER_SIZE + ORDER_BOOK), order.getSecurity().getOrderBook(), order.getSecurity().getInactiveOrderBook());
+            }
+        }
+    }
+
+    // Orders are written grouped by security in dictionary order, so the orders of each security are
+    // one run of records whose bounds are found by binary search without reading the rest.
+    private void deferOrders(ByteBuffer[] regions, Layout layout, Security[] dictionary) {
+        int first = 0;
+        for (int i = 0; i < layout.securities(); i++) {
+            int next = firstOrderAfter(regions, layout.orders(), i);
+            if (dictionary[i] != null && next > first)
+                dictionary[i].deferBooks(new PersistedOrders(regions, first, next - first, dictionary[i]));
+            first = next;
+        }
+    }
+
+    private static int firstOrderAfter(ByteBuffer[] regions, int orders, int security) {
+        int low = 0;
+        int high = orders;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (regions[middle / ORDERS_PER_REGION].getInt((middle % ORDERS_PER_REGION) * ORDER_SIZE + ORDER_SECURITY) <= security)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static void enqueue(Order order, byte book, OrderBook orderBook, InactiveOrderBook inactiveOrderBook) {
+        OrderBook target = book == INACTIVE_BOOK ? inactiveOrderBook : orderBook;
+        (order.getSide() == Side.BUY ? target.getBuyQueue() : target.getSellQueue()).addLast(order);
+    }
+
+    // The records of one security's orders, still in the mapped file.
+    private final class PersistedOrders implements Security.DeferredBooks {
+        private final ByteBuffer[] regions;
+        private final int first;
+        private final int count;
+        private final Security security;
+
+        PersistedOrders(ByteBuffer[] regions, int first, int count, Security security) {
+            this.regions = regions;
+            this.first = first;
+            this.count = count;
+            this.security = security;
+        }
+
+        ByteBuffer regionOf(int order) {
+            return regions[order / ORDERS_PER_REGION];
+        }
+
+        int offsetOf(int order) {
+            return (order % ORDERS_PER_REGION) * ORDER_SIZE;
+        }
+
+        @Override
+        public void loadInto(OrderBook orderBook, InactiveOrderBook inactiveOrderBook) {
+            for (int i = first; i < first + count; i++) {
+                ByteBuffer region = regionOf(i);
+                int at = offsetOf(i);
+                enqueue(orderAt(region, at, security), region.get(at + ORDER_BOOK), orderBook, inactiveOrderBook);
+            }
+        }
+    }
+
+    private static void restoreCredit(Broker broker, long credit) {
+        long change = credit - broker.getCredit();
+        if (change >= 0)
+            broker.increaseCreditBy(change);
+        else
+            broker.decreaseCreditBy(-change);
+    }
+
+    private void markAllClean() {
+        brokerRepository.allBrokers().forEach(Broker::markClean);
+        shareholderRepository.allShareholders().forEach(Shareholder::markClean);
+        securityRepository.allSecurities().forEach(Security::markClean);
+    }
+
+    private Order orderAt(ByteBuffer region, int at, Security security) {
+        if (security == null)
+            return null;
+        long orderId = region.getLong(at + ORDER_ID);
+        Side side = SIDES[region.get(at + ORDER_SIDE)];
+        OrderStatus status = STATUSES[region.get(at + ORDER_STATUS)];
+        int quantity = region.getInt(at + ORDER_QUANTITY);
+        int price = region.getInt(at + ORDER_PRICE);
+        Broker broker = brokerRepository.findBrokerById(region.getLong(at + ORDER_BROKER));
+        Shareholder shareholder = shareholderRepository.findShareholderById(region.getLong(at + ORDER_SHAREHOLDER));
+        LocalDateTime entryTime = LocalDateTime.ofEpochSecond(region.getLong(at + ORDER_ENTRY_SECONDS), region.getInt(at + ORDER_ENTRY_NANOS), ZoneOffset.UTC);
+        int minimumExecutionQuantity = region.getInt(at + ORDER_MINIMUM_EXECUTION_QUANTITY);
+        return switch (region.get(at + ORDER_KIND)) {
+            case ICEBERG_ORDER -> new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    region.getInt(at + ORDER_PEAK_SIZE), region.getInt(at + ORDER_DISPLAYED_QUANTITY), status, minimumExecutionQuantity);
+            case STOP_LIMIT_ORDER -> new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                    status, region.getInt(at + ORDER_STOP_PRICE), region.getLong(at + ORDER_REQUEST_ID));
+            default -> new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime, status, minimumExecutionQuantity);
+        };
+    }
+
+    private static String stringAt(ByteBuffer strings, int ref) {
+        if (ref == NULL_STRING)
+            return null;
+        byte[] bytes = new byte[Short.toUnsignedInt(strings.getShort(ref))];
+        strings.get(ref + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    // Each distinct string is stored once, as an unsigned 16-bit length followed by its UTF-8 bytes.
+    private static final class StringHeap {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private byte[] bytes = new byte[1 << 12];
+        private int size;
+
+        int add(String value) {
+            if (value == null)
+                return NULL_STRING;
+            Integer ref = refs.get(value);
+            if (ref != null)
+                return ref;
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > MAX_STRING_LENGTH)
+                throw new IllegalArgumentException("String too long to persist: " + value.substring(0, 32) + "...");
+            if (size + 2 + utf8.length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 2 + utf8.length));
+            ref = size;
+            ByteBuffer.wrap(bytes, ref, 2).order(ByteOrder.LITTLE_ENDIAN).putShort((short) utf8.length);
+            System.arraycopy(utf8, 0, bytes, ref + 2, utf8.length);
+            refs.put(value, ref);
+            size += 2 + utf8.length;
+            return ref;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+import java.nio.ByteBuffer;
+
+// Layout of the binary persistence file. A fixed-size header holds the record counts; after it come
+// the brokers, the shareholders, the securities, the positions and the orders, each section an array
+// of fixed-width little-endian records, and last the string heap. The securities section doubles as
+// the ISIN dictionary: positions and orders refer to a security by its index in it. Strings are stored
+// once in the heap as a length-prefixed UTF-8 run and referred to by their offset in it. Orders are
+// grouped by security in dictionary order, so the orders of one security are a single run.
+//
+// A delta file has the same layout with the DELTA flag set and holds only the entities that changed:
+// each broker, shareholder (with all its positions) and security (with all its orders) replaces the
+// one with the same key. Securities a changed shareholder holds but that did not change themselves
+// are included flagged REFERENCE only, so that positions can name them. The generation orders the
+// deltas; a base file carries the generation of the last delta folded into it. Every file also carries
+// the sequence number of the last journaled request it reflects (-1 for none), which is where replaying
+// the request journal resumes; version 1 files predate it.
+final class BinaryStateFormat {
+    static final int MAGIC = 0x50424D54;
+    static final short VERSION = 2;
+    static final short VERSION_WITHOUT_JOURNAL_SEQUENCE = 1;
+    static final int FLAGS = 6;
+    static final int BROKER_COUNT = 8;
+    static final int SHAREHOLDER_COUNT = BROKER_COUNT + 4;
+    static final int SECURITY_COUNT = SHAREHOLDER_COUNT + 4;
+    static final int POSITION_COUNT = SECURITY_COUNT + 4;
+    static final int ORDER_COUNT = POSITION_COUNT + 4;
+    static final int STRING_HEAP_SIZE = ORDER_COUNT + 4;
+    static final int GENERATION = STRING_HEAP_SIZE + 4;
+    static final int JOURNAL_SEQUENCE = GENERATION + 8;
+    static final int HEADER_SIZE = 64;
+
+    static final short DELTA = 1;
+
+    static final int BROKER_ID = 0;
+    static final int BROKER_CREDIT = 8;
+    static final int BROKER_NAME = 16;
+    static final int BROKER_SIZE = 24;
+
+    static final int SHAREHOLDER_ID = 0;
+    static final int SHAREHOLDER_NAME = 8;
+    static final int SHAREHOLDER_SIZE = 16;
+
+    static final int SECURITY_ISIN = 0;
+    static final int SECURITY_TICK_SIZE = 4;
+    static final int SECURITY_LOT_SIZE = 8;
+    static final int SECURITY_LAST_TRADE_PRICE = 12;
+    static final int SECURITY_MATCHING_STATE = 16;
+    static final int SECURITY_FLAGS = 17;
+    static final int SECURITY_SIZE = 24;
+
+    static final byte REFERENCE = 1;
+
+    static final int POSITION_SHAREHOLDER = 0;
+    static final int POSITION_SECURITY = 8;
+    static final int POSITION_AMOUNT = 12;
+    static final int POSITION_SIZE = 16;
+
+    static final int ORDER_ID = 0;
+    static final int ORDER_SECURITY = 8;
+    static final int ORDER_SIDE = 12;
+    static final int ORDER_KIND = 13;
+    static final int ORDER_STATUS = 14;
+    static final int ORDER_BOOK = 15;
+    static final int ORDER_QUANTITY = 16;
+    static final int ORDER_PRICE = 20;
+    static final int ORDER_BROKER = 24;
+    static final int ORDER_SHAREHOLDER = 32;
+    static final int ORDER_ENTRY_SECONDS = 40;
+    static final int ORDER_ENTRY_NANOS = 48;
+    static final int ORDER_PEAK_SIZE = 52;
+    static final int ORDER_DISPLAYED_QUANTITY = 56;
+    // stop-limit orders keep their request id where icebergs keep their peak and displayed quantity
+    static final int ORDER_REQUEST_ID = 52;
+    static final int ORDER_MINIMUM_EXECUTION_QUANTITY = 60;
+    static final int ORDER_STOP_PRICE = 64;
+    static final int ORDER_SIZE = 72;
+
+    static final byte PLAIN_ORDER = 0;
+    static final byte ICEBERG_ORDER = 1;
+    static final byte STOP_LIMIT_ORDER = 2;
+    static final byte ACTIVE_BOOK = 0;
+    static final byte INACTIVE_BOOK = 1;
+
+    static final int NULL_STRING = -1;
+    static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    // orders are mapped this many at a time so that no single mapping goes past 2 GB
+    static final int ORDERS_PER_REGION = 1 << 20;
+
+    private BinaryStateFormat() {
+    }
+
+    record Layout(int brokers, int shareholders, int securities, int positions, int orders, int stringHeapSize) {
+        static Layout of(ByteBuffer header) {
+            return new Layout(header.getInt(BROKER_COUNT), header.getInt(SHAREHOLDER_COUNT), header.getInt(SECURITY_COUNT),
+                    header.getInt(POSITION_COUNT), header.getInt(ORDER_COUNT), header.getInt(STRING_HEAP_SIZE));
+        }
+
+        void writeTo(ByteBuffer header, short flags, long generation, long journalSequence) {
+            header.putInt(0, MAGIC).putShort(4, VERSION).putShort(FLAGS, flags)
+                    .putInt(BROKER_COUNT, brokers)
+                    .putInt(SHAREHOLDER_COUNT, shareholders)
+                    .putInt(SECURITY_COUNT, securities)
+                    .putInt(POSITION_COUNT, positions)
+                    .putInt(ORDER_COUNT, orders)
+                    .putInt(STRING_HEAP_SIZE, stringHeapSize)
+                    .putLong(GENERATION, generation)
+                    .putLong(JOURNAL_SEQUENCE, journalSequence);
+        }
+
+        long brokersAt() {
+            return HEADER_SIZE;
+        }
+
+        long shareholdersAt() {
+            return brokersAt() + (long) brokers * BROKER_SIZE;
+        }
+
+        long securitiesAt() {
+            return shareholdersAt() + (long) shareholders * SHAREHOLDER_SIZE;
+        }
+
+        long positionsAt() {
+            return securitiesAt() + (long) securities * SECURITY_SIZE;
+        }
+
+        long ordersAt() {
+            return positionsAt() + (long) positions * POSITION_SIZE;
+        }
+
+        long stringsAt() {
+            return ordersAt() + (long) orders * ORDER_SIZE;
+        }
+
+        long fileSize() {
+            return stringsAt() + stringHeapSize;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardOpenOption.*;
+
+// A base state file and the append-only delta segments saved since it was written, named after the
+// base file and their generation (state.bin.delta-00000000000000000007). The state is the base with
+// the deltas newer than its generation applied in order. Compaction folds the deltas into a new base
+// without touching the live repositories. Each file records the last journaled request it reflects, so
+// the loaded state says itself where the request journal is to be replayed from.
+public class BinaryStateStore {
+    private static final String DELTA_INFIX = ".delta-";
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path baseFile;
+    private final BinaryStateFile stateFile;
+    private final IsinPartition partition;
+    private final Object compactionLock = new Object();
+    private volatile long generation;
+    private volatile long journalSequence = -1;
+
+    public BinaryStateStore(Path baseFile, BinaryStateFile stateFile, IsinPartition partition) {
+        this.baseFile = baseFile;
+        this.stateFile = stateFile;
+        this.partition = partition;
+    }
+
+    public Path baseFile() {
+        return baseFile;
+    }
+
+    public boolean exists() {
+        return Files.exists(baseFile);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    // The sequence number of the last journaled request reflected in the state loaded or saved last,
+    // or -1 when the files predate recording it.
+    public long journalSequence() {
+        return journalSequence;
+    }
+
+    public void load() throws IOException {
+        generation = loadInto(stateFile);
+        journalSequence = stateFile.journalSequence();
+    }
+
+    private long loadInto(BinaryStateFile target) throws IOException {
+        long loaded = target.read(baseFile, partition, false);
+        for (Path delta : deltas()) {
+            if (generationOf(delta) <= loaded)
+                continue;
+            loaded = target.apply(delta, partition);
+        }
+        return loaded;
+    }
+
+    // Writes the whole state, reflecting the journaled requests through journalSequence, as the new
+    // base, which makes every delta so far redundant.
+    public void saveAll(long journalSequence) throws IOException {
+        synchronized (compactionLock) {
+            stateFile.write(baseFile, generation, journalSequence);
+            this.journalSequence = journalSequence;
+            deleteDeltasThrough(generation);
+        }
+    }
+
+    // Makes the state loaded from somewhere else (the CSV files or another node's base) the base,
+    // dropping any deltas left without one.
+    public void rebase(long journalSequence) throws IOException {
+        synchronized (compactionLock) {
+            generation = deltas().stream().mapToLong(this::generationOf).max().orElse(0);
+            saveAll(journalSequence);
+        }
+    }
+
+    // Returns the encoded changes with the generation they are to be saved under, or null when
+    // nothing has changed. Must not run while the engine is handling a request, and journalSequence
+    // must be that of the last request handled. The store moves on to the delta's generation only
+    // once append() has written it.
+    public Delta encodeChanges(long journalSequence) {
+        BinaryStateFile.Changes changes = stateFile.encodeChanges(generation + 1, journalSequence);
+        return changes == null ? null : new Delta(generation + 1, journalSequence, changes);
+    }
+
+    public record Delta(long generation, long journalSequence, BinaryStateFile.Changes changes) {
+    }
+
+    public Path append(Delta delta) throws IOException {
+        Path file = deltaFile(delta.generation());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer changes = delta.changes().data().duplicate();
+            while (changes.hasRemaining())
+                channel.write(changes);
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        generation = delta.generation();
+        journalSequence = delta.journalSequence();
+        return file;
+    }
+
+    // Loads the base and the deltas into scratch repositories and writes them back as the new base.
+    // The orders of securities no delta touched are copied over as records, never decoded.
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Path> deltas = deltas();
+            if (deltas.isEmpty())
+                return;
+            long start = System.nanoTime();
+            BinaryStateFile scratch = new BinaryStateFile(new BrokerRepository(), new ShareholderRepository(), new SecurityRepository(), true);
+            long compacted = loadInto(scratch);
+            scratch.write(baseFile, compacted, scratch.journalSequence());
+            deleteDeltasThrough(compacted);
+            log.info(String.format("Compacted %d deltas into %s through generation %d in %d ms", deltas.size(), baseFile.getFileName(),
+                    compacted, (System.nanoTime() - start) / 1_000_000));
+        }
+    }
+
+    public List<Path> deltas() throws IOException {
+        List<Path> deltas = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(baseFile.toAbsolutePath().getParent(), baseFile.getFileName() + DELTA_INFIX + "*")) {
+            for (Path file : files)
+                if (!file.getFileName().toString().endsWith(".tmp"))
+                    deltas.add(file);
+        }
+        deltas.sort(null);
+        return deltas;
+    }
+
+    private void deleteDeltasThrough(long generation) throws IOException {
+        for (Path delta : deltas())
+            if (generationOf(delta) <= generation)
+                Files.delete(delta);
+    }
+
+    private Path deltaFile(long generation) {
+        return baseFile.resolveSibling(String.format("%s%s%020d", baseFile.getFileName(), DELTA_INFIX, generation));
+    }
+
+    private long generationOf(Path delta) {
+        String name = delta.getFileName().toString();
+        return Long.parseLong(name.substring(name.lastIndexOf(DELTA_INFIX) + DELTA_INFIX.length()));
+    }
+}
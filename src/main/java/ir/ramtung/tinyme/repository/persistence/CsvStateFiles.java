@@ -0,0 +1,292 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+// Reads and writes the repositories as the five CSV files of a persistence directory. A partitioned
+// node saves to its own copies of the files (see IsinPartition.fileNameFor) and reads them when they
+// exist, falling back to the shared ones.
+public class CsvStateFiles {
+    public static final String BROKER_FILE = "broker.csv";
+    public static final String SHAREHOLDER_FILE = "shareholder.csv";
+    public static final String SECURITY_FILE = "security.csv";
+    public static final String POSITION_FILE = "position.csv";
+    public static final String ORDER_BOOK_FILE = "orderbook.csv";
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+    private final IsinPartition partition;
+
+    public CsvStateFiles(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository,
+                         IsinPartition partition) {
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+        this.partition = partition;
+    }
+
+    private File partitionFileOf(File directory, String name) {
+        return new File(directory, partition.fileNameFor(name));
+    }
+
+    private File loadFileOf(File directory, String name) {
+        File partitionFile = partitionFileOf(directory, name);
+        return partitionFile.exists() ? partitionFile : new File(directory, name);
+    }
+
+    // The files are read and parsed concurrently; the repositories are then built in dependency order.
+    public void load(File directory) throws Exception {
+        CompletableFuture<ParsedFile> brokers = parse(loadFileOf(directory, BROKER_FILE));
+        CompletableFuture<ParsedFile> shareholders = parse(loadFileOf(directory, SHAREHOLDER_FILE));
+        CompletableFuture<ParsedFile> securities = parse(loadFileOf(directory, SECURITY_FILE));
+        CompletableFuture<ParsedFile> positions = parse(loadFileOf(directory, POSITION_FILE));
+        CompletableFuture<ParsedFile> orderBook = parse(loadFileOf(directory, ORDER_BOOK_FILE));
+        // a node starting from the shared broker file takes only its share of each broker's credit
+        loadBrokers(resultOf(brokers), partition.isPartitioned() && !partitionFileOf(directory, BROKER_FILE).exists());
+        loadShareholders(resultOf(shareholders));
+        loadSecurities(resultOf(securities));
+        loadPositions(resultOf(positions));
+        loadOrderBook(resultOf(orderBook));
+    }
+
+    public void save(File directory) throws IOException {
+        saveBrokers(directory);
+        saveShareholdersAndPositions(directory);
+        saveSecuritiesAndOrderBooks(directory);
+    }
+
+    private record ParsedFile(String name, List<String[]> rows, long parseNanos) {
+    }
+
+    private CompletableFuture<ParsedFile> parse(File file) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try (CSVReader csvReader = new CSVReaderBuilder(new FileReader(file)).withSkipLines(1).build()) {
+                return new ParsedFile(file.getName(), csvReader.readAll(), System.nanoTime() - start);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static ParsedFile resultOf(CompletableFuture<ParsedFile> parsing) throws Exception {
+        try {
+            return parsing.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private void logLoaded(String what, ParsedFile file, long buildStart) {
+        log.info(String.format("%s loaded from %s: %d rows, parsed in %d ms, built in %d ms", what, file.name(), file.rows().size(),
+                file.parseNanos() / 1_000_000, (System.nanoTime() - buildStart) / 1_000_000));
+    }
+
+    private void loadBrokers(ParsedFile file, boolean splitCredit) {
+        long start = System.nanoTime();
+        brokerRepository.clear();
+        for (String[] line : file.rows()) {
+            long credit = Long.parseLong(line[2]);
+            brokerRepository.addBroker(Broker.builder()
+                    .brokerId(Long.parseLong(line[0]))
+                    .name(line[1])
+                    .credit(splitCredit ? partition.creditShareOf(credit) : credit)
+                    .build());
+        }
+        logLoaded("Brokers", file, start);
+    }
+
+    private void loadShareholders(ParsedFile file) {
+        long start = System.nanoTime();
+        shareholderRepository.clear();
+        for (String[] line : file.rows()) {
+            shareholderRepository.addShareholder(Shareholder.builder()
+                    .shareholderId(Long.parseLong(line[0]))
+                    .name(line[1])
+                    .build());
+        }
+        logLoaded("Shareholders", file, start);
+    }
+
+    private void loadSecurities(ParsedFile file) {
+        long start = System.nanoTime();
+        securityRepository.clear();
+        for (String[] line : file.rows()) {
+            if (!partition.owns(line[0]))
+                continue;
+            securityRepository.addSecurity(Security.builder()
+                    .isin(line[0])
+                    .tickSize(Integer.parseInt(line[1]))
+                    .lotSize(Integer.parseInt(line[2]))
+                    .build());
+        }
+        logLoaded("Securities", file, start);
+    }
+
+    private void loadPositions(ParsedFile file) {
+        long start = System.nanoTime();
+        for (String[] line : file.rows()) {
+            Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[0]));
+            Security security = securityRepository.findSecurityByIsin(line[1]);
+            if (security == null)
+                continue;
+            shareholder.incPosition(security, Integer.parseInt(line[2]));
+        }
+        logLoaded("Positions", file, start);
+    }
+
+    // Orders are built in parallel, grouped by security and side in file order, and each queue is
+    // then filled in one go instead of enqueueing order by order.
+    private void loadOrderBook(ParsedFile file) {
+        long start = System.nanoTime();
+        List<Order> orders = file.rows().parallelStream()
+                .map(this::orderOf)
+                .filter(Objects::nonNull)
+                .toList();
+        Map<Security, List<Order>> buyOrders = new LinkedHashMap<>();
+        Map<Security, List<Order>> sellOrders = new LinkedHashMap<>();
+        for (Order order : orders)
+            (order.getSide() == Side.BUY ? buyOrders : sellOrders).computeIfAbsent(order.getSecurity(), security -> new ArrayList<>()).add(order);
+        buyOrders.forEach((security, queue) -> security.getOrderBook().enqueueAll(Side.BUY, queue));
+        sellOrders.forEach((security, queue) -> security.getOrderBook().enqueueAll(Side.SELL, queue));
+        logLoaded("Order book", file, start);
+    }
+
+    private Order orderOf(String[] line) {
+        Security security = securityRepository.findSecurityByIsin(line[1]);
+        if (security == null)
+            return null;
+        Broker broker = brokerRepository.findBrokerById(Long.parseLong(line[5]));
+        Shareholder shareholder = shareholderRepository.findShareholderById(Long.parseLong(line[6]));
+//orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,peakSize,displayedQuantity
+//0       1    2    3        4     5        6             7         8        9
+        int peakSize = Integer.parseInt(line[8]);
+        if (peakSize == 0) {
+            return new Order(
+                    Long.parseLong(line[0]),
+                    security,
+                    Side.parse(line[2]),
+                    Integer.parseInt(line[3]),
+                    Integer.parseInt(line[4]),
+                    broker,
+                    shareholder,
+                    LocalDateTime.parse(line[7]),
+                    OrderStatus.QUEUED,
+                    Integer.parseInt(line[10]));
+        }
+        return new IcebergOrder(
+                Long.parseLong(line[0]),
+                security,
+                Side.parse(line[2]),
+                Integer.parseInt(line[3]),
+                Integer.parseInt(line[4]),
+                broker,
+                shareholder,
+                LocalDateTime.parse(line[7]),
+                Integer.parseInt(line[8]),
+                Integer.parseInt(line[9]),
+                OrderStatus.QUEUED,
+                Integer.parseInt(line[10]));
+    }
+
+    private void saveBrokers(File directory) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(partitionFileOf(directory, BROKER_FILE)))) {
+            writer.println("brokerId,name,credit");
+            for (Broker broker : brokerRepository.allBrokers()) {
+                StringJoiner joiner = new StringJoiner(",");
+                joiner.add(String.valueOf(broker.getBrokerId()))
+                        .add(broker.getName())
+                        .add(String.valueOf(broker.getCredit()));
+                writer.println(joiner);
+            }
+        }
+        log.info("Brokers saved");
+    }
+
+    private void saveShareholdersAndPositions(File directory) throws IOException {
+        try (PrintWriter shareholderWriter = new PrintWriter(new FileWriter(partitionFileOf(directory, SHAREHOLDER_FILE)))) {
+            shareholderWriter.println("shareholderId,name");
+            try (PrintWriter positionWriter = new PrintWriter(new FileWriter(partitionFileOf(directory, POSITION_FILE)))) {
+                positionWriter.println("shareholderId,isin,positions");
+                for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+                    StringJoiner joiner = new StringJoiner(",");
+                    joiner.add(String.valueOf(shareholder.getShareholderId()))
+                            .add(shareholder.getName());
+                    shareholderWriter.println(joiner);
+                    for (var entry : shareholder.getPositions().entrySet()) {
+                        StringJoiner posJoiner = new StringJoiner(",");
+                        posJoiner.add(String.valueOf(shareholder.getShareholderId()))
+                                .add(entry.getKey().getIsin())
+                                .add(String.valueOf(entry.getValue()));
+                        positionWriter.println(posJoiner);
+                    }
+                }
+            }
+        }
+        log.info("Shareholders and Positions saved");
+    }
+
+    private void saveSecuritiesAndOrderBooks(File directory) throws IOException {
+        try (PrintWriter securityWriter = new PrintWriter(new FileWriter(partitionFileOf(directory, SECURITY_FILE)))) {
+            securityWriter.println("isin,tickSize,lotSize");
+            try (PrintWriter orderBookWriter = new PrintWriter(new FileWriter(partitionFileOf(directory, ORDER_BOOK_FILE)))) {
+                orderBookWriter.println("orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity,minimumExecutionQuantity");
+                for (Security security : securityRepository.allSecurities()) {
+                    StringJoiner joiner = new StringJoiner(",");
+                    joiner.add(security.getIsin())
+                            .add(String.valueOf(security.getTickSize()))
+                            .add(String.valueOf(security.getLotSize()));
+                    securityWriter.println(joiner);
+                    for (Order order : security.getOrderBook().getBuyQueue())
+                        orderBookWriter.println(getCSVString(order));
+                    for (Order order : security.getOrderBook().getSellQueue())
+                        orderBookWriter.println(getCSVString(order));
+                }
+            }
+        }
+        log.info("Securities and OrderBook saved");
+    }
+
+    private static String getCSVString(Order order) {
+        StringJoiner orderJoiner = new StringJoiner(",");
+        orderJoiner.add(String.valueOf(order.getOrderId()))
+                .add(order.getSecurity().getIsin())
+                .add(order.getSide().toString())
+                .add(String.valueOf(order.getTotalQuantity()))
+                .add(String.valueOf(order.getPrice()))
+                .add(String.valueOf(order.getBroker().getBrokerId()))
+                .add(String.valueOf(order.getShareholder().getShareholderId()))
+                .add(order.getEntryTime().toString());
+        if (order instanceof IcebergOrder icebergOrder) {
+            orderJoiner.add(String.valueOf(icebergOrder.getPeakSize()))
+                    .add(String.valueOf(icebergOrder.getDisplayedQuantity()));
+        } else {
+            orderJoiner.add("0").add("0");
+        }
+        orderJoiner.add(String.valueOf(order.getMinimumExecutionQuantity()));
+        return orderJoiner.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.repository.DataLoader;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Saves the brokers, shareholders and securities changed since the last save as a delta segment every
+// persistence.incremental.intervalMillis, then checkpoints the request journal at the last request the
+// delta reflects. The delta records that request too, so a crash between the two costs nothing: the
+// journal is replayed from what the loaded files say, never from the checkpoint alone. Matching only pauses while the changes are encoded into memory. Once
+// persistence.incremental.compactAfter deltas have piled up they are folded into the base file on a
+// background thread.
+@Component
+@Profile("!test & !replay")
+public class IncrementalSaver {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RequestDispatcher requestDispatcher;
+    private final RequestJournal requestJournal;
+    private final BinaryStateStore store;
+    private final int compactAfter;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    public IncrementalSaver(DataLoader dataLoader, RequestDispatcher requestDispatcher, RequestJournal requestJournal,
+                            @Value("${persistence.incremental.enabled:false}") boolean enabled,
+                            @Value("${persistence.incremental.intervalMillis:5000}") long intervalMillis,
+                            @Value("${persistence.incremental.compactAfter:20}") int compactAfter) {
+        this.requestDispatcher = requestDispatcher;
+        this.requestJournal = requestJournal;
+        this.store = dataLoader.binaryStore();
+        this.compactAfter = compactAfter;
+        if (enabled && store == null)
+            log.warning("Incremental saves need persistence.format=BINARY; they are turned off");
+        if (enabled && store != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "incremental-saver"));
+            compactor = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "state-compactor"));
+            scheduler.scheduleWithFixedDelay(this::saveQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+            compactor = null;
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private record PendingSave(long sequence, BinaryStateStore.Delta delta) {
+    }
+
+    // Returns the delta written, or null when nothing changed since the previous save.
+    public synchronized Path save() throws IOException {
+        long start = System.nanoTime();
+        PendingSave pending = requestDispatcher.quiesced(() -> {
+            long sequence = requestJournal.lastSequence();
+            return new PendingSave(sequence, store.encodeChanges(sequence));
+        });
+        long pausedNanos = System.nanoTime() - start;
+        Path written = pending.delta() == null ? null : append(pending.delta());
+        requestJournal.checkpointThrough(pending.sequence());
+        if (written == null)
+            return null;
+        log.fine(String.format("Delta %d written to %s (%d bytes, matching paused %d us)", pending.delta().generation(), written.getFileName(),
+                pending.delta().changes().data().remaining(), pausedNanos / 1000));
+        if (compactor != null && store.deltas().size() >= compactAfter && compacting.compareAndSet(false, true))
+            compactor.execute(this::compactQuietly);
+        return written;
+    }
+
+    // Changes that did not make it to disk go into the next delta, so the journal is not checkpointed
+    // past requests no delta holds.
+    private Path append(BinaryStateStore.Delta delta) throws IOException {
+        try {
+            return store.append(delta);
+        } catch (IOException | RuntimeException e) {
+            requestDispatcher.quiesced(() -> {
+                delta.changes().markDirtyAgain();
+                return null;
+            });
+            throw e;
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.SEVERE, "Incremental save failed", e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            store.compact();
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.SEVERE, "State compaction failed", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
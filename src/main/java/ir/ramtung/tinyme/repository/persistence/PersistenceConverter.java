@@ -0,0 +1,43 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+
+import java.io.File;
+import java.nio.file.Path;
+
+// Converts a persistence directory of CSV files to the binary state file and back. The CSV layout has
+// no room for inactive stop-limit orders, order statuses, last trade prices or matching states, so
+// those are lost when going from binary to CSV.
+public class PersistenceConverter {
+    private final BrokerRepository brokerRepository = new BrokerRepository();
+    private final ShareholderRepository shareholderRepository = new ShareholderRepository();
+    private final SecurityRepository securityRepository = new SecurityRepository();
+    private final IsinPartition wholeMarket = new IsinPartition("", new String[0], 1.0);
+    private final CsvStateFiles csvState = new CsvStateFiles(brokerRepository, shareholderRepository, securityRepository, wholeMarket);
+    private final BinaryStateFile binaryState = new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository);
+
+    public void csvToBinary(File csvDirectory, Path binaryFile) throws Exception {
+        csvState.load(csvDirectory);
+        binaryState.write(binaryFile);
+    }
+
+    public void binaryToCsv(Path binaryFile, File csvDirectory) throws Exception {
+        binaryState.read(binaryFile, wholeMarket, false);
+        csvState.save(csvDirectory);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("csv-to-binary")) {
+            new PersistenceConverter().csvToBinary(new File(args[1]), Path.of(args[2]));
+        } else if (args.length == 3 && args[0].equals("binary-to-csv")) {
+            new PersistenceConverter().binaryToCsv(Path.of(args[1]), new File(args[2]));
+        } else {
+            System.err.println("usage: PersistenceConverter csv-to-binary <csv directory> <binary file>");
+            System.err.println("       PersistenceConverter binary-to-csv <binary file> <csv directory>");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ir.ramtung.tinyme.repository.persistence;
+
+public enum PersistenceFormat {
+    CSV,
+    BINARY
+}
@@ -0,0 +1,233 @@
+package ir.ramtung.tinyme.repository.snapshot;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import static ir.ramtung.tinyme.repository.snapshot.StateSnapshotFormat.*;
+
+// Encodes the whole engine state into one buffer and restores it from one. Orders are written in
+// queue order and put back as they were, status included, without going through enqueue().
+public class StateSnapshotCodec {
+    private static final Side[] SIDES = Side.values();
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+    private static final MatchingState[] MATCHING_STATES = MatchingState.values();
+
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    public StateSnapshotCodec(BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository) {
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+    }
+
+    // The returned buffer is reused by the next call.
+    public ByteBuffer encode(long sequence, long timestampMillis) {
+        buffer.clear();
+        ensure(HEADER_SIZE);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(sequence).putLong(timestampMillis);
+
+        List<Broker> brokers = brokerRepository.allBrokers();
+        putCount(brokers.size());
+        for (Broker broker : brokers) {
+            ensure(16);
+            buffer.putLong(broker.getBrokerId()).putLong(broker.getCredit());
+            putString(broker.getName());
+        }
+
+        List<Shareholder> shareholders = shareholderRepository.allShareholders();
+        putCount(shareholders.size());
+        for (Shareholder shareholder : shareholders) {
+            ensure(8);
+            buffer.putLong(shareholder.getShareholderId());
+            putString(shareholder.getName());
+        }
+
+        List<Security> securities = securityRepository.allSecurities();
+        putCount(securities.size());
+        for (Security security : securities) {
+            putString(security.getIsin());
+            ensure(13);
+            buffer.putInt(security.getTickSize()).putInt(security.getLotSize()).putInt(security.getLastTradePrice())
+                    .put((byte) security.getMatchingState().ordinal());
+            security.readBooks((orderBook, inactiveOrderBook) -> {
+                putQueue(orderBook.getBuyQueue());
+                putQueue(orderBook.getSellQueue());
+                putQueue(inactiveOrderBook.getBuyQueue());
+                putQueue(inactiveOrderBook.getSellQueue());
+            });
+        }
+
+        int positionCountAt = buffer.position();
+        putCount(0);
+        int positions = 0;
+        for (Shareholder shareholder : shareholders) {
+            for (Map.Entry<Security, Integer> position : shareholder.getPositions().entrySet()) {
+                ensure(8);
+                buffer.putLong(shareholder.getShareholderId());
+                putString(position.getKey().getIsin());
+                ensure(4);
+                buffer.putInt(position.getValue());
+                positions++;
+            }
+        }
+        buffer.putInt(positionCountAt, positions);
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.array(), 0, buffer.position());
+        ensure(CHECKSUM_SIZE);
+        buffer.putInt((int) checksum.getValue());
+        return buffer.flip();
+    }
+
+    private void putQueue(List<Order> queue) {
+        putCount(queue.size());
+        for (Order order : queue) {
+            ensure(64);
+            byte kind = order instanceof IcebergOrder ? ICEBERG_ORDER : order instanceof StopLimitOrder ? STOP_LIMIT_ORDER : PLAIN_ORDER;
+            buffer.put(kind)
+                    .putLong(order.getOrderId())
+                    .put((byte) order.getSide().ordinal())
+                    .putInt(order.getTotalQuantity())
+                    .putInt(order.getPrice())
+                    .putLong(order.getBroker().getBrokerId())
+                    .putLong(order.getShareholder().getShareholderId())
+                    .putLong(order.getEntryTime().toEpochSecond(ZoneOffset.UTC))
+                    .putInt(order.getEntryTime().getNano())
+                    .put((byte) order.getStatus().ordinal())
+                    .putInt(order.getMinimumExecutionQuantity());
+            if (order instanceof IcebergOrder iceberg)
+                buffer.putInt(iceberg.getPeakSize()).putInt(iceberg.getDisplayedQuantity());
+            else if (order instanceof StopLimitOrder stopLimit)
+                buffer.putInt(stopLimit.getStopPrice()).putLong(stopLimit.getRequestId());
+        }
+    }
+
+    private void putCount(int count) {
+        ensure(4);
+        buffer.putInt(count);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensure(2);
+            buffer.putShort((short) NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(2 + bytes.length);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes)
+            return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    public static boolean isValid(ByteBuffer buffer) {
+        ByteBuffer snapshot = littleEndian(buffer);
+        if (snapshot.limit() < HEADER_SIZE + CHECKSUM_SIZE || snapshot.getInt(0) != MAGIC || snapshot.getShort(4) != VERSION)
+            return false;
+        CRC32C checksum = new CRC32C();
+        checksum.update(snapshot.slice(0, snapshot.limit() - CHECKSUM_SIZE));
+        return (int) checksum.getValue() == snapshot.getInt(snapshot.limit() - CHECKSUM_SIZE);
+    }
+
+    public static long sequenceOf(ByteBuffer snapshot) {
+        return littleEndian(snapshot).getLong(SEQUENCE);
+    }
+
+    private static ByteBuffer littleEndian(ByteBuffer snapshot) {
+        return snapshot.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Replaces the contents of the repositories with the snapshot and returns its sequence number.
+    public long restore(ByteBuffer snapshot) {
+        if (!isValid(snapshot))
+            throw new IllegalArgumentException("Not a valid state snapshot");
+        ByteBuffer in = littleEndian(snapshot).position(HEADER_SIZE);
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+
+        for (int i = in.getInt(); i > 0; i--) {
+            long brokerId = in.getLong();
+            long credit = in.getLong();
+            brokerRepository.addBroker(Broker.builder().brokerId(brokerId).credit(credit).name(getString(in)).build());
+        }
+        for (int i = in.getInt(); i > 0; i--) {
+            long shareholderId = in.getLong();
+            shareholderRepository.addShareholder(Shareholder.builder().shareholderId(shareholderId).name(getString(in)).build());
+        }
+        for (int i = in.getInt(); i > 0; i--) {
+            String isin = getString(in);
+            Security security = Security.builder()
+                    .isin(isin)
+                    .tickSize(in.getInt())
+                    .lotSize(in.getInt())
+                    .lastTradePrice(in.getInt())
+                    .matchingState(MATCHING_STATES[in.get()])
+                    .build();
+            getQueue(in, security, security.getOrderBook().getBuyQueue());
+            getQueue(in, security, security.getOrderBook().getSellQueue());
+            getQueue(in, security, security.getInactiveOrderBook().getBuyQueue());
+            getQueue(in, security, security.getInactiveOrderBook().getSellQueue());
+            securityRepository.addSecurity(security);
+        }
+        for (int i = in.getInt(); i > 0; i--) {
+            Shareholder shareholder = shareholderRepository.findShareholderById(in.getLong());
+            Security security = securityRepository.findSecurityByIsin(getString(in));
+            shareholder.incPosition(security, in.getInt());
+        }
+        return sequenceOf(snapshot);
+    }
+
+    private void getQueue(ByteBuffer in, Security security, List<Order> queue) {
+        for (int i = in.getInt(); i > 0; i--) {
+            byte kind = in.get();
+            long orderId = in.getLong();
+            Side side = SIDES[in.get()];
+            int quantity = in.getInt();
+            int price = in.getInt();
+            Broker broker = brokerRepository.findBrokerById(in.getLong());
+            Shareholder shareholder = shareholderRepository.findShareholderById(in.getLong());
+            LocalDateTime entryTime = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+            OrderStatus status = STATUSES[in.get()];
+            int minimumExecutionQuantity = in.getInt();
+            queue.add(switch (kind) {
+                case ICEBERG_ORDER -> new IcebergOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                        in.getInt(), in.getInt(), status, minimumExecutionQuantity);
+                case STOP_LIMIT_ORDER -> new StopLimitOrder(orderId, security, side, quantity, price, broker, shareholder, entryTime,
+                        status, in.getInt(), in.getLong());
+                default -> new Order(orderId, security, side, quantity, price, broker, shareholder, entryTime, status, minimumExecutionQuantity);
+            });
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        if (length == NULL_STRING)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
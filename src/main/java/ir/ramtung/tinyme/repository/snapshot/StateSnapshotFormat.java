@@ -0,0 +1,38 @@
+package ir.ramtung.tinyme.repository.snapshot;
+
+import java.nio.file.Path;
+
+// Layout of a state snapshot file. After the header come the brokers, the shareholders, the
+// securities with their active and inactive books in queue order, and the shareholder positions,
+// each section a count followed by fixed-order fields. A CRC32C of everything before it ends the file.
+// Version 2 added the request id of stop-limit orders.
+final class StateSnapshotFormat {
+    static final int MAGIC = 0x534E4D54;
+    static final short VERSION = 2;
+    static final int SEQUENCE = 8;
+    static final int TIMESTAMP = SEQUENCE + 8;
+    static final int HEADER_SIZE = TIMESTAMP + 8;
+    static final int CHECKSUM_SIZE = 4;
+
+    static final byte PLAIN_ORDER = 0;
+    static final byte ICEBERG_ORDER = 1;
+    static final byte STOP_LIMIT_ORDER = 2;
+
+    static final int NULL_STRING = 0xFFFF;
+
+    static final String FILE_PREFIX = "snapshot-";
+    static final String FILE_SUFFIX = ".bin";
+
+    private StateSnapshotFormat() {
+    }
+
+    // named after the first journal sequence number the snapshot does not reflect, so names sort by age
+    static String fileName(long sequence) {
+        return String.format("%s%020d%s", FILE_PREFIX, sequence + 1, FILE_SUFFIX);
+    }
+
+    static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())) - 1;
+    }
+}
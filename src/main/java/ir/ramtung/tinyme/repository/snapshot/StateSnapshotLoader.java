@@ -0,0 +1,66 @@
+package ir.ramtung.tinyme.repository.snapshot;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.DataLoader;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+// Decides the state the journal is replayed on: the latest snapshot when it is newer than what
+// DataLoader loaded (as far as the loaded files or, without DataLoader, the checkpoint tell),
+// otherwise whatever DataLoader loaded.
+@Component
+public class StateSnapshotLoader {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final StateSnapshotStore store;
+    private final RequestJournal requestJournal;
+    private final StateSnapshotCodec codec;
+    private final BrokerRepository brokerRepository;
+    private final ShareholderRepository shareholderRepository;
+    private final SecurityRepository securityRepository;
+    private final Optional<DataLoader> dataLoader;
+    private long baseSequence = -1;
+
+    // the data loader is also taken so that its state is loaded before a snapshot replaces it
+    public StateSnapshotLoader(StateSnapshotStore store, RequestJournal requestJournal,
+                               BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository,
+                               Optional<DataLoader> dataLoader) {
+        this.store = store;
+        this.requestJournal = requestJournal;
+        this.codec = new StateSnapshotCodec(brokerRepository, shareholderRepository, securityRepository);
+        this.brokerRepository = brokerRepository;
+        this.shareholderRepository = shareholderRepository;
+        this.securityRepository = securityRepository;
+        this.dataLoader = dataLoader;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        baseSequence = dataLoader.map(DataLoader::journalSequence).orElse(requestJournal.checkpointSequence());
+        Optional<ByteBuffer> latest = store.latest();
+        if (latest.isEmpty() || StateSnapshotCodec.sequenceOf(latest.get()) <= baseSequence)
+            return;
+        long start = System.nanoTime();
+        baseSequence = codec.restore(latest.get());
+        // none of the restored state is in the persisted files yet, so the next incremental save writes all of it
+        brokerRepository.allBrokers().forEach(Broker::markDirty);
+        shareholderRepository.allShareholders().forEach(Shareholder::markDirty);
+        securityRepository.allSecurities().forEach(Security::markDirty);
+        log.info(String.format("State restored from snapshot at sequence %d in %d ms", baseSequence, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    // The sequence number of the last request reflected in the loaded state.
+    public long baseSequence() {
+        return baseSequence;
+    }
+}
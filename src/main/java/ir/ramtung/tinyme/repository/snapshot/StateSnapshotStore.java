@@ -0,0 +1,82 @@
+package ir.ramtung.tinyme.repository.snapshot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static ir.ramtung.tinyme.repository.snapshot.StateSnapshotFormat.*;
+
+// Snapshot files in one directory. A snapshot is written to a temporary file, forced and then
+// renamed, so a crash never leaves a half-written snapshot under a snapshot name; only the newest
+// few are kept.
+@Component
+public class StateSnapshotStore {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final Path directory;
+    private final int retained;
+
+    public StateSnapshotStore(@Value("${snapshot.directory:snapshots}") String directory,
+                              @Value("${snapshot.retained:2}") int retained) {
+        this.directory = Path.of(directory);
+        this.retained = Math.max(1, retained);
+    }
+
+    public Path write(ByteBuffer snapshot) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(fileName(StateSnapshotCodec.sequenceOf(snapshot)));
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer toWrite = snapshot.duplicate();
+            while (toWrite.hasRemaining())
+                channel.write(toWrite);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        List<Path> snapshots = snapshots();
+        for (int i = 0; i < snapshots.size() - retained; i++)
+            Files.delete(snapshots.get(i));
+        return target;
+    }
+
+    // The newest snapshot that reads back intact.
+    public Optional<ByteBuffer> latest() throws IOException {
+        List<Path> snapshots = snapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshots.get(i))).order(ByteOrder.LITTLE_ENDIAN);
+            if (StateSnapshotCodec.isValid(snapshot))
+                return Optional.of(snapshot);
+            log.warning("Skipping damaged snapshot " + snapshots.get(i));
+        }
+        return Optional.empty();
+    }
+
+    // The sequence number of the oldest snapshot kept, or -1 when there is none. latest() may fall back
+    // to it, so the journal must still hold the requests after it.
+    public long oldestSequence() throws IOException {
+        List<Path> snapshots = snapshots();
+        return snapshots.isEmpty() ? -1 : sequenceOf(snapshots.get(0));
+    }
+
+    public List<Path> snapshots() throws IOException {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ir.ramtung.tinyme.repository.snapshot;
+
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Takes a state snapshot every snapshot.intervalSeconds. Matching only pauses while the state is
+// encoded into memory between two requests; writing and forcing the file happen afterwards on the
+// snapshot thread, and the journal segments the snapshot covers are then deleted.
+@Component
+public class StateSnapshotter {
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final RequestDispatcher requestDispatcher;
+    private final RequestJournal requestJournal;
+    private final StateSnapshotStore store;
+    private final StateSnapshotCodec codec;
+    private final ScheduledExecutorService scheduler;
+    private long lastSequence = Long.MIN_VALUE;
+
+    public StateSnapshotter(RequestDispatcher requestDispatcher, RequestJournal requestJournal, StateSnapshotStore store,
+                            BrokerRepository brokerRepository, ShareholderRepository shareholderRepository, SecurityRepository securityRepository,
+                            @Value("${snapshot.enabled:false}") boolean enabled,
+                            @Value("${snapshot.intervalSeconds:60}") long intervalSeconds) {
+        this.requestDispatcher = requestDispatcher;
+        this.requestJournal = requestJournal;
+        this.store = store;
+        this.codec = new StateSnapshotCodec(brokerRepository, shareholderRepository, securityRepository);
+        if (enabled && !requestJournal.isEnabled())
+            log.warning("State snapshots are only restored on startup when the request journal is enabled");
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "state-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    // Returns the file written, or null when nothing was handled since the previous snapshot.
+    public synchronized Path snapshot() throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer snapshot = requestDispatcher.quiesced(() -> codec.encode(requestJournal.lastSequence(), System.currentTimeMillis()));
+        long pausedNanos = System.nanoTime() - start;
+        long sequence = StateSnapshotCodec.sequenceOf(snapshot);
+        if (sequence == lastSequence)
+            return null;
+        Path written = store.write(snapshot);
+        requestJournal.truncateThrough(store.oldestSequence());
+        lastSequence = sequence;
+        log.info(String.format("Snapshot at sequence %d written to %s (%d bytes, matching paused %d us)",
+                sequence, written, snapshot.remaining(), pausedNanos / 1000));
+        return written;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.SEVERE, "State snapshot failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
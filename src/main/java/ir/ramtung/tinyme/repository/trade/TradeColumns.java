@@ -0,0 +1,88 @@
+package ir.ramtung.tinyme.repository.trade;
+
+import ir.ramtung.tinyme.domain.entity.Trade;
+
+import java.util.Arrays;
+
+import static ir.ramtung.tinyme.repository.trade.TradeSegmentFormat.*;
+
+// The trades of a security not yet sealed into a segment, one array per column. The arrays start
+// small and double up to the segment size, so quiet securities cost next to nothing.
+final class TradeColumns {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[][] columns;
+    private int rows;
+    private long lastSequence = -1;
+    private int rowsOfLastSequence;
+
+    TradeColumns() {
+        this(new long[COLUMN_COUNT][INITIAL_CAPACITY], 0);
+    }
+
+    private TradeColumns(long[][] columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    long get(int column, int row) {
+        return columns[column][row];
+    }
+
+    // The rows of one request are added together, after those of the requests journaled before it.
+    void add(long timeMillis, Trade trade, long journalSequence) {
+        if (rows == columns[TIME].length)
+            for (int column = 0; column < COLUMN_COUNT; column++)
+                columns[column] = Arrays.copyOf(columns[column], rows * 2);
+        columns[TIME][rows] = timeMillis;
+        columns[PRICE][rows] = trade.getPrice();
+        columns[QUANTITY][rows] = trade.getQuantity();
+        columns[BUY_ORDER][rows] = trade.getBuy().getOrderId();
+        columns[SELL_ORDER][rows] = trade.getSell().getOrderId();
+        columns[BUY_BROKER][rows] = trade.getBuy().getBroker().getBrokerId();
+        columns[SELL_BROKER][rows] = trade.getSell().getBroker().getBrokerId();
+        columns[BUY_SHAREHOLDER][rows] = trade.getBuy().getShareholder().getShareholderId();
+        columns[SELL_SHAREHOLDER][rows] = trade.getSell().getShareholder().getShareholderId();
+        rows++;
+        if (journalSequence != lastSequence) {
+            lastSequence = journalSequence;
+            rowsOfLastSequence = 0;
+        }
+        rowsOfLastSequence++;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    int rowsOfLastSequence() {
+        return rowsOfLastSequence;
+    }
+
+    // The rows added so far; later additions only write past them or into new arrays, so the view
+    // can be scanned without holding the lock the additions are made under.
+    TradeColumns view() {
+        return new TradeColumns(columns.clone(), rows);
+    }
+
+    // Calls the consumer with the given columns of every row whose time is in [fromMillis, toMillis).
+    void scan(long fromMillis, long toMillis, int[] wanted, RowConsumer consumer) {
+        long[] values = new long[wanted.length];
+        for (int row = 0; row < rows; row++) {
+            long time = columns[TIME][row];
+            if (time < fromMillis || time >= toMillis)
+                continue;
+            for (int i = 0; i < wanted.length; i++)
+                values[i] = columns[wanted[i]][row];
+            consumer.accept(values);
+        }
+    }
+
+    interface RowConsumer {
+        void accept(long[] values);
+    }
+}
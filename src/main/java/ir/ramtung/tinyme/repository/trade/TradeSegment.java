@@ -0,0 +1,184 @@
+package ir.ramtung.tinyme.repository.trade;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static ir.ramtung.tinyme.repository.trade.TradeSegmentFormat.*;
+
+// An immutable, encoded block of the trades of one security. Scans decode only the columns they ask
+// for, and skip decoding times altogether when the whole segment falls in the requested range.
+final class TradeSegment {
+    private final byte[] data;
+    private final int rows;
+    private final long minTime;
+    private final long maxTime;
+    private final long journalSequence;
+    private final long rowsOfLastRequest;
+    private final int[] columnStarts = new int[COLUMN_COUNT + 1];
+
+    private TradeSegment(byte[] data) {
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        this.data = data;
+        rows = header.getInt(ROWS);
+        minTime = header.getLong(MIN_TIME);
+        maxTime = header.getLong(MAX_TIME);
+        // segments written before their requests were known count as holding every request's trades
+        boolean withJournalSequence = header.getShort(4) != VERSION_WITHOUT_JOURNAL_SEQUENCE;
+        journalSequence = withJournalSequence ? header.getLong(JOURNAL_SEQUENCE) : Long.MAX_VALUE;
+        rowsOfLastRequest = withJournalSequence ? header.getLong(ROWS_OF_LAST_REQUEST) : 0;
+        columnStarts[0] = withJournalSequence ? HEADER_SIZE : HEADER_SIZE_WITHOUT_JOURNAL_SEQUENCE;
+        for (int column = 0; column < COLUMN_COUNT; column++)
+            columnStarts[column + 1] = columnStarts[column] + header.getInt(COLUMN_LENGTHS + 4 * column);
+    }
+
+    static TradeSegment encode(TradeColumns block, long journalSequence, long rowsOfLastRequest) {
+        int rows = block.rows();
+        byte[] data = new byte[HEADER_SIZE + COLUMN_COUNT * rows * 10 + CHECKSUM_SIZE];
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putShort(4, VERSION).putShort(6, (short) COLUMN_COUNT)
+                .putInt(ROWS, rows)
+                .putLong(MIN_TIME, min(block, TIME))
+                .putLong(MAX_TIME, max(block, TIME))
+                .putLong(JOURNAL_SEQUENCE, journalSequence)
+                .putLong(ROWS_OF_LAST_REQUEST, rowsOfLastRequest);
+        int position = HEADER_SIZE;
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            int start = position;
+            long previous = 0;
+            for (int row = 0; row < rows; row++) {
+                long value = block.get(column, row);
+                position = putVarint(data, position, zigzag(DELTA_ENCODED[column] ? value - previous : value));
+                previous = value;
+            }
+            header.putInt(COLUMN_LENGTHS + 4 * column, position - start);
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(data, 0, position);
+        header.putInt(position, (int) checksum.getValue());
+        return new TradeSegment(Arrays.copyOf(data, position + CHECKSUM_SIZE));
+    }
+
+    // Checks the header and the checksum of bytes read back from a segment file.
+    static TradeSegment decode(byte[] data) {
+        if (data.length < HEADER_SIZE_WITHOUT_JOURNAL_SEQUENCE + CHECKSUM_SIZE)
+            throw new IllegalArgumentException("Trade segment is truncated");
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        short version = buffer.getShort(4);
+        if (buffer.getInt(0) != MAGIC || (version != VERSION && version != VERSION_WITHOUT_JOURNAL_SEQUENCE) || buffer.getShort(6) != COLUMN_COUNT)
+            throw new IllegalArgumentException("Not a trade segment of a supported version");
+        if (version == VERSION && data.length < HEADER_SIZE + CHECKSUM_SIZE)
+            throw new IllegalArgumentException("Trade segment is truncated");
+        CRC32C checksum = new CRC32C();
+        checksum.update(data, 0, data.length - CHECKSUM_SIZE);
+        if (buffer.getInt(data.length - CHECKSUM_SIZE) != (int) checksum.getValue())
+            throw new IllegalArgumentException("Trade segment checksum mismatch");
+        TradeSegment segment = new TradeSegment(data);
+        if (segment.columnStarts[COLUMN_COUNT] != data.length - CHECKSUM_SIZE)
+            throw new IllegalArgumentException("Trade segment column lengths do not add up");
+        return segment;
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    long minTime() {
+        return minTime;
+    }
+
+    long maxTime() {
+        return maxTime;
+    }
+
+    // The journal sequence of the last request with trades in the segment.
+    long journalSequence() {
+        return journalSequence;
+    }
+
+    // How many trades of that request are in this segment or the ones before it.
+    long rowsOfLastRequest() {
+        return rowsOfLastRequest;
+    }
+
+    // Calls the consumer with the given columns of every row whose time is in [fromMillis, toMillis).
+    void scan(long fromMillis, long toMillis, int[] wanted, TradeColumns.RowConsumer consumer) {
+        if (maxTime < fromMillis || minTime >= toMillis)
+            return;
+        boolean whole = minTime >= fromMillis && maxTime < toMillis;
+        Cursor time = whole ? null : new Cursor(TIME);
+        Cursor[] cursors = new Cursor[wanted.length];
+        for (int i = 0; i < wanted.length; i++)
+            cursors[i] = new Cursor(wanted[i]);
+        long[] values = new long[wanted.length];
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < wanted.length; i++)
+                values[i] = cursors[i].next();
+            if (time != null) {
+                long at = time.next();
+                if (at < fromMillis || at >= toMillis)
+                    continue;
+            }
+            consumer.accept(values);
+        }
+    }
+
+    private final class Cursor {
+        private final boolean delta;
+        private int position;
+        private long previous;
+
+        Cursor(int column) {
+            delta = DELTA_ENCODED[column];
+            position = columnStarts[column];
+        }
+
+        long next() {
+            long raw = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                raw |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            long value = (raw >>> 1) ^ -(raw & 1);
+            if (delta)
+                value += previous;
+            previous = value;
+            return value;
+        }
+    }
+
+    private static long min(TradeColumns block, int column) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < block.rows(); row++)
+            min = Math.min(min, block.get(column, row));
+        return min;
+    }
+
+    private static long max(TradeColumns block, int column) {
+        long max = Long.MIN_VALUE;
+        for (int row = 0; row < block.rows(); row++)
+            max = Math.max(max, block.get(column, row));
+        return max;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int putVarint(byte[] data, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,45 @@
+package ir.ramtung.tinyme.repository.trade;
+
+// Layout of a trade segment: a header with the row count, the earliest and latest trade time, the
+// byte length of each column, and the journal sequence of the last request with trades in the
+// segment along with how many of that request's trades are sealed, then the columns one after
+// another, then a CRC32C of everything before it. Version 1 headers end after the column lengths. Every value is a zigzag varint; the columns that mostly grow (time, price, order ids)
+// hold the difference from the previous row instead of the value itself.
+final class TradeSegmentFormat {
+    static final int MAGIC = 0x54524453;
+    static final short VERSION = 2;
+    static final short VERSION_WITHOUT_JOURNAL_SEQUENCE = 1;
+    static final int ROWS = 8;
+    static final int MIN_TIME = 16;
+    static final int MAX_TIME = 24;
+    static final int COLUMN_LENGTHS = 32;
+
+    static final int TIME = 0;
+    static final int PRICE = 1;
+    static final int QUANTITY = 2;
+    static final int BUY_ORDER = 3;
+    static final int SELL_ORDER = 4;
+    static final int BUY_BROKER = 5;
+    static final int SELL_BROKER = 6;
+    static final int BUY_SHAREHOLDER = 7;
+    static final int SELL_SHAREHOLDER = 8;
+    static final int COLUMN_COUNT = 9;
+    static final boolean[] DELTA_ENCODED = {true, true, false, true, true, false, false, false, false};
+
+    static final int JOURNAL_SEQUENCE = COLUMN_LENGTHS + 4 * COLUMN_COUNT;
+    static final int ROWS_OF_LAST_REQUEST = JOURNAL_SEQUENCE + 8;
+
+    static final int HEADER_SIZE = ROWS_OF_LAST_REQUEST + 8;
+    static final int HEADER_SIZE_WITHOUT_JOURNAL_SEQUENCE = JOURNAL_SEQUENCE;
+    static final int CHECKSUM_SIZE = 4;
+
+    static final String FILE_SUFFIX = ".trades";
+
+    private TradeSegmentFormat() {
+    }
+
+    // named after the number of the first trade of the security in the segment, so names sort by age
+    static String fileName(long firstRow) {
+        return String.format("%020d%s", firstRow, FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,95 @@
+package ir.ramtung.tinyme.repository.trade;
+
+import ir.ramtung.tinyme.domain.entity.Trade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The trades of one security: the sealed segments in the order they were recorded and the open
+// block new trades are appended to. The series knows the last request whose trades it has sealed and
+// how many of them, so replaying the journal records only the trades that were still open.
+final class TradeSeries {
+    private final String isin;
+    private final int segmentRows;
+    private final List<TradeSegment> segments = new ArrayList<>();
+    private TradeColumns open = new TradeColumns();
+    private long sealedRows;
+    private long sealedThrough = -1;
+    private long sealedRowsOfLast;
+    private long skipThrough = -1;
+    private long skipRowsOfLast;
+
+    TradeSeries(String isin, int segmentRows) {
+        this.isin = isin;
+        this.segmentRows = segmentRows;
+    }
+
+    record Sealed(String isin, long firstRow, TradeSegment segment) {
+    }
+
+    synchronized void restore(long firstRow, TradeSegment segment) {
+        segments.add(segment);
+        sealedRows = Math.max(sealedRows, firstRow + segment.rows());
+        sealedThrough = segment.journalSequence();
+        sealedRowsOfLast = segment.rowsOfLastRequest();
+    }
+
+    // Returns the segment sealed because this trade filled the open block, or null.
+    synchronized Sealed append(long timeMillis, Trade trade, long journalSequence) {
+        open.add(timeMillis, trade, journalSequence);
+        return open.rows() >= segmentRows ? seal() : null;
+    }
+
+    synchronized Sealed seal() {
+        if (open.rows() == 0)
+            return null;
+        long rowsOfLast = open.rowsOfLastSequence();
+        if (open.lastSequence() == sealedThrough)
+            rowsOfLast += sealedRowsOfLast;
+        sealedThrough = open.lastSequence();
+        sealedRowsOfLast = rowsOfLast;
+        TradeSegment segment = TradeSegment.encode(open, sealedThrough, sealedRowsOfLast);
+        Sealed sealed = new Sealed(isin, sealedRows, segment);
+        segments.add(segment);
+        sealedRows += segment.rows();
+        open = new TradeColumns();
+        return sealed;
+    }
+
+    // The trades sealed so far are the ones a replay of the journal must not record again.
+    synchronized void startReplay() {
+        skipThrough = sealedThrough;
+        skipRowsOfLast = sealedRowsOfLast;
+    }
+
+    // Whether the next trade of the replayed request was sealed before the replay started.
+    synchronized boolean sealedBeforeReplay(long journalSequence) {
+        if (journalSequence < skipThrough)
+            return true;
+        if (journalSequence == skipThrough && skipRowsOfLast > 0) {
+            skipRowsOfLast--;
+            return true;
+        }
+        return false;
+    }
+
+    void scan(long fromMillis, long toMillis, int[] wanted, TradeColumns.RowConsumer consumer) {
+        List<TradeSegment> sealed;
+        TradeColumns recent;
+        synchronized (this) {
+            sealed = List.copyOf(segments);
+            recent = open.view();
+        }
+        for (TradeSegment segment : sealed)
+            segment.scan(fromMillis, toMillis, wanted, consumer);
+        recent.scan(fromMillis, toMillis, wanted, consumer);
+    }
+
+    synchronized long rows() {
+        return sealedRows + open.rows();
+    }
+
+    synchronized long sealedBytes() {
+        return segments.stream().mapToLong(segment -> segment.data().length).sum();
+    }
+}
@@ -0,0 +1,10 @@
+package ir.ramtung.tinyme.repository.trade;
+
+// Totals over a set of trades; value is the sum of price times quantity.
+public record TradeStats(long trades, long volume, long value) {
+    public static final TradeStats EMPTY = new TradeStats(0, 0, 0);
+
+    public double vwap() {
+        return volume == 0 ? Double.NaN : (double) value / volume;
+    }
+}
@@ -0,0 +1,243 @@
+package ir.ramtung.tinyme.repository.trade;
+
+import ir.ramtung.tinyme.domain.entity.Trade;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static ir.ramtung.tinyme.repository.trade.TradeSegmentFormat.*;
+import static java.nio.file.StandardOpenOption.*;
+
+// Keeps every executed trade in per-security columnar segments under trades.directory/<isin>. New
+// trades go to an in-memory block that is sealed into a compressed segment when it reaches
+// trades.segmentRows, every trades.flushIntervalSeconds and on shutdown; segment files are written
+// on the trade-store thread. Every segment records the journal sequence of the last request it has
+// trades of, so journal replay records again the trades still open at a crash, and only those.
+// Trades of requests the loaded state already reflects are not replayed, so a crash loses those
+// that were not sealed yet.
+@Component
+public class TradeStore {
+    private static final long ALL_TIME_FROM = Long.MIN_VALUE;
+    private static final long ALL_TIME_TO = Long.MAX_VALUE;
+    private static final int[] VOLUME_COLUMNS = {PRICE, QUANTITY};
+    private static final int[] TURNOVER_COLUMNS = {PRICE, QUANTITY, BUY_BROKER, SELL_BROKER};
+
+    private final Logger log = Logger.getLogger(this.getClass().getName());
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentRows;
+    private final Map<String, TradeSeries> series = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer;
+    private volatile long journalSequence = -1;
+    private volatile boolean replaying;
+
+    public TradeStore(@Value("${trades.enabled:false}") boolean enabled,
+                      @Value("${trades.directory:trades}") String directory,
+                      @Value("${trades.segmentRows:16384}") int segmentRows,
+                      @Value("${trades.flushIntervalSeconds:60}") long flushIntervalSeconds) throws IOException {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentRows = Math.max(1, segmentRows);
+        if (enabled) {
+            load();
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "trade-store");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (flushIntervalSeconds > 0)
+                writer.scheduleWithFixedDelay(this::sealAll, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The journal sequence number of the request whose trades are recorded next.
+    public void beginRequest(long journalSequence) {
+        this.journalSequence = journalSequence;
+    }
+
+    // Until finishReplay(), only the trades of replayed requests that no sealed segment holds are recorded.
+    public void startReplay() {
+        series.values().forEach(TradeSeries::startReplay);
+        replaying = true;
+    }
+
+    public void finishReplay() {
+        replaying = false;
+    }
+
+    public void record(List<Trade> trades) {
+        if (!enabled || trades.isEmpty())
+            return;
+        long now = System.currentTimeMillis();
+        long sequence = journalSequence;
+        for (Trade trade : trades) {
+            String isin = trade.getSecurity().getIsin();
+            TradeSeries tradesOfSecurity = series.computeIfAbsent(isin, key -> new TradeSeries(key, segmentRows));
+            if (replaying && tradesOfSecurity.sealedBeforeReplay(sequence))
+                continue;
+            TradeSeries.Sealed sealed = tradesOfSecurity.append(now, trade, sequence);
+            if (sealed != null)
+                writer.execute(() -> writeQuietly(sealed));
+        }
+    }
+
+    public TradeStats statsOf(String isin) {
+        return statsOf(isin, ALL_TIME_FROM, ALL_TIME_TO);
+    }
+
+    // Trades of the security recorded in [fromMillis, toMillis).
+    public TradeStats statsOf(String isin, long fromMillis, long toMillis) {
+        TradeSeries trades = series.get(isin);
+        if (trades == null)
+            return TradeStats.EMPTY;
+        long[] totals = new long[3];
+        trades.scan(fromMillis, toMillis, VOLUME_COLUMNS, row -> {
+            totals[0]++;
+            totals[1] += row[1];
+            totals[2] += row[0] * row[1];
+        });
+        return new TradeStats(totals[0], totals[1], totals[2]);
+    }
+
+    public long brokerTurnover(long brokerId) {
+        return brokerTurnover(brokerId, ALL_TIME_FROM, ALL_TIME_TO);
+    }
+
+    // Value of the trades the broker was on either side of in [fromMillis, toMillis), over all securities.
+    public long brokerTurnover(long brokerId, long fromMillis, long toMillis) {
+        long[] turnover = new long[1];
+        for (TradeSeries trades : series.values())
+            trades.scan(fromMillis, toMillis, TURNOVER_COLUMNS, row -> {
+                if (row[2] == brokerId)
+                    turnover[0] += row[0] * row[1];
+                if (row[3] == brokerId)
+                    turnover[0] += row[0] * row[1];
+            });
+        return turnover[0];
+    }
+
+    // The securities with recorded trades, the most traded first.
+    public List<String> mostTraded() {
+        Map<String, Long> rows = new HashMap<>();
+        series.forEach((isin, trades) -> rows.put(isin, trades.rows()));
+        return rows.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public long sealedBytes() {
+        return series.values().stream().mapToLong(TradeSeries::sealedBytes).sum();
+    }
+
+    // Seals the open blocks and waits until every sealed segment is on disk.
+    public void flush() throws IOException {
+        if (!enabled)
+            return;
+        try {
+            writer.submit(this::sealAll).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the trade store", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Flushing the trade store failed", e.getCause());
+        }
+    }
+
+    private void sealAll() {
+        for (TradeSeries trades : series.values()) {
+            TradeSeries.Sealed sealed = trades.seal();
+            if (sealed != null)
+                writeQuietly(sealed);
+        }
+    }
+
+    private void writeQuietly(TradeSeries.Sealed sealed) {
+        try {
+            write(sealed);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Writing a trade segment of " + sealed.isin() + " failed", e);
+        }
+    }
+
+    private void write(TradeSeries.Sealed sealed) throws IOException {
+        Path securityDirectory = Files.createDirectories(directory.resolve(sealed.isin()));
+        Path file = securityDirectory.resolve(fileName(sealed.firstRow()));
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer data = ByteBuffer.wrap(sealed.segment().data());
+            while (data.hasRemaining())
+                channel.write(data);
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        if (!Files.isDirectory(directory))
+            return;
+        long start = System.nanoTime();
+        int loaded = 0;
+        try (DirectoryStream<Path> securities = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path securityDirectory : securities) {
+                String isin = securityDirectory.getFileName().toString();
+                TradeSeries trades = new TradeSeries(isin, segmentRows);
+                for (Path file : segmentFiles(securityDirectory)) {
+                    String name = file.getFileName().toString();
+                    try {
+                        trades.restore(Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length())),
+                                TradeSegment.decode(Files.readAllBytes(file)));
+                        loaded++;
+                    } catch (IllegalArgumentException e) {
+                        log.warning("Skipping trade segment " + file + ": " + e.getMessage());
+                    }
+                }
+                series.put(isin, trades);
+            }
+        }
+        log.info(String.format("Loaded %d trade segments of %d securities in %d ms", loaded, series.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private static List<Path> segmentFiles(Path securityDirectory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(securityDirectory, "*" + FILE_SUFFIX)) {
+            segments.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        if (!enabled)
+            return;
+        flush();
+        writer.shutdown();
+        writer.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,77 @@
+package ir.ramtung.tinyme.config;
+
+import ir.ramtung.tinyme.TinyMeApplication;
+import ir.ramtung.tinyme.messaging.MessagingConfig;
+import ir.ramtung.tinyme.messaging.PartitionRouter;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jms.core.JmsTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs an embedded Artemis broker and one TinyME application context per partition in the
+// current JVM. All nodes share the broker; each listens on its own partition request queue.
+public class MultiNodeHarness implements AutoCloseable {
+    public static final String REQUEST_QUEUE = "RQ";
+    public static final String RESPONSE_QUEUE = "RS";
+
+    private final EmbeddedActiveMQ broker;
+    private final Map<String, ConfigurableApplicationContext> nodes = new LinkedHashMap<>();
+    private final PartitionRouter router;
+    private final JmsTemplate gateway;
+
+    public MultiNodeHarness(int brokerId, Map<String, List<String>> isinsByPartition) throws Exception {
+        String brokerUrl = "vm://" + brokerId;
+        broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("in-vm", brokerUrl));
+        broker.start();
+
+        isinsByPartition.forEach((partition, isins) -> nodes.put(partition, new SpringApplicationBuilder(TinyMeApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.artemis.broker-url=" + brokerUrl,
+                        "--requestQueue=" + PartitionRouter.queueOf(REQUEST_QUEUE, partition),
+                        "--responseQueue=" + RESPONSE_QUEUE,
+                        "--partition.id=" + partition,
+                        "--partition.isins=" + String.join(",", isins))));
+
+        router = new PartitionRouter(REQUEST_QUEUE, isinsByPartition);
+        gateway = new JmsTemplate(new ActiveMQConnectionFactory(brokerUrl));
+        gateway.setMessageConverter(new MessagingConfig().jacksonJmsMessageConverter());
+        gateway.setReceiveTimeout(5000);
+    }
+
+    public ConfigurableApplicationContext node(String partition) {
+        return nodes.get(partition);
+    }
+
+    public PartitionRouter router() {
+        return router;
+    }
+
+    public JmsTemplate gateway() {
+        return gateway;
+    }
+
+    public void send(Object request) {
+        router.send(gateway, request);
+    }
+
+    public Object receiveResponse() {
+        return gateway.receiveAndConvert(RESPONSE_QUEUE);
+    }
+
+    @Override
+    public void close() throws Exception {
+        nodes.values().forEach(ConfigurableApplicationContext::close);
+        broker.stop();
+    }
+}
@@ -0,0 +1,80 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.config.MockedJMSTestConfig;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.DuplicateRequestFilter;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.Message;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderDeletedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"idempotency.mode=REJECT", "idempotency.window=1000", "idempotency.bloomFilter=true"})
+@Import(MockedJMSTestConfig.class)
+@DirtiesContext
+public class DuplicateRequestTest {
+    @Autowired
+    OrderHandler orderHandler;
+    @Autowired
+    DuplicateRequestFilter duplicateRequestFilter;
+    @Autowired
+    EventPublisher eventPublisher;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+    private Security security;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        reset(eventPublisher);
+        security = Security.builder().isin("ABC").build();
+        securityRepository.addSecurity(security);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 100_000);
+        shareholderRepository.addShareholder(shareholder);
+        brokerRepository.addBroker(Broker.builder().brokerId(1).build());
+    }
+
+    @Test
+    void replayed_requests_are_rejected_without_being_applied_again() {
+        EnterOrderRq enter = EnterOrderRq.createNewOrderRq(5001, "ABC", 10, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0);
+        DeleteOrderRq delete = new DeleteOrderRq(5002, "ABC", Side.SELL, 10);
+        long hitsBefore = duplicateRequestFilter.hits();
+
+        orderHandler.handleEnterOrder(enter);
+        orderHandler.handleDeleteOrder(delete);
+        orderHandler.handleEnterOrder(enter);
+        orderHandler.handleDeleteOrder(delete);
+
+        verify(eventPublisher).publish(new OrderAcceptedEvent(5001, 10));
+        verify(eventPublisher).publish(new OrderDeletedEvent(5002, 10));
+        verify(eventPublisher).publish(new OrderRejectedEvent(5001, 10, List.of(Message.DUPLICATE_REQUEST_ID)));
+        verify(eventPublisher).publish(new OrderRejectedEvent(5002, 10, List.of(Message.DUPLICATE_REQUEST_ID)));
+        assertThat(security.getOrderBook().findByOrderId(Side.SELL, 10)).isNull();
+        assertThat(duplicateRequestFilter.hits() - hitsBefore).isEqualTo(2);
+    }
+}
@@ -0,0 +1,97 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.OpeningPriceConflator;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.RequestDispatcher;
+import ir.ramtung.tinyme.messaging.event.OpeningPriceEvent;
+import ir.ramtung.tinyme.messaging.event.SecurityStateChangedEvent;
+import ir.ramtung.tinyme.messaging.event.TradeEvent;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// Requests go through the real dispatcher so the timer's flush contends for the engine lock.
+@SpringBootTest(properties = {"transport.type=IN_PROCESS", "openingPrice.conflation=INTERVAL",
+        "openingPrice.conflationIntervalMillis=300"})
+@DirtiesContext
+public class OpeningPriceConflatorIntervalTest {
+    @MockBean
+    EventPublisher eventPublisher;
+    @Autowired
+    RequestDispatcher requestDispatcher;
+    @Autowired
+    OpeningPriceConflator conflator;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        conflator.flush();
+        reset(eventPublisher);
+
+        for (String isin : new String[]{"ABC", "XYZ"}) {
+            Security security = Security.builder().isin(isin).matchingState(MatchingState.AUCTION).build();
+            securityRepository.addSecurity(security);
+        }
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(securityRepository.findSecurityByIsin("ABC"), 100_000);
+        shareholder.incPosition(securityRepository.findSecurityByIsin("XYZ"), 100_000);
+        shareholderRepository.addShareholder(shareholder);
+        brokerRepository.addBroker(Broker.builder().brokerId(1).credit(100_000_000).build());
+    }
+
+    private void enter(long id, String isin, Side side, int quantity, int price) {
+        requestDispatcher.dispatch(EnterOrderRq.createNewOrderRq(id, isin, id, LocalDateTime.now(), side, quantity, price, 1, 1, 0, 0));
+    }
+
+    @Test
+    void latest_prices_left_pending_are_published_once_the_interval_elapses() {
+        enter(1, "ABC", Side.BUY, 100, 1000);
+        enter(2, "XYZ", Side.BUY, 100, 2000);
+        enter(3, "ABC", Side.SELL, 50, 900);
+        enter(4, "ABC", Side.SELL, 50, 950);
+        verify(eventPublisher, never()).publish(any(OpeningPriceEvent.class));
+
+        verify(eventPublisher, timeout(5000)).publish(new OpeningPriceEvent("ABC", 950, 100));
+        verify(eventPublisher).publish(new OpeningPriceEvent("XYZ", 0, 0));
+        verify(eventPublisher, times(2)).publish(any(OpeningPriceEvent.class));
+    }
+
+    @Test
+    void no_price_is_published_after_the_uncross_it_precedes() throws InterruptedException {
+        enter(1, "ABC", Side.BUY, 100, 1000);
+        enter(2, "ABC", Side.SELL, 100, 1000);
+
+        requestDispatcher.dispatch(new ChangeMatchingStateRq("ABC", MatchingState.CONTINUOUS));
+        Thread.sleep(700);
+
+        InOrder inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publish(new OpeningPriceEvent("ABC", 1000, 100));
+        inOrder.verify(eventPublisher).publish(new TradeEvent("ABC", 1000, 100, 1, 2));
+        inOrder.verify(eventPublisher).publish(new SecurityStateChangedEvent("ABC", MatchingState.CONTINUOUS));
+        verify(eventPublisher, times(1)).publish(any(OpeningPriceEvent.class));
+    }
+}
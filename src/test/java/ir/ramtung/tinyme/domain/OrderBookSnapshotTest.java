@@ -0,0 +1,94 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.OrderBookSnapshotPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderBookSnapshotTest {
+    private Security security;
+    private List<Order> orders;
+    private OrderBookSnapshotPublisher publisher;
+
+    @BeforeEach
+    void setup() {
+        security = Security.builder().isin("ABC").build();
+        Broker broker = Broker.builder().brokerId(1).build();
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        orders = Arrays.asList(
+                new Order(1, security, Side.BUY, 304, 15700, broker, shareholder, 0),
+                new Order(2, security, Side.BUY, 43, 15500, broker, shareholder, 0),
+                new Order(3, security, Side.BUY, 445, 15450, broker, shareholder, 0),
+                new Order(4, security, Side.BUY, 526, 15450, broker, shareholder, 0),
+                new Order(6, security, Side.SELL, 350, 15800, broker, shareholder, 0),
+                new Order(7, security, Side.SELL, 285, 15810, broker, shareholder, 0),
+                new Order(8, security, Side.SELL, 800, 15810, broker, shareholder, 0)
+        );
+        orders.forEach(order -> security.getOrderBook().enqueue(order));
+        publisher = new OrderBookSnapshotPublisher(OrderBookSnapshotPublisher.Policy.EVERY_REQUEST);
+    }
+
+    @Test
+    void depth_aggregates_orders_by_price_level() {
+        OrderBookSnapshot snapshot = publisher.publish(security);
+        assertThat(snapshot.depth(Side.BUY, 10)).containsExactly(
+                new PriceLevel(15700, 304, 1),
+                new PriceLevel(15500, 43, 1),
+                new PriceLevel(15450, 971, 2));
+        assertThat(snapshot.depth(Side.SELL, 1)).containsExactly(new PriceLevel(15800, 350, 1));
+        assertThat(snapshot.bestPrice(Side.SELL)).isEqualTo(15800);
+        assertThat(snapshot.totalQuantity(Side.SELL)).isEqualTo(1435);
+    }
+
+    @Test
+    void snapshot_does_not_see_later_changes() {
+        OrderBookSnapshot snapshot = publisher.publish(security);
+        security.getOrderBook().removeByOrderId(Side.BUY, 1);
+        orders.get(4).decreaseQuantity(50);
+
+        assertThat(snapshot.findByOrderId(Side.BUY, 1)).isNotNull();
+        assertThat(snapshot.findByOrderId(Side.SELL, 6).quantity()).isEqualTo(350);
+        assertThat(publisher.latest("ABC")).isSameAs(snapshot);
+        assertThatThrownBy(() -> snapshot.getEntries(Side.BUY).clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void versions_increase_and_unchanged_sides_are_shared() {
+        OrderBookSnapshot first = publisher.publish(security);
+        security.getOrderBook().removeByOrderId(Side.SELL, 8);
+        OrderBookSnapshot second = publisher.publish(security);
+
+        assertThat(second.getVersion()).isEqualTo(first.getVersion() + 1);
+        assertThat(second.getEntries(Side.BUY)).isSameAs(first.getEntries(Side.BUY));
+        assertThat(second.getEntries(Side.SELL)).hasSize(2);
+        assertThat(second.getEntries(Side.SELL).get(0)).isSameAs(first.getEntries(Side.SELL).get(0));
+        assertThat(first.getEntries(Side.SELL)).hasSize(3);
+    }
+
+    @Test
+    void unchanged_price_levels_of_a_changed_side_are_shared() {
+        OrderBookSnapshot first = publisher.publish(security);
+        security.getOrderBook().removeByOrderId(Side.BUY, 2);
+        OrderBookSnapshot second = publisher.publish(security);
+
+        assertThat(second.getEntries(Side.BUY)).extracting(BookEntry::orderId).containsExactly(1L, 3L, 4L);
+        assertThat(second.getEntries(Side.BUY).get(0)).isSameAs(first.getEntries(Side.BUY).get(0));
+        assertThat(second.getEntries(Side.BUY).get(1)).isSameAs(first.getEntries(Side.BUY).get(2));
+        assertThat(second.getEntries(Side.BUY).get(2)).isSameAs(first.getEntries(Side.BUY).get(3));
+        assertThat(second.depth(Side.BUY, 10)).containsExactly(new PriceLevel(15700, 304, 1), new PriceLevel(15450, 971, 2));
+    }
+
+    @Test
+    void never_policy_does_not_publish_on_requests() {
+        OrderBookSnapshotPublisher neverPublisher = new OrderBookSnapshotPublisher(OrderBookSnapshotPublisher.Policy.NEVER);
+        neverPublisher.requestProcessed(security);
+        neverPublisher.matchingStateChanged(security);
+        assertThat(neverPublisher.latest("ABC")).isNull();
+    }
+}
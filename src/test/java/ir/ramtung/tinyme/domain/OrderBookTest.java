@@ -4,8 +4,10 @@ import ir.ramtung.tinyme.domain.entity.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -76,4 +78,24 @@ class OrderBookTest {
         orderBook.removeByOrderId(Side.SELL, 10);
         assertThat(orderBook.getSellQueue()).isEqualTo(orders.subList(5, 9));
     }
-}
\ No newline at end of file
+
+    @Test
+    void bulk_enqueue_builds_the_same_queues_as_enqueueing_one_by_one() {
+        Broker broker = Broker.builder().build();
+        Shareholder shareholder = Shareholder.builder().build();
+        Random random = new Random(7);
+        List<Order> loaded = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++)
+            loaded.add(new Order(i, security, i % 2 == 0 ? Side.BUY : Side.SELL, 10, 15_000 + random.nextInt(50), broker, shareholder, 0));
+        OrderBook oneByOne = new OrderBook();
+        loaded.forEach(oneByOne::enqueue);
+
+        OrderBook bulk = new OrderBook();
+        for (Side side : Side.values())
+            bulk.enqueueAll(side, loaded.stream().filter(order -> order.getSide() == side).toList());
+
+        assertThat(bulk.getBuyQueue()).containsExactlyElementsOf(oneByOne.getBuyQueue());
+        assertThat(bulk.getSellQueue()).containsExactlyElementsOf(oneByOne.getSellQueue());
+        assertThat(bulk.getBuyQueue()).allMatch(order -> order.getStatus() == OrderStatus.QUEUED);
+    }
+}
@@ -0,0 +1,114 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.config.MockedJMSTestConfig;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.Message;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.request.BatchOrderLeg;
+import ir.ramtung.tinyme.messaging.request.BatchOrderRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@Import(MockedJMSTestConfig.class)
+@DirtiesContext
+public class OrderHandlerBatchOrderTest {
+    @Autowired
+    OrderHandler orderHandler;
+    @Autowired
+    EventPublisher eventPublisher;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        reset(eventPublisher);
+
+        Security abc = Security.builder().isin("ABC").build();
+        Security xyz = Security.builder().isin("XYZ").build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(xyz);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(abc, 100_000);
+        shareholder.incPosition(xyz, 100_000);
+        shareholderRepository.addShareholder(shareholder);
+        brokerRepository.addBroker(Broker.builder().brokerId(1).credit(10_000_000).build());
+        brokerRepository.addBroker(Broker.builder().brokerId(2).credit(10_000_000).build());
+    }
+
+    private List<BatchOrderLeg> quotes() {
+        LocalDateTime now = LocalDateTime.now();
+        return List.of(
+                BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(1, "ABC", 10, now, Side.BUY, 100, 1000, 1, 1, 0, 0)),
+                BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(2, "XYZ", 20, now, Side.SELL, 100, 2000, 2, 1, 0, 0)),
+                BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(3, "ABC", 11, now, Side.SELL, 60, 1000, 2, 1, 0, 0)),
+                BatchOrderLeg.enter(EnterOrderRq.createUpdateOrderRq(4, "XYZ", 20, now, Side.SELL, 100, 1900, 2, 1, 0, 0)),
+                BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(5, "UNKNOWN", 30, now, Side.BUY, 100, 1000, 1, 1, 0, 0)),
+                BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(6, "ABC", 12, now, Side.BUY, 100, 1000, 99, 1, 0, 0)),
+                BatchOrderLeg.delete(new DeleteOrderRq(7, "ABC", Side.BUY, 10)),
+                BatchOrderLeg.delete(new DeleteOrderRq(8, "XYZ", Side.BUY, 20)),
+                BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(9, "XYZ", 21, now, Side.BUY, 50, 1900, 1, 1, 0, 0))
+        );
+    }
+
+    private List<Event> publishedEvents() {
+        ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+        verify(eventPublisher, atLeast(0)).publish(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    void legs_produce_the_same_events_as_individual_requests() {
+        for (BatchOrderLeg leg : quotes()) {
+            if (leg.getEnterOrder() != null)
+                orderHandler.handleEnterOrder(leg.getEnterOrder());
+            else
+                orderHandler.handleDeleteOrder(leg.getDeleteOrder());
+        }
+        List<Event> individually = publishedEvents();
+        setup();
+
+        orderHandler.handleBatchOrder(new BatchOrderRq(quotes()));
+
+        assertThat(publishedEvents()).isNotEmpty().isEqualTo(individually);
+    }
+
+    @Test
+    void leg_without_exactly_one_request_is_rejected_and_the_rest_proceed() {
+        BatchOrderLeg both = new BatchOrderLeg(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 10, LocalDateTime.now(), Side.BUY, 100, 1000, 1, 1, 0, 0),
+                new DeleteOrderRq(1, "ABC", Side.BUY, 10));
+
+        orderHandler.handleBatchOrder(new BatchOrderRq(List.of(both, new BatchOrderLeg(), quotes().get(0))));
+
+        verify(eventPublisher).publish(new OrderRejectedEvent(1, 10, List.of(Message.BATCH_LEG_MUST_CARRY_ONE_REQUEST)));
+        verify(eventPublisher).publish(new OrderRejectedEvent(0, 0, List.of(Message.BATCH_LEG_MUST_CARRY_ONE_REQUEST)));
+        assertThat(securityRepository.findSecurityByIsin("ABC").getOrderBook().findByOrderId(Side.BUY, 10)).isNotNull();
+    }
+}
@@ -0,0 +1,109 @@
+package ir.ramtung.tinyme.domain;
+
+import ir.ramtung.tinyme.config.MockedJMSTestConfig;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.EventPublisher;
+import ir.ramtung.tinyme.messaging.event.SecurityStateChangedEvent;
+import ir.ramtung.tinyme.messaging.event.TradeEvent;
+import ir.ramtung.tinyme.messaging.request.BulkChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@Import(MockedJMSTestConfig.class)
+@DirtiesContext
+public class OrderHandlerBulkChangeMatchingStateTest {
+    @Autowired
+    OrderHandler orderHandler;
+    @Autowired
+    EventPublisher eventPublisher;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+    private List<Security> securities;
+    private Broker buyer;
+    private Broker seller;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        reset(eventPublisher);
+
+        buyer = Broker.builder().brokerId(1).credit(0).build();
+        seller = Broker.builder().brokerId(2).credit(0).build();
+        brokerRepository.addBroker(buyer);
+        brokerRepository.addBroker(seller);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholderRepository.addShareholder(shareholder);
+
+        securities = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Security security = Security.builder().isin("SEC" + i).lastTradePrice(100).matchingState(MatchingState.AUCTION).build();
+            shareholder.incPosition(security, 100_000);
+            security.getOrderBook().enqueue(new Order(10 * i + 1, security, Side.BUY, 10, 110, buyer, shareholder, 0));
+            security.getOrderBook().enqueue(new Order(10 * i + 2, security, Side.SELL, 10, 90, seller, shareholder, 0));
+            securityRepository.addSecurity(security);
+            securities.add(security);
+        }
+    }
+
+    @Test
+    void all_listed_securities_are_reopened_and_credits_are_settled() {
+        orderHandler.handleBulkChangeMatchingState(BulkChangeMatchingStateRq.forAllSecurities(MatchingState.CONTINUOUS));
+
+        for (Security security : securities) {
+            assertThat(security.getMatchingState()).isEqualTo(MatchingState.CONTINUOUS);
+            assertThat(security.getOrderBook().hasOrderOfType(Side.BUY)).isFalse();
+            assertThat(security.getOrderBook().hasOrderOfType(Side.SELL)).isFalse();
+            assertThat(security.getLastTradePrice()).isEqualTo(100);
+        }
+        assertThat(seller.getCredit()).isEqualTo(8 * 10 * 100);
+        assertThat(buyer.getCredit()).isEqualTo(8 * 10 * 10);
+    }
+
+    @Test
+    void events_are_published_per_security_in_isin_order() {
+        orderHandler.handleBulkChangeMatchingState(BulkChangeMatchingStateRq.forAllSecurities(MatchingState.CONTINUOUS));
+
+        InOrder inOrder = inOrder(eventPublisher);
+        for (int i = 0; i < securities.size(); i++) {
+            inOrder.verify(eventPublisher).publish(new TradeEvent("SEC" + i, 100, 10, 10 * i + 1, 10 * i + 2));
+            inOrder.verify(eventPublisher).publish(new SecurityStateChangedEvent("SEC" + i, MatchingState.CONTINUOUS));
+        }
+    }
+
+    @Test
+    void only_requested_securities_change_state_in_request_order() {
+        orderHandler.handleBulkChangeMatchingState(new BulkChangeMatchingStateRq(List.of("SEC3", "UNKNOWN", "SEC1"), MatchingState.CONTINUOUS));
+
+        assertThat(securities.get(3).getMatchingState()).isEqualTo(MatchingState.CONTINUOUS);
+        assertThat(securities.get(1).getMatchingState()).isEqualTo(MatchingState.CONTINUOUS);
+        assertThat(securities.get(0).getMatchingState()).isEqualTo(MatchingState.AUCTION);
+        InOrder inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publish(new SecurityStateChangedEvent("SEC3", MatchingState.CONTINUOUS));
+        inOrder.verify(eventPublisher).publish(new SecurityStateChangedEvent("SEC1", MatchingState.CONTINUOUS));
+        verify(eventPublisher, times(2)).publish(any(SecurityStateChangedEvent.class));
+    }
+}
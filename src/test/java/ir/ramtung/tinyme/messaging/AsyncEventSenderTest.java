@@ -0,0 +1,113 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncEventSenderTest {
+    @Test
+    void events_are_sent_in_enqueue_order() throws InterruptedException {
+        List<Event> sent = Collections.synchronizedList(new ArrayList<>());
+        AsyncEventSender sender = new AsyncEventSender(sent::add, 16, AsyncEventSender.Backpressure.BLOCK, 0);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Event event = new OrderAcceptedEvent(i, i);
+            events.add(event);
+            sender.enqueue(event);
+        }
+        assertThat(sender.flush(5000)).isTrue();
+        assertThat(sent).containsExactlyElementsOf(events);
+        sender.close();
+    }
+
+    @Test
+    void full_queue_drops_and_counts_the_event_under_fail_policy() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Event> sent = Collections.synchronizedList(new ArrayList<>());
+        AsyncEventSender sender = new AsyncEventSender(event -> {
+            sent.add(event);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2, AsyncEventSender.Backpressure.FAIL, 10);
+        sender.enqueue(new OrderAcceptedEvent(1, 1));
+        while (sender.pending() > 0)
+            Thread.onSpinWait();
+        sender.enqueue(new OrderAcceptedEvent(2, 2));
+        sender.enqueue(new OrderAcceptedEvent(3, 3));
+        sender.enqueue(new OrderAcceptedEvent(4, 4));
+        assertThat(sender.dropped()).isEqualTo(1);
+        release.countDown();
+        sender.close();
+        assertThat(sent).containsExactly(new OrderAcceptedEvent(1, 1), new OrderAcceptedEvent(2, 2), new OrderAcceptedEvent(3, 3));
+    }
+
+    @Test
+    void close_flushes_pending_events() throws InterruptedException {
+        List<Event> sent = Collections.synchronizedList(new ArrayList<>());
+        AsyncEventSender sender = new AsyncEventSender(event -> {
+            sent.add(event);
+            Thread.yield();
+        }, 10_000, AsyncEventSender.Backpressure.BLOCK, 0);
+        for (int i = 0; i < 5000; i++)
+            sender.enqueue(new OrderAcceptedEvent(i, i));
+        sender.close();
+        assertThat(sent).hasSize(5000);
+        assertThatThrownBy(() -> sender.enqueue(new OrderAcceptedEvent(1, 1))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void each_batch_is_committed_before_any_of_its_events_is_sent() throws InterruptedException {
+        List<Event> sent = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> sentBeforeCommit = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        AsyncEventSender sender = new AsyncEventSender(sent::add, 10_000, AsyncEventSender.Backpressure.BLOCK, 0, 64, 1_000_000, batch -> {
+            sentBeforeCommit.add(sent.size());
+            batchSizes.add(batch.size());
+        });
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Event event = new OrderAcceptedEvent(i, i);
+            events.add(event);
+            sender.enqueue(event);
+        }
+        assertThat(sender.flush(5000)).isTrue();
+        sender.close();
+
+        assertThat(sent).containsExactlyElementsOf(events);
+        assertThat(batchSizes).allMatch(size -> size <= 64).hasSizeLessThan(1000);
+        int committed = 0;
+        for (int i = 0; i < batchSizes.size(); i++) {
+            assertThat(sentBeforeCommit.get(i)).isEqualTo(committed);
+            committed += batchSizes.get(i);
+        }
+        assertThat(sender.averageBatchSize()).isGreaterThan(1);
+    }
+
+    @Test
+    void events_of_a_batch_that_fails_to_commit_are_not_sent() throws InterruptedException {
+        List<Event> sent = Collections.synchronizedList(new ArrayList<>());
+        AsyncEventSender sender = new AsyncEventSender(sent::add, 16, AsyncEventSender.Backpressure.BLOCK, 0, 16, 0, batch -> {
+            if (batch.contains(new OrderAcceptedEvent(2, 2)))
+                throw new IllegalStateException("disk full");
+        });
+        sender.enqueue(new OrderAcceptedEvent(1, 1));
+        assertThat(sender.flush(5000)).isTrue();
+        sender.enqueue(new OrderAcceptedEvent(2, 2));
+        assertThat(sender.flush(5000)).isTrue();
+        sender.enqueue(new OrderAcceptedEvent(3, 3));
+        sender.close();
+
+        assertThat(sent).containsExactly(new OrderAcceptedEvent(1, 1), new OrderAcceptedEvent(3, 3));
+    }
+}
@@ -0,0 +1,59 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.audit.AuditJournal;
+import ir.ramtung.tinyme.messaging.audit.AuditJournalReader;
+import ir.ramtung.tinyme.messaging.audit.AuditRecord;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void records_are_read_back_in_order_across_rolled_segments() throws Exception {
+        AuditJournal journal = new AuditJournal(true, directory.toString(), 512, 1024, 1000);
+        List<Object> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Object request = i % 2 == 0
+                    ? EnterOrderRq.createNewOrderRq(i, "ABC", i, LocalDateTime.now(), Side.BUY, 10, 100, 1, 1, 0, 0)
+                    : new DeleteOrderRq(i, "ABC", Side.SELL, i);
+            Object event = i % 3 == 0 ? new OrderRejectedEvent(i, i, List.of("rejected")) : new OrderAcceptedEvent(i, i);
+            journal.recordRequest(request);
+            journal.recordEvent(event);
+            messages.add(request);
+            messages.add(event);
+        }
+        journal.close();
+
+        List<AuditRecord> records = AuditJournalReader.read(directory);
+
+        assertThat(AuditJournalReader.segmentsIn(directory)).hasSizeGreaterThan(1);
+        assertThat(records).extracting(AuditRecord::message).isEqualTo(messages);
+        assertThat(records).extracting(AuditRecord::sequence).containsExactlyElementsOf(
+                () -> java.util.stream.LongStream.range(0, messages.size()).boxed().iterator());
+        assertThat(records.get(0).direction()).isEqualTo(AuditRecord.Direction.INBOUND);
+        assertThat(records.get(1).direction()).isEqualTo(AuditRecord.Direction.OUTBOUND);
+    }
+
+    @Test
+    void disabled_journal_writes_nothing() throws Exception {
+        AuditJournal journal = new AuditJournal(false, directory.toString(), 512, 16, 1000);
+        journal.recordRequest(new DeleteOrderRq(1, "ABC", Side.SELL, 1));
+        journal.close();
+
+        assertThat(AuditJournalReader.segmentsIn(directory)).isEmpty();
+    }
+}
@@ -0,0 +1,127 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.codec.BinaryCodec;
+import ir.ramtung.tinyme.messaging.codec.DeleteOrderRqFlyweight;
+import ir.ramtung.tinyme.messaging.codec.EnterOrderRqFlyweight;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryCodecTest {
+    private final LocalDateTime time = LocalDateTime.of(2024, 3, 5, 10, 15, 30, 123_456_789);
+
+    private Object roundTrip(Object message) {
+        ByteBuffer buffer = BinaryCodec.allocate(4096);
+        BinaryCodec.encode(message, buffer);
+        int length = buffer.position();
+        Object decoded = BinaryCodec.decode(buffer.flip());
+        assertThat(buffer.position()).isEqualTo(length);
+        return decoded;
+    }
+
+    @Test
+    void requests_survive_a_round_trip() {
+        List<Object> requests = List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 10, time, Side.BUY, 300, 15450, 2, 3, 50, 20, 15000),
+                EnterOrderRq.createUpdateOrderRq(2, "ABC", 10, time, Side.SELL, 100, 15400, 2, 3, 0, 0),
+                new DeleteOrderRq(3, "ABC", Side.SELL, 10, time),
+                new ChangeMatchingStateRq("ABC", MatchingState.AUCTION, time),
+                new BulkChangeMatchingStateRq(List.of("ABC", "XYZ"), MatchingState.CONTINUOUS, time),
+                new BulkChangeMatchingStateRq(List.of(), MatchingState.CONTINUOUS, null),
+                new BatchOrderRq(List.of(
+                        BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(1, "ABC", 10, time, Side.BUY, 300, 15450, 2, 3, 0, 0)),
+                        BatchOrderLeg.delete(new DeleteOrderRq(2, "ABC", Side.BUY, 10, time)),
+                        new BatchOrderLeg()))
+        );
+        for (Object request : requests)
+            assertThat(roundTrip(request)).isEqualTo(request);
+    }
+
+    @Test
+    void events_survive_a_round_trip_with_their_time() {
+        List<Event> events = List.of(
+                new OrderAcceptedEvent(time, 1, 10),
+                new OrderUpdatedEvent(time, 2, 10),
+                new OrderDeletedEvent(time, 3, 10),
+                new OrderActivatedEvent(time, 4, 11),
+                new OrderRejectedEvent(time, 5, 12, List.of(Message.UNKNOWN_SECURITY_ISIN, "ünïcode")),
+                new OrderExecutedEvent(time, 6, 13, List.of(new TradeDTO("ABC", 100, 5, 13, 7), new TradeDTO("ABC", 101, 6, 13, 8))),
+                new OpeningPriceEvent(time, "ABC", 15450, 300),
+                new SecurityStateChangedEvent(time, "ABC", MatchingState.AUCTION),
+                new TradeEvent(time, "ABC", 15450, 300, 10, 11)
+        );
+        for (Event event : events) {
+            Event decoded = (Event) roundTrip(event);
+            assertThat(decoded).isEqualTo(event);
+            assertThat(decoded.getTime()).isEqualTo(time);
+        }
+    }
+
+    @Test
+    void event_batches_nest_their_events() {
+        EventBatch batch = new EventBatch(time, List.of(
+                new OrderAcceptedEvent(time, 1, 10),
+                new OrderExecutedEvent(time, 1, 10, List.of(new TradeDTO("ABC", 100, 5, 10, 7))),
+                new TradeEvent(time, "ABC", 100, 5, 10, 7)));
+
+        EventBatch decoded = (EventBatch) roundTrip(batch);
+
+        assertThat(decoded).isEqualTo(batch);
+        assertThat(decoded.getEvents()).extracting(Event::getTime).containsOnly(time);
+    }
+
+    @Test
+    void layout_is_little_endian_and_versioned() {
+        ByteBuffer buffer = BinaryCodec.allocate(128);
+        BinaryCodec.encode(new DeleteOrderRq(0x0102, "ABC", Side.BUY, 7, time), buffer);
+
+        assertThat(buffer.position()).isEqualTo(DeleteOrderRqFlyweight.LENGTH);
+        assertThat(buffer.get(0)).isEqualTo(BinaryCodec.SCHEMA_VERSION);
+        assertThat(buffer.get(1)).isEqualTo(BinaryCodec.DELETE_ORDER_RQ);
+        assertThat(buffer.get(2)).isEqualTo((byte) 0x02);
+        assertThat(buffer.get(3)).isEqualTo((byte) 0x01);
+    }
+
+    @Test
+    void flyweight_reads_fields_in_place() {
+        ByteBuffer buffer = BinaryCodec.allocate(256);
+        buffer.position(40);
+        BinaryCodec.encode(EnterOrderRq.createNewOrderRq(1, "ABC", 10, time, Side.SELL, 300, 15450, 2, 3, 50, 20), buffer);
+
+        EnterOrderRqFlyweight flyweight = new EnterOrderRqFlyweight().wrap(buffer, 40);
+
+        assertThat(BinaryCodec.typeOf(buffer, 40)).isEqualTo(BinaryCodec.ENTER_ORDER_RQ);
+        assertThat(flyweight.requestType()).isEqualTo(OrderEntryType.NEW_ORDER);
+        assertThat(flyweight.isinEquals("ABC")).isTrue();
+        assertThat(flyweight.isinEquals("ABD")).isFalse();
+        assertThat(flyweight.side()).isEqualTo(Side.SELL);
+        assertThat(flyweight.quantity()).isEqualTo(300);
+        assertThat(flyweight.price()).isEqualTo(15450);
+        assertThat(flyweight.peakSize()).isEqualTo(50);
+        assertThat(flyweight.minimumExecutionQuantity()).isEqualTo(20);
+        assertThat(flyweight.stopPrice()).isZero();
+    }
+
+    @Test
+    void encoding_into_a_short_buffer_overflows() {
+        EventBatch batch = new EventBatch(List.of(new OrderAcceptedEvent(1, 10), new OrderAcceptedEvent(2, 11)));
+        assertThatThrownBy(() -> BinaryCodec.encode(batch, BinaryCodec.allocate(40))).isInstanceOf(BufferOverflowException.class);
+        assertThatThrownBy(() -> BinaryCodec.encode(new DeleteOrderRq(1, "ABC", Side.BUY, 7), BinaryCodec.allocate(20))).isInstanceOf(BufferOverflowException.class);
+    }
+
+    @Test
+    void unknown_schema_version_is_rejected() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{2, BinaryCodec.TRADE}).order(ByteOrder.LITTLE_ENDIAN);
+        assertThatThrownBy(() -> BinaryCodec.decode(buffer)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
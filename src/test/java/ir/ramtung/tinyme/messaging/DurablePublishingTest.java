@@ -0,0 +1,84 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.transport.InProcessGateway;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The group commit interval is far longer than the test, so only the event sender's commit can have
+// made the request durable by the time its acknowledgement arrives.
+@SpringBootTest(properties = {"transport.type=IN_PROCESS", "publishing.mode=DURABLE",
+        "journal.enabled=true", "journal.syncPolicy=GROUP", "journal.groupCommitMillis=600000"})
+@DirtiesContext
+class DurablePublishingTest {
+    private static final Path directory = temporaryDirectory();
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("journal.directory", () -> directory.resolve("journal").toString());
+        registry.add("eventJournal.directory", () -> directory.resolve("events").toString());
+    }
+
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("tinyme-durable");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    InProcessGateway gateway;
+    @Autowired
+    RequestJournal requestJournal;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.addSecurity(Security.builder().isin("ABC").build());
+        shareholderRepository.addShareholder(Shareholder.builder().shareholderId(1).build());
+        brokerRepository.addBroker(Broker.builder().brokerId(1).credit(10_000_000).build());
+    }
+
+    @Test
+    void acknowledgement_is_not_sent_before_its_request_is_durable() throws Exception {
+        gateway.submit(EnterOrderRq.createNewOrderRq(1, "ABC", 1, LocalDateTime.now(), Side.BUY, 10, 1000, 1, 1, 0, 0));
+
+        Event event = gateway.receive(5, TimeUnit.SECONDS);
+
+        assertThat(event).isEqualTo(new OrderAcceptedEvent(1, 1));
+        assertThat(requestJournal.durableSequence()).isGreaterThanOrEqualTo(0).isEqualTo(requestJournal.lastSequence());
+    }
+}
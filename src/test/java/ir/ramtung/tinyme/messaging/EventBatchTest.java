@@ -0,0 +1,75 @@
+package ir.ramtung.tinyme.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.messaging.audit.AuditJournal;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.messaging.transport.EventTransport;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class EventBatchTest {
+    private EventPublisher publisherWith(EventTransport transport, EventPublisher.Batching batching) {
+        return new EventPublisher(transport, AuditJournal.disabled(), EventPublisher.Mode.SYNC, 16, AsyncEventSender.Backpressure.BLOCK, 0, batching, 1, 0, null, null);
+    }
+
+    @Test
+    void events_of_one_request_are_sent_as_one_message() {
+        EventTransport transport = mock(EventTransport.class);
+        EventPublisher eventPublisher = publisherWith(transport, EventPublisher.Batching.PER_REQUEST);
+        List<Event> events = List.of(new OrderAcceptedEvent(1, 10), new OrderActivatedEvent(1, 10), new OpeningPriceEvent("ABC", 100, 5));
+
+        eventPublisher.beginBatch();
+        events.forEach(eventPublisher::publish);
+        verifyNoInteractions(transport);
+        eventPublisher.endBatch();
+
+        ArgumentCaptor<Event> sent = ArgumentCaptor.forClass(Event.class);
+        verify(transport).send(sent.capture());
+        assertThat(((EventBatch) sent.getValue()).getEvents()).containsExactlyElementsOf(events);
+    }
+
+    @Test
+    void legacy_mode_sends_one_message_per_event() {
+        EventTransport transport = mock(EventTransport.class);
+        EventPublisher eventPublisher = publisherWith(transport, EventPublisher.Batching.NONE);
+
+        eventPublisher.beginBatch();
+        eventPublisher.publish(new OrderAcceptedEvent(1, 10));
+        eventPublisher.publish(new OrderDeletedEvent(2, 10));
+        eventPublisher.endBatch();
+
+        verify(transport, times(2)).send(any());
+        verify(transport).send(new OrderDeletedEvent(2, 10));
+    }
+
+    @Test
+    void empty_batch_sends_nothing() {
+        EventTransport transport = mock(EventTransport.class);
+        EventPublisher eventPublisher = publisherWith(transport, EventPublisher.Batching.PER_REQUEST);
+        eventPublisher.beginBatch();
+        eventPublisher.endBatch();
+        verifyNoInteractions(transport);
+    }
+
+    @Test
+    void batch_round_trips_through_json_with_element_types() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        EventBatch batch = new EventBatch(List.of(
+                new OrderAcceptedEvent(1, 10),
+                new OrderExecutedEvent(1, 10, List.of(new TradeDTO("ABC", 100, 5, 10, 11))),
+                new SecurityStateChangedEvent("ABC", MatchingState.AUCTION)));
+
+        String json = objectMapper.writeValueAsString(batch);
+        EventBatch decoded = objectMapper.readValue(json, EventBatch.class);
+
+        assertThat(json).contains("\"_type\":\"ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent\"");
+        assertThat(decoded.getEvents()).containsExactlyElementsOf(batch.getEvents());
+    }
+}
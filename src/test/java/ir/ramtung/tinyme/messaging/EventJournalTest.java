@@ -0,0 +1,71 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.journal.EventJournal;
+import ir.ramtung.tinyme.messaging.journal.EventJournalReader;
+import ir.ramtung.tinyme.messaging.journal.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventJournalTest {
+    @TempDir
+    Path directory;
+
+    private static Event event(int i) {
+        return i % 3 == 0
+                ? new OrderRejectedEvent(i, i, List.of(Message.INVALID_ORDER_ID))
+                : new OrderAcceptedEvent(i, i);
+    }
+
+    private static List<Event> events(int from, int to) {
+        return IntStream.range(from, to).mapToObj(EventJournalTest::event).toList();
+    }
+
+    private List<JournalRecord> readBack() throws Exception {
+        List<JournalRecord> records = new ArrayList<>();
+        EventJournalReader.read(directory, records::add);
+        return records;
+    }
+
+    @Test
+    void each_batch_is_forced_once_and_events_read_back_in_sequence_across_restarts() throws Exception {
+        EventJournal journal = new EventJournal(directory.toString(), 1024);
+        assertThat(journal.append(events(0, 10))).isEqualTo(9);
+        assertThat(journal.append(events(10, 100))).isEqualTo(99);
+        assertThat(journal.append(events(100, 105))).isEqualTo(104);
+        assertThat(journal.forces()).isEqualTo(3);
+        journal.close();
+        EventJournal reopened = new EventJournal(directory.toString(), 1024);
+        assertThat(reopened.append(events(105, 110))).isEqualTo(109);
+        reopened.close();
+
+        assertThat(readBack()).isEqualTo(IntStream.range(0, 110).mapToObj(i -> new JournalRecord(i, event(i))).toList());
+        assertThat(EventJournalReader.segmentsIn(directory)).hasSize(3);
+    }
+
+    @Test
+    void appending_resumes_after_a_torn_tail() throws Exception {
+        EventJournal journal = new EventJournal(directory.toString(), 1 << 20);
+        journal.append(events(0, 5));
+        journal.close();
+        Path segment = EventJournalReader.segmentsIn(directory).get(0);
+        Files.write(segment, new byte[]{12, 0, 0, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        EventJournal reopened = new EventJournal(directory.toString(), 1 << 20);
+        assertThat(reopened.append(events(5, 8))).isEqualTo(7);
+        reopened.close();
+
+        assertThat(readBack()).extracting(JournalRecord::sequence).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L);
+    }
+}
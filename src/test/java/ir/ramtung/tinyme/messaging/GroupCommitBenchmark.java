@@ -0,0 +1,84 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.journal.EventJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Latency from publishing an event to sending it, and the events sent per second, through the
+// DURABLE publishing stage (event journal on the test's temporary directory) for a range of group
+// commit settings and offered loads. Run with: mvn test -Dtest=GroupCommitBenchmark -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class GroupCommitBenchmark {
+    private static final long RUN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_EVENTS = 2_000_000;
+    private static final int[] MAX_BATCHES = {1, 16, 256};
+    private static final long[] MAX_WAITS_MICROS = {0, 200, 1000};
+    // events per second; 0 publishes as fast as the queue takes them
+    private static final int[] OFFERED_LOADS = {1_000, 10_000, 50_000, 0};
+
+    @TempDir
+    Path directory;
+
+    private record Result(long sent, double eventsPerSecond, double p50Micros, double p99Micros, double averageBatch, long forces) {
+    }
+
+    private Result run(int maxBatch, long maxWaitMicros, int offeredLoad, String name) throws InterruptedException {
+        EventJournal journal = new EventJournal(directory.resolve(name).toString(), 64 << 20);
+        long[] published = new long[MAX_EVENTS];
+        long[] latencies = new long[MAX_EVENTS];
+        AsyncEventSender sender = new AsyncEventSender(event -> {
+            int i = (int) ((OrderAcceptedEvent) event).getRequestId();
+            latencies[i] = System.nanoTime() - published[i];
+        }, 65536, AsyncEventSender.Backpressure.BLOCK, 0, maxBatch, TimeUnit.MICROSECONDS.toNanos(maxWaitMicros), journal::append);
+        long start = System.nanoTime();
+        int count = 0;
+        while (count < MAX_EVENTS && System.nanoTime() - start < RUN_NANOS) {
+            if (offeredLoad > 0) {
+                long due = start + count * 1_000_000_000L / offeredLoad;
+                long wait = due - System.nanoTime();
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+            }
+            Event event = new OrderAcceptedEvent(count, count);
+            published[count] = System.nanoTime();
+            sender.enqueue(event);
+            count++;
+        }
+        assertThat(sender.flush(TimeUnit.MINUTES.toMillis(5))).isTrue();
+        long elapsed = System.nanoTime() - start;
+        double averageBatch = sender.averageBatchSize();
+        sender.close();
+        long forces = journal.forces();
+        try {
+            journal.close();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return new Result(count, count * 1e9 / elapsed, sorted[count / 2] / 1000.0, sorted[count * 99 / 100] / 1000.0, averageBatch, forces);
+    }
+
+    @Test
+    void latency_and_throughput_by_group_commit_setting_and_offered_load() throws InterruptedException {
+        run(16, 0, 0, "warm-up");
+        System.out.printf("%8s %9s %9s %10s %11s %11s %9s %8s%n", "maxBatch", "maxWaitUs", "offered/s", "sent/s", "p50 us", "p99 us", "avgBatch", "forces");
+        for (int maxBatch : MAX_BATCHES)
+            for (long maxWait : MAX_WAITS_MICROS)
+                for (int load : OFFERED_LOADS) {
+                    Result result = run(maxBatch, maxWait, load, maxBatch + "-" + maxWait + "-" + load);
+                    System.out.printf("%8d %9d %9s %10.0f %11.1f %11.1f %9.1f %8d%n", maxBatch, maxWait, load == 0 ? "max" : load,
+                            result.eventsPerSecond(), result.p50Micros(), result.p99Micros(), result.averageBatch(), result.forces());
+                }
+    }
+}
@@ -0,0 +1,92 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.transport.InProcessGateway;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the whole engine with no mocks: requests and events go through the in-process transport.
+@SpringBootTest(properties = "transport.type=IN_PROCESS")
+@DirtiesContext
+class InProcessTransportTest {
+    @Autowired
+    InProcessGateway gateway;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+    private Broker buyer;
+    private Broker seller;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        Security security = Security.builder().isin("ABC").build();
+        securityRepository.addSecurity(security);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 100_000);
+        shareholderRepository.addShareholder(shareholder);
+        buyer = Broker.builder().brokerId(1).credit(1_000_000).build();
+        seller = Broker.builder().brokerId(2).credit(0).build();
+        brokerRepository.addBroker(buyer);
+        brokerRepository.addBroker(seller);
+    }
+
+    private List<Event> receive(int count) throws InterruptedException {
+        List<Event> events = new ArrayList<>();
+        while (events.size() < count) {
+            Event event = gateway.receive(5, TimeUnit.SECONDS);
+            assertThat(event).as("event %d of %d", events.size() + 1, count).isNotNull();
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Test
+    void matching_orders_trade_and_events_come_back_in_order() throws InterruptedException {
+        gateway.submit(EnterOrderRq.createNewOrderRq(1, "ABC", 10, LocalDateTime.now(), Side.SELL, 100, 1000, 2, 1, 0, 0));
+        gateway.submit(EnterOrderRq.createNewOrderRq(2, "ABC", 20, LocalDateTime.now(), Side.BUY, 60, 1000, 1, 1, 0, 0));
+        gateway.submit(new DeleteOrderRq(3, "ABC", Side.SELL, 10));
+
+        List<Event> events = receive(4);
+
+        assertThat(events.get(0)).isEqualTo(new OrderAcceptedEvent(1, 10));
+        assertThat(events.get(1)).isEqualTo(new OrderAcceptedEvent(2, 20));
+        assertThat(events.get(2)).isInstanceOfSatisfying(OrderExecutedEvent.class, executed -> {
+            assertThat(executed.getOrderId()).isEqualTo(20);
+            assertThat(executed.getTrades()).hasSize(1);
+        });
+        assertThat(events.get(3)).isEqualTo(new OrderDeletedEvent(3, 10));
+        assertThat(buyer.getCredit()).isEqualTo(1_000_000 - 60 * 1000);
+        assertThat(seller.getCredit()).isEqualTo(60 * 1000);
+        assertThat(gateway.receiveNow()).isNull();
+    }
+
+    @Test
+    void unknown_requests_are_dropped_without_stopping_the_engine() throws InterruptedException {
+        gateway.submit("not a request");
+        gateway.submit(EnterOrderRq.createNewOrderRq(1, "ABC", 10, LocalDateTime.now(), Side.SELL, 100, 1000, 2, 1, 0, 0));
+
+        assertThat(receive(1)).containsExactly(new OrderAcceptedEvent(1, 10));
+    }
+}
@@ -0,0 +1,46 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.messaging.codec.Codec;
+import ir.ramtung.tinyme.messaging.codec.CodecSelectingMessageConverter;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.transport.JmsEventTransport;
+import jakarta.jms.Session;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class JmsEventTransportTest {
+    private final JmsTemplate jmsTemplate = mock(JmsTemplate.class);
+    private final MessageConverter json = mock(MessageConverter.class);
+    private final MessageConverter binary = mock(MessageConverter.class);
+    private final Session session = mock(Session.class);
+
+    private void sendWith(Codec defaultCodec, Codec responseCodec) throws Exception {
+        CodecSelectingMessageConverter converter = new CodecSelectingMessageConverter(json, binary, defaultCodec);
+        new JmsEventTransport(jmsTemplate, converter, "responses", responseCodec).send(new OrderAcceptedEvent(1, 10));
+
+        ArgumentCaptor<MessageCreator> creator = ArgumentCaptor.forClass(MessageCreator.class);
+        verify(jmsTemplate).send(eq("responses"), creator.capture());
+        creator.getValue().createMessage(session);
+    }
+
+    @Test
+    void json_responses_are_sent_as_json_when_the_default_codec_is_binary() throws Exception {
+        sendWith(Codec.BINARY, Codec.JSON);
+        verify(json).toMessage(new OrderAcceptedEvent(1, 10), session);
+        verify(binary, never()).toMessage(any(), any());
+    }
+
+    @Test
+    void binary_responses_are_sent_as_binary_when_the_default_codec_is_json() throws Exception {
+        sendWith(Codec.JSON, Codec.BINARY);
+        verify(binary).toMessage(new OrderAcceptedEvent(1, 10), session);
+        verify(json, never()).toMessage(any(), any());
+    }
+}
@@ -0,0 +1,263 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.domain.service.OpeningPriceConflator;
+import ir.ramtung.tinyme.domain.service.OrderHandler;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.EventBatch;
+import ir.ramtung.tinyme.messaging.event.OrderActivatedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.journal.JournalReplayer;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.messaging.transport.InProcessGateway;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import ir.ramtung.tinyme.repository.snapshot.StateSnapshotLoader;
+import ir.ramtung.tinyme.repository.snapshot.StateSnapshotter;
+import ir.ramtung.tinyme.repository.trade.TradeStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"transport.type=IN_PROCESS", "journal.enabled=true", "journal.syncPolicy=GROUP"})
+@DirtiesContext
+class JournalReplayTest {
+    private static final Path directory = temporaryDirectory();
+
+    @DynamicPropertySource
+    static void journalDirectory(DynamicPropertyRegistry registry) {
+        registry.add("journal.directory", () -> directory.resolve("journal").toString());
+        registry.add("snapshot.directory", () -> directory.resolve("snapshots").toString());
+    }
+
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("tinyme-journal");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    InProcessGateway gateway;
+    @Autowired
+    RequestJournal requestJournal;
+    @Autowired
+    JournalReplayer journalReplayer;
+    @Autowired
+    StateSnapshotter stateSnapshotter;
+    @Autowired
+    StateSnapshotLoader stateSnapshotLoader;
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+
+    @BeforeEach
+    void setup() throws IOException {
+        requestJournal.checkpoint();
+        loadBaseline();
+    }
+
+    private void loadBaseline() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        Security abc = Security.builder().isin("ABC").build();
+        Security xyz = Security.builder().isin("XYZ").build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(xyz);
+        for (long id = 1; id <= 2; id++) {
+            Shareholder shareholder = Shareholder.builder().shareholderId(id).build();
+            shareholder.incPosition(abc, 10_000);
+            shareholder.incPosition(xyz, 10_000);
+            shareholderRepository.addShareholder(shareholder);
+            brokerRepository.addBroker(Broker.builder().brokerId(id).credit(10_000_000).build());
+        }
+    }
+
+    private String state() {
+        StringBuilder state = new StringBuilder();
+        for (Broker broker : brokerRepository.allBrokers())
+            state.append("broker ").append(broker.getBrokerId()).append(' ').append(broker.getCredit()).append('\n');
+        for (Shareholder shareholder : shareholderRepository.allShareholders())
+            for (Security security : securityRepository.allSecurities())
+                state.append("position ").append(shareholder.getShareholderId()).append(' ').append(security.getIsin())
+                        .append(' ').append(shareholder.getPositions().get(security)).append('\n');
+        for (Security security : securityRepository.allSecurities()) {
+            state.append("security ").append(security.getIsin()).append(' ').append(security.getMatchingState())
+                    .append(' ').append(security.getLastTradePrice()).append('\n');
+            for (Order order : security.getOrderBook().getBuyQueue())
+                state.append("  buy ").append(order.getOrderId()).append(' ').append(order.getQuantity()).append('\n');
+            for (Order order : security.getOrderBook().getSellQueue())
+                state.append("  sell ").append(order.getOrderId()).append(' ').append(order.getQuantity()).append('\n');
+        }
+        return state.toString();
+    }
+
+    private List<Object> requests() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object> requests = new ArrayList<>();
+        requests.add(EnterOrderRq.createNewOrderRq(1, "ABC", 1, now, Side.SELL, 300, 1000, 2, 2, 0, 0));
+        requests.add(EnterOrderRq.createNewOrderRq(2, "ABC", 2, now, Side.SELL, 200, 1010, 2, 2, 100, 0));
+        requests.add(EnterOrderRq.createNewOrderRq(3, "ABC", 3, now, Side.BUY, 400, 1010, 1, 1, 0, 0));
+        requests.add(new ChangeMatchingStateRq("XYZ", MatchingState.AUCTION));
+        requests.add(EnterOrderRq.createNewOrderRq(4, "XYZ", 4, now, Side.BUY, 50, 500, 1, 1, 0, 0));
+        requests.add(EnterOrderRq.createNewOrderRq(5, "XYZ", 5, now, Side.SELL, 70, 490, 2, 2, 0, 0));
+        requests.add(new ChangeMatchingStateRq("XYZ", MatchingState.CONTINUOUS));
+        requests.add(new DeleteOrderRq(6, "XYZ", Side.SELL, 5));
+        requests.add(EnterOrderRq.createNewOrderRq(7, "ABC", 7, now, Side.BUY, 10, 900, 1, 1, 0, 0));
+        return requests;
+    }
+
+    private List<Event> submitAndDrain(List<Object> requests) throws InterruptedException {
+        long lastSequence = requestJournal.lastSequence() + requests.size();
+        requests.forEach(gateway::submit);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requestJournal.lastSequence() < lastSequence && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        List<Event> events = new ArrayList<>();
+        for (Event event; (event = gateway.receive(200, TimeUnit.MILLISECONDS)) != null; )
+            events.add(event);
+        return events;
+    }
+
+    private List<Event> flatten(List<Event> events) {
+        List<Event> flat = new ArrayList<>();
+        for (Event event : events) {
+            if (event instanceof EventBatch batch)
+                flat.addAll(batch.getEvents());
+            else
+                flat.add(event);
+        }
+        return flat;
+    }
+
+    @Test
+    void replaying_the_journal_over_the_baseline_reaches_the_same_state() throws Exception {
+        submitAndDrain(requests());
+        String live = state();
+        assertThat(live).contains("security XYZ CONTINUOUS 490");
+
+        loadBaseline();
+        journalReplayer.replay();
+
+        assertThat(state()).isEqualTo(live);
+        assertThat(journalReplayer.replayedRequests()).isGreaterThanOrEqualTo(requests().size());
+        assertThat(gateway.receiveNow()).isNull();
+    }
+
+    @Test
+    void checkpointed_requests_are_not_replayed() throws Exception {
+        submitAndDrain(requests());
+        requestJournal.checkpoint();
+        long replayedBefore = journalReplayer.replayedRequests();
+
+        journalReplayer.replay();
+
+        assertThat(journalReplayer.replayedRequests()).isEqualTo(replayedBefore);
+    }
+
+    @Test
+    void latest_snapshot_and_the_journal_tail_rebuild_the_state() throws Exception {
+        List<Object> requests = requests();
+        submitAndDrain(requests.subList(0, 5));
+        long snapshotSequence = requestJournal.lastSequence();
+        assertThat(stateSnapshotter.snapshot()).isNotNull();
+        submitAndDrain(requests.subList(5, requests.size()));
+        String live = state();
+        long replayedBefore = journalReplayer.replayedRequests();
+
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        stateSnapshotLoader.load();
+        assertThat(stateSnapshotLoader.baseSequence()).isEqualTo(snapshotSequence);
+        journalReplayer.replay();
+
+        assertThat(state()).isEqualTo(live);
+        assertThat(journalReplayer.replayedRequests() - replayedBefore).isEqualTo(requests.size() - 5);
+    }
+
+    @Test
+    void stop_limit_order_restored_from_a_snapshot_activates_under_its_original_request() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        submitAndDrain(List.of(
+                EnterOrderRq.createNewOrderRq(11, "ABC", 21, now, Side.SELL, 300, 1010, 2, 2, 0, 0),
+                EnterOrderRq.createNewOrderRq(12, "ABC", 22, now, Side.BUY, 50, 1100, 1, 1, 0, 0, 1005)));
+        assertThat(stateSnapshotter.snapshot()).isNotNull();
+
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        stateSnapshotLoader.load();
+        List<Event> events = submitAndDrain(List.of(
+                EnterOrderRq.createNewOrderRq(13, "ABC", 23, now, Side.BUY, 100, 1010, 1, 1, 0, 0)));
+
+        assertThat(flatten(events)).contains(new OrderActivatedEvent(12, 22));
+        assertThat(state()).contains("  sell 21 150");
+    }
+
+    @Test
+    void a_request_the_journal_cannot_hold_is_still_rejected() throws Exception {
+        long lastSequence = requestJournal.lastSequence();
+        List<Event> events = submitAndDrain(List.of(
+                EnterOrderRq.createNewOrderRq(21, "ISIN-TOO-LONG-FOR-THE-WIRE", 31, LocalDateTime.now(), Side.BUY, 10, 1000, 1, 1, 0, 0),
+                EnterOrderRq.createNewOrderRq(22, "ABC", 32, LocalDateTime.now(), Side.BUY, 10, 1000, 1, 1, 0, 0)));
+
+        assertThat(flatten(events)).contains(new OrderRejectedEvent(21, 31, List.of(Message.UNKNOWN_SECURITY_ISIN)));
+        assertThat(requestJournal.lastSequence()).isEqualTo(lastSequence + 1);
+    }
+
+    @Test
+    void requests_that_fail_do_not_stop_the_replay() throws Exception {
+        List<Object> requests = new ArrayList<>(requests());
+        requests.add(1, new ChangeMatchingStateRq("UNKNOWN", MatchingState.AUCTION));
+        submitAndDrain(requests);
+        String live = state();
+
+        loadBaseline();
+        journalReplayer.replay();
+
+        assertThat(state()).isEqualTo(live);
+    }
+
+    @Test
+    void a_request_whose_handler_throws_is_skipped() {
+        OrderHandler failingHandler = mock(OrderHandler.class);
+        doThrow(new IllegalStateException("broken")).when(failingHandler).handleDeleteOrder(any());
+        OpeningPriceConflator conflator = mock(OpeningPriceConflator.class);
+        JournalReplayer replayer = new JournalReplayer(requestJournal, failingHandler, mock(EventPublisher.class),
+                conflator, stateSnapshotLoader, mock(TradeStore.class));
+
+        replayer.apply(new DeleteOrderRq(1, "ABC", Side.BUY, 1));
+        replayer.apply(new ChangeMatchingStateRq("ABC", MatchingState.AUCTION));
+
+        verify(failingHandler).handleChangeMatchingState(any());
+        verify(conflator, times(2)).endOfBatch();
+    }
+}
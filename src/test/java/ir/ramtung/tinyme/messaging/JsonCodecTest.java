@@ -0,0 +1,114 @@
+package ir.ramtung.tinyme.messaging;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.codec.HandWrittenJsonMessageConverter;
+import ir.ramtung.tinyme.messaging.codec.JsonCodec;
+import ir.ramtung.tinyme.messaging.codec.JsonReader;
+import ir.ramtung.tinyme.messaging.codec.JsonWriter;
+import ir.ramtung.tinyme.messaging.event.*;
+import ir.ramtung.tinyme.messaging.request.*;
+import jakarta.jms.TextMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class JsonCodecTest {
+    private final ObjectMapper jackson = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final JsonWriter writer = new JsonWriter(16);
+
+    private List<Object> messages() {
+        LocalDateTime full = LocalDateTime.of(2024, 3, 5, 10, 15, 30, 123_456_789);
+        LocalDateTime minutes = LocalDateTime.of(2024, 3, 5, 10, 15);
+        LocalDateTime millis = LocalDateTime.of(1999, 12, 31, 23, 59, 0, 5_000_000);
+        String awkward = "q\"uo\\te/\b\t\n\f\r\u0001\u001fé€😀";
+        List<Object> messages = new ArrayList<>(List.of(
+                EnterOrderRq.createNewOrderRq(1, "ABC", 10, full, Side.BUY, 300, 15450, 2, 3, 50, 20, 15000),
+                EnterOrderRq.createUpdateOrderRq(Long.MAX_VALUE, null, -1, null, null, Integer.MIN_VALUE, 0, Long.MIN_VALUE, 3, 0, 0),
+                new DeleteOrderRq(3, "ABC", Side.SELL, 10, minutes),
+                new ChangeMatchingStateRq("ABC", MatchingState.AUCTION, millis),
+                new ChangeMatchingStateRq(null, null, null),
+                new BulkChangeMatchingStateRq(List.of("ABC", awkward), MatchingState.CONTINUOUS, full),
+                new BulkChangeMatchingStateRq(null, MatchingState.CONTINUOUS, null),
+                new BatchOrderRq(List.of(
+                        BatchOrderLeg.enter(EnterOrderRq.createNewOrderRq(1, "ABC", 10, full, Side.BUY, 300, 15450, 2, 3, 0, 0)),
+                        BatchOrderLeg.delete(new DeleteOrderRq(2, "ABC", Side.BUY, 10, minutes)),
+                        new BatchOrderLeg())),
+                new OrderAcceptedEvent(full, 1, 10),
+                new OrderUpdatedEvent(minutes, 2, 10),
+                new OrderDeletedEvent(millis, 3, 10),
+                new OrderActivatedEvent(null, 4, 11),
+                new OrderRejectedEvent(full, 5, 12, List.of(Message.UNKNOWN_SECURITY_ISIN, awkward)),
+                new OrderRejectedEvent(full, 5, 12, null),
+                new OrderExecutedEvent(full, 6, 13, List.of(new TradeDTO("ABC", 100, 5, 13, 7), new TradeDTO(null, 101, 6, 13, 8))),
+                new OrderExecutedEvent(full, 6, 13, List.of()),
+                new OpeningPriceEvent(full, "ABC", 15450, 300),
+                new SecurityStateChangedEvent(full, "ABC", MatchingState.AUCTION),
+                new TradeEvent(full, "ABC", 15450, 300, 10, 11)
+        ));
+        messages.add(new EventBatch(millis, List.of(
+                new OrderAcceptedEvent(full, 1, 10),
+                new OrderExecutedEvent(full, 1, 10, List.of(new TradeDTO("ABC", 100, 5, 10, 7))),
+                new TradeEvent(minutes, "ABC", 100, 5, 10, 7))));
+        messages.add(new EventBatch(millis, List.of()));
+        return messages;
+    }
+
+    @Test
+    void output_matches_jackson_byte_for_byte() throws Exception {
+        for (Object message : messages()) {
+            JsonCodec.write(message, writer.reset());
+            assertThat(writer.toString()).isEqualTo(jackson.writeValueAsString(message));
+        }
+    }
+
+    @Test
+    void reads_what_jackson_writes() throws Exception {
+        for (Object message : messages()) {
+            Object read = JsonCodec.read(message.getClass(), new JsonReader().reset(jackson.writeValueAsString(message)));
+            assertThat(read).isEqualTo(message);
+            if (message instanceof Event event)
+                assertThat(((Event) read).getTime()).isEqualTo(event.getTime());
+        }
+    }
+
+    @Test
+    void reader_tolerates_whitespace_unknown_fields_and_iso_dates() {
+        String text = " { \"side\" : \"BUY\", \"extra\" : {\"a\": [1, \"x\", null]}, \"entryTime\": \"2024-03-05T10:15:30\",\n"
+                + " \"securityIsin\": \"A\\u0042C\", \"orderId\": 7, \"requestId\": null } ";
+
+        DeleteOrderRq rq = (DeleteOrderRq) JsonCodec.read(DeleteOrderRq.class, new JsonReader().reset(text));
+
+        assertThat(rq).isEqualTo(new DeleteOrderRq(0, "ABC", Side.BUY, 7, LocalDateTime.of(2024, 3, 5, 10, 15, 30)));
+    }
+
+    @Test
+    void event_time_may_follow_the_other_fields() {
+        String text = "{\"requestId\": 1, \"orderId\": 10, \"time\": \"2024-03-05T10:15:30\"}";
+
+        Event event = (Event) JsonCodec.read(OrderAcceptedEvent.class, new JsonReader().reset(text));
+
+        assertThat(event).isEqualTo(new OrderAcceptedEvent(1, 10));
+        assertThat(event.getTime()).isEqualTo(LocalDateTime.of(2024, 3, 5, 10, 15, 30));
+    }
+
+    @Test
+    void converter_falls_back_to_jackson_for_unparseable_messages() throws Exception {
+        MessageConverter fallback = mock(MessageConverter.class);
+        TextMessage message = mock(TextMessage.class);
+        when(message.getStringProperty("_type")).thenReturn(DeleteOrderRq.class.getName());
+        when(message.getText()).thenReturn("{\"requestId\": 1.5}");
+        HandWrittenJsonMessageConverter converter = new HandWrittenJsonMessageConverter(fallback, "_type");
+
+        converter.fromMessage(message);
+
+        verify(fallback).fromMessage(message);
+    }
+}
@@ -0,0 +1,93 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.transport.MappedRing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedRingTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void messages_survive_many_wrap_arounds_in_order() throws Exception {
+        MappedRing writer = MappedRing.create(directory.resolve("r.ring"), 1024, true);
+        MappedRing.Reader reader = MappedRing.open(directory.resolve("r.ring")).gatingReader();
+        List<Object> written = new ArrayList<>();
+        List<Object> read = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Object message = i % 2 == 0
+                    ? EnterOrderRq.createNewOrderRq(i, "ABC", i, LocalDateTime.now(), Side.BUY, 10, 100, 1, 1, 0, 0)
+                    : new OrderRejectedEvent(i, i, List.of("rejected " + i));
+            assertThat(writer.offer(message)).isTrue();
+            written.add(message);
+            reader.poll(read::add, Integer.MAX_VALUE);
+        }
+
+        assertThat(read).isEqualTo(written);
+    }
+
+    @Test
+    void writer_of_a_gated_ring_stops_at_the_slowest_position_and_resumes_after_reading() throws Exception {
+        MappedRing ring = MappedRing.create(directory.resolve("r.ring"), 1024, true);
+        MappedRing.Reader reader = ring.gatingReader();
+        int offered = 0;
+        while (ring.offer(new OrderAcceptedEvent(offered, offered)))
+            offered++;
+
+        List<Object> read = new ArrayList<>();
+        assertThat(reader.poll(read::add, Integer.MAX_VALUE)).isEqualTo(offered);
+        assertThat(read.get(offered - 1)).isEqualTo(new OrderAcceptedEvent(offered - 1, offered - 1));
+        assertThat(ring.offer(new OrderAcceptedEvent(offered, offered))).isTrue();
+    }
+
+    @Test
+    void lagging_reader_of_an_ungated_ring_is_told_it_was_overrun() throws Exception {
+        MappedRing ring = MappedRing.create(directory.resolve("r.ring"), 1024, false);
+        MappedRing.Reader reader = ring.tailingReader();
+        for (int i = 0; i < 200; i++)
+            assertThat(ring.offer(new OrderAcceptedEvent(i, i))).isTrue();
+
+        assertThatThrownBy(() -> reader.poll(message -> {}, Integer.MAX_VALUE)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void reader_within_reach_of_a_wrapping_write_is_told_it_was_overrun() throws Exception {
+        int capacity = 1024;
+        int maxRecordLength = capacity / 8;
+        MappedRing ring = MappedRing.create(directory.resolve("r.ring"), capacity, false);
+        MappedRing.Reader lagging = ring.tailingReader();
+        MappedRing.Reader tailing = ring.tailingReader();
+        for (int i = 0; tailing.position() <= capacity - 2 * maxRecordLength; i++) {
+            assertThat(ring.offer(new OrderAcceptedEvent(i, i))).isTrue();
+            tailing.poll(message -> {}, Integer.MAX_VALUE);
+        }
+        // the next write may pad up to the end of the ring and wrap onto the lagging reader's record
+        assertThat(tailing.position()).isLessThanOrEqualTo(capacity - maxRecordLength);
+
+        assertThatThrownBy(() -> lagging.poll(message -> {}, 1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void reopened_ring_continues_after_the_last_written_message() throws Exception {
+        MappedRing ring = MappedRing.create(directory.resolve("r.ring"), 1024, true);
+        ring.offer(new OrderAcceptedEvent(1, 1));
+        MappedRing reopened = MappedRing.open(directory.resolve("r.ring"));
+        reopened.offer(new OrderAcceptedEvent(2, 2));
+
+        List<Object> read = new ArrayList<>();
+        reopened.gatingReader().poll(read::add, Integer.MAX_VALUE);
+        assertThat(read).containsExactly(new OrderAcceptedEvent(1, 1), new OrderAcceptedEvent(2, 2));
+    }
+}
@@ -0,0 +1,106 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.config.MultiNodeHarness;
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderRejectedEvent;
+import ir.ramtung.tinyme.messaging.event.SecurityStateChangedEvent;
+import ir.ramtung.tinyme.messaging.request.BulkChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PartitionedNodesTest {
+    private static MultiNodeHarness harness;
+
+    @BeforeAll
+    static void startNodes() throws Exception {
+        harness = new MultiNodeHarness(30, Map.of("P1", List.of("AAA"), "P2", List.of("BBB")));
+        seed(harness.node("P1"), "AAA");
+        seed(harness.node("P2"), "BBB");
+    }
+
+    private static void seed(ConfigurableApplicationContext node, String isin) {
+        Security security = Security.builder().isin(isin).build();
+        node.getBean(SecurityRepository.class).addSecurity(security);
+        node.getBean(BrokerRepository.class).addBroker(Broker.builder().brokerId(1).credit(1_000_000).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 1_000);
+        node.getBean(ShareholderRepository.class).addShareholder(shareholder);
+    }
+
+    @AfterAll
+    static void stopNodes() throws Exception {
+        harness.close();
+    }
+
+    private List<Object> receive(int count) {
+        List<Object> responses = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            responses.add(harness.receiveResponse());
+        return responses;
+    }
+
+    @Test
+    void requests_are_handled_by_the_node_owning_the_security() {
+        harness.send(EnterOrderRq.createNewOrderRq(1, "AAA", 10, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0));
+        harness.send(EnterOrderRq.createNewOrderRq(2, "BBB", 20, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0));
+
+        assertThat(receive(2)).containsExactlyInAnyOrder(new OrderAcceptedEvent(1, 10), new OrderAcceptedEvent(2, 20));
+        assertThat(harness.node("P1").getBean(SecurityRepository.class).findSecurityByIsin("AAA").getOrderBook().findByOrderId(Side.SELL, 10)).isNotNull();
+        assertThat(harness.node("P2").getBean(SecurityRepository.class).findSecurityByIsin("BBB").getOrderBook().findByOrderId(Side.SELL, 20)).isNotNull();
+    }
+
+    @Test
+    void misrouted_request_is_rejected_by_a_node_not_owning_the_security() {
+        harness.gateway().convertAndSend(PartitionRouter.queueOf(MultiNodeHarness.REQUEST_QUEUE, "P2"),
+                EnterOrderRq.createNewOrderRq(3, "AAA", 30, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0));
+
+        assertThat(receive(1)).containsExactly(new OrderRejectedEvent(3, 30, List.of(Message.UNKNOWN_SECURITY_ISIN)));
+    }
+
+    @Test
+    void market_wide_state_change_reaches_every_node() {
+        harness.send(BulkChangeMatchingStateRq.forAllSecurities(MatchingState.AUCTION));
+
+        assertThat(receive(2)).containsExactlyInAnyOrder(
+                new SecurityStateChangedEvent("AAA", MatchingState.AUCTION),
+                new SecurityStateChangedEvent("BBB", MatchingState.AUCTION));
+        harness.send(BulkChangeMatchingStateRq.forAllSecurities(MatchingState.CONTINUOUS));
+        receive(2);
+    }
+
+    @Test
+    void unknown_security_cannot_be_routed() {
+        assertThatThrownBy(() -> harness.router().destinationOf(EnterOrderRq.createNewOrderRq(4, "CCC", 40, LocalDateTime.now(), Side.SELL, 1, 1, 1, 1, 0, 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void partition_keeps_its_own_persistence_files_and_credit_share() {
+        IsinPartition partition = new IsinPartition("P1", new String[]{"AAA", " BBB"}, 0.25);
+        assertThat(partition.owns("BBB")).isTrue();
+        assertThat(partition.owns("CCC")).isFalse();
+        assertThat(partition.fileNameFor("broker.csv")).isEqualTo("broker.P1.csv");
+        assertThat(partition.creditShareOf(1_000)).isEqualTo(250);
+        assertThat(new IsinPartition("", new String[0], 1).owns("CCC")).isTrue();
+    }
+}
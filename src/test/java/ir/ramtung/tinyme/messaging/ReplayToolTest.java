@@ -0,0 +1,117 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.codec.JsonCodec;
+import ir.ramtung.tinyme.messaging.codec.JsonWriter;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.journal.SyncPolicy;
+import ir.ramtung.tinyme.messaging.replay.ReplayReport;
+import ir.ramtung.tinyme.messaging.replay.ReplayTool;
+import ir.ramtung.tinyme.messaging.replay.RequestLog;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.IsinPartition;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import ir.ramtung.tinyme.repository.persistence.BinaryStateFile;
+import ir.ramtung.tinyme.repository.persistence.CsvStateFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReplayToolTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 2, 23, 11, 0);
+    private final List<Object> requests = List.of(
+            EnterOrderRq.createNewOrderRq(1, "SEC1", 10, TIME, Side.SELL, 100, 15000, 2, 1, 0, 0),
+            EnterOrderRq.createNewOrderRq(2, "SEC1", 11, TIME, Side.BUY, 60, 15100, 1, 2, 0, 0),
+            EnterOrderRq.createNewOrderRq(3, "SEC1", 12, TIME, Side.BUY, 1_000_000, 15100, 1, 2, 0, 0),
+            new DeleteOrderRq(4, "SEC1", Side.SELL, 10),
+            new ChangeMatchingStateRq("SEC2", MatchingState.AUCTION));
+    @TempDir
+    Path directory;
+    private Path state;
+
+    @BeforeEach
+    void setup() throws IOException {
+        state = Files.createDirectory(directory.resolve("state"));
+        Files.write(state.resolve(CsvStateFiles.BROKER_FILE), List.of("brokerId,name,credit", "1,broker1,100000000", "2,broker2,5000"));
+        Files.write(state.resolve(CsvStateFiles.SHAREHOLDER_FILE), List.of("shareholderId,name", "1,shareholder1", "2,shareholder2"));
+        Files.write(state.resolve(CsvStateFiles.SECURITY_FILE), List.of("isin,tickSize,lotSize", "SEC1,1,1", "SEC2,1,1"));
+        Files.write(state.resolve(CsvStateFiles.POSITION_FILE), List.of("shareholderId,isin,positions", "1,SEC1,1000", "2,SEC1,0"));
+        Files.write(state.resolve(CsvStateFiles.ORDER_BOOK_FILE), List.of(
+                "orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity,minimumExecutionQuantity",
+                "1,SEC2,SELL,50,3000,2,1,2024-02-23T10:59:57.970,0,0,0"));
+    }
+
+    private Path jsonLines() throws IOException {
+        JsonWriter writer = new JsonWriter(256);
+        List<String> lines = new ArrayList<>();
+        for (Object request : requests) {
+            JsonCodec.write(request, writer.reset());
+            lines.add("{\"_type\":\"" + request.getClass().getSimpleName() + "\"," + writer.toString().substring(1));
+            lines.add("");
+        }
+        return Files.write(directory.resolve("requests.jsonl"), lines);
+    }
+
+    @Test
+    void json_lines_are_read_as_the_requests_written() throws IOException {
+        List<Object> read = new ArrayList<>();
+        assertThat(RequestLog.read(jsonLines(), read::add)).isEqualTo(requests.size());
+        assertThat(read).isEqualTo(requests);
+
+        Path unknown = Files.writeString(directory.resolve("unknown.jsonl"), "{\"_type\":\"OrderAcceptedEvent\",\"requestId\":1}\n");
+        assertThatThrownBy(() -> RequestLog.read(unknown, request -> {})).isInstanceOf(IOException.class).hasMessageContaining(":1:");
+    }
+
+    @Test
+    void a_replay_reports_the_events_trades_and_resulting_books() throws Exception {
+        Path output = directory.resolve("after.bin");
+
+        ReplayReport report = ReplayTool.run(jsonLines(), state, output);
+
+        assertThat(report.requests()).isEqualTo(5);
+        assertThat(report.trades()).isEqualTo(1);
+        assertThat(report.tradedValue()).isEqualTo(60L * 15000);
+        assertThat(report.events()).containsEntry("OrderAcceptedEvent", 2L).containsEntry("OrderExecutedEvent", 1L)
+                .containsEntry("OrderRejectedEvent", 1L).containsEntry("OrderDeletedEvent", 1L)
+                .containsEntry("SecurityStateChangedEvent", 1L);
+        assertThat(report.securities()).containsExactly(
+                new ReplayReport.SecurityState("SEC1", MatchingState.CONTINUOUS, 15000, 0, 0, 0, 0, 0),
+                new ReplayReport.SecurityState("SEC2", MatchingState.AUCTION, 0, 0, 3000, 0, 1, 0));
+        assertThat(report.engineNanos()).isPositive().isLessThanOrEqualTo(report.elapsedNanos());
+
+        BrokerRepository brokers = new BrokerRepository();
+        new BinaryStateFile(brokers, new ShareholderRepository(), new SecurityRepository())
+                .read(output, new IsinPartition("", new String[0], 1.0), false);
+        assertThat(brokers.findBrokerById(2).getCredit()).isEqualTo(5000 + 60L * 15000);
+    }
+
+    @Test
+    void a_journal_replays_like_the_same_requests_as_json_lines() throws Exception {
+        Path journalDirectory = directory.resolve("journal");
+        RequestJournal journal = new RequestJournal(true, journalDirectory.toString(), 1 << 20, SyncPolicy.NONE, 0);
+        requests.forEach(journal::append);
+        journal.close();
+
+        ReplayReport fromJournal = ReplayTool.run(journalDirectory, state, null);
+        ReplayReport fromJson = ReplayTool.run(jsonLines(), state, null);
+
+        assertThat(fromJournal.requests()).isEqualTo(5);
+        assertThat(fromJournal.events()).isEqualTo(fromJson.events());
+        assertThat(fromJournal.securities()).isEqualTo(fromJson.securities());
+    }
+}
@@ -0,0 +1,162 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.TinyMeApplication;
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderExecutedEvent;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.replication.ReplicationFollower;
+import ir.ramtung.tinyme.messaging.replication.ReplicationLeader;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jms.core.JmsTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A leader and a hot-standby follower in one JVM, sharing an embedded broker.
+class ReplicatedNodesTest {
+    private static final String BROKER_URL = "vm://40";
+    private static final String REQUEST_QUEUE = "RQ";
+    private static final String RESPONSE_QUEUE = "RS";
+
+    private EmbeddedActiveMQ broker;
+    private ConfigurableApplicationContext leader;
+    private ConfigurableApplicationContext follower;
+    private JmsTemplate gateway;
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void startNodes() throws Exception {
+        broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("in-vm", BROKER_URL));
+        broker.start();
+        leader = start("leader", "--replication.role=LEADER", "--replication.port=0");
+        follower = start("follower", "--replication.role=FOLLOWER",
+                "--replication.port=" + leader.getBean(ReplicationLeader.class).port(),
+                "--replication.retryMillis=50",
+                "--replication.failoverTimeoutMillis=500");
+        seed(leader);
+        seed(follower);
+        gateway = new JmsTemplate(new ActiveMQConnectionFactory(BROKER_URL));
+        gateway.setMessageConverter(new MessagingConfig().jacksonJmsMessageConverter());
+        gateway.setReceiveTimeout(5000);
+    }
+
+    private ConfigurableApplicationContext start(String node, String... replication) {
+        String[] args = {
+                "--spring.artemis.broker-url=" + BROKER_URL,
+                "--requestQueue=" + REQUEST_QUEUE,
+                "--responseQueue=" + RESPONSE_QUEUE,
+                "--journal.enabled=true",
+                "--journal.directory=" + directory.resolve(node).resolve("journal"),
+                "--persistence.format=CSV",
+                "--persistence.incremental.enabled=false",
+                "--snapshot.enabled=false",
+                "--audit.enabled=false",
+                "--trades.enabled=false"};
+        String[] all = new String[args.length + replication.length];
+        System.arraycopy(args, 0, all, 0, args.length);
+        System.arraycopy(replication, 0, all, args.length, replication.length);
+        return new SpringApplicationBuilder(TinyMeApplication.class).web(WebApplicationType.NONE).run(all);
+    }
+
+    private static void seed(ConfigurableApplicationContext node) {
+        Security security = Security.builder().isin("RPL").build();
+        node.getBean(SecurityRepository.class).addSecurity(security);
+        node.getBean(BrokerRepository.class).addBroker(Broker.builder().brokerId(901).credit(1_000_000).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(901).build();
+        shareholder.incPosition(security, 1_000);
+        node.getBean(ShareholderRepository.class).addShareholder(shareholder);
+    }
+
+    @AfterEach
+    void stopNodes() throws Exception {
+        if (follower != null)
+            follower.close();
+        if (leader != null)
+            leader.close();
+        broker.stop();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Security security(ConfigurableApplicationContext node) {
+        return node.getBean(SecurityRepository.class).findSecurityByIsin("RPL");
+    }
+
+    private void sendOrders(long firstRequestId) {
+        gateway.convertAndSend(REQUEST_QUEUE, EnterOrderRq.createNewOrderRq(firstRequestId, "RPL", firstRequestId, LocalDateTime.now(), Side.SELL, 300, 1000, 901, 901, 0, 0));
+        gateway.convertAndSend(REQUEST_QUEUE, EnterOrderRq.createNewOrderRq(firstRequestId + 1, "RPL", firstRequestId + 1, LocalDateTime.now(), Side.BUY, 100, 1000, 901, 901, 0, 0));
+    }
+
+    @Test
+    void follower_applies_the_leaders_requests_without_publishing_and_reports_its_lag() throws Exception {
+        sendOrders(1);
+
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isEqualTo(new OrderAcceptedEvent(1, 1));
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isEqualTo(new OrderAcceptedEvent(2, 2));
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isInstanceOf(OrderExecutedEvent.class);
+        long leaderSequence = leader.getBean(RequestJournal.class).lastSequence();
+        ReplicationFollower replication = follower.getBean(ReplicationFollower.class);
+        await(() -> replication.client().appliedSequence() == leaderSequence && replication.client().lagRecords() == 0);
+        await(() -> leader.getBean(ReplicationLeader.class).followers().stream().allMatch(status -> status.lagRecords() == 0));
+
+        assertThat(follower.getBean(RequestJournal.class).lastSequence()).isEqualTo(leaderSequence);
+        assertThat(security(follower).getOrderBook().findByOrderId(Side.SELL, 1).getQuantity()).isEqualTo(200);
+        assertThat(follower.getBean(BrokerRepository.class).findBrokerById(901).getCredit())
+                .isEqualTo(leader.getBean(BrokerRepository.class).findBrokerById(901).getCredit());
+        assertThat(leader.getBean(ReplicationLeader.class).followers()).hasSize(1);
+        gateway.setReceiveTimeout(200);
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isNull();
+    }
+
+    @Test
+    void follower_takes_over_when_the_leader_goes_away() throws Exception {
+        sendOrders(1);
+        for (int i = 0; i < 3; i++)
+            gateway.receiveAndConvert(RESPONSE_QUEUE);
+        long leaderSequence = leader.getBean(RequestJournal.class).lastSequence();
+        ReplicationFollower replication = follower.getBean(ReplicationFollower.class);
+        await(() -> replication.client().appliedSequence() == leaderSequence);
+
+        leader.close();
+        leader = null;
+        await(() -> !replication.isFollowing());
+        sendOrders(3);
+
+        assertThat(replication.hasFailed()).isFalse();
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isEqualTo(new OrderAcceptedEvent(3, 3));
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isEqualTo(new OrderAcceptedEvent(4, 4));
+        assertThat(gateway.receiveAndConvert(RESPONSE_QUEUE)).isInstanceOf(OrderExecutedEvent.class);
+        assertThat(security(follower).getOrderBook().findByOrderId(Side.SELL, 1).getQuantity()).isEqualTo(100);
+    }
+}
@@ -0,0 +1,158 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.journal.JournalRecord;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.journal.SyncPolicy;
+import ir.ramtung.tinyme.messaging.replication.ReplicationClient;
+import ir.ramtung.tinyme.messaging.replication.ReplicationException;
+import ir.ramtung.tinyme.messaging.replication.ReplicationLeader;
+import ir.ramtung.tinyme.messaging.replication.ReplicationRole;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReplicationStreamTest {
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    @TempDir
+    Path directory;
+    private RequestJournal journal;
+    private ReplicationLeader leader;
+    private ReplicationClient client;
+
+    private void startLeader(int backlogRecords) throws Exception {
+        leader = new ReplicationLeader(ReplicationRole.LEADER, "127.0.0.1", 0, backlogRecords, 20, journal);
+        client = new ReplicationClient("127.0.0.1", leader.port(), 0, 0);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        if (client != null)
+            client.close();
+        if (leader != null)
+            leader.close();
+        journal.close();
+    }
+
+    private static Object request(int i) {
+        return i % 2 == 0
+                ? EnterOrderRq.createNewOrderRq(i, "ABC", i, ENTRY_TIME, Side.BUY, 10, 100, 1, 1, 0, 0)
+                : new DeleteOrderRq(i, "ABC", Side.BUY, i - 1, ENTRY_TIME);
+    }
+
+    private void handle(int i) {
+        Object request = request(i);
+        leader.replicate(journal.append(request), request);
+    }
+
+    private CompletableFuture<Void> follow(long from, List<JournalRecord> applied) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                client.follow(from, (sequence, request) -> applied.add(new JournalRecord(sequence, request)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void await(List<?> applied, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (applied.size() < size && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertThat(applied).hasSize(size);
+    }
+
+    @Test
+    void live_requests_reach_the_follower_in_sequence_and_lag_drops_to_zero() throws Exception {
+        journal = new RequestJournal(true, directory.toString(), 4096, SyncPolicy.NONE, 1);
+        startLeader(16);
+        List<JournalRecord> applied = new CopyOnWriteArrayList<>();
+        follow(0, applied);
+        Thread.sleep(50);
+        for (int i = 0; i < 10; i++)
+            handle(i);
+
+        await(applied, 10);
+        assertThat(applied).isEqualTo(IntStream.range(0, 10).mapToObj(i -> new JournalRecord(i, request(i))).toList());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while ((client.lagRecords() != 0 || leader.followers().get(0).ackedSequence() != 9) && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertThat(client.leaderSequence()).isEqualTo(9);
+        assertThat(client.lagRecords()).isZero();
+        assertThat(leader.followers()).singleElement().satisfies(status -> assertThat(status.lagRecords()).isZero());
+    }
+
+    @Test
+    void a_follower_behind_the_backlog_catches_up_from_the_journal() throws Exception {
+        journal = new RequestJournal(true, directory.toString(), 256, SyncPolicy.NONE, 1);
+        startLeader(3);
+        for (int i = 0; i < 20; i++)
+            handle(i);
+        List<JournalRecord> applied = new CopyOnWriteArrayList<>();
+        follow(0, applied);
+        await(applied, 20);
+        handle(20);
+
+        await(applied, 21);
+        assertThat(applied).isEqualTo(IntStream.range(0, 21).mapToObj(i -> new JournalRecord(i, request(i))).toList());
+    }
+
+    @Test
+    void a_follower_needing_requests_the_journal_no_longer_has_is_refused() throws Exception {
+        journal = new RequestJournal(true, directory.toString(), 4096, SyncPolicy.NONE, 1);
+        for (int i = 0; i < 5; i++)
+            journal.append(request(i));
+        journal.checkpoint();
+        startLeader(2);
+        for (int i = 5; i < 10; i++)
+            handle(i);
+
+        CompletableFuture<Void> following = follow(0, new CopyOnWriteArrayList<>());
+        assertThatThrownBy(() -> following.get(10, TimeUnit.SECONDS))
+                .hasRootCauseInstanceOf(ReplicationException.class)
+                .hasRootCauseMessage("Sequence 0 is no longer in the leader's journal");
+    }
+
+    @Test
+    void a_leader_that_goes_silent_is_given_up_on_after_the_read_timeout() throws Exception {
+        journal = new RequestJournal(true, directory.toString(), 4096, SyncPolicy.NONE, 1);
+        try (ServerSocket silentLeader = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            client = new ReplicationClient("127.0.0.1", silentLeader.getLocalPort(), 200, 0);
+
+            CompletableFuture<Void> following = follow(0, new CopyOnWriteArrayList<>());
+            try (Socket accepted = silentLeader.accept()) {
+                assertThatThrownBy(() -> following.get(10, TimeUnit.SECONDS))
+                        .hasRootCauseInstanceOf(SocketTimeoutException.class);
+            }
+        }
+    }
+
+    @Test
+    void a_follower_ahead_of_the_leader_is_refused() throws Exception {
+        journal = new RequestJournal(true, directory.toString(), 4096, SyncPolicy.NONE, 1);
+        startLeader(4);
+        handle(0);
+
+        CompletableFuture<Void> following = follow(5, new CopyOnWriteArrayList<>());
+        assertThatThrownBy(() -> following.get(10, TimeUnit.SECONDS))
+                .hasRootCauseInstanceOf(ReplicationException.class);
+    }
+}
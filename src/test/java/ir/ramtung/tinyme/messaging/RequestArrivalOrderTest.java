@@ -0,0 +1,77 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.config.MultiNodeHarness;
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import ir.ramtung.tinyme.domain.entity.Shareholder;
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.codec.BinaryMessageConverter;
+import ir.ramtung.tinyme.messaging.event.OpeningPriceEvent;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderDeletedEvent;
+import ir.ramtung.tinyme.messaging.event.SecurityStateChangedEvent;
+import ir.ramtung.tinyme.messaging.request.ChangeMatchingStateRq;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestArrivalOrderTest {
+    private static MultiNodeHarness harness;
+    private static final String QUEUE = PartitionRouter.queueOf(MultiNodeHarness.REQUEST_QUEUE, "P1");
+
+    @BeforeAll
+    static void startNode() throws Exception {
+        harness = new MultiNodeHarness(31, Map.of("P1", List.of("AAA")));
+        ConfigurableApplicationContext node = harness.node("P1");
+        Security security = Security.builder().isin("AAA").build();
+        node.getBean(SecurityRepository.class).addSecurity(security);
+        node.getBean(BrokerRepository.class).addBroker(Broker.builder().brokerId(1).credit(1_000_000).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 1_000);
+        node.getBean(ShareholderRepository.class).addShareholder(shareholder);
+    }
+
+    @AfterAll
+    static void stopNode() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    void mixed_request_types_and_codecs_are_handled_in_arrival_order() {
+        BinaryMessageConverter binary = new BinaryMessageConverter();
+        harness.gateway().convertAndSend(QUEUE, EnterOrderRq.createNewOrderRq(1, "AAA", 10, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0));
+        harness.gateway().send(QUEUE, session -> binary.toMessage(new DeleteOrderRq(2, "AAA", Side.SELL, 10), session));
+        harness.gateway().send(QUEUE, session -> {
+            var unknown = session.createTextMessage("{}");
+            unknown.setStringProperty("_type", "com.example.UnknownRq");
+            return unknown;
+        });
+        harness.gateway().convertAndSend(QUEUE, new ChangeMatchingStateRq("AAA", MatchingState.AUCTION));
+        harness.gateway().send(QUEUE, session -> binary.toMessage(EnterOrderRq.createNewOrderRq(4, "AAA", 11, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0), session));
+
+        List<Object> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            responses.add(harness.receiveResponse());
+
+        assertThat(responses).containsExactly(
+                new OrderAcceptedEvent(1, 10),
+                new OrderDeletedEvent(2, 10),
+                new SecurityStateChangedEvent("AAA", MatchingState.AUCTION),
+                new OrderAcceptedEvent(4, 11),
+                new OpeningPriceEvent("AAA", 0, 0));
+    }
+}
@@ -0,0 +1,173 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.Side;
+import ir.ramtung.tinyme.messaging.journal.JournalRecord;
+import ir.ramtung.tinyme.messaging.journal.RequestJournal;
+import ir.ramtung.tinyme.messaging.journal.RequestJournalReader;
+import ir.ramtung.tinyme.messaging.journal.SyncPolicy;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestJournalTest {
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final LocalDateTime ENTRY_TIME = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    @TempDir
+    Path directory;
+
+    private RequestJournal open(SyncPolicy syncPolicy) throws Exception {
+        return new RequestJournal(true, directory.toString(), 1024, syncPolicy, 1);
+    }
+
+    private static Object request(int i) {
+        return i % 2 == 0
+                ? EnterOrderRq.createNewOrderRq(i, "ABC", i, ENTRY_TIME, Side.BUY, 10, 100, 1, 1, 0, 0)
+                : new DeleteOrderRq(i, "ABC", Side.BUY, i - 1, ENTRY_TIME);
+    }
+
+    private List<JournalRecord> readBack() throws Exception {
+        List<JournalRecord> records = new ArrayList<>();
+        RequestJournalReader.read(directory, records::add);
+        return records;
+    }
+
+    @Test
+    void requests_are_read_back_in_sequence_across_segments_and_restarts() throws Exception {
+        RequestJournal journal = open(SyncPolicy.GROUP);
+        for (int i = 0; i < 30; i++)
+            assertThat(journal.append(request(i))).isEqualTo(i);
+        journal.close();
+        RequestJournal reopened = open(SyncPolicy.EVERY_REQUEST);
+        for (int i = 30; i < 40; i++)
+            assertThat(reopened.append(request(i))).isEqualTo(i);
+        assertThat(reopened.durableSequence()).isEqualTo(39);
+        reopened.close();
+
+        List<JournalRecord> records = readBack();
+        assertThat(RequestJournalReader.segmentsIn(directory)).hasSizeGreaterThan(2);
+        assertThat(records).hasSize(40);
+        for (int i = 0; i < 40; i++)
+            assertThat(records.get(i)).isEqualTo(new JournalRecord(i, request(i)));
+    }
+
+    @Test
+    void group_commit_eventually_makes_appended_requests_durable() throws Exception {
+        RequestJournal journal = open(SyncPolicy.GROUP);
+        journal.append(request(0));
+        journal.append(request(1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.durableSequence() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertThat(journal.durableSequence()).isEqualTo(1);
+        journal.close();
+    }
+
+    @Test
+    void forcing_through_a_sequence_does_not_wait_for_the_group_commit() throws Exception {
+        RequestJournal journal = new RequestJournal(true, directory.toString(), 1024, SyncPolicy.GROUP, 60_000);
+        journal.append(request(0));
+        journal.append(request(1));
+        assertThat(journal.durableSequence()).isEqualTo(-1);
+
+        journal.forceThrough(1);
+
+        assertThat(journal.durableSequence()).isEqualTo(1);
+        journal.close();
+    }
+
+    @Test
+    void a_request_that_cannot_be_encoded_leaves_the_journal_readable() throws Exception {
+        RequestJournal journal = open(SyncPolicy.NONE);
+        journal.append(request(0));
+        Object unencodable = EnterOrderRq.createNewOrderRq(1, "ISIN-TOO-LONG-FOR-THE-WIRE", 1, ENTRY_TIME, Side.BUY, 10, 100, 1, 1, 0, 0);
+        assertThatThrownBy(() -> journal.append(unencodable)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(journal.append(request(1))).isEqualTo(1);
+        journal.close();
+
+        assertThat(readBack()).containsExactly(new JournalRecord(0, request(0)), new JournalRecord(1, request(1)));
+    }
+
+    @Test
+    void reading_stops_at_a_damaged_record_and_appending_resumes_after_the_last_good_one() throws Exception {
+        RequestJournal journal = open(SyncPolicy.NONE);
+        for (int i = 0; i < 3; i++)
+            journal.append(request(i));
+        journal.close();
+        try (FileChannel channel = FileChannel.open(RequestJournalReader.segmentsIn(directory).get(0), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            int third = SEGMENT_HEADER_SIZE;
+            for (int i = 0; i < 2; i++)
+                third += RECORD_HEADER_SIZE + segment.getInt(third);
+            segment.put(third + RECORD_HEADER_SIZE + 5, (byte) (segment.get(third + RECORD_HEADER_SIZE + 5) ^ 0x7F));
+        }
+
+        assertThat(readBack()).extracting(JournalRecord::sequence).containsExactly(0L, 1L);
+        RequestJournal reopened = open(SyncPolicy.NONE);
+        assertThat(reopened.append(request(7))).isEqualTo(2);
+        reopened.close();
+        assertThat(readBack()).extracting(JournalRecord::request).containsExactly(request(0), request(1), request(7));
+    }
+
+    @Test
+    void checkpoint_discards_the_journal_but_keeps_numbering() throws Exception {
+        RequestJournal journal = open(SyncPolicy.NONE);
+        journal.append(request(0));
+        journal.append(request(1));
+        journal.checkpoint();
+        assertThat(readBack()).isEmpty();
+        assertThat(journal.append(request(2))).isEqualTo(2);
+        journal.close();
+        assertThat(readBack()).extracting(JournalRecord::sequence).containsExactly(2L);
+    }
+
+    @Test
+    void truncation_deletes_only_segments_wholly_covered() throws Exception {
+        RequestJournal journal = open(SyncPolicy.NONE);
+        for (int i = 0; i < 40; i++)
+            journal.append(request(i));
+        List<Path> segments = RequestJournalReader.segmentsIn(directory);
+        assertThat(segments).hasSizeGreaterThan(2);
+
+        journal.truncateThrough(20);
+
+        List<JournalRecord> records = readBack();
+        assertThat(records.get(0).sequence()).isLessThanOrEqualTo(21);
+        assertThat(records.get(records.size() - 1).sequence()).isEqualTo(39);
+        assertThat(RequestJournalReader.segmentsIn(directory)).hasSizeLessThan(segments.size());
+        journal.close();
+    }
+
+    @Test
+    void checkpoint_through_a_sequence_survives_a_restart_and_keeps_later_requests() throws Exception {
+        RequestJournal journal = open(SyncPolicy.NONE);
+        for (int i = 0; i < 40; i++)
+            journal.append(request(i));
+
+        journal.checkpointThrough(25);
+        journal.checkpointThrough(10);
+        journal.close();
+
+        RequestJournal reopened = open(SyncPolicy.NONE);
+        assertThat(reopened.checkpointSequence()).isEqualTo(25);
+        assertThat(reopened.lastSequence()).isEqualTo(39);
+        List<JournalRecord> records = readBack();
+        assertThat(records.get(records.size() - 1).sequence()).isEqualTo(39);
+        assertThat(records).extracting(JournalRecord::sequence).contains(26L);
+        reopened.close();
+    }
+}
@@ -0,0 +1,82 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.event.Event;
+import ir.ramtung.tinyme.messaging.event.OrderAcceptedEvent;
+import ir.ramtung.tinyme.messaging.event.OrderDeletedEvent;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.transport.SharedMemoryGateway;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"transport.type=SHARED_MEMORY", "transport.sharedMemory.gateways=fix1,fix2", "transport.sharedMemory.ringSize=65536"})
+@DirtiesContext
+class SharedMemoryTransportTest {
+    private static final Path directory = temporaryDirectory();
+
+    @DynamicPropertySource
+    static void ringDirectory(DynamicPropertyRegistry registry) {
+        registry.add("transport.sharedMemory.directory", directory::toString);
+    }
+
+    private static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("tinyme-shm");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    SecurityRepository securityRepository;
+    @Autowired
+    BrokerRepository brokerRepository;
+    @Autowired
+    ShareholderRepository shareholderRepository;
+
+    @BeforeEach
+    void setup() {
+        securityRepository.clear();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        Security security = Security.builder().isin("ABC").build();
+        securityRepository.addSecurity(security);
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 100_000);
+        shareholderRepository.addShareholder(shareholder);
+        brokerRepository.addBroker(Broker.builder().brokerId(1).credit(1_000_000).build());
+    }
+
+    @Test
+    void every_gateway_sees_the_events_of_requests_from_all_gateways() throws IOException {
+        SharedMemoryGateway first = SharedMemoryGateway.connect(directory, "fix1");
+        SharedMemoryGateway second = SharedMemoryGateway.connect(directory, "fix2");
+
+        first.send(EnterOrderRq.createNewOrderRq(1, "ABC", 10, LocalDateTime.now(), Side.SELL, 100, 1000, 1, 1, 0, 0));
+        assertThat(first.receive(5, TimeUnit.SECONDS)).isEqualTo(new OrderAcceptedEvent(1, 10));
+        second.send(new DeleteOrderRq(2, "ABC", Side.SELL, 10));
+        assertThat(first.receive(5, TimeUnit.SECONDS)).isEqualTo(new OrderDeletedEvent(2, 10));
+
+        Event[] seenBySecond = {second.receive(5, TimeUnit.SECONDS), second.receive(5, TimeUnit.SECONDS)};
+        assertThat(seenBySecond).containsExactly(new OrderAcceptedEvent(1, 10), new OrderDeletedEvent(2, 10));
+        assertThat(securityRepository.findSecurityByIsin("ABC").getOrderBook().findByOrderId(Side.SELL, 10)).isNull();
+    }
+}
@@ -0,0 +1,125 @@
+package ir.ramtung.tinyme.messaging;
+
+import ir.ramtung.tinyme.TinyMeApplication;
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.DeleteOrderRq;
+import ir.ramtung.tinyme.messaging.request.EnterOrderRq;
+import ir.ramtung.tinyme.messaging.transport.SharedMemoryGateway;
+import ir.ramtung.tinyme.repository.BrokerRepository;
+import ir.ramtung.tinyme.repository.SecurityRepository;
+import ir.ramtung.tinyme.repository.ShareholderRepository;
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Round-trip latency of one request and its event through the engine, over Artemis on loopback TCP
+// and over the shared-memory rings. Run with: mvn test -Dtest=TransportLatencyBenchmark -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TransportLatencyBenchmark {
+    private static final int WARM_UP = 20_000;
+    private static final int MEASURED = 100_000;
+    private static final String BROKER_URL = "tcp://127.0.0.1:61629";
+
+    @TempDir
+    Path directory;
+
+    private static ConfigurableApplicationContext startEngine(String... arguments) {
+        ConfigurableApplicationContext engine = new SpringApplicationBuilder(TinyMeApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments);
+        Security security = Security.builder().isin("ABC").build();
+        engine.getBean(SecurityRepository.class).addSecurity(security);
+        engine.getBean(BrokerRepository.class).addBroker(Broker.builder().brokerId(1).credit(1_000_000).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(1).build();
+        shareholder.incPosition(security, 1_000_000);
+        engine.getBean(ShareholderRepository.class).addShareholder(shareholder);
+        return engine;
+    }
+
+    // Alternately enters and deletes one order, so the book stays empty and every request has one event.
+    private static Object request(int i) {
+        return i % 2 == 0
+                ? EnterOrderRq.createNewOrderRq(i, "ABC", i, LocalDateTime.now(), Side.SELL, 10, 1000, 1, 1, 0, 0)
+                : new DeleteOrderRq(i, "ABC", Side.SELL, i - 1);
+    }
+
+    private static void report(String transport, Function<Object, Object> roundTrip) {
+        for (int i = 0; i < WARM_UP; i++)
+            assertThat(roundTrip.apply(request(i))).isNotNull();
+        long[] nanos = new long[MEASURED];
+        for (int i = 0; i < MEASURED; i++) {
+            Object request = request(WARM_UP + i);
+            long start = System.nanoTime();
+            assertThat(roundTrip.apply(request)).isNotNull();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-14s p50 %8.1f us  p99 %8.1f us  p99.9 %8.1f us  max %8.1f us%n", transport,
+                nanos[MEASURED / 2] / 1000.0, nanos[MEASURED * 99 / 100] / 1000.0,
+                nanos[MEASURED * 999 / 1000] / 1000.0, nanos[MEASURED - 1] / 1000.0);
+    }
+
+    @Test
+    void artemis_on_loopback() throws Exception {
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("tcp", BROKER_URL));
+        broker.start();
+        ConfigurableApplicationContext engine = startEngine("--spring.artemis.broker-url=" + BROKER_URL);
+        MessageConverter converter = new MessagingConfig().jacksonJmsMessageConverter();
+        try (Connection connection = new ActiveMQConnectionFactory(BROKER_URL).createConnection()) {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createQueue("RQ"));
+            MessageConsumer consumer = session.createConsumer(session.createQueue("RS"));
+            report("artemis/tcp", request -> {
+                try {
+                    producer.send(converter.toMessage(request, session));
+                    return converter.fromMessage(consumer.receive(5000));
+                } catch (JMSException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            engine.close();
+            broker.stop();
+        }
+    }
+
+    @Test
+    void shared_memory_rings() throws Exception {
+        ConfigurableApplicationContext engine = startEngine("--transport.type=SHARED_MEMORY",
+                "--transport.sharedMemory.directory=" + directory, "--transport.sharedMemory.gateways=bench");
+        try {
+            SharedMemoryGateway gateway = SharedMemoryGateway.connect(directory, "bench");
+            report("shared-memory", request -> {
+                gateway.send(request);
+                return gateway.receive(5, TimeUnit.SECONDS);
+            });
+        } finally {
+            engine.close();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.persistence.BinaryStateFile;
+import ir.ramtung.tinyme.repository.persistence.BinaryStateStore;
+import ir.ramtung.tinyme.repository.persistence.CsvStateFiles;
+import ir.ramtung.tinyme.repository.persistence.PersistenceConverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryStateFileTest {
+    private final BrokerRepository brokerRepository = new BrokerRepository();
+    private final ShareholderRepository shareholderRepository = new ShareholderRepository();
+    private final SecurityRepository securityRepository = new SecurityRepository();
+    private final BinaryStateFile stateFile = new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository);
+    private final IsinPartition wholeMarket = new IsinPartition("", new String[0], 1.0);
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setup() {
+        Broker broker = Broker.builder().brokerId(1).name("Alpha").credit(123_456).build();
+        brokerRepository.addBroker(broker);
+        brokerRepository.addBroker(Broker.builder().brokerId(2).credit(-5).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(10).name("Shareholder’s name").build();
+        shareholderRepository.addShareholder(shareholder);
+        Security abc = Security.builder().isin("ABC").tickSize(5).lotSize(10).lastTradePrice(1000).build();
+        Security xyz = Security.builder().isin("XYZ").matchingState(MatchingState.AUCTION).build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(xyz);
+        shareholder.incPosition(abc, 700);
+        shareholder.incPosition(xyz, 30);
+        LocalDateTime time = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+        abc.getOrderBook().enqueue(new Order(1, abc, Side.BUY, 100, 990, broker, shareholder, time, 40));
+        abc.getOrderBook().enqueue(new Order(2, abc, Side.BUY, 50, 995, broker, shareholder, time, 0));
+        abc.getOrderBook().enqueue(new IcebergOrder(3, abc, Side.SELL, 500, 1010, broker, shareholder, time, 100, 0));
+        abc.getOrderBook().getFirst(Side.SELL).decreaseQuantity(30);
+        abc.getInactiveOrderBook().enqueue(new StopLimitOrder(4, abc, Side.BUY, 20, 1100, broker, shareholder, time, OrderStatus.NEW, 1050, 9));
+        xyz.getOrderBook().enqueue(new Order(5, xyz, Side.SELL, 10, 200, broker, shareholder, time, 0));
+    }
+
+    private String state() {
+        StringBuilder state = new StringBuilder();
+        for (Broker broker : brokerRepository.allBrokers())
+            state.append(broker.getBrokerId()).append(' ').append(broker.getName()).append(' ').append(broker.getCredit()).append('\n');
+        for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+            state.append(shareholder.getShareholderId()).append(' ').append(shareholder.getName()).append('\n');
+            for (Security security : securityRepository.allSecurities())
+                state.append("  ").append(security.getIsin()).append(' ').append(shareholder.getPositions().get(security)).append('\n');
+        }
+        for (Security security : securityRepository.allSecurities()) {
+            state.append(security.getIsin()).append(' ').append(security.getTickSize()).append(' ').append(security.getLotSize())
+                    .append(' ').append(security.getLastTradePrice()).append(' ').append(security.getMatchingState()).append('\n');
+            for (OrderBook book : new OrderBook[]{security.getOrderBook(), security.getInactiveOrderBook()})
+                for (Side side : Side.values())
+                    for (Order order : side == Side.BUY ? book.getBuyQueue() : book.getSellQueue())
+                        state.append("  ").append(describe(order)).append('\n');
+        }
+        return state.toString();
+    }
+
+    private static String describe(Order order) {
+        String description = String.join(" ", order.getClass().getSimpleName(), String.valueOf(order.getOrderId()),
+                order.getSide().toString(), String.valueOf(order.getTotalQuantity()), String.valueOf(order.getQuantity()),
+                String.valueOf(order.getPrice()), String.valueOf(order.getBroker().getBrokerId()),
+                String.valueOf(order.getShareholder().getShareholderId()), order.getEntryTime().toString(),
+                order.getStatus().toString(), String.valueOf(order.getMinimumExecutionQuantity()));
+        if (order instanceof IcebergOrder iceberg)
+            description += " " + iceberg.getPeakSize() + " " + iceberg.getDisplayedQuantity();
+        if (order instanceof StopLimitOrder stopLimit)
+            description += " " + stopLimit.getStopPrice() + " " + stopLimit.getRequestId();
+        return description;
+    }
+
+    @Test
+    void loaded_state_matches_the_saved_one_order_for_order() throws IOException {
+        String saved = state();
+        Path file = directory.resolve(BinaryStateFile.FILE_NAME);
+        stateFile.write(file);
+
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        stateFile.read(file, wholeMarket, false);
+
+        assertThat(state()).isEqualTo(saved);
+        Security abc = securityRepository.findSecurityByIsin("ABC");
+        assertThat(abc.getOrderBook().getBuyQueue()).extracting(Order::getOrderId).containsExactly(2L, 1L);
+        assertThat(abc.getInactiveOrderBook().findByOrderId(Side.BUY, 4).getStatus()).isEqualTo(OrderStatus.INACTIVE);
+        assertThat(abc.getOrderBook().getFirst(Side.BUY).getShareholder()).isSameAs(shareholderRepository.findShareholderById(10));
+        assertThat(Files.exists(directory.resolve(BinaryStateFile.FILE_NAME + ".tmp"))).isFalse();
+    }
+
+    @Test
+    void deferred_books_are_built_on_first_use() throws IOException {
+        String saved = state();
+        Path file = directory.resolve(BinaryStateFile.FILE_NAME);
+        stateFile.write(file);
+
+        new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository, true).read(file, wholeMarket, false);
+
+        Security abc = securityRepository.findSecurityByIsin("ABC");
+        Security xyz = securityRepository.findSecurityByIsin("XYZ");
+        assertThat(abc.hasDeferredBooks()).isTrue();
+        assertThat(xyz.hasDeferredBooks()).isTrue();
+        assertThat(abc.getInactiveOrderBook().findByOrderId(Side.BUY, 4).getStopPrice()).isEqualTo(1050);
+        assertThat(abc.hasDeferredBooks()).isFalse();
+        assertThat(xyz.hasDeferredBooks()).isTrue();
+        assertThat(state()).isEqualTo(saved);
+    }
+
+    @Test
+    void unbuilt_books_are_saved_and_read_without_being_built() throws IOException {
+        BinaryStateStore store = new BinaryStateStore(directory.resolve(BinaryStateFile.FILE_NAME), stateFile, wholeMarket);
+        store.rebase(-1);
+        String saved = state();
+        BinaryStateFile deferring = new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository, true);
+        deferring.read(store.baseFile(), wholeMarket, false);
+        Security abc = securityRepository.findSecurityByIsin("ABC");
+        List<Long> sellOrders = new ArrayList<>();
+        abc.readBooks((orderBook, inactiveOrderBook) -> orderBook.getSellQueue().forEach(order -> sellOrders.add(order.getOrderId())));
+        assertThat(sellOrders).containsExactly(3L);
+
+        deferring.write(directory.resolve("copy.bin"));
+
+        assertThat(abc.hasDeferredBooks()).isTrue();
+        stateFile.read(directory.resolve("copy.bin"), wholeMarket, false);
+        assertThat(state()).isEqualTo(saved);
+    }
+
+    @Test
+    void a_delta_replaces_the_books_of_a_security_left_unbuilt() throws IOException {
+        BinaryStateStore store = new BinaryStateStore(directory.resolve(BinaryStateFile.FILE_NAME), stateFile, wholeMarket);
+        store.rebase(-1);
+        Security xyz = securityRepository.findSecurityByIsin("XYZ");
+        xyz.getOrderBook().getSellQueue().clear();
+        xyz.markDirty();
+        store.append(store.encodeChanges(-1));
+
+        BinaryStateStore reopened = new BinaryStateStore(store.baseFile(),
+                new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository, true), wholeMarket);
+        reopened.load();
+
+        assertThat(securityRepository.findSecurityByIsin("XYZ").hasDeferredBooks()).isFalse();
+        assertThat(securityRepository.findSecurityByIsin("XYZ").getOrderBook().getSellQueue()).isEmpty();
+        assertThat(securityRepository.findSecurityByIsin("ABC").hasDeferredBooks()).isTrue();
+        assertThat(securityRepository.findSecurityByIsin("ABC").getOrderBook().getBuyQueue()).hasSize(2);
+    }
+
+    @Test
+    void a_partition_loads_only_its_securities_and_its_share_of_credit() throws IOException {
+        Path file = directory.resolve(BinaryStateFile.FILE_NAME);
+        stateFile.write(file);
+
+        stateFile.read(file, new IsinPartition("P2", new String[]{"XYZ"}, 0.5), true);
+
+        assertThat(securityRepository.allSecurities()).extracting(Security::getIsin).containsExactly("XYZ");
+        assertThat(brokerRepository.findBrokerById(1).getCredit()).isEqualTo(61_728);
+        Security xyz = securityRepository.findSecurityByIsin("XYZ");
+        assertThat(shareholderRepository.findShareholderById(10).getPositions()).containsOnlyKeys(xyz);
+        assertThat(xyz.getOrderBook().getSellQueue()).extracting(Order::getOrderId).containsExactly(5L);
+    }
+
+    @Test
+    void a_truncated_or_foreign_file_is_rejected() throws IOException {
+        Path file = directory.resolve(BinaryStateFile.FILE_NAME);
+        stateFile.write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThatThrownBy(() -> stateFile.read(file, wholeMarket, false)).isInstanceOf(IOException.class);
+
+        Files.writeString(file, "brokerId,name,credit\n".repeat(4));
+        assertThatThrownBy(() -> stateFile.read(file, wholeMarket, false)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void a_delta_holds_only_what_changed_and_brings_a_loaded_base_up_to_date() throws IOException {
+        BinaryStateStore store = new BinaryStateStore(directory.resolve(BinaryStateFile.FILE_NAME), stateFile, wholeMarket);
+        store.rebase(-1);
+        assertThat(store.encodeChanges(-1)).isNull();
+
+        brokerRepository.findBrokerById(1).decreaseCreditBy(456);
+        Security xyz = securityRepository.findSecurityByIsin("XYZ");
+        xyz.getOrderBook().getSellQueue().clear();
+        xyz.setLastTradePrice(210);
+        xyz.markDirty();
+        BinaryStateStore.Delta delta = store.encodeChanges(-1);
+        assertThat(delta.generation()).isEqualTo(1);
+        assertThat(delta.changes().data().remaining()).isLessThan((int) Files.size(store.baseFile()));
+        assertThat(store.encodeChanges(-1)).isNull();
+        store.append(delta);
+
+        shareholderRepository.findShareholderById(10).decPosition(xyz, 5);
+        store.append(store.encodeChanges(-1));
+        String saved = state();
+
+        BinaryStateFile loaded = new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository);
+        BinaryStateStore reopened = new BinaryStateStore(store.baseFile(), loaded, wholeMarket);
+        reopened.load();
+
+        assertThat(state()).isEqualTo(saved);
+        assertThat(reopened.generation()).isEqualTo(2);
+        assertThat(brokerRepository.findBrokerById(1).getCredit()).isEqualTo(123_000);
+        assertThat(securityRepository.findSecurityByIsin("ABC").getOrderBook().getBuyQueue()).hasSize(2);
+        assertThat(brokerRepository.findBrokerById(1).isDirty()).isFalse();
+    }
+
+    @Test
+    void changes_whose_delta_was_not_written_are_encoded_again() throws IOException {
+        BinaryStateStore store = new BinaryStateStore(directory.resolve(BinaryStateFile.FILE_NAME), stateFile, wholeMarket);
+        store.rebase(-1);
+        brokerRepository.findBrokerById(2).increaseCreditBy(10);
+        BinaryStateStore.Delta lost = store.encodeChanges(-1);
+        assertThat(store.encodeChanges(-1)).isNull();
+
+        lost.changes().markDirtyAgain();
+
+        BinaryStateStore.Delta retried = store.encodeChanges(-1);
+        assertThat(retried.generation()).isEqualTo(lost.generation());
+        assertThat(retried.changes().brokers()).containsExactly(brokerRepository.findBrokerById(2));
+        assertThat(store.generation()).isZero();
+        store.append(retried);
+        assertThat(store.generation()).isEqualTo(1);
+    }
+
+    @Test
+    void the_loaded_files_say_which_journaled_requests_they_reflect() throws IOException {
+        BinaryStateStore store = new BinaryStateStore(directory.resolve(BinaryStateFile.FILE_NAME), stateFile, wholeMarket);
+        store.rebase(7);
+        brokerRepository.findBrokerById(2).increaseCreditBy(10);
+        store.append(store.encodeChanges(41));
+        assertThat(store.encodeChanges(42)).isNull();
+
+        BinaryStateStore reopened = new BinaryStateStore(store.baseFile(),
+                new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository), wholeMarket);
+        reopened.load();
+        assertThat(reopened.journalSequence()).isEqualTo(41);
+
+        reopened.compact();
+        BinaryStateFile compacted = new BinaryStateFile(brokerRepository, shareholderRepository, securityRepository);
+        compacted.read(store.baseFile(), wholeMarket, false);
+        assertThat(compacted.journalSequence()).isEqualTo(41);
+    }
+
+    @Test
+    void compaction_folds_the_deltas_into_the_base() throws IOException {
+        BinaryStateStore store = new BinaryStateStore(directory.resolve(BinaryStateFile.FILE_NAME), stateFile, wholeMarket);
+        store.rebase(-1);
+        Broker broker = brokerRepository.findBrokerById(2);
+        for (int i = 0; i < 5; i++) {
+            broker.increaseCreditBy(10);
+            store.append(store.encodeChanges(-1));
+        }
+        String saved = state();
+        assertThat(store.deltas()).hasSize(5);
+
+        store.compact();
+
+        assertThat(store.deltas()).isEmpty();
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        assertThat(stateFile.read(store.baseFile(), wholeMarket, false)).isEqualTo(5);
+        assertThat(state()).isEqualTo(saved);
+    }
+
+    @Test
+    void csv_broker_credit_is_read_from_the_credit_column() throws Exception {
+        Path csv = Files.createDirectory(directory.resolve("credit"));
+        Files.write(csv.resolve(CsvStateFiles.BROKER_FILE), List.of("brokerId,name,credit", "7,broker7,250000"));
+        Files.write(csv.resolve(CsvStateFiles.SHAREHOLDER_FILE), List.of("shareholderId,name"));
+        Files.write(csv.resolve(CsvStateFiles.SECURITY_FILE), List.of("isin,tickSize,lotSize"));
+        Files.write(csv.resolve(CsvStateFiles.POSITION_FILE), List.of("shareholderId,isin,positions"));
+        Files.write(csv.resolve(CsvStateFiles.ORDER_BOOK_FILE), List.of(
+                "orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity,minimumExecutionQuantity"));
+        BrokerRepository brokers = new BrokerRepository();
+
+        new CsvStateFiles(brokers, new ShareholderRepository(), new SecurityRepository(), wholeMarket).load(csv.toFile());
+
+        assertThat(brokers.findBrokerById(7).getCredit()).isEqualTo(250_000);
+    }
+
+    @Test
+    void csv_files_survive_a_round_trip_through_the_binary_format() throws Exception {
+        Path csv = Files.createDirectory(directory.resolve("csv"));
+        Files.write(csv.resolve(CsvStateFiles.BROKER_FILE), List.of("brokerId,name,credit", "1,broker1,100000", "2,broker2,5000"));
+        Files.write(csv.resolve(CsvStateFiles.SHAREHOLDER_FILE), List.of("shareholderId,name", "1,shareholder1", "2,shareholder2"));
+        Files.write(csv.resolve(CsvStateFiles.SECURITY_FILE), List.of("isin,tickSize,lotSize", "SEC1,1,1", "SEC2,5,10"));
+        Files.write(csv.resolve(CsvStateFiles.POSITION_FILE), List.of("shareholderId,isin,positions", "1,SEC1,1000", "2,SEC2,800"));
+        Files.write(csv.resolve(CsvStateFiles.ORDER_BOOK_FILE), List.of(
+                "orderId,isin,side,quantity,price,brokerId,shareholderId,entryTime,status,peakSize,displayedQuantity,minimumExecutionQuantity",
+                "2,SEC1,BUY,43,15500,1,2,2024-02-23T10:59:55.970,0,0,2",
+                "1,SEC1,BUY,304,15400,1,1,2024-02-23T10:59:54.970,0,0,1",
+                "3,SEC1,SELL,1000,15800,2,1,2024-02-23T10:59:56.970,100,100,0",
+                "4,SEC2,SELL,50,3000,2,2,2024-02-23T10:59:57.970,0,0,0"));
+        Path binary = directory.resolve(BinaryStateFile.FILE_NAME);
+        Path back = Files.createDirectory(directory.resolve("back"));
+
+        new PersistenceConverter().csvToBinary(csv.toFile(), binary);
+        new PersistenceConverter().binaryToCsv(binary, back.toFile());
+
+        // brokers and shareholders come back in repository order, securities and orders in file order
+        for (String name : List.of(CsvStateFiles.BROKER_FILE, CsvStateFiles.SHAREHOLDER_FILE, CsvStateFiles.POSITION_FILE))
+            assertThat(Files.readAllLines(back.resolve(name))).containsExactlyInAnyOrderElementsOf(Files.readAllLines(csv.resolve(name)));
+        for (String name : List.of(CsvStateFiles.SECURITY_FILE, CsvStateFiles.ORDER_BOOK_FILE))
+            assertThat(back.resolve(name)).hasSameTextualContentAs(csv.resolve(name));
+    }
+}
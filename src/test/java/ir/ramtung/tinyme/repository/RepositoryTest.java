@@ -0,0 +1,105 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.Broker;
+import ir.ramtung.tinyme.domain.entity.Security;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepositoryTest {
+    @Test
+    void long_keyed_map_finds_every_key_after_growing() {
+        LongKeyedMap<String> map = new LongKeyedMap<>();
+        for (long key = -500; key < 500; key++)
+            map.put(key * 7919, "v" + key);
+        map.put(0, "zero");
+
+        assertThat(map.size()).isEqualTo(1000);
+        assertThat(map.get(0)).isEqualTo("zero");
+        assertThat(map.get(-500 * 7919L)).isEqualTo("v-500");
+        assertThat(map.get(499 * 7919L)).isEqualTo("v499");
+        assertThat(map.get(1)).isNull();
+        assertThat(map.values()).hasSize(1000);
+    }
+
+    @Test
+    void long_keyed_map_is_readable_while_being_written() throws InterruptedException {
+        LongKeyedMap<Long> map = new LongKeyedMap<>();
+        AtomicInteger published = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (published.get() < 100_000) {
+                int upTo = published.get();
+                for (int key = Math.max(0, upTo - 100); key < upTo; key++) {
+                    Long value = map.get(key);
+                    if (value == null || value != key)
+                        failed.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (int key = 0; key < 100_000; key++) {
+            map.put(key, (long) key);
+            published.set(key + 1);
+        }
+        reader.join();
+        assertThat(failed).isFalse();
+    }
+
+    @Test
+    void security_repository_keeps_securities_in_the_order_they_were_added() {
+        SecurityRepository repository = new SecurityRepository();
+        for (int i = 0; i < 40; i++)
+            repository.addSecurity(Security.builder().isin("SEC" + i).build());
+        Security replacement = Security.builder().isin("SEC7").build();
+        repository.addSecurity(replacement);
+
+        assertThat(repository.size()).isEqualTo(40);
+        assertThat(repository.allSecurities().get(7)).isSameAs(replacement);
+        assertThat(repository.findSecurityByIsin("SEC7")).isSameAs(replacement);
+        assertThat(repository.findSecurityByIsin("SEC39").getIsin()).isEqualTo("SEC39");
+        assertThat(repository.findSecurityByIsin("UNKNOWN")).isNull();
+        assertThat(repository.findSecurityByIsin(null)).isNull();
+    }
+
+    @Test
+    void security_lookups_racing_a_clear_never_fail() throws InterruptedException {
+        SecurityRepository repository = new SecurityRepository();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean failed = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                try {
+                    for (int i = 0; i < 40; i++)
+                        repository.findSecurityByIsin("SEC" + i);
+                    repository.allSecurities();
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (int round = 0; round < 2_000; round++) {
+            for (int i = 0; i < 40; i++)
+                repository.addSecurity(Security.builder().isin("SEC" + i).build());
+            repository.clear();
+        }
+        done.set(true);
+        reader.join();
+        assertThat(failed).isFalse();
+    }
+
+    @Test
+    void all_brokers_is_a_snapshot() {
+        BrokerRepository repository = new BrokerRepository();
+        repository.addBroker(Broker.builder().brokerId(1).build());
+        List<Broker> brokers = repository.allBrokers();
+        repository.addBroker(Broker.builder().brokerId(2).build());
+        assertThat(brokers).hasSize(1);
+        assertThat(repository.allBrokers()).hasSize(2);
+    }
+}
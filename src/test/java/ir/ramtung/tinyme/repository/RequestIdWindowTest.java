@@ -0,0 +1,60 @@
+package ir.ramtung.tinyme.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestIdWindowTest {
+    @Test
+    void only_the_most_recent_ids_are_remembered() {
+        RequestIdWindow window = new RequestIdWindow(3, false);
+        assertThat(window.add(1)).isTrue();
+        assertThat(window.add(2)).isTrue();
+        assertThat(window.add(1)).isFalse();
+        assertThat(window.add(3)).isTrue();
+        assertThat(window.add(4)).isTrue();
+
+        assertThat(window.contains(1)).isFalse();
+        assertThat(window.contains(2)).isTrue();
+        assertThat(window.size()).isEqualTo(3);
+        assertThat(window.add(1)).isTrue();
+    }
+
+    @Test
+    void long_min_value_is_an_ordinary_id() {
+        RequestIdWindow window = new RequestIdWindow(2, true);
+        assertThat(window.add(Long.MIN_VALUE)).isTrue();
+        assertThat(window.add(Long.MIN_VALUE)).isFalse();
+        window.add(0);
+        window.add(1);
+        assertThat(window.contains(Long.MIN_VALUE)).isFalse();
+    }
+
+    @Test
+    void behaves_like_a_bounded_fifo_set_with_and_without_bloom_filter() {
+        for (boolean bloom : new boolean[]{false, true}) {
+            RequestIdWindow window = new RequestIdWindow(100, bloom);
+            ArrayDeque<Long> order = new ArrayDeque<>();
+            Set<Long> members = new HashSet<>();
+            Random random = new Random(38);
+            for (int i = 0; i < 100_000; i++) {
+                long id = random.nextInt(400);
+                boolean expectedNew = !members.contains(id);
+                assertThat(window.add(id)).isEqualTo(expectedNew);
+                if (expectedNew) {
+                    if (order.size() == 100)
+                        members.remove(order.removeFirst());
+                    order.addLast(id);
+                    members.add(id);
+                }
+                if (bloom && members.contains(id))
+                    assertThat(window.definitelyAbsent(id)).isFalse();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.messaging.request.MatchingState;
+import ir.ramtung.tinyme.repository.snapshot.StateSnapshotCodec;
+import ir.ramtung.tinyme.repository.snapshot.StateSnapshotStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StateSnapshotTest {
+    private final BrokerRepository brokerRepository = new BrokerRepository();
+    private final ShareholderRepository shareholderRepository = new ShareholderRepository();
+    private final SecurityRepository securityRepository = new SecurityRepository();
+    private final StateSnapshotCodec codec = new StateSnapshotCodec(brokerRepository, shareholderRepository, securityRepository);
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setup() {
+        Broker broker = Broker.builder().brokerId(1).name("Alpha").credit(123_456).build();
+        brokerRepository.addBroker(broker);
+        brokerRepository.addBroker(Broker.builder().brokerId(2).credit(-5).build());
+        Shareholder shareholder = Shareholder.builder().shareholderId(10).name("Shareholder’s name").build();
+        shareholderRepository.addShareholder(shareholder);
+        Security abc = Security.builder().isin("ABC").tickSize(5).lotSize(10).lastTradePrice(1000).build();
+        Security xyz = Security.builder().isin("XYZ").matchingState(MatchingState.AUCTION).build();
+        securityRepository.addSecurity(abc);
+        securityRepository.addSecurity(xyz);
+        shareholder.incPosition(abc, 700);
+        shareholder.incPosition(xyz, 30);
+        LocalDateTime time = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+        abc.getOrderBook().enqueue(new Order(1, abc, Side.BUY, 100, 990, broker, shareholder, time, 40));
+        abc.getOrderBook().enqueue(new Order(2, abc, Side.BUY, 50, 995, broker, shareholder, time, 0));
+        abc.getOrderBook().enqueue(new IcebergOrder(3, abc, Side.SELL, 500, 1010, broker, shareholder, time, 100, 0));
+        abc.getOrderBook().getFirst(Side.SELL).decreaseQuantity(30);
+        abc.getInactiveOrderBook().enqueue(new StopLimitOrder(4, abc, Side.BUY, 20, 1100, broker, shareholder, time, OrderStatus.NEW, 1050, 9));
+        xyz.getOrderBook().enqueue(new Order(5, xyz, Side.SELL, 10, 200, broker, shareholder, time, 0));
+    }
+
+    private String state() {
+        StringBuilder state = new StringBuilder();
+        for (Broker broker : brokerRepository.allBrokers())
+            state.append(broker.getBrokerId()).append(' ').append(broker.getName()).append(' ').append(broker.getCredit()).append('\n');
+        for (Shareholder shareholder : shareholderRepository.allShareholders()) {
+            state.append(shareholder.getShareholderId()).append(' ').append(shareholder.getName()).append('\n');
+            for (Security security : securityRepository.allSecurities())
+                state.append("  ").append(security.getIsin()).append(' ').append(shareholder.getPositions().get(security)).append('\n');
+        }
+        for (Security security : securityRepository.allSecurities()) {
+            state.append(security.getIsin()).append(' ').append(security.getTickSize()).append(' ').append(security.getLotSize())
+                    .append(' ').append(security.getLastTradePrice()).append(' ').append(security.getMatchingState()).append('\n');
+            for (OrderBook book : new OrderBook[]{security.getOrderBook(), security.getInactiveOrderBook()})
+                for (Side side : Side.values())
+                    for (Order order : side == Side.BUY ? book.getBuyQueue() : book.getSellQueue())
+                        state.append("  ").append(describe(order)).append('\n');
+        }
+        return state.toString();
+    }
+
+    private static String describe(Order order) {
+        String description = String.join(" ", order.getClass().getSimpleName(), String.valueOf(order.getOrderId()),
+                order.getSide().toString(), String.valueOf(order.getTotalQuantity()), String.valueOf(order.getQuantity()),
+                String.valueOf(order.getPrice()), String.valueOf(order.getBroker().getBrokerId()),
+                String.valueOf(order.getShareholder().getShareholderId()), order.getEntryTime().toString(),
+                order.getStatus().toString(), String.valueOf(order.getMinimumExecutionQuantity()));
+        if (order instanceof IcebergOrder iceberg)
+            description += " " + iceberg.getPeakSize() + " " + iceberg.getDisplayedQuantity();
+        if (order instanceof StopLimitOrder stopLimit)
+            description += " " + stopLimit.getStopPrice() + " " + stopLimit.getRequestId();
+        return description;
+    }
+
+    @Test
+    void restored_state_matches_the_captured_one_order_for_order() {
+        String captured = state();
+        ByteBuffer snapshot = codec.encode(42, 1_000);
+        ByteBuffer copy = ByteBuffer.allocate(snapshot.remaining()).put(snapshot.duplicate()).flip();
+
+        brokerRepository.clear();
+        shareholderRepository.clear();
+        securityRepository.clear();
+        assertThat(codec.restore(copy)).isEqualTo(42);
+
+        assertThat(state()).isEqualTo(captured);
+        Security abc = securityRepository.findSecurityByIsin("ABC");
+        assertThat(abc.getOrderBook().getBuyQueue()).extracting(Order::getOrderId).containsExactly(2L, 1L);
+        IcebergOrder iceberg = (IcebergOrder) abc.getOrderBook().getFirst(Side.SELL);
+        assertThat(iceberg.getQuantity()).isEqualTo(70);
+        assertThat(iceberg.getTotalQuantity()).isEqualTo(470);
+        assertThat(abc.getInactiveOrderBook().findByOrderId(Side.BUY, 4).getStatus()).isEqualTo(OrderStatus.INACTIVE);
+        assertThat(abc.getOrderBook().getFirst(Side.BUY).getBroker()).isSameAs(brokerRepository.findBrokerById(1));
+    }
+
+    @Test
+    void store_keeps_the_newest_snapshots_and_skips_a_damaged_one() throws Exception {
+        StateSnapshotStore store = new StateSnapshotStore(directory.toString(), 2);
+        store.write(codec.encode(10, 1));
+        Path second = store.write(codec.encode(20, 2));
+        Path third = store.write(codec.encode(30, 3));
+        assertThat(store.snapshots()).containsExactly(second, third);
+        assertThat(store.oldestSequence()).isEqualTo(20);
+
+        byte[] bytes = Files.readAllBytes(third);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(third, bytes);
+
+        assertThat(store.latest()).hasValueSatisfying(snapshot -> assertThat(StateSnapshotCodec.sequenceOf(snapshot)).isEqualTo(20));
+    }
+}
@@ -0,0 +1,184 @@
+package ir.ramtung.tinyme.repository;
+
+import ir.ramtung.tinyme.domain.entity.*;
+import ir.ramtung.tinyme.repository.trade.TradeStats;
+import ir.ramtung.tinyme.repository.trade.TradeStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TradeStoreTest {
+    private final Security abc = Security.builder().isin("ABC").build();
+    private final Security xyz = Security.builder().isin("XYZ").build();
+    private final Broker alpha = Broker.builder().brokerId(1).build();
+    private final Broker beta = Broker.builder().brokerId(2).build();
+    private final Shareholder shareholder = Shareholder.builder().shareholderId(10).build();
+    private final List<TradeStore> stores = new ArrayList<>();
+    @TempDir
+    Path directory;
+
+    private TradeStore open() throws IOException {
+        TradeStore store = new TradeStore(true, directory.toString(), 4, 0);
+        stores.add(store);
+        return store;
+    }
+
+    @AfterEach
+    void shutdown() throws IOException, InterruptedException {
+        for (TradeStore store : stores)
+            store.shutdown();
+    }
+
+    private Trade trade(Security security, int price, int quantity, Broker buyer, Broker seller) {
+        Order buy = new Order(price, security, Side.BUY, quantity, price, buyer, shareholder, 0);
+        Order sell = new Order(price + 1_000_000, security, Side.SELL, quantity, price, seller, shareholder, 0);
+        return new Trade(security, price, quantity, buy, sell);
+    }
+
+    private void recordSample(TradeStore store) {
+        for (int i = 0; i < 10; i++)
+            store.record(List.of(trade(abc, 100 + i, 10, alpha, beta)));
+        store.record(List.of(trade(xyz, 50, 4, beta, alpha), trade(xyz, 60, 6, beta, beta)));
+    }
+
+    @Test
+    void volume_and_vwap_cover_sealed_segments_and_the_open_block() throws IOException {
+        TradeStore store = open();
+        recordSample(store);
+
+        TradeStats stats = store.statsOf("ABC");
+        assertThat(stats).isEqualTo(new TradeStats(10, 100, 10450));
+        assertThat(stats.vwap()).isEqualTo(104.5);
+        assertThat(store.statsOf("XYZ").vwap()).isEqualTo(56.0);
+        assertThat(store.statsOf("UNKNOWN")).isEqualTo(TradeStats.EMPTY);
+        assertThat(TradeStats.EMPTY.vwap()).isNaN();
+    }
+
+    @Test
+    void broker_turnover_counts_both_sides_over_all_securities() throws IOException {
+        TradeStore store = open();
+        recordSample(store);
+
+        assertThat(store.brokerTurnover(1)).isEqualTo(10450 + 200);
+        assertThat(store.brokerTurnover(2)).isEqualTo(10450 + 200 + 2 * 360);
+        assertThat(store.brokerTurnover(3)).isZero();
+    }
+
+    @Test
+    void the_most_traded_securities_come_first_after_a_restart() throws IOException {
+        TradeStore store = open();
+        recordSample(store);
+        store.record(List.of(trade(xyz, 70, 1, alpha, beta)));
+        assertThat(store.mostTraded()).containsExactly("ABC", "XYZ");
+        store.flush();
+
+        assertThat(open().mostTraded()).containsExactly("ABC", "XYZ");
+    }
+
+    @Test
+    void trades_are_only_counted_in_the_time_range_asked_for() throws IOException {
+        TradeStore store = open();
+        long before = System.currentTimeMillis();
+        recordSample(store);
+        long after = System.currentTimeMillis() + 1;
+
+        assertThat(store.statsOf("ABC", before, after).volume()).isEqualTo(100);
+        assertThat(store.statsOf("ABC", after, Long.MAX_VALUE)).isEqualTo(TradeStats.EMPTY);
+        assertThat(store.brokerTurnover(1, Long.MIN_VALUE, before)).isZero();
+    }
+
+    @Test
+    void flushed_trades_are_loaded_again_from_compressed_segments() throws IOException {
+        TradeStore store = open();
+        recordSample(store);
+        store.flush();
+
+        try (Stream<Path> files = Files.list(directory.resolve("ABC"))) {
+            assertThat(files.map(path -> path.getFileName().toString()))
+                    .containsExactlyInAnyOrder("00000000000000000000.trades", "00000000000000000004.trades", "00000000000000000008.trades");
+        }
+
+        TradeStore reopened = open();
+        assertThat(reopened.statsOf("ABC")).isEqualTo(store.statsOf("ABC"));
+        assertThat(reopened.brokerTurnover(2)).isEqualTo(store.brokerTurnover(2));
+
+        reopened.record(List.of(trade(abc, 200, 10, alpha, beta)));
+        reopened.flush();
+        assertThat(Files.exists(directory.resolve("ABC").resolve("00000000000000000010.trades"))).isTrue();
+    }
+
+    @Test
+    void segments_take_a_fraction_of_the_raw_columns() throws IOException {
+        TradeStore store = new TradeStore(true, directory.toString(), 1000, 0);
+        stores.add(store);
+        for (int i = 0; i < 1000; i++)
+            store.record(List.of(trade(abc, 1000 + i % 7, 10 * (1 + i % 5), i % 2 == 0 ? alpha : beta, beta)));
+        store.flush();
+
+        assertThat(store.statsOf("ABC").trades()).isEqualTo(1000);
+        assertThat(store.sealedBytes()).isLessThan(1000 * 9 * Long.BYTES / 4);
+    }
+
+    @Test
+    void damaged_segments_are_skipped_on_load() throws IOException {
+        TradeStore store = open();
+        recordSample(store);
+        store.flush();
+        Path first = directory.resolve("ABC").resolve("00000000000000000000.trades");
+        byte[] data = Files.readAllBytes(first);
+        data[data.length / 2] ^= 0x55;
+        Files.write(first, data);
+
+        assertThat(open().statsOf("ABC").trades()).isEqualTo(6);
+    }
+
+    private void recordRequests(TradeStore store) {
+        store.beginRequest(1);
+        for (int i = 0; i < 3; i++)
+            store.record(List.of(trade(abc, 100 + i, 10, alpha, beta)));
+        store.beginRequest(2);
+        store.record(List.of(trade(abc, 200, 10, alpha, beta), trade(abc, 201, 10, alpha, beta), trade(abc, 202, 10, alpha, beta)));
+        store.beginRequest(3);
+        store.record(List.of(trade(abc, 300, 10, alpha, beta), trade(xyz, 50, 4, beta, alpha)));
+    }
+
+    @Test
+    void replay_records_the_trades_that_were_not_sealed_before_the_crash_and_only_those() throws Exception {
+        TradeStore crashed = open();
+        recordRequests(crashed);
+        Path sealed = directory.resolve("ABC").resolve("00000000000000000000.trades");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Files.exists(sealed) && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertThat(sealed).exists();
+
+        TradeStore recovered = open();
+        recovered.startReplay();
+        recordRequests(recovered);
+        recovered.finishReplay();
+
+        assertThat(recovered.statsOf("ABC")).isEqualTo(crashed.statsOf("ABC"));
+        assertThat(recovered.statsOf("XYZ")).isEqualTo(crashed.statsOf("XYZ"));
+        recovered.beginRequest(4);
+        recovered.record(List.of(trade(abc, 400, 10, alpha, beta)));
+        assertThat(recovered.statsOf("ABC").trades()).isEqualTo(8);
+    }
+
+    @Test
+    void a_disabled_store_records_nothing() throws IOException {
+        TradeStore store = new TradeStore(false, directory.toString(), 4, 0);
+        recordSample(store);
+
+        assertThat(store.statsOf("ABC")).isEqualTo(TradeStats.EMPTY);
+        assertThat(Files.list(directory)).isEmpty();
+    }
+}